@@ -835,6 +835,8 @@ public class StandardContext extends ContainerBase
 
     private boolean parallelAnnotationScanning = false;
 
+    private boolean annotationScanCache = false;
+
     private boolean useBloomFilterForArchives = false;
 
     // ----------------------------------------------------- Context Properties
@@ -1485,6 +1487,31 @@ public class StandardContext extends ContainerBase
     }
 
 
+    /**
+     * Set whether the results of scanning JARs for annotations are cached
+     * between deployments of this web application.
+     *
+     * @param annotationScanCache {@code true} to use the cache
+     */
+    public void setAnnotationScanCache(boolean annotationScanCache) {
+
+        boolean oldAnnotationScanCache = this.annotationScanCache;
+        this.annotationScanCache = annotationScanCache;
+        support.firePropertyChange("annotationScanCache", oldAnnotationScanCache,
+                this.annotationScanCache);
+
+    }
+
+
+    /**
+     * @return {@code true} if the results of scanning JARs for annotations are
+     *         cached between deployments of this web application
+     */
+    public boolean getAnnotationScanCache() {
+        return this.annotationScanCache;
+    }
+
+
     /**
      * @return the Locale to character set mapper for this Context.
      */
@@ -25,7 +25,9 @@ import org.apache.catalina.LifecycleException;
 import org.apache.catalina.LifecycleState;
 import org.apache.catalina.util.LifecycleMBeanBase;
 import org.apache.tomcat.util.res.StringManager;
+import org.apache.tomcat.util.threads.LockFreeTaskQueue;
 import org.apache.tomcat.util.threads.ResizableExecutor;
+import org.apache.tomcat.util.threads.RetryableQueue;
 import org.apache.tomcat.util.threads.TaskQueue;
 import org.apache.tomcat.util.threads.TaskThreadFactory;
 import org.apache.tomcat.util.threads.ThreadPoolExecutor;
@@ -95,7 +97,13 @@ public class StandardThreadExecutor extends LifecycleMBeanBase
     protected long threadRenewalDelay =
         org.apache.tomcat.util.threads.Constants.DEFAULT_THREAD_RENEWAL_DELAY;
 
-    private TaskQueue taskqueue = null;
+    /**
+     * Use the lock-free task queue rather than the default queue based on a
+     * {@link java.util.concurrent.LinkedBlockingQueue}?
+     */
+    protected boolean lockFreeQueue = false;
+
+    private RetryableQueue<Runnable> taskqueue = null;
     // ---------------------------------------------- Constructors
     public StandardThreadExecutor() {
         //empty constructor for the digester
@@ -120,14 +128,22 @@ public class StandardThreadExecutor extends LifecycleMBeanBase
     @Override
     protected void startInternal() throws LifecycleException {
 
-        taskqueue = new TaskQueue(maxQueueSize);
         TaskThreadFactory tf = new TaskThreadFactory(namePrefix,daemon,getThreadPriority());
-        executor = new ThreadPoolExecutor(getMinSpareThreads(), getMaxThreads(), maxIdleTime, TimeUnit.MILLISECONDS,taskqueue, tf);
+        if (lockFreeQueue) {
+            LockFreeTaskQueue queue = new LockFreeTaskQueue(maxQueueSize);
+            executor = new ThreadPoolExecutor(getMinSpareThreads(), getMaxThreads(), maxIdleTime, TimeUnit.MILLISECONDS,queue, tf);
+            queue.setParent(executor);
+            taskqueue = queue;
+        } else {
+            TaskQueue queue = new TaskQueue(maxQueueSize);
+            executor = new ThreadPoolExecutor(getMinSpareThreads(), getMaxThreads(), maxIdleTime, TimeUnit.MILLISECONDS,queue, tf);
+            queue.setParent(executor);
+            taskqueue = queue;
+        }
         executor.setThreadRenewalDelay(threadRenewalDelay);
         if (prestartminSpareThreads) {
             executor.prestartAllCoreThreads();
         }
-        taskqueue.setParent(executor);
 
         setState(LifecycleState.STARTING);
     }
@@ -175,7 +191,8 @@ public class StandardThreadExecutor extends LifecycleMBeanBase
                 executor.execute(command);
             } catch (RejectedExecutionException rx) {
                 //there could have been contention around the queue
-                if (!((TaskQueue) executor.getQueue()).force(command)) {
+                RetryableQueue<Runnable> queue = (RetryableQueue<Runnable>) executor.getQueue();
+                if (!queue.force(command)) {
                     throw new RejectedExecutionException(sm.getString("standardThreadExecutor.queueFull"));
                 }
             }
@@ -274,6 +291,14 @@ public class StandardThreadExecutor extends LifecycleMBeanBase
         return maxQueueSize;
     }
 
+    public boolean isLockFreeQueue() {
+        return lockFreeQueue;
+    }
+
+    public void setLockFreeQueue(boolean lockFreeQueue) {
+        this.lockFreeQueue = lockFreeQueue;
+    }
+
     public long getThreadRenewalDelay() {
         return threadRenewalDelay;
     }
@@ -0,0 +1,156 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.catalina.core;
+
+import java.util.concurrent.TimeUnit;
+
+import org.apache.catalina.LifecycleException;
+import org.apache.catalina.LifecycleState;
+import org.apache.juli.logging.Log;
+import org.apache.juli.logging.LogFactory;
+import org.apache.tomcat.util.compat.JreCompat;
+import org.apache.tomcat.util.threads.VirtualThreadExecutor;
+
+/**
+ * An executor that runs each task on a new virtual thread. Blocking I/O
+ * performed by the task, such as blocking servlet I/O, unmounts the virtual
+ * thread rather than occupying a platform thread for the duration.
+ * <p>
+ * Virtual threads require Java 21 or later. On earlier JREs this executor logs
+ * a warning and falls back to the behaviour of
+ * {@link StandardThreadExecutor}, using the configured pool attributes.
+ */
+public class StandardVirtualThreadExecutor extends StandardThreadExecutor {
+
+    private static final Log log = LogFactory.getLog(StandardVirtualThreadExecutor.class);
+
+    private volatile VirtualThreadExecutor virtualExecutor = null;
+
+
+    public StandardVirtualThreadExecutor() {
+        namePrefix = "tomcat-virt-";
+    }
+
+
+    /**
+     * @return {@code true} if this executor is using virtual threads,
+     *         {@code false} if it has fallen back to a pool of platform
+     *         threads or has not been started
+     */
+    public boolean isVirtual() {
+        return virtualExecutor != null;
+    }
+
+
+    @Override
+    protected void startInternal() throws LifecycleException {
+        if (JreCompat.isJre21Available()) {
+            virtualExecutor = new VirtualThreadExecutor(namePrefix);
+            setState(LifecycleState.STARTING);
+        } else {
+            log.warn(sm.getString("standardVirtualThreadExecutor.noVirtualThreads", getName()));
+            super.startInternal();
+        }
+    }
+
+
+    @Override
+    protected void stopInternal() throws LifecycleException {
+        if (virtualExecutor != null) {
+            setState(LifecycleState.STOPPING);
+            virtualExecutor.shutdown();
+            virtualExecutor = null;
+        } else {
+            super.stopInternal();
+        }
+    }
+
+
+    @Override
+    public void execute(Runnable command, long timeout, TimeUnit unit) {
+        VirtualThreadExecutor virtualExecutor = this.virtualExecutor;
+        if (virtualExecutor != null) {
+            // There is no queue so there is never any need to wait
+            virtualExecutor.execute(command);
+        } else {
+            super.execute(command, timeout, unit);
+        }
+    }
+
+
+    @Override
+    public void execute(Runnable command) {
+        VirtualThreadExecutor virtualExecutor = this.virtualExecutor;
+        if (virtualExecutor != null) {
+            virtualExecutor.execute(command);
+        } else {
+            super.execute(command);
+        }
+    }
+
+
+    @Override
+    public void contextStopping() {
+        // Virtual threads are never reused so there is nothing to renew
+        if (virtualExecutor == null) {
+            super.contextStopping();
+        }
+    }
+
+
+    @Override
+    public int getActiveCount() {
+        VirtualThreadExecutor virtualExecutor = this.virtualExecutor;
+        return (virtualExecutor != null) ? virtualExecutor.getActiveCount() : super.getActiveCount();
+    }
+
+
+    @Override
+    public long getCompletedTaskCount() {
+        VirtualThreadExecutor virtualExecutor = this.virtualExecutor;
+        return (virtualExecutor != null) ? virtualExecutor.getCompletedTaskCount() : super.getCompletedTaskCount();
+    }
+
+
+    @Override
+    public int getLargestPoolSize() {
+        VirtualThreadExecutor virtualExecutor = this.virtualExecutor;
+        return (virtualExecutor != null) ? virtualExecutor.getLargestActiveCount() : super.getLargestPoolSize();
+    }
+
+
+    @Override
+    public int getPoolSize() {
+        // One thread per running task
+        return getActiveCount();
+    }
+
+
+    @Override
+    public int getQueueSize() {
+        return (virtualExecutor != null) ? 0 : super.getQueueSize();
+    }
+
+
+    @Override
+    public boolean resizePool(int corePoolSize, int maximumPoolSize) {
+        if (virtualExecutor != null) {
+            return false;
+        }
+        return super.resizePool(corePoolSize, maximumPoolSize);
+    }
+}
@@ -90,6 +90,13 @@ public class ClusterRuleSet implements RuleSet {
         digester.addSetNext(prefix + "Manager/SessionIdGenerator",
                "setSessionIdGenerator",
                "org.apache.catalina.SessionIdGenerator");
+        digester.addObjectCreate(prefix + "Manager/SessionSerializer",
+                null, // MUST be specified in the element
+                "className");
+        digester.addSetProperties(prefix + "Manager/SessionSerializer");
+        digester.addSetNext(prefix + "Manager/SessionSerializer",
+               "setSessionSerializer",
+               "org.apache.catalina.session.SessionSerializer");
 
         digester.addObjectCreate(prefix + "Channel",
                                  null, // MUST be specified in the element
@@ -170,6 +170,7 @@ public abstract class ClusterManagerBase extends ManagerBase implements ClusterM
                 // Ignore
             }
         }
+        copy.setSessionSerializer(getSessionSerializer());
         copy.setRecordAllActions(isRecordAllActions());
     }
 
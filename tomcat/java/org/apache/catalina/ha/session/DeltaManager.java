@@ -18,12 +18,21 @@
 package org.apache.catalina.ha.session;
 
 import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.IOException;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.util.ArrayList;
 import java.util.Date;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
 
 import org.apache.catalina.Engine;
 import org.apache.catalina.Host;
@@ -88,6 +97,18 @@ public class DeltaManager extends ClusterManagerBase{
     private boolean receiverQueue = false ;
     private boolean stateTimestampDrop = true ;
     private volatile long stateTransferCreateSendTime;
+    private volatile int replicationBatchWindow = 0;
+    private volatile int replicationBatchSize = 100;
+
+    /*
+     * Sessions with changes that have not yet been replicated when batching is
+     * enabled. Multiple requests for the same session result in a single
+     * entry so their changes are replicated as a single delta.
+     */
+    private final Set<DeltaSession> pendingDeltaSessions = new LinkedHashSet<>();
+    private ScheduledFuture<?> pendingDeltaFlush = null;
+    // Ensures batches are sent in the order they are created
+    private final Object deltaBatchSendLock = new Object();
 
     // -------------------------------------------------------- stats attributes
 
@@ -109,6 +130,10 @@ public class DeltaManager extends ClusterManagerBase{
     private long counterSend_EVT_SESSION_EXPIRED = 0;
     private int counterSend_EVT_ALL_SESSION_TRANSFERCOMPLETE = 0 ;
     private long counterSend_EVT_CHANGE_SESSION_ID = 0;
+    private long counterSend_EVT_SESSION_DELTA_BATCH = 0;
+    private long counterReceive_EVT_SESSION_DELTA_BATCH = 0;
+    private long counterBatchedDeltas = 0;
+    private int maxDeltaBatchSize = 0;
     private int counterNoStateTransferred = 0 ;
 
 
@@ -185,6 +210,31 @@ public class DeltaManager extends ClusterManagerBase{
         return counterSend_EVT_CHANGE_SESSION_ID;
     }
 
+    /**
+     * @return Returns the counterSend_EVT_SESSION_DELTA_BATCH.
+     */
+    public long getCounterSend_EVT_SESSION_DELTA_BATCH() {
+        return counterSend_EVT_SESSION_DELTA_BATCH;
+    }
+
+    /**
+     * @return the average number of session deltas in each batch sent
+     */
+    public double getAverageDeltaBatchSize() {
+        long batches = counterSend_EVT_SESSION_DELTA_BATCH;
+        if (batches == 0) {
+            return 0;
+        }
+        return (double) counterBatchedDeltas / batches;
+    }
+
+    /**
+     * @return the largest number of session deltas sent in a single batch
+     */
+    public int getMaxDeltaBatchSize() {
+        return maxDeltaBatchSize;
+    }
+
     /**
      * @return Returns the counterReceive_EVT_ALL_SESSION_DATA.
      */
@@ -242,6 +292,13 @@ public class DeltaManager extends ClusterManagerBase{
         return counterReceive_EVT_CHANGE_SESSION_ID;
     }
 
+    /**
+     * @return Returns the counterReceive_EVT_SESSION_DELTA_BATCH.
+     */
+    public long getCounterReceive_EVT_SESSION_DELTA_BATCH() {
+        return counterReceive_EVT_SESSION_DELTA_BATCH;
+    }
+
     /**
      * @return Returns the counterReceive_EVT_ALL_SESSION_NOCONTEXTMANAGER.
      */
@@ -402,6 +459,44 @@ public class DeltaManager extends ClusterManagerBase{
         this.notifyContainerListenersOnReplication = notifyContainerListenersOnReplication;
     }
 
+    /**
+     * @return the time in milliseconds that session changes are held so they
+     *         can be replicated in a batch. Zero means that batching is
+     *         disabled.
+     */
+    public int getReplicationBatchWindow() {
+        return replicationBatchWindow;
+    }
+
+    /**
+     * Configure the time that session changes are held so the changes made
+     * to a session by multiple requests can be combined into a single delta
+     * and the deltas of multiple sessions can be sent in a single message.
+     *
+     * @param replicationBatchWindow The time in milliseconds. Zero disables
+     *                               batching.
+     */
+    public void setReplicationBatchWindow(int replicationBatchWindow) {
+        this.replicationBatchWindow = replicationBatchWindow;
+    }
+
+    /**
+     * @return the number of sessions with changes that triggers the sending
+     *         of a batch before the batch window has ended
+     */
+    public int getReplicationBatchSize() {
+        return replicationBatchSize;
+    }
+
+    /**
+     * @param replicationBatchSize The number of sessions with changes that
+     *                             triggers the sending of a batch before the
+     *                             batch window has ended
+     */
+    public void setReplicationBatchSize(int replicationBatchSize) {
+        this.replicationBatchSize = replicationBatchSize;
+    }
+
 
     // --------------------------------------------------------- Public Methods
 
@@ -814,6 +909,9 @@ public class DeltaManager extends ClusterManagerBase{
 
         setState(LifecycleState.STOPPING);
 
+        // Replicate any changes that are waiting to be sent in a batch
+        sendPendingDeltas();
+
         // Expire all active sessions
         if (log.isInfoEnabled()) log.info(sm.getString("deltaManager.expireSessions", getName()));
         Session sessions[] = findSessions();
@@ -853,6 +951,7 @@ public class DeltaManager extends ClusterManagerBase{
                 case SessionMessage.EVT_SESSION_ACCESSED:
                 case SessionMessage.EVT_SESSION_DELTA:
                 case SessionMessage.EVT_CHANGE_SESSION_ID:
+                case SessionMessage.EVT_SESSION_DELTA_BATCH:
                     synchronized(receivedMessageQueue) {
                         if(receiverQueue) {
                             receivedMessageQueue.add(msg);
@@ -893,6 +992,10 @@ public class DeltaManager extends ClusterManagerBase{
      * determines where it gets sent.
      *
      * Session expiration also calls this method, but with expires == true.
+     * <p>
+     * If {@link #getReplicationBatchWindow()} is greater than zero, the
+     * changes made to the session are not returned but are sent later in a
+     * batch together with the changes made to other sessions.
      *
      * @param sessionId -
      *            the sessionId that just completed.
@@ -910,6 +1013,11 @@ public class DeltaManager extends ClusterManagerBase{
                 // removed the session from the Manager.
                 return null;
             }
+            if (session.isDirty() && !expires && replicationBatchWindow > 0) {
+                session.setPrimarySession(true);
+                addPendingDelta(session);
+                return null;
+            }
             if (session.isDirty()) {
                 counterSend_EVT_SESSION_DELTA++;
                 msg = new SessionMessageImpl(getName(),
@@ -967,6 +1075,126 @@ public class DeltaManager extends ClusterManagerBase{
         }
         return msg;
     }
+
+    /**
+     * Add the session to those with changes waiting to be sent in the next
+     * batch. The changes are only serialized when the batch is sent so the
+     * changes made by all the requests for the session in the meantime are
+     * sent, in order, as a single delta.
+     *
+     * @param session The session with changes to replicate
+     */
+    private void addPendingDelta(DeltaSession session) {
+        boolean sendNow = false;
+        synchronized (pendingDeltaSessions) {
+            if (!pendingDeltaSessions.add(session)) {
+                return;
+            }
+            if (pendingDeltaSessions.size() >= replicationBatchSize) {
+                sendNow = true;
+            } else if (pendingDeltaFlush == null) {
+                ScheduledExecutorService executor = null;
+                if (cluster != null && cluster.getChannel() != null) {
+                    executor = cluster.getChannel().getUtilityExecutor();
+                }
+                if (executor == null) {
+                    sendNow = true;
+                } else {
+                    pendingDeltaFlush = executor.schedule(this::sendPendingDeltas,
+                            replicationBatchWindow, TimeUnit.MILLISECONDS);
+                }
+            }
+        }
+        if (sendNow) {
+            sendPendingDeltas();
+        }
+    }
+
+    /**
+     * Send the changes of all the sessions waiting to be replicated in a single
+     * message.
+     */
+    protected void sendPendingDeltas() {
+        // Batches must be created and sent in order else an older delta for a
+        // session could be applied after a newer one
+        synchronized (deltaBatchSendLock) {
+            List<DeltaSession> sessions;
+            synchronized (pendingDeltaSessions) {
+                if (pendingDeltaFlush != null) {
+                    pendingDeltaFlush.cancel(false);
+                    pendingDeltaFlush = null;
+                }
+                if (pendingDeltaSessions.isEmpty()) {
+                    return;
+                }
+                sessions = new ArrayList<>(pendingDeltaSessions);
+                pendingDeltaSessions.clear();
+            }
+
+            List<String> ids = new ArrayList<>(sessions.size());
+            List<byte[]> deltas = new ArrayList<>(sessions.size());
+            int size = 4;
+            for (DeltaSession session : sessions) {
+                // The session may have been expired, with the changes sent as
+                // part of the expiration, since it was added
+                if (!session.isDirty()) {
+                    continue;
+                }
+                String id = session.getIdInternal();
+                try {
+                    byte[] delta = session.getDiff();
+                    ids.add(id);
+                    deltas.add(delta);
+                    size += id.length() + delta.length + 6;
+                } catch (IOException x) {
+                    log.error(sm.getString("deltaManager.createMessage.unableCreateDeltaRequest",
+                            id), x);
+                }
+            }
+            int count = deltas.size();
+            if (count == 0) {
+                return;
+            }
+
+            ByteArrayOutputStream bos = new ByteArrayOutputStream(size);
+            try (DataOutputStream out = new DataOutputStream(bos)) {
+                out.writeInt(count);
+                for (int i = 0; i < count; i++) {
+                    out.writeUTF(ids.get(i));
+                    byte[] delta = deltas.get(i);
+                    out.writeInt(delta.length);
+                    out.write(delta);
+                }
+            } catch (IOException x) {
+                // Can't happen when writing to a ByteArrayOutputStream
+                log.error(sm.getString("deltaManager.createMessage.unableCreateDeltaRequest",
+                        ids), x);
+                return;
+            }
+
+            counterSend_EVT_SESSION_DELTA += count;
+            counterSend_EVT_SESSION_DELTA_BATCH++;
+            counterBatchedDeltas += count;
+            if (count > maxDeltaBatchSize) {
+                maxDeltaBatchSize = count;
+            }
+            if (log.isDebugEnabled()) {
+                log.debug(sm.getString("deltaManager.createMessage.deltaBatch",
+                        getName(), Integer.valueOf(count)));
+            }
+
+            long now = System.currentTimeMillis();
+            SessionMessage msg = new SessionMessageImpl(getName(),
+                    SessionMessage.EVT_SESSION_DELTA_BATCH, bos.toByteArray(),
+                    "DELTA-BATCH", "DELTA-BATCH-" + now);
+            msg.setTimestamp(now);
+            for (DeltaSession session : sessions) {
+                session.setLastTimeReplicated(now);
+            }
+            send(msg);
+        }
+    }
+
     /**
      * Reset manager statistics
      */
@@ -1008,6 +1236,10 @@ public class DeltaManager extends ClusterManagerBase{
         counterSend_EVT_SESSION_EXPIRED = 0 ;
         counterSend_EVT_ALL_SESSION_TRANSFERCOMPLETE = 0;
         counterSend_EVT_CHANGE_SESSION_ID = 0;
+        counterSend_EVT_SESSION_DELTA_BATCH = 0;
+        counterReceive_EVT_SESSION_DELTA_BATCH = 0;
+        counterBatchedDeltas = 0;
+        maxDeltaBatchSize = 0;
 
     }
 
@@ -1119,6 +1351,9 @@ public class DeltaManager extends ClusterManagerBase{
                 case SessionMessage.EVT_SESSION_DELTA:
                    handleSESSION_DELTA(msg,sender);
                    break;
+                case SessionMessage.EVT_SESSION_DELTA_BATCH:
+                    handleSESSION_DELTA_BATCH(msg,sender);
+                    break;
                 case SessionMessage.EVT_CHANGE_SESSION_ID:
                     handleCHANGE_SESSION_ID(msg,sender);
                     break;
@@ -1181,6 +1416,44 @@ public class DeltaManager extends ClusterManagerBase{
         }
     }
 
+    /**
+     * handle receive the deltas of several sessions
+     * @param msg Session message
+     * @param sender Member which sent the message
+     * @throws IOException IO error reading the batch
+     */
+    protected void handleSESSION_DELTA_BATCH(SessionMessage msg, Member sender)
+            throws IOException {
+        counterReceive_EVT_SESSION_DELTA_BATCH++;
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(msg.getSession()));
+        int count = in.readInt();
+        for (int i = 0; i < count; i++) {
+            String sessionId = in.readUTF();
+            byte[] delta = new byte[in.readInt()];
+            in.readFully(delta);
+            counterReceive_EVT_SESSION_DELTA++;
+            DeltaSession session = (DeltaSession) findSession(sessionId);
+            if (session == null) {
+                if (log.isDebugEnabled()) {
+                    log.debug(sm.getString("deltaManager.receiveMessage.delta.unknown",
+                            getName(), sessionId));
+                }
+                continue;
+            }
+            if (log.isDebugEnabled()) {
+                log.debug(sm.getString("deltaManager.receiveMessage.delta",
+                        getName(), sessionId));
+            }
+            try {
+                session.deserializeAndExecuteDeltaRequest(delta);
+            } catch (ClassNotFoundException | IOException x) {
+                // Don't let one session prevent the others being updated
+                log.error(sm.getString("deltaManager.receiveMessage.deltaBatch.error",
+                        getName(), sessionId), x);
+            }
+        }
+    }
+
     /**
      * handle receive session is access at other node ( primary session is now false)
      * @param msg Session message
@@ -1383,6 +1656,8 @@ public class DeltaManager extends ClusterManagerBase{
         result.sendAllSessionsSize = sendAllSessionsSize;
         result.sendAllSessionsWaitTime = sendAllSessionsWaitTime ;
         result.stateTimestampDrop = stateTimestampDrop ;
+        result.replicationBatchWindow = replicationBatchWindow;
+        result.replicationBatchSize = replicationBatchSize;
         return result;
     }
 }
@@ -27,12 +27,16 @@ package org.apache.catalina.ha.session;
 import java.io.ByteArrayOutputStream;
 import java.io.Externalizable;
 import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
 import java.io.ObjectOutputStream;
 import java.security.Principal;
 import java.util.LinkedList;
 
 import org.apache.catalina.SessionListener;
 import org.apache.catalina.realm.GenericPrincipal;
+import org.apache.catalina.session.JavaSessionSerializer;
+import org.apache.catalina.session.SessionSerializer;
 import org.apache.juli.logging.Log;
 import org.apache.juli.logging.LogFactory;
 import org.apache.tomcat.util.res.StringManager;
@@ -69,6 +73,12 @@ public class DeltaRequest implements Externalizable {
 
     private boolean recordAllActions = false;
 
+    /*
+     * Used when the delta request is read or written without a serializer
+     * being specified.
+     */
+    private static final SessionSerializer javaSerializer = new JavaSessionSerializer();
+
     public DeltaRequest() {
 
     }
@@ -247,11 +257,28 @@ public class DeltaRequest implements Externalizable {
 
     @Override
     public void readExternal(java.io.ObjectInput in) throws IOException,ClassNotFoundException {
+        readExternal(in, javaSerializer);
+    }
+
+
+    /**
+     * Read a delta request that was written with
+     * {@link #writeExternal(ObjectOutput, SessionSerializer)}.
+     *
+     * @param in The stream to read from
+     * @param serializer The serializer to use to read attribute values
+     *
+     * @throws IOException IO error deserializing
+     * @throws ClassNotFoundException Unknown attribute value class
+     */
+    public void readExternal(ObjectInput in, SessionSerializer serializer)
+            throws IOException,ClassNotFoundException {
         //sessionId - String
         //recordAll - boolean
         //size - int
         //AttributeInfo - in an array
         reset();
+        SessionSerializer.Input input = serializer.getInput(in);
         sessionId = in.readUTF();
         recordAllActions = in.readBoolean();
         int cnt = in.readInt();
@@ -271,7 +298,7 @@ public class DeltaRequest implements Externalizable {
             } else {
                 info = new AttributeInfo();
             }
-            info.readExternal(in);
+            info.readExternal(in, input);
             actions.addLast(info);
         }//for
     }
@@ -279,16 +306,31 @@ public class DeltaRequest implements Externalizable {
 
     @Override
     public void writeExternal(java.io.ObjectOutput out ) throws java.io.IOException {
+        writeExternal(out, javaSerializer);
+    }
+
+
+    /**
+     * Write this delta request using the given serializer for the attribute
+     * values.
+     *
+     * @param out The stream to write to
+     * @param serializer The serializer to use to write attribute values
+     *
+     * @throws IOException IO error serializing
+     */
+    public void writeExternal(ObjectOutput out, SessionSerializer serializer) throws IOException {
         //sessionId - String
         //recordAll - boolean
         //size - int
         //AttributeInfo - in an array
+        SessionSerializer.Output output = serializer.getOutput(out);
         out.writeUTF(getSessionId());
         out.writeBoolean(recordAllActions);
         out.writeInt(getSize());
         for ( int i=0; i<getSize(); i++ ) {
             AttributeInfo info = actions.get(i);
-            info.writeExternal(out);
+            info.writeExternal(out, output);
         }
     }
 
@@ -300,9 +342,22 @@ public class DeltaRequest implements Externalizable {
      * @throws IOException IO error serializing
      */
     protected byte[] serialize() throws IOException {
+        return serialize(javaSerializer);
+    }
+
+    /**
+     * serialize DeltaRequest
+     * @see DeltaRequest#writeExternal(ObjectOutput, SessionSerializer)
+     *
+     * @param serializer The serializer to use to write attribute values
+     *
+     * @return serialized delta request
+     * @throws IOException IO error serializing
+     */
+    protected byte[] serialize(SessionSerializer serializer) throws IOException {
         ByteArrayOutputStream bos = new ByteArrayOutputStream();
         ObjectOutputStream oos = new ObjectOutputStream(bos);
-        writeExternal(oos);
+        writeExternal(oos, serializer);
         oos.flush();
         oos.close();
         return bos.toByteArray();
@@ -372,6 +427,11 @@ public class DeltaRequest implements Externalizable {
 
         @Override
         public void readExternal(java.io.ObjectInput in ) throws IOException,ClassNotFoundException {
+            readExternal(in, javaSerializer.getInput(in));
+        }
+
+        public void readExternal(ObjectInput in, SessionSerializer.Input input)
+                throws IOException,ClassNotFoundException {
             //type - int
             //action - int
             //name - String
@@ -381,11 +441,15 @@ public class DeltaRequest implements Externalizable {
             action = in.readInt();
             name = in.readUTF();
             boolean hasValue = in.readBoolean();
-            if ( hasValue ) value = in.readObject();
+            if ( hasValue ) value = input.readObject();
         }
 
         @Override
         public void writeExternal(java.io.ObjectOutput out) throws IOException {
+            writeExternal(out, javaSerializer.getOutput(out));
+        }
+
+        public void writeExternal(ObjectOutput out, SessionSerializer.Output output) throws IOException {
             //type - int
             //action - int
             //name - String
@@ -395,7 +459,7 @@ public class DeltaRequest implements Externalizable {
             out.writeInt(getAction());
             out.writeUTF(getName());
             out.writeBoolean(getValue()!=null);
-            if (getValue()!=null) out.writeObject(getValue());
+            if (getValue()!=null) output.writeObject(getValue());
         }
 
         @Override
@@ -40,7 +40,9 @@ import org.apache.catalina.ha.CatalinaCluster;
 import org.apache.catalina.ha.ClusterManager;
 import org.apache.catalina.ha.ClusterMessage;
 import org.apache.catalina.ha.ClusterSession;
+import org.apache.catalina.session.JavaSessionSerializer;
 import org.apache.catalina.session.ManagerBase;
+import org.apache.catalina.session.SessionSerializer;
 import org.apache.catalina.session.StandardSession;
 import org.apache.catalina.tribes.io.ReplicationStream;
 import org.apache.catalina.tribes.tipis.ReplicatedMapEntry;
@@ -63,6 +65,13 @@ public class DeltaSession extends StandardSession implements Externalizable,Clus
      */
     protected static final StringManager sm = StringManager.getManager(DeltaSession.class);
 
+    /**
+     * Sessions replicated via {@link Externalizable} (e.g. by the
+     * BackupManager) always use Java serialization as the receiving session
+     * does not have a Manager, and hence a serializer, when it is read.
+     */
+    private static final SessionSerializer externalizableSerializer = new JavaSessionSerializer();
+
     // ----------------------------------------------------- Instance Variables
 
     /**
@@ -166,7 +175,7 @@ public class DeltaSession extends StandardSession implements Externalizable,Clus
 
         DeltaRequest oldDeltaRequest = replaceDeltaRequest(newDeltaRequest);
 
-        byte[] result = oldDeltaRequest.serialize();
+        byte[] result = oldDeltaRequest.serialize(getSessionSerializer());
 
         if (deltaRequestPool != null) {
             // Only need to reset the old request if it is going to be pooled.
@@ -204,7 +213,7 @@ public class DeltaSession extends StandardSession implements Externalizable,Clus
                 ClassLoader[] loaders = getClassLoaders();
                 if (loaders != null && loaders.length > 0)
                     Thread.currentThread().setContextClassLoader(loaders[0]);
-                getDeltaRequest().readExternal(stream);
+                getDeltaRequest().readExternal(stream, getSessionSerializer());
                 getDeltaRequest().execute(this, ((ClusterManager)getManager()).isNotifyListenersOnReplication());
             } finally {
                 Thread.currentThread().setContextClassLoader(contextLoader);
@@ -353,7 +362,7 @@ public class DeltaSession extends StandardSession implements Externalizable,Clus
 
 
     public void setMaxInactiveInterval(int interval, boolean addDeltaRequest) {
-        super.maxInactiveInterval = interval;
+        super.setMaxInactiveInterval(interval);
         if (addDeltaRequest) {
             lockInternal();
             try {
@@ -607,7 +616,7 @@ public class DeltaSession extends StandardSession implements Externalizable,Clus
     public void readExternal(ObjectInput in) throws IOException,ClassNotFoundException {
         lockInternal();
         try {
-            readObjectData(in);
+            doReadObject(in, externalizableSerializer);
         } finally {
             unlockInternal();
         }
@@ -629,10 +638,10 @@ public class DeltaSession extends StandardSession implements Externalizable,Clus
      */
     @Override
     public void readObjectData(ObjectInputStream stream) throws ClassNotFoundException, IOException {
-        doReadObject((ObjectInput)stream);
+        doReadObject(stream, getSessionSerializer());
     }
     public void readObjectData(ObjectInput stream) throws ClassNotFoundException, IOException {
-        doReadObject(stream);
+        doReadObject(stream, getSessionSerializer());
     }
 
     /**
@@ -651,7 +660,7 @@ public class DeltaSession extends StandardSession implements Externalizable,Clus
         writeObjectData((ObjectOutput)stream);
     }
     public void writeObjectData(ObjectOutput stream) throws IOException {
-        doWriteObject(stream);
+        doWriteObject(stream, getSessionSerializer());
     }
 
     public void resetDeltaRequest() {
@@ -700,7 +709,7 @@ public class DeltaSession extends StandardSession implements Externalizable,Clus
             }
 
             ReplicationStream ois = ((ClusterManagerBase) manager).getReplicationStream(delta);
-            newDeltaRequest.readExternal(ois);
+            newDeltaRequest.readExternal(ois, getSessionSerializer());
             ois.close();
 
             DeltaRequest oldDeltaRequest = null;
@@ -817,40 +826,43 @@ public class DeltaSession extends StandardSession implements Externalizable,Clus
      */
     @Override
     protected void doReadObject(ObjectInputStream stream) throws ClassNotFoundException, IOException {
-        doReadObject((ObjectInput)stream);
+        doReadObject(stream, getSessionSerializer());
     }
 
-    private void doReadObject(ObjectInput stream) throws ClassNotFoundException, IOException {
+    private void doReadObject(ObjectInput stream, SessionSerializer serializer)
+            throws ClassNotFoundException, IOException {
+
+        SessionSerializer.Input input = serializer.getInput(stream);
 
         // Deserialize the scalar instance variables (except Manager)
         authType = null; // Transient only
-        creationTime = ( (Long) stream.readObject()).longValue();
-        lastAccessedTime = ( (Long) stream.readObject()).longValue();
-        maxInactiveInterval = ( (Integer) stream.readObject()).intValue();
-        isNew = ( (Boolean) stream.readObject()).booleanValue();
-        isValid = ( (Boolean) stream.readObject()).booleanValue();
-        thisAccessedTime = ( (Long) stream.readObject()).longValue();
-        version = ( (Long) stream.readObject()).longValue();
+        creationTime = input.readLong();
+        lastAccessedTime = input.readLong();
+        maxInactiveInterval = input.readInt();
+        isNew = input.readBoolean();
+        isValid = input.readBoolean();
+        thisAccessedTime = input.readLong();
+        version = input.readLong();
         boolean hasPrincipal = stream.readBoolean();
         principal = null;
         if (hasPrincipal) {
-            principal = (Principal) stream.readObject();
+            principal = (Principal) input.readObject();
         }
 
-        //        setId((String) stream.readObject());
-        id = (String) stream.readObject();
+        //        setId(input.readString());
+        id = input.readString();
         if (log.isDebugEnabled()) log.debug(sm.getString("deltaSession.readSession", id));
 
         // Deserialize the attribute count and attribute values
         if (attributes == null) attributes = new ConcurrentHashMap<>();
-        int n = ( (Integer) stream.readObject()).intValue();
+        int n = input.readInt();
         boolean isValidSave = isValid;
         isValid = true;
         for (int i = 0; i < n; i++) {
-            String name = (String) stream.readObject();
+            String name = input.readString();
             final Object value;
             try {
-                value = stream.readObject();
+                value = input.readObject();
             } catch (WriteAbortedException wae) {
                 if (wae.getCause() instanceof NotSerializableException) {
                     // Skip non serializable attributes
@@ -870,12 +882,12 @@ public class DeltaSession extends StandardSession implements Externalizable,Clus
         isValid = isValidSave;
 
         // Session listeners
-        n = ((Integer) stream.readObject()).intValue();
+        n = input.readInt();
         if (listeners == null || n > 0) {
             listeners = new ArrayList<>();
         }
         for (int i = 0; i < n; i++) {
-            SessionListener listener = (SessionListener) stream.readObject();
+            SessionListener listener = (SessionListener) input.readObject();
             listeners.add(listener);
         }
 
@@ -889,7 +901,7 @@ public class DeltaSession extends StandardSession implements Externalizable,Clus
     public void writeExternal(ObjectOutput out ) throws java.io.IOException {
         lockInternal();
         try {
-            doWriteObject(out);
+            doWriteObject(out, externalizableSerializer);
         } finally {
             unlockInternal();
         }
@@ -919,24 +931,26 @@ public class DeltaSession extends StandardSession implements Externalizable,Clus
      */
     @Override
     protected void doWriteObject(ObjectOutputStream stream) throws IOException {
-        doWriteObject((ObjectOutput)stream);
+        doWriteObject(stream, getSessionSerializer());
     }
 
-    private void doWriteObject(ObjectOutput stream) throws IOException {
+    private void doWriteObject(ObjectOutput stream, SessionSerializer serializer) throws IOException {
+        SessionSerializer.Output output = serializer.getOutput(stream);
+
         // Write the scalar instance variables (except Manager)
-        stream.writeObject(Long.valueOf(creationTime));
-        stream.writeObject(Long.valueOf(lastAccessedTime));
-        stream.writeObject(Integer.valueOf(maxInactiveInterval));
-        stream.writeObject(Boolean.valueOf(isNew));
-        stream.writeObject(Boolean.valueOf(isValid));
-        stream.writeObject(Long.valueOf(thisAccessedTime));
-        stream.writeObject(Long.valueOf(version));
+        output.writeLong(creationTime);
+        output.writeLong(lastAccessedTime);
+        output.writeInt(maxInactiveInterval);
+        output.writeBoolean(isNew);
+        output.writeBoolean(isValid);
+        output.writeLong(thisAccessedTime);
+        output.writeLong(version);
         stream.writeBoolean(getPrincipal() instanceof Serializable);
         if (getPrincipal() instanceof Serializable) {
-            stream.writeObject(getPrincipal());
+            output.writeObject(getPrincipal());
         }
 
-        stream.writeObject(id);
+        output.writeString(id);
         if (log.isDebugEnabled()) log.debug(sm.getString("deltaSession.writeSession", id));
 
         // Accumulate the names of serializable and non-serializable attributes
@@ -955,11 +969,11 @@ public class DeltaSession extends StandardSession implements Externalizable,Clus
 
         // Serialize the attribute count and the Serializable attributes
         int n = saveNames.size();
-        stream.writeObject(Integer.valueOf(n));
+        output.writeInt(n);
         for (int i = 0; i < n; i++) {
-            stream.writeObject( saveNames.get(i));
+            output.writeString(saveNames.get(i));
             try {
-                stream.writeObject(saveValues.get(i));
+                output.writeObject(saveValues.get(i));
             } catch (NotSerializableException e) {
                 log.error(sm.getString("standardSession.notSerializable", saveNames.get(i), id), e);
             }
@@ -972,9 +986,9 @@ public class DeltaSession extends StandardSession implements Externalizable,Clus
                 saveListeners.add(listener);
             }
         }
-        stream.writeObject(Integer.valueOf(saveListeners.size()));
+        output.writeInt(saveListeners.size());
         for (SessionListener listener : saveListeners) {
-            stream.writeObject(listener);
+            output.writeObject(listener);
         }
     }
 
@@ -88,6 +88,13 @@ public interface SessionMessage extends ClusterMessage {
      */
     public static final int EVT_ALL_SESSION_NOCONTEXTMANAGER = 16;
 
+    /**
+     * Event type used when the deltas of several sessions are sent in a
+     * single message. The session data contains the number of deltas followed
+     * by the session ID, length and serialized delta of each.
+     */
+    public static final int EVT_SESSION_DELTA_BATCH = 17;
+
     public String getContextName();
 
     public String getEventTypeString();
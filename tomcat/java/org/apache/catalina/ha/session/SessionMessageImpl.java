@@ -78,6 +78,8 @@ public class SessionMessageImpl extends ClusterMessageBase implements SessionMes
      * <B>EVT_ALL_SESSION_NOCONTEXTMANAGER</B><BR>
      *    send that context manager does not exist
      *    after GET_ALL_SESSION received from this sender.<BR>
+     * <B>EVT_SESSION_DELTA_BATCH</B><BR>
+     *    Send the attribute deltas of several sessions.<BR>
      * @param contextName - the name of the context (application
      * @param eventtype - one of the 8 event type defined in this class
      * @param session - the serialized byte array of the session itself
@@ -147,6 +149,7 @@ public class SessionMessageImpl extends ClusterMessageBase implements SessionMes
             case EVT_ALL_SESSION_TRANSFERCOMPLETE : return "SESSION-STATE-TRANSFERRED";
             case EVT_CHANGE_SESSION_ID : return "SESSION-ID-CHANGED";
             case EVT_ALL_SESSION_NOCONTEXTMANAGER : return "NO-CONTEXT-MANAGER";
+            case EVT_SESSION_DELTA_BATCH : return "SESSION-DELTA-BATCH";
             default : return "UNKNOWN-EVENT-TYPE";
         }
     }
@@ -55,6 +55,7 @@ import java.util.NoSuchElementException;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.jar.Attributes;
 import java.util.jar.Attributes.Name;
 import java.util.jar.Manifest;
@@ -136,6 +137,10 @@ public abstract class WebappClassLoaderBase extends URLClassLoader
 
     private static final String CLASS_FILE_SUFFIX = ".class";
 
+    private static final String CLASS_NOT_FOUND = "(not found)";
+
+    private static final String CODE_BASE_UNKNOWN = "(unknown)";
+
     static {
         if (!JreCompat.isGraalAvailable()) {
             ClassLoader.registerAsParallelCapable();
@@ -419,6 +424,23 @@ public abstract class WebappClassLoaderBase extends URLClassLoader
     private List<URL> localRepositories = new ArrayList<>();
 
 
+    /**
+     * The time spent finding and defining classes, keyed by the code base from
+     * which the classes were loaded.
+     */
+    private final Map<String,ClassLoadingStats> classLoadingStats = new ConcurrentHashMap<>();
+
+
+    /**
+     * The time spent in nested calls to {@link #findClass(String)} by the
+     * current thread, e.g. loading a super class while defining a class. This
+     * is excluded from the time of the outer call so that time is attributed
+     * to the code base that was responsible for it.
+     */
+    private final ThreadLocal<long[]> nestedClassLoadingTime =
+            ThreadLocal.withInitial(() -> new long[1]);
+
+
     private volatile LifecycleState state = LifecycleState.NEW;
 
 
@@ -852,6 +874,10 @@ public abstract class WebappClassLoaderBase extends URLClassLoader
         // Ask our superclass to locate this class, if possible
         // (throws ClassNotFoundException if it is not found)
         Class<?> clazz = null;
+        long[] nestedTime = nestedClassLoadingTime.get();
+        long outerNestedTime = nestedTime[0];
+        nestedTime[0] = 0;
+        long start = System.nanoTime();
         try {
             if (log.isTraceEnabled())
                 log.trace("      findClassInternal(" + name + ")");
@@ -894,6 +920,10 @@ public abstract class WebappClassLoaderBase extends URLClassLoader
             if (log.isTraceEnabled())
                 log.trace("    --> Passing on ClassNotFoundException");
             throw e;
+        } finally {
+            long time = System.nanoTime() - start;
+            recordClassLoadingTime(clazz, time - nestedTime[0]);
+            nestedTime[0] = outerNestedTime + time;
         }
 
         // Return the class we have located
@@ -1449,6 +1479,32 @@ public abstract class WebappClassLoaderBase extends URLClassLoader
     }
 
 
+    /**
+     * Obtain the time spent by this class loader finding and defining classes,
+     * grouped by the code base (usually a JAR) from which the classes were
+     * loaded. Lookups for classes that were not found are reported separately.
+     * The time spent loading other classes while defining a class, e.g. its
+     * super class, is excluded from the time reported for that class.
+     *
+     * @return One entry per code base in the form
+     *         <code>[code base]: [count] classes in [time] ms</code>, ordered by time
+     *         with the most expensive first
+     */
+    public String[] getClassLoadingTimes() {
+        List<Map.Entry<String,ClassLoadingStats>> entries =
+                new ArrayList<>(classLoadingStats.entrySet());
+        entries.sort((e1, e2) -> Long.compare(e2.getValue().time.sum(), e1.getValue().time.sum()));
+        String[] result = new String[entries.size()];
+        for (int i = 0; i < result.length; i++) {
+            Map.Entry<String,ClassLoadingStats> entry = entries.get(i);
+            result[i] = sm.getString("webappClassLoader.classLoadingTime", entry.getKey(),
+                    Long.valueOf(entry.getValue().count.sum()),
+                    Long.valueOf(entry.getValue().time.sum() / 1000000));
+        }
+        return result;
+    }
+
+
     // ------------------------------------------------------ Lifecycle Methods
 
 
@@ -2294,6 +2350,29 @@ public abstract class WebappClassLoaderBase extends URLClassLoader
     }
 
 
+    private void recordClassLoadingTime(Class<?> clazz, long time) {
+        String codeBase = CLASS_NOT_FOUND;
+        if (clazz != null) {
+            ProtectionDomain protectionDomain;
+            if (securityManager != null) {
+                protectionDomain = AccessController.doPrivileged(
+                        (PrivilegedAction<ProtectionDomain>) clazz::getProtectionDomain);
+            } else {
+                protectionDomain = clazz.getProtectionDomain();
+            }
+            CodeSource codeSource = protectionDomain.getCodeSource();
+            if (codeSource != null && codeSource.getLocation() != null) {
+                codeBase = codeSource.getLocation().toExternalForm();
+            } else {
+                codeBase = CODE_BASE_UNKNOWN;
+            }
+        }
+        ClassLoadingStats stats = classLoadingStats.computeIfAbsent(codeBase, k -> new ClassLoadingStats());
+        stats.count.increment();
+        stats.time.add(time);
+    }
+
+
     /**
      * Find specified class in local repositories.
      *
@@ -2700,6 +2779,12 @@ public abstract class WebappClassLoaderBase extends URLClassLoader
     }
 
 
+    private static class ClassLoadingStats {
+        private final LongAdder count = new LongAdder();
+        private final LongAdder time = new LongAdder();
+    }
+
+
     private static class CombinedEnumeration implements Enumeration<URL> {
 
         private final Enumeration<URL>[] sources;
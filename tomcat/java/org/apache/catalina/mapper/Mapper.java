@@ -77,6 +77,16 @@ public final class Mapper {
             new ConcurrentHashMap<>();
 
 
+    /**
+     * The minimum number of contexts in a host, or of exact or wildcard
+     * wrappers in a context, for which the mapping uses a {@link PathTrie}
+     * rather than binary searches of the sorted array. Binary searches are
+     * faster for short arrays and need no additional memory.
+     */
+    // Package private to facilitate testing
+    int trieThreshold = 16;
+
+
     // --------------------------------------------------------- Public Methods
 
     /**
@@ -778,10 +788,56 @@ public final class Mapper {
 
         // Context mapping
         ContextList contextList = mappedHost.contextList;
+        MappedContext context;
+        if (contextList.contexts.length >= trieThreshold) {
+            context = contextList.getTrie().findLongestPrefix(
+                    uri.getBuffer(), uri.getStart(), uri.getEnd());
+        } else {
+            context = findContext(contextList, uri);
+        }
+        if (context == null) {
+            return;
+        }
+
+        ContextVersion contextVersion = null;
+        ContextVersion[] contextVersions = context.versions;
+        final int versionCount = contextVersions.length;
+        if (versionCount > 1) {
+            Context[] contextObjects = new Context[contextVersions.length];
+            for (int i = 0; i < contextObjects.length; i++) {
+                contextObjects[i] = contextVersions[i].object;
+            }
+            mappingData.contexts = contextObjects;
+            if (version != null) {
+                contextVersion = exactFind(contextVersions, version);
+            }
+        }
+        if (contextVersion == null) {
+            // Return the latest version
+            // The versions array is known to contain at least one element
+            contextVersion = contextVersions[versionCount - 1];
+        }
+        mappingData.context = contextVersion.object;
+        mappingData.contextSlashCount = contextVersion.slashCount;
+
+        // Wrapper mapping
+        if (!contextVersion.isPaused()) {
+            internalMapWrapper(contextVersion, uri, mappingData);
+        }
+
+    }
+
+
+    /**
+     * Find the context with the longest path that matches the start of the
+     * URI using binary searches of the sorted contexts.
+     */
+    private static final MappedContext findContext(ContextList contextList,
+            CharChunk uri) {
         MappedContext[] contexts = contextList.contexts;
         int pos = find(contexts, uri);
         if (pos == -1) {
-            return;
+            return null;
         }
 
         int lastSlash = -1;
@@ -818,36 +874,7 @@ public final class Mapper {
                 context = null;
             }
         }
-        if (context == null) {
-            return;
-        }
-
-        ContextVersion contextVersion = null;
-        ContextVersion[] contextVersions = context.versions;
-        final int versionCount = contextVersions.length;
-        if (versionCount > 1) {
-            Context[] contextObjects = new Context[contextVersions.length];
-            for (int i = 0; i < contextObjects.length; i++) {
-                contextObjects[i] = contextVersions[i].object;
-            }
-            mappingData.contexts = contextObjects;
-            if (version != null) {
-                contextVersion = exactFind(contextVersions, version);
-            }
-        }
-        if (contextVersion == null) {
-            // Return the latest version
-            // The versions array is known to contain at least one element
-            contextVersion = contextVersions[versionCount - 1];
-        }
-        mappingData.context = contextVersion.object;
-        mappingData.contextSlashCount = contextVersion.slashCount;
-
-        // Wrapper mapping
-        if (!contextVersion.isPaused()) {
-            internalMapWrapper(contextVersion, uri, mappingData);
-        }
-
+        return context;
     }
 
 
@@ -873,13 +900,13 @@ public final class Mapper {
 
         // Rule 1 -- Exact Match
         MappedWrapper[] exactWrappers = contextVersion.exactWrappers;
-        internalMapExactWrapper(exactWrappers, path, mappingData);
+        internalMapExactWrapper(contextVersion, exactWrappers, path, mappingData);
 
         // Rule 2 -- Prefix Match
         boolean checkJspWelcomeFiles = false;
         MappedWrapper[] wildcardWrappers = contextVersion.wildcardWrappers;
         if (mappingData.wrapper == null) {
-            internalMapWildcardWrapper(wildcardWrappers, contextVersion.nesting,
+            internalMapWildcardWrapper(contextVersion, wildcardWrappers,
                                        path, mappingData);
             if (mappingData.wrapper != null && mappingData.jspWildCard) {
                 char[] buf = path.getBuffer();
@@ -938,12 +965,12 @@ public final class Mapper {
                     path.setOffset(servletPath);
 
                     // Rule 4a -- Welcome resources processing for exact macth
-                    internalMapExactWrapper(exactWrappers, path, mappingData);
+                    internalMapExactWrapper(contextVersion, exactWrappers, path, mappingData);
 
                     // Rule 4b -- Welcome resources processing for prefix match
                     if (mappingData.wrapper == null) {
                         internalMapWildcardWrapper
-                            (wildcardWrappers, contextVersion.nesting,
+                            (contextVersion, wildcardWrappers,
                              path, mappingData);
                     }
 
@@ -1062,9 +1089,15 @@ public final class Mapper {
     /**
      * Exact mapping.
      */
-    private final void internalMapExactWrapper
-        (MappedWrapper[] wrappers, CharChunk path, MappingData mappingData) {
-        MappedWrapper wrapper = exactFind(wrappers, path);
+    private final void internalMapExactWrapper(ContextVersion contextVersion,
+            MappedWrapper[] wrappers, CharChunk path, MappingData mappingData) {
+        MappedWrapper wrapper;
+        if (wrappers.length >= trieThreshold) {
+            wrapper = contextVersion.getExactWrapperTrie(wrappers).findExact(
+                    path.getBuffer(), path.getStart(), path.getEnd());
+        } else {
+            wrapper = exactFind(wrappers, path);
+        }
         if (wrapper != null) {
             mappingData.requestPath.setString(wrapper.name);
             mappingData.wrapper = wrapper.object;
@@ -1084,9 +1117,40 @@ public final class Mapper {
     /**
      * Wildcard mapping.
      */
-    private final void internalMapWildcardWrapper
-        (MappedWrapper[] wrappers, int nesting, CharChunk path,
-         MappingData mappingData) {
+    private final void internalMapWildcardWrapper(ContextVersion contextVersion,
+            MappedWrapper[] wrappers, CharChunk path, MappingData mappingData) {
+
+        MappedWrapper wrapper;
+        if (wrappers.length >= trieThreshold) {
+            wrapper = contextVersion.getWildcardWrapperTrie(wrappers).findLongestPrefix(
+                    path.getBuffer(), path.getStart(), path.getEnd());
+        } else {
+            wrapper = findWildcardWrapper(wrappers, contextVersion.nesting, path);
+        }
+        if (wrapper != null) {
+            int length = wrapper.name.length();
+            mappingData.wrapperPath.setString(wrapper.name);
+            if (path.getLength() > length) {
+                mappingData.pathInfo.setChars
+                    (path.getBuffer(),
+                     path.getOffset() + length,
+                     path.getLength() - length);
+            }
+            mappingData.requestPath.setChars
+                (path.getBuffer(), path.getOffset(), path.getLength());
+            mappingData.wrapper = wrapper.object;
+            mappingData.jspWildCard = wrapper.jspWildCard;
+            mappingData.matchType = MappingMatch.PATH;
+        }
+    }
+
+
+    /**
+     * Find the wildcard wrapper with the longest path that matches the start
+     * of the path using binary searches of the sorted wrappers.
+     */
+    private static final MappedWrapper findWildcardWrapper(MappedWrapper[] wrappers,
+            int nesting, CharChunk path) {
 
         int pathEnd = path.getEnd();
 
@@ -1116,20 +1180,10 @@ public final class Mapper {
             }
             path.setEnd(pathEnd);
             if (found) {
-                mappingData.wrapperPath.setString(wrappers[pos].name);
-                if (path.getLength() > length) {
-                    mappingData.pathInfo.setChars
-                        (path.getBuffer(),
-                         path.getOffset() + length,
-                         path.getLength() - length);
-                }
-                mappingData.requestPath.setChars
-                    (path.getBuffer(), path.getOffset(), path.getLength());
-                mappingData.wrapper = wrappers[pos].object;
-                mappingData.jspWildCard = wrappers[pos].jspWildCard;
-                mappingData.matchType = MappingMatch.PATH;
+                return wrappers[pos];
             }
         }
+        return null;
     }
 
 
@@ -1654,6 +1708,7 @@ public final class Mapper {
 
         public final MappedContext[] contexts;
         public final int nesting;
+        private volatile PathTrie<MappedContext> trie;
 
         public ContextList() {
             this(new MappedContext[0], 0);
@@ -1674,6 +1729,20 @@ public final class Mapper {
             return null;
         }
 
+        /**
+         * @return The trie of the contexts, built on first use
+         */
+        PathTrie<MappedContext> getTrie() {
+            // ContextList is immutable so a trie built concurrently by another
+            // thread is equivalent
+            PathTrie<MappedContext> result = trie;
+            if (result == null) {
+                result = new PathTrie<>(contexts);
+                trie = result;
+            }
+            return result;
+        }
+
         public ContextList removeContext(String path) {
             MappedContext[] newContexts = new MappedContext[contexts.length - 1];
             if (removeMap(contexts, newContexts, path)) {
@@ -1711,6 +1780,8 @@ public final class Mapper {
         public MappedWrapper[] extensionWrappers = new MappedWrapper[0];
         public int nesting = 0;
         private volatile boolean paused;
+        private volatile PathTrie<MappedWrapper> exactWrapperTrie;
+        private volatile PathTrie<MappedWrapper> wildcardWrapperTrie;
 
         public ContextVersion(String version, String path, int slashCount,
                 Context context, WebResourceRoot resources,
@@ -1729,6 +1800,29 @@ public final class Mapper {
         public void markPaused() {
             paused = true;
         }
+
+        /*
+         * The wrapper arrays are replaced, rather than modified, when a
+         * wrapper is added or removed. The tries are rebuilt on the first use
+         * after the array they were built from has been replaced.
+         */
+        PathTrie<MappedWrapper> getExactWrapperTrie(MappedWrapper[] wrappers) {
+            PathTrie<MappedWrapper> result = exactWrapperTrie;
+            if (result == null || !result.isFor(wrappers)) {
+                result = new PathTrie<>(wrappers);
+                exactWrapperTrie = result;
+            }
+            return result;
+        }
+
+        PathTrie<MappedWrapper> getWildcardWrapperTrie(MappedWrapper[] wrappers) {
+            PathTrie<MappedWrapper> result = wildcardWrapperTrie;
+            if (result == null || !result.isFor(wrappers)) {
+                result = new PathTrie<>(wrappers);
+                wildcardWrapperTrie = result;
+            }
+            return result;
+        }
     }
 
     // ---------------------------------------------------- Wrapper Inner Class
@@ -0,0 +1,214 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.catalina.mapper;
+
+import java.util.Arrays;
+
+import org.apache.catalina.mapper.Mapper.MapElement;
+
+/**
+ * An immutable radix trie of the names of a sorted array of map elements. It
+ * allows the longest name that is a prefix of a path, ending at a segment
+ * boundary, to be found with a single pass over the characters of the path
+ * rather than the repeated binary searches of the sorted array used for small
+ * arrays.
+ * <p>
+ * The Mapper replaces its arrays of map elements rather than modifying them so
+ * a trie is associated with the array it was built from and is rebuilt when
+ * the array is replaced.
+ *
+ * @param <E> The type of map element
+ */
+final class PathTrie<E extends MapElement<?>> {
+
+    private final E[] source;
+    private final Node<E> root;
+
+
+    /**
+     * Build a trie.
+     *
+     * @param source The map elements, sorted by name as per
+     *               {@link String#compareTo(String)}
+     */
+    PathTrie(E[] source) {
+        this.source = source;
+        if (source.length == 0) {
+            root = null;
+        } else {
+            root = build(source, 0, source.length, 0);
+        }
+    }
+
+
+    /**
+     * @param elements The current map elements
+     *
+     * @return {@code true} if this trie was built from the given array
+     */
+    boolean isFor(E[] elements) {
+        return source == elements;
+    }
+
+
+    /**
+     * Find the element with the given name.
+     *
+     * @param path  The buffer containing the name to look for
+     * @param start The start of the name
+     * @param end   The end of the name
+     *
+     * @return The element or {@code null} if there is no element with the
+     *         given name
+     */
+    E findExact(char[] path, int start, int end) {
+        Node<E> node = root;
+        int pos = start;
+        while (node != null) {
+            char[] label = node.label;
+            int len = label.length;
+            if (end - pos < len) {
+                return null;
+            }
+            for (int i = 0; i < len; i++) {
+                if (path[pos + i] != label[i]) {
+                    return null;
+                }
+            }
+            pos += len;
+            if (pos == end) {
+                return node.element;
+            }
+            node = node.child(path[pos]);
+        }
+        return null;
+    }
+
+
+    /**
+     * Find the element with the longest name that is equal to the given path
+     * or is equal to the start of the given path where the next character of
+     * the path is '/'.
+     *
+     * @param path  The buffer containing the path
+     * @param start The start of the path
+     * @param end   The end of the path
+     *
+     * @return The element or {@code null} if no element matches
+     */
+    E findLongestPrefix(char[] path, int start, int end) {
+        E result = null;
+        Node<E> node = root;
+        int pos = start;
+        while (node != null) {
+            char[] label = node.label;
+            int len = label.length;
+            if (end - pos < len) {
+                return result;
+            }
+            for (int i = 0; i < len; i++) {
+                if (path[pos + i] != label[i]) {
+                    return result;
+                }
+            }
+            pos += len;
+            if (pos == end) {
+                if (node.element != null) {
+                    result = node.element;
+                }
+                return result;
+            }
+            char next = path[pos];
+            if (node.element != null && next == '/') {
+                result = node.element;
+            }
+            node = node.child(next);
+        }
+        return result;
+    }
+
+
+    /*
+     * Builds the node for elements[from] to elements[to - 1], all of which
+     * have the same first depth characters.
+     */
+    private static <E extends MapElement<?>> Node<E> build(E[] elements, int from, int to,
+            int depth) {
+        // The elements are sorted so the common prefix of the range is the
+        // common prefix of the first and last elements.
+        String first = elements[from].name;
+        String last = elements[to - 1].name;
+        int end = depth;
+        int max = Math.min(first.length(), last.length());
+        while (end < max && first.charAt(end) == last.charAt(end)) {
+            end++;
+        }
+        char[] label = first.substring(depth, end).toCharArray();
+
+        E element = null;
+        if (first.length() == end) {
+            // Sorts before any longer names with the same prefix
+            element = elements[from];
+            from++;
+        }
+
+        int childCount = 0;
+        for (int i = from; i < to; i++) {
+            if (i == from || elements[i].name.charAt(end) != elements[i - 1].name.charAt(end)) {
+                childCount++;
+            }
+        }
+        char[] keys = new char[childCount];
+        @SuppressWarnings("unchecked")
+        Node<E>[] children = new Node[childCount];
+        int child = 0;
+        int childStart = from;
+        for (int i = from + 1; i <= to; i++) {
+            if (i == to || elements[i].name.charAt(end) != elements[childStart].name.charAt(end)) {
+                keys[child] = elements[childStart].name.charAt(end);
+                children[child] = build(elements, childStart, i, end);
+                child++;
+                childStart = i;
+            }
+        }
+        return new Node<>(label, element, keys, children);
+    }
+
+
+    private static final class Node<E> {
+
+        private final char[] label;
+        private final E element;
+        private final char[] keys;
+        private final Node<E>[] children;
+
+        private Node(char[] label, E element, char[] keys, Node<E>[] children) {
+            this.label = label;
+            this.element = element;
+            this.keys = keys;
+            this.children = children;
+        }
+
+        private Node<E> child(char c) {
+            int i = Arrays.binarySearch(keys, c);
+            if (i < 0) {
+                return null;
+            }
+            return children[i];
+        }
+    }
+}
@@ -22,9 +22,11 @@ import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.OutputStream;
 import java.io.OutputStreamWriter;
 import java.io.PrintWriter;
 import java.io.RandomAccessFile;
@@ -43,6 +45,8 @@ import java.util.Comparator;
 import java.util.Enumeration;
 import java.util.List;
 import java.util.Locale;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
 
 import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
@@ -67,8 +71,10 @@ import jakarta.servlet.http.HttpServlet;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
 
+import org.apache.catalina.Container;
 import org.apache.catalina.Context;
 import org.apache.catalina.Globals;
+import org.apache.catalina.Service;
 import org.apache.catalina.WebResource;
 import org.apache.catalina.WebResourceRoot;
 import org.apache.catalina.connector.RequestFacade;
@@ -77,6 +83,8 @@ import org.apache.catalina.util.IOTools;
 import org.apache.catalina.util.ServerInfo;
 import org.apache.catalina.util.URLEncoder;
 import org.apache.catalina.webresources.CachedResource;
+import org.apache.coyote.CompressionConfig;
+import org.apache.coyote.CompressionEncoding;
 import org.apache.tomcat.util.buf.B2CConverter;
 import org.apache.tomcat.util.http.ResponseUtil;
 import org.apache.tomcat.util.http.parser.ContentRange;
@@ -279,6 +287,23 @@ public class DefaultServlet extends HttpServlet {
      */
     private boolean allowPartialPut = true;
 
+    /**
+     * The content-codings, in order of preference, used to compress resources
+     * on demand. Empty if on-demand compression is disabled.
+     */
+    private transient CompressionEncoding[] onDemandEncodings = new CompressionEncoding[0];
+
+    /**
+     * The MIME types of the resources that will be compressed on demand.
+     */
+    private String[] onDemandMimeTypes = null;
+
+    /**
+     * The minimum size, in bytes, of the resources that will be compressed on
+     * demand.
+     */
+    private int onDemandMinSize = 0;
+
 
     // --------------------------------------------------------- Public Methods
 
@@ -323,6 +348,24 @@ public class DefaultServlet extends HttpServlet {
             sendfileSize = Integer.parseInt(getServletConfig().getInitParameter("sendfileSize")) * 1024;
         }
 
+        String compressOnDemand = getServletConfig().getInitParameter("compressOnDemand");
+        if (compressOnDemand != null && compressOnDemand.trim().length() > 0) {
+            // Re-use the connector's parsing of the configuration and defaults
+            CompressionConfig compressionConfig = new CompressionConfig();
+            compressionConfig.setCompressionEncodings(compressOnDemand);
+            if (getServletConfig().getInitParameter("compressOnDemandMimeTypes") != null) {
+                compressionConfig.setCompressibleMimeType(
+                        getServletConfig().getInitParameter("compressOnDemandMimeTypes"));
+            }
+            if (getServletConfig().getInitParameter("compressOnDemandMinSize") != null) {
+                compressionConfig.setCompressionMinSize(Integer.parseInt(
+                        getServletConfig().getInitParameter("compressOnDemandMinSize")));
+            }
+            onDemandEncodings = compressionConfig.getCompressionEncodingInstances();
+            onDemandMimeTypes = compressionConfig.getCompressibleMimeTypes();
+            onDemandMinSize = compressionConfig.getCompressionMinSize();
+        }
+
         fileEncoding = getServletConfig().getInitParameter("fileEncoding");
         if (fileEncoding == null) {
             fileEncodingCharset = Charset.defaultCharset();
@@ -887,13 +930,21 @@ public class DefaultServlet extends HttpServlet {
         }
 
         boolean included = false;
+        // A version of the file compressed on demand has a different ETag to
+        // the original so it needs to be selected before the If headers are
+        // checked
+        PrecompressedResource onDemandResource = null;
         // Check if the conditions specified in the optional If headers are
         // satisfied.
         if (resource.isFile()) {
             // Checking If headers
             included = (request.getAttribute(
                     RequestDispatcher.INCLUDE_CONTEXT_PATH) != null);
-            if (!included && !isError && !checkIfHeaders(request, response, resource)) {
+            if (onDemandEncodings.length > 0 && !included && !isError) {
+                onDemandResource = getOnDemandCompressedResource(request, response, path, resource);
+            }
+            if (!included && !isError && !checkIfHeaders(request, response,
+                    onDemandResource == null ? resource : onDemandResource.resource)) {
                 return;
             }
         }
@@ -911,7 +962,11 @@ public class DefaultServlet extends HttpServlet {
         String eTag = null;
         String lastModifiedHttp = null;
         if (resource.isFile() && !isError) {
-            eTag = generateETag(resource);
+            if (onDemandResource == null) {
+                eTag = generateETag(resource);
+            } else {
+                eTag = generateETag(onDemandResource.resource);
+            }
             lastModifiedHttp = resource.getLastModifiedHttp();
         }
 
@@ -934,6 +989,13 @@ public class DefaultServlet extends HttpServlet {
             }
         }
 
+        // Serve a version of the file compressed on demand if available
+        if (onDemandResource != null) {
+            response.addHeader("Content-Encoding", onDemandResource.format.encoding);
+            resource = onDemandResource.resource;
+            usingPrecompressedVersion = true;
+        }
+
         Ranges ranges = FULL;
         long contentLength = -1L;
 
@@ -1130,7 +1192,7 @@ public class DefaultServlet extends HttpServlet {
                                 // implementations as that could trigger loading
                                 // the contents of a very large file into memory
                                 byte[] resourceBody = null;
-                                if (resource instanceof CachedResource) {
+                                if (resource instanceof CachedResource || onDemandResource != null) {
                                     resourceBody = resource.getContent();
                                 }
                                 if (resourceBody == null) {
@@ -1353,6 +1415,93 @@ public class DefaultServlet extends HttpServlet {
         return ret;
     }
 
+    /**
+     * Obtain the version of a resource compressed on demand that best matches
+     * the encodings supported by the client. If the client supports on-demand
+     * compression but no compressed version is available, compression of the
+     * resource is started in the background and the original resource will be
+     * served until the compressed version is available.
+     *
+     * @param request   The servlet request we are processing
+     * @param response  The servlet response we are creating
+     * @param path      The path of the requested resource
+     * @param resource  The requested resource
+     * @return The compressed resource or {@code null} if no suitable compressed
+     *         resource is currently available
+     * @throws IOException If the Accept-Encoding header cannot be parsed
+     */
+    private PrecompressedResource getOnDemandCompressedResource(HttpServletRequest request,
+            HttpServletResponse response, String path, WebResource resource) throws IOException {
+        // Only the cache is able to hold a compressed version of a resource
+        if (!(resource instanceof CachedResource) || resource.getContentLength() < onDemandMinSize) {
+            return null;
+        }
+        // Precompressed versions take precedence
+        if (compressionFormats.length > 0 && (pathEndsWithCompressedExtension(path) ||
+                !getAvailablePrecompressedResources(path).isEmpty())) {
+            return null;
+        }
+        String contentType = resource.getMimeType();
+        if (contentType == null) {
+            contentType = getServletContext().getMimeType(resource.getName());
+            resource.setMimeType(contentType);
+        }
+        if (!isOnDemandMimeType(contentType)) {
+            return null;
+        }
+
+        ResponseUtil.addVaryFieldName(response, "accept-encoding");
+
+        CompressionEncoding encoding =
+                CompressionConfig.selectEncoding(request.getHeaders("Accept-Encoding"), onDemandEncodings);
+        if (encoding == null) {
+            return null;
+        }
+
+        CachedResource cachedResource = (CachedResource) resource;
+        WebResource compressedResource = cachedResource.getCompressedResource(encoding.getName());
+        if (compressedResource == null) {
+            if (cachedResource.startCompression(encoding.getName())) {
+                Runnable task = new OnDemandCompressionTask(cachedResource, encoding);
+                Executor executor = getOnDemandCompressionExecutor();
+                if (executor == null) {
+                    task.run();
+                    compressedResource = cachedResource.getCompressedResource(encoding.getName());
+                } else {
+                    try {
+                        executor.execute(task);
+                    } catch (RejectedExecutionException e) {
+                        // The executor is shutting down. Serve the original.
+                    }
+                }
+            }
+            if (compressedResource == null) {
+                return null;
+            }
+        }
+        return new PrecompressedResource(compressedResource, new CompressionFormat(null, encoding.getName()));
+    }
+
+    private boolean isOnDemandMimeType(String contentType) {
+        if (contentType == null) {
+            return false;
+        }
+        for (String mimeType : onDemandMimeTypes) {
+            if (contentType.startsWith(mimeType)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private Executor getOnDemandCompressionExecutor() {
+        Service service = Container.getService(resources.getContext());
+        if (service == null || service.getServer() == null) {
+            return null;
+        }
+        return service.getServer().getUtilityExecutor();
+    }
+
     /**
      * Match the client preferred encoding formats to the available precompressed resources.
      *
@@ -2619,6 +2768,61 @@ public class DefaultServlet extends HttpServlet {
         }
     }
 
+    /**
+     * Compresses a cached resource and adds the result to the cache. Large
+     * results are also written to the context's temporary directory so they
+     * can be served using sendfile.
+     */
+    private class OnDemandCompressionTask implements Runnable {
+
+        private final CachedResource resource;
+        private final CompressionEncoding encoding;
+
+        OnDemandCompressionTask(CachedResource resource, CompressionEncoding encoding) {
+            this.resource = resource;
+            this.encoding = encoding;
+        }
+
+        @Override
+        public void run() {
+            // Content larger than the cache's object size limit is not cached
+            byte[] content = resource.getContent();
+            if (content == null) {
+                return;
+            }
+            File file = null;
+            try {
+                ByteArrayOutputStream baos = new ByteArrayOutputStream(content.length / 2);
+                try (OutputStream os = encoding.createOutputStream(baos)) {
+                    os.write(content);
+                }
+                byte[] compressed = baos.toByteArray();
+                if (compressed.length >= content.length) {
+                    // No benefit. The attempt is recorded so it won't be
+                    // repeated for this version of the resource.
+                    return;
+                }
+                if (sendfileSize > 0 && compressed.length > sendfileSize) {
+                    File tempDir = (File) getServletContext().getAttribute(ServletContext.TEMPDIR);
+                    if (tempDir != null) {
+                        file = File.createTempFile("compressed", "." + encoding.getName(), tempDir);
+                        try (FileOutputStream fos = new FileOutputStream(file)) {
+                            fos.write(compressed);
+                        }
+                    }
+                }
+                resource.addCompressedResource(encoding.getName(), compressed, file);
+            } catch (IOException ioe) {
+                log(sm.getString("defaultServlet.compressOnDemandFail",
+                        resource.getWebappPath(), encoding.getName()), ioe);
+                if (file != null && !file.delete()) {
+                    file.deleteOnExit();
+                }
+            }
+        }
+    }
+
+
     private static class PrecompressedResource {
         public final WebResource resource;
         public final CompressionFormat format;
@@ -0,0 +1,581 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.catalina.session;
+
+import java.io.IOException;
+import java.io.InvalidClassException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+import java.io.Serializable;
+import java.io.StreamCorruptedException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.catalina.util.CustomObjectInputStream;
+import org.apache.tomcat.util.res.StringManager;
+
+/**
+ * A {@link SessionSerializer} that uses a compact binary format.
+ * <ul>
+ * <li>Integers are written as variable length values so small values and
+ *     timestamps take fewer bytes than their fixed size.</li>
+ * <li>Each String that is not too long is only written once per session (or
+ *     delta request). Later occurrences are written as a reference to the
+ *     first.</li>
+ * <li>Strings, boxed primitives, {@link Date}s, byte and String arrays,
+ *     {@link ArrayList}s, {@link HashMap}s, {@link HashSet}s and
+ *     {@link LinkedHashSet}s are written directly. Only instances of these
+ *     exact classes are written this way.</li>
+ * <li>Any other object is written with Java serialization.</li>
+ * </ul>
+ * References between objects that are written directly are preserved, as are
+ * references between objects written with Java serialization. A reference
+ * from an object written with Java serialization to an object written
+ * directly, or the reverse, results in two copies of the object when the
+ * session is read.
+ * <p>
+ * When the session is read from a {@link CustomObjectInputStream}, objects
+ * that are written directly are subject to the same class name filter as
+ * objects written with Java serialization.
+ */
+public class CompactSessionSerializer implements SessionSerializer {
+
+    private static final StringManager sm = StringManager.getManager(CompactSessionSerializer.class);
+
+    private static final int FORMAT_VERSION = 1;
+
+    /*
+     * Strings longer than this are unlikely to be repeated so are not added to
+     * the string table.
+     */
+    private static final int MAX_TABLE_STRING_LENGTH = 128;
+
+    /*
+     * Limits the initial size of collections so a corrupted size can't trigger
+     * an excessive allocation.
+     */
+    private static final int MAX_INITIAL_CAPACITY = 1024;
+
+    /*
+     * Limits the initial size of byte arrays and buffers for the same reason.
+     * Larger arrays are grown as the data is read.
+     */
+    private static final int MAX_INITIAL_BYTES = 8192;
+
+    private static final int TAG_NULL = 0;
+    private static final int TAG_STRING = 1;
+    private static final int TAG_TRUE = 2;
+    private static final int TAG_FALSE = 3;
+    private static final int TAG_INTEGER = 4;
+    private static final int TAG_LONG = 5;
+    private static final int TAG_SHORT = 6;
+    private static final int TAG_BYTE = 7;
+    private static final int TAG_CHARACTER = 8;
+    private static final int TAG_FLOAT = 9;
+    private static final int TAG_DOUBLE = 10;
+    private static final int TAG_DATE = 11;
+    private static final int TAG_BYTE_ARRAY = 12;
+    private static final int TAG_STRING_ARRAY = 13;
+    private static final int TAG_ARRAY_LIST = 14;
+    private static final int TAG_HASH_MAP = 15;
+    private static final int TAG_HASH_SET = 16;
+    private static final int TAG_LINKED_HASH_SET = 17;
+    private static final int TAG_REFERENCE = 18;
+    private static final int TAG_SERIALIZED = 19;
+
+    /*
+     * The class of the object created for each tag that is subject to the
+     * class name filter.
+     */
+    private static final Class<?>[] TAG_CLASSES = new Class<?>[TAG_SERIALIZED + 1];
+
+    static {
+        TAG_CLASSES[TAG_TRUE] = Boolean.class;
+        TAG_CLASSES[TAG_FALSE] = Boolean.class;
+        TAG_CLASSES[TAG_INTEGER] = Integer.class;
+        TAG_CLASSES[TAG_LONG] = Long.class;
+        TAG_CLASSES[TAG_SHORT] = Short.class;
+        TAG_CLASSES[TAG_BYTE] = Byte.class;
+        TAG_CLASSES[TAG_CHARACTER] = Character.class;
+        TAG_CLASSES[TAG_FLOAT] = Float.class;
+        TAG_CLASSES[TAG_DOUBLE] = Double.class;
+        TAG_CLASSES[TAG_DATE] = Date.class;
+        TAG_CLASSES[TAG_BYTE_ARRAY] = byte[].class;
+        TAG_CLASSES[TAG_STRING_ARRAY] = String[].class;
+        TAG_CLASSES[TAG_ARRAY_LIST] = ArrayList.class;
+        TAG_CLASSES[TAG_HASH_MAP] = HashMap.class;
+        TAG_CLASSES[TAG_HASH_SET] = HashSet.class;
+        TAG_CLASSES[TAG_LINKED_HASH_SET] = LinkedHashSet.class;
+    }
+
+    // String encoding
+    private static final int STRING_NULL = 0;
+    private static final int STRING_NEW = 1;
+    private static final int STRING_REFERENCE_OFFSET = 2;
+
+
+    @Override
+    public Output getOutput(ObjectOutput out) throws IOException {
+        out.writeByte(FORMAT_VERSION);
+        return new CompactOutput(out);
+    }
+
+
+    @Override
+    public Input getInput(ObjectInput in) throws IOException {
+        int version = in.readUnsignedByte();
+        if (version != FORMAT_VERSION) {
+            throw new StreamCorruptedException(
+                    sm.getString("compactSessionSerializer.unknownFormat", Integer.toString(version)));
+        }
+        return new CompactInput(in);
+    }
+
+
+    private static class CompactOutput implements Output {
+
+        private final ObjectOutput out;
+        private final Map<String,Integer> strings = new HashMap<>();
+        private final Map<Object,Integer> references = new IdentityHashMap<>();
+        private byte[] buffer = new byte[128];
+
+        CompactOutput(ObjectOutput out) {
+            this.out = out;
+        }
+
+        @Override
+        public void writeBoolean(boolean value) throws IOException {
+            out.writeBoolean(value);
+        }
+
+        @Override
+        public void writeInt(int value) throws IOException {
+            writeVarLong(((value << 1) ^ (value >> 31)) & 0xFFFFFFFFL);
+        }
+
+        @Override
+        public void writeLong(long value) throws IOException {
+            writeVarLong((value << 1) ^ (value >> 63));
+        }
+
+        @Override
+        public void writeString(String value) throws IOException {
+            if (value == null) {
+                writeVarLong(STRING_NULL);
+                return;
+            }
+            Integer index = strings.get(value);
+            if (index != null) {
+                writeVarLong(index.intValue() + STRING_REFERENCE_OFFSET);
+                return;
+            }
+            writeVarLong(STRING_NEW);
+            writeChars(value);
+            if (value.length() <= MAX_TABLE_STRING_LENGTH) {
+                strings.put(value, Integer.valueOf(strings.size()));
+            }
+        }
+
+        @Override
+        public void writeObject(Object value) throws IOException {
+            if (value == null) {
+                out.writeByte(TAG_NULL);
+                return;
+            }
+            Class<?> clazz = value.getClass();
+            if (clazz == String.class) {
+                out.writeByte(TAG_STRING);
+                writeString((String) value);
+            } else if (clazz == Integer.class) {
+                out.writeByte(TAG_INTEGER);
+                writeInt(((Integer) value).intValue());
+            } else if (clazz == Long.class) {
+                out.writeByte(TAG_LONG);
+                writeLong(((Long) value).longValue());
+            } else if (clazz == Boolean.class) {
+                out.writeByte(((Boolean) value).booleanValue() ? TAG_TRUE : TAG_FALSE);
+            } else if (clazz == Short.class) {
+                out.writeByte(TAG_SHORT);
+                writeInt(((Short) value).shortValue());
+            } else if (clazz == Byte.class) {
+                out.writeByte(TAG_BYTE);
+                out.writeByte(((Byte) value).byteValue());
+            } else if (clazz == Character.class) {
+                out.writeByte(TAG_CHARACTER);
+                writeVarLong(((Character) value).charValue());
+            } else if (clazz == Float.class) {
+                out.writeByte(TAG_FLOAT);
+                out.writeFloat(((Float) value).floatValue());
+            } else if (clazz == Double.class) {
+                out.writeByte(TAG_DOUBLE);
+                out.writeDouble(((Double) value).doubleValue());
+            } else if (!isWrittenDirectly(clazz)) {
+                out.writeByte(TAG_SERIALIZED);
+                out.writeObject(value);
+            } else {
+                // The remaining types are mutable so references to them are
+                // preserved
+                Integer handle = references.get(value);
+                if (handle != null) {
+                    out.writeByte(TAG_REFERENCE);
+                    writeVarLong(handle.intValue());
+                    return;
+                }
+                references.put(value, Integer.valueOf(references.size()));
+                if (clazz == Date.class) {
+                    out.writeByte(TAG_DATE);
+                    writeLong(((Date) value).getTime());
+                } else if (clazz == byte[].class) {
+                    byte[] bytes = (byte[]) value;
+                    out.writeByte(TAG_BYTE_ARRAY);
+                    writeVarLong(bytes.length);
+                    out.write(bytes);
+                } else if (clazz == String[].class) {
+                    String[] strings = (String[]) value;
+                    out.writeByte(TAG_STRING_ARRAY);
+                    writeVarLong(strings.length);
+                    for (String string : strings) {
+                        writeString(string);
+                    }
+                } else if (clazz == HashMap.class) {
+                    Map<?,?> map = (Map<?,?>) value;
+                    out.writeByte(TAG_HASH_MAP);
+                    writeVarLong(map.size());
+                    for (Map.Entry<?,?> entry : map.entrySet()) {
+                        writeObject(entry.getKey());
+                        writeObject(entry.getValue());
+                    }
+                } else {
+                    Collection<?> collection = (Collection<?>) value;
+                    if (clazz == ArrayList.class) {
+                        out.writeByte(TAG_ARRAY_LIST);
+                    } else if (clazz == HashSet.class) {
+                        out.writeByte(TAG_HASH_SET);
+                    } else {
+                        out.writeByte(TAG_LINKED_HASH_SET);
+                    }
+                    writeVarLong(collection.size());
+                    for (Object element : collection) {
+                        writeObject(element);
+                    }
+                }
+            }
+        }
+
+        private static boolean isWrittenDirectly(Class<?> clazz) {
+            return clazz == Date.class || clazz == byte[].class || clazz == String[].class ||
+                    clazz == ArrayList.class || clazz == HashMap.class || clazz == HashSet.class ||
+                    clazz == LinkedHashSet.class;
+        }
+
+        private void writeVarLong(long value) throws IOException {
+            int pos = 0;
+            while ((value & ~0x7FL) != 0) {
+                buffer[pos++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            buffer[pos++] = (byte) value;
+            out.write(buffer, 0, pos);
+        }
+
+        /*
+         * Each char is encoded separately (as per modified UTF-8 apart from
+         * the encoding of '\u0000') so any String, including one that contains
+         * unpaired surrogates, can be written.
+         */
+        private void writeChars(String value) throws IOException {
+            int length = value.length();
+            int byteLength = 0;
+            for (int i = 0; i < length; i++) {
+                char c = value.charAt(i);
+                if (c < 0x80) {
+                    byteLength++;
+                } else if (c < 0x800) {
+                    byteLength += 2;
+                } else {
+                    byteLength += 3;
+                }
+            }
+            writeVarLong(byteLength);
+            if (buffer.length < byteLength) {
+                buffer = new byte[Math.max(byteLength, buffer.length * 2)];
+            }
+            int pos = 0;
+            for (int i = 0; i < length; i++) {
+                char c = value.charAt(i);
+                if (c < 0x80) {
+                    buffer[pos++] = (byte) c;
+                } else if (c < 0x800) {
+                    buffer[pos++] = (byte) (0xC0 | (c >> 6));
+                    buffer[pos++] = (byte) (0x80 | (c & 0x3F));
+                } else {
+                    buffer[pos++] = (byte) (0xE0 | (c >> 12));
+                    buffer[pos++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                    buffer[pos++] = (byte) (0x80 | (c & 0x3F));
+                }
+            }
+            out.write(buffer, 0, byteLength);
+        }
+    }
+
+
+    private static class CompactInput implements Input {
+
+        private final ObjectInput in;
+        private final List<String> strings = new ArrayList<>();
+        private final List<Object> references = new ArrayList<>();
+        private final CustomObjectInputStream filter;
+        private final boolean[] allowedTags = new boolean[TAG_CLASSES.length];
+        private byte[] buffer = new byte[128];
+        private char[] chars = new char[128];
+
+        CompactInput(ObjectInput in) {
+            this.in = in;
+            if (in instanceof CustomObjectInputStream) {
+                filter = (CustomObjectInputStream) in;
+            } else {
+                filter = null;
+            }
+        }
+
+        @Override
+        public boolean readBoolean() throws IOException {
+            return in.readBoolean();
+        }
+
+        @Override
+        public int readInt() throws IOException {
+            long value = readVarLong();
+            return (int) (value >>> 1) ^ -(int) (value & 1);
+        }
+
+        @Override
+        public long readLong() throws IOException {
+            long value = readVarLong();
+            return (value >>> 1) ^ -(value & 1);
+        }
+
+        @Override
+        public String readString() throws IOException {
+            int code = readSize();
+            if (code == STRING_NULL) {
+                return null;
+            }
+            if (code == STRING_NEW) {
+                String value = readChars();
+                if (value.length() <= MAX_TABLE_STRING_LENGTH) {
+                    strings.add(value);
+                }
+                return value;
+            }
+            int index = code - STRING_REFERENCE_OFFSET;
+            if (index >= strings.size()) {
+                throw new StreamCorruptedException(
+                        sm.getString("compactSessionSerializer.invalidReference", Integer.toString(index)));
+            }
+            return strings.get(index);
+        }
+
+        @Override
+        public Object readObject() throws ClassNotFoundException, IOException {
+            int tag = in.readUnsignedByte();
+            if (filter != null && tag < TAG_CLASSES.length && TAG_CLASSES[tag] != null && !allowedTags[tag]) {
+                checkClass(TAG_CLASSES[tag]);
+                allowedTags[tag] = true;
+            }
+            switch (tag) {
+                case TAG_NULL:
+                    return null;
+                case TAG_STRING:
+                    return readString();
+                case TAG_TRUE:
+                    return Boolean.TRUE;
+                case TAG_FALSE:
+                    return Boolean.FALSE;
+                case TAG_INTEGER:
+                    return Integer.valueOf(readInt());
+                case TAG_LONG:
+                    return Long.valueOf(readLong());
+                case TAG_SHORT:
+                    return Short.valueOf((short) readInt());
+                case TAG_BYTE:
+                    return Byte.valueOf(in.readByte());
+                case TAG_CHARACTER:
+                    return Character.valueOf((char) readVarLong());
+                case TAG_FLOAT:
+                    return Float.valueOf(in.readFloat());
+                case TAG_DOUBLE:
+                    return Double.valueOf(in.readDouble());
+                case TAG_DATE: {
+                    Date date = new Date(readLong());
+                    references.add(date);
+                    return date;
+                }
+                case TAG_BYTE_ARRAY: {
+                    int size = readSize();
+                    byte[] bytes = readBytes(new byte[Math.min(size, MAX_INITIAL_BYTES)], size);
+                    references.add(bytes);
+                    return bytes;
+                }
+                case TAG_STRING_ARRAY: {
+                    int size = readSize();
+                    String[] strings = new String[Math.min(size, MAX_INITIAL_CAPACITY)];
+                    for (int i = 0; i < size; i++) {
+                        if (i == strings.length) {
+                            strings = Arrays.copyOf(strings, (int) Math.min(size, i * 2L));
+                        }
+                        strings[i] = readString();
+                    }
+                    // The elements are not objects so can't refer to the array
+                    references.add(strings);
+                    return strings;
+                }
+                case TAG_ARRAY_LIST: {
+                    int size = readSize();
+                    return readElements(new ArrayList<>(Math.min(size, MAX_INITIAL_CAPACITY)), size);
+                }
+                case TAG_HASH_MAP: {
+                    int size = readSize();
+                    Map<Object,Object> map = new HashMap<>(capacity(size));
+                    references.add(map);
+                    for (int i = 0; i < size; i++) {
+                        Object key = readObject();
+                        map.put(key, readObject());
+                    }
+                    return map;
+                }
+                case TAG_HASH_SET: {
+                    int size = readSize();
+                    return readElements(new HashSet<>(capacity(size)), size);
+                }
+                case TAG_LINKED_HASH_SET: {
+                    int size = readSize();
+                    return readElements(new LinkedHashSet<>(capacity(size)), size);
+                }
+                case TAG_REFERENCE: {
+                    int handle = readSize();
+                    if (handle >= references.size()) {
+                        throw new StreamCorruptedException(
+                                sm.getString("compactSessionSerializer.invalidReference", Integer.toString(handle)));
+                    }
+                    return references.get(handle);
+                }
+                case TAG_SERIALIZED:
+                    return in.readObject();
+                default:
+                    throw new StreamCorruptedException(
+                            sm.getString("compactSessionSerializer.unknownTag", Integer.toString(tag)));
+            }
+        }
+
+        private Collection<Object> readElements(Collection<Object> collection, int size)
+                throws ClassNotFoundException, IOException {
+            references.add(collection);
+            for (int i = 0; i < size; i++) {
+                collection.add(readObject());
+            }
+            return collection;
+        }
+
+        /*
+         * Check the class, and any serializable super classes, against the
+         * filter as ObjectInputStream would for a deserialized object.
+         */
+        private void checkClass(Class<?> clazz) throws InvalidClassException {
+            do {
+                filter.checkClassName(clazz.getName());
+                clazz = clazz.getSuperclass();
+            } while (clazz != null && Serializable.class.isAssignableFrom(clazz));
+        }
+
+        private static int capacity(int size) {
+            return Math.min((int) (size / 0.75f) + 1, MAX_INITIAL_CAPACITY);
+        }
+
+        private long readVarLong() throws IOException {
+            long value = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                int b = in.readUnsignedByte();
+                value |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return value;
+                }
+            }
+            throw new StreamCorruptedException(sm.getString("compactSessionSerializer.invalidVarint"));
+        }
+
+        private int readSize() throws IOException {
+            long size = readVarLong();
+            if (size > Integer.MAX_VALUE) {
+                throw new StreamCorruptedException(
+                        sm.getString("compactSessionSerializer.invalidSize", Long.toString(size)));
+            }
+            return (int) size;
+        }
+
+        /*
+         * Read length bytes into the given array if it is large enough.
+         * Otherwise the array is grown as the data is read so a corrupted
+         * length can't trigger an excessive allocation.
+         */
+        private byte[] readBytes(byte[] bytes, int length) throws IOException {
+            int pos = 0;
+            while (bytes.length < length) {
+                in.readFully(bytes, pos, bytes.length - pos);
+                pos = bytes.length;
+                bytes = Arrays.copyOf(bytes, (int) Math.min(length, Math.max(pos * 2L, MAX_INITIAL_BYTES)));
+            }
+            in.readFully(bytes, pos, length - pos);
+            return bytes;
+        }
+
+        private String readChars() throws IOException {
+            int byteLength = readSize();
+            buffer = readBytes(buffer, byteLength);
+            if (chars.length < buffer.length) {
+                chars = new char[buffer.length];
+            }
+            int pos = 0;
+            int count = 0;
+            while (pos < byteLength) {
+                int b = buffer[pos++] & 0xFF;
+                if (b < 0x80) {
+                    chars[count++] = (char) b;
+                    continue;
+                }
+                if (pos + (b < 0xE0 ? 1 : 2) > byteLength) {
+                    throw new StreamCorruptedException(sm.getString("compactSessionSerializer.invalidString"));
+                }
+                if (b < 0xE0) {
+                    chars[count++] = (char) (((b & 0x1F) << 6) | (buffer[pos++] & 0x3F));
+                } else {
+                    chars[count++] = (char) (((b & 0x0F) << 12) | ((buffer[pos++] & 0x3F) << 6) |
+                            (buffer[pos++] & 0x3F));
+                }
+            }
+            return new String(chars, 0, count);
+        }
+    }
+}
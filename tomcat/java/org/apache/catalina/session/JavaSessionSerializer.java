@@ -0,0 +1,124 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.catalina.session;
+
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+
+/**
+ * The default {@link SessionSerializer} that writes every value, including
+ * primitives, with Java serialization. This is the format that has always
+ * been used for persisted and replicated sessions.
+ */
+public class JavaSessionSerializer implements SessionSerializer {
+
+    @Override
+    public Output getOutput(ObjectOutput out) {
+        return new JavaOutput(out);
+    }
+
+
+    @Override
+    public Input getInput(ObjectInput in) {
+        return new JavaInput(in);
+    }
+
+
+    private static class JavaOutput implements Output {
+
+        private final ObjectOutput out;
+
+        JavaOutput(ObjectOutput out) {
+            this.out = out;
+        }
+
+        @Override
+        public void writeBoolean(boolean value) throws IOException {
+            out.writeObject(Boolean.valueOf(value));
+        }
+
+        @Override
+        public void writeInt(int value) throws IOException {
+            out.writeObject(Integer.valueOf(value));
+        }
+
+        @Override
+        public void writeLong(long value) throws IOException {
+            out.writeObject(Long.valueOf(value));
+        }
+
+        @Override
+        public void writeString(String value) throws IOException {
+            out.writeObject(value);
+        }
+
+        @Override
+        public void writeObject(Object value) throws IOException {
+            out.writeObject(value);
+        }
+    }
+
+
+    private static class JavaInput implements Input {
+
+        private final ObjectInput in;
+
+        JavaInput(ObjectInput in) {
+            this.in = in;
+        }
+
+        @Override
+        public boolean readBoolean() throws IOException {
+            return ((Boolean) readBoxed()).booleanValue();
+        }
+
+        @Override
+        public int readInt() throws IOException {
+            return ((Integer) readBoxed()).intValue();
+        }
+
+        @Override
+        public long readLong() throws IOException {
+            return ((Long) readBoxed()).longValue();
+        }
+
+        @Override
+        public String readString() throws IOException {
+            try {
+                return (String) in.readObject();
+            } catch (ClassNotFoundException e) {
+                // Can't happen for a String
+                throw new IOException(e);
+            }
+        }
+
+        @Override
+        public Object readObject() throws ClassNotFoundException, IOException {
+            return in.readObject();
+        }
+
+        private Object readBoxed() throws IOException {
+            try {
+                return in.readObject();
+            } catch (ClassNotFoundException e) {
+                // Can't happen for the boxed primitives
+                throw new IOException(e);
+            }
+        }
+    }
+}
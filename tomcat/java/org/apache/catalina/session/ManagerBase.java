@@ -110,6 +110,12 @@ public abstract class ManagerBase extends LifecycleMBeanBase implements Manager
     protected SessionIdGenerator sessionIdGenerator = null;
     protected Class<? extends SessionIdGenerator> sessionIdGeneratorClass = null;
 
+    /**
+     * The serializer used to encode sessions when they are persisted or
+     * replicated.
+     */
+    private volatile SessionSerializer sessionSerializer = new JavaSessionSerializer();
+
     /**
      * The longest time (in seconds) that an expired session had been alive.
      */
@@ -176,6 +182,15 @@ public abstract class ManagerBase extends LifecycleMBeanBase implements Manager
      */
     protected int processExpiresFrequency = 6;
 
+    /**
+     * The accuracy, in seconds, of the index used to find the sessions that
+     * may have expired. If zero, no index is used and every session is
+     * checked each time expiration is processed.
+     */
+    private int expirationAccuracy = 0;
+
+    private volatile SessionExpirationIndex expirationIndex = null;
+
     /**
      * The string manager for this package.
      */
@@ -459,6 +474,27 @@ public abstract class ManagerBase extends LifecycleMBeanBase implements Manager
     }
 
 
+    /**
+     * @return The serializer used to encode sessions when they are persisted
+     *         or replicated.
+     */
+    public SessionSerializer getSessionSerializer() {
+        return sessionSerializer;
+    }
+
+
+    /**
+     * Configure the serializer used to encode sessions when they are persisted
+     * or replicated. Sessions that were persisted with a different serializer
+     * will not be readable.
+     *
+     * @param sessionSerializer The serializer to use
+     */
+    public void setSessionSerializer(SessionSerializer sessionSerializer) {
+        this.sessionSerializer = sessionSerializer;
+    }
+
+
     /**
      * @return The descriptive short name of this Manager implementation.
      */
@@ -581,6 +617,51 @@ public abstract class ManagerBase extends LifecycleMBeanBase implements Manager
     }
 
 
+    /**
+     * @return The accuracy, in seconds, of the session expiration index or
+     *         zero if no index is used
+     */
+    public int getExpirationAccuracy() {
+        return expirationAccuracy;
+    }
+
+    /**
+     * Set the accuracy of the index used to find sessions that may have
+     * expired. With an index, each check only looks at the sessions that are
+     * due to expire rather than every session but a session may expire up to
+     * the given number of seconds later than it otherwise would.
+     *
+     * @param expirationAccuracy The accuracy in seconds or zero to check every
+     *                           session
+     */
+    public void setExpirationAccuracy(int expirationAccuracy) {
+
+        if (expirationAccuracy < 0) {
+            return;
+        }
+
+        int oldExpirationAccuracy = this.expirationAccuracy;
+        this.expirationAccuracy = expirationAccuracy;
+        if (expirationAccuracy != oldExpirationAccuracy) {
+            if (expirationAccuracy > 0) {
+                SessionExpirationIndex index = new SessionExpirationIndex(expirationAccuracy);
+                // Publish the index before adding the current sessions so
+                // sessions added concurrently are not missed
+                expirationIndex = index;
+                for (Session session : sessions.values()) {
+                    index.add(session);
+                }
+            } else {
+                expirationIndex = null;
+            }
+        }
+        support.firePropertyChange("expirationAccuracy",
+                                   Integer.valueOf(oldExpirationAccuracy),
+                                   Integer.valueOf(this.expirationAccuracy));
+
+    }
+
+
     /**
      * Return whether sessions managed by this manager shall persist authentication
      * information or not.
@@ -624,7 +705,7 @@ public abstract class ManagerBase extends LifecycleMBeanBase implements Manager
     public void processExpires() {
 
         long timeNow = System.currentTimeMillis();
-        Session sessions[] = findSessions();
+        Session sessions[] = findExpirationCandidates(timeNow);
         int expireHere = 0 ;
 
         if(log.isDebugEnabled())
@@ -642,6 +723,24 @@ public abstract class ManagerBase extends LifecycleMBeanBase implements Manager
     }
 
 
+    /**
+     * Obtain the sessions to check for expiration. If an expiration index is
+     * used, this is only the sessions that are due to expire, otherwise it is
+     * every session.
+     *
+     * @param timeNow The time to use to determine which sessions are due
+     *
+     * @return The sessions to check for expiration
+     */
+    protected Session[] findExpirationCandidates(long timeNow) {
+        SessionExpirationIndex index = expirationIndex;
+        if (index == null) {
+            return findSessions();
+        }
+        return index.poll(timeNow).toArray(new Session[0]);
+    }
+
+
     @Override
     protected void initInternal() throws LifecycleException {
         super.initInternal();
@@ -703,6 +802,10 @@ public abstract class ManagerBase extends LifecycleMBeanBase implements Manager
     @Override
     public void add(Session session) {
         sessions.put(session.getIdInternal(), session);
+        SessionExpirationIndex index = expirationIndex;
+        if (index != null) {
+            index.add(session);
+        }
         int size = getActiveSessions();
         if( size > maxActive ) {
             synchronized(maxActiveUpdateLock) {
@@ -802,6 +905,30 @@ public abstract class ManagerBase extends LifecycleMBeanBase implements Manager
         if (session.getIdInternal() != null) {
             sessions.remove(session.getIdInternal());
         }
+        SessionExpirationIndex index = expirationIndex;
+        if (index != null) {
+            index.remove(session);
+        }
+    }
+
+
+    /*
+     * Called when a change to the session may have moved the time at which it
+     * expires earlier.
+     */
+    void updateExpiration(Session session) {
+        SessionExpirationIndex index = expirationIndex;
+        if (index != null) {
+            index.update(session);
+        }
+    }
+
+
+    /*
+     * Package private for testing
+     */
+    SessionExpirationIndex getExpirationIndex() {
+        return expirationIndex;
     }
 
 
@@ -0,0 +1,794 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.catalina.session;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.zip.CRC32;
+
+import jakarta.servlet.ServletContext;
+
+import org.apache.catalina.Context;
+import org.apache.catalina.Globals;
+import org.apache.catalina.LifecycleException;
+import org.apache.catalina.Session;
+import org.apache.juli.logging.Log;
+import org.apache.juli.logging.LogFactory;
+import org.apache.tomcat.util.buf.ByteBufferUtils;
+import org.apache.tomcat.util.res.StringManager;
+
+/**
+ * Concrete implementation of the <b>Store</b> interface that appends saved
+ * Sessions to a log of memory-mapped segment files in a configured directory.
+ * An in-memory index maps each session identifier to the location of the most
+ * recently saved copy of that session.
+ * <p>
+ * Saving a session does not create a file or make a system call. Changes are
+ * flushed to disk when a segment is full, each time the Store is checked for
+ * expired sessions and when the Store is stopped. Segments that are mostly
+ * unused are compacted, oldest first, when the Store is checked for expired
+ * sessions. When the Store is started the index is rebuilt by reading the
+ * segments in order. Any incomplete or corrupt data at the end of a segment,
+ * for example after a crash, is ignored.
+ * <p>
+ * Sessions that are saved are still subject to being expired based on
+ * inactivity.
+ */
+public final class MappedFileStore extends StoreBase {
+
+    private static final Log log = LogFactory.getLog(MappedFileStore.class);
+    private static final StringManager sm = StringManager.getManager(MappedFileStore.class);
+
+
+    // ----------------------------------------------------- Constants
+
+    /**
+     * The extension to use for segment filenames.
+     */
+    private static final String SEGMENT_EXT = ".segment";
+
+    private static final byte RECORD_SESSION = 1;
+    private static final byte RECORD_REMOVE = 2;
+
+    /*
+     * Each record is:
+     * int  - length of the record excluding the length and CRC
+     * int  - CRC32 of the record excluding the length and CRC
+     * byte - record type
+     * long - time the session was last accessed
+     * int  - maximum inactive interval of the session
+     * short - length of the session ID
+     * byte[] - session ID in UTF-8
+     * byte[] - serialized session (session records only)
+     */
+    private static final int RECORD_HEADER_LENGTH = 8;
+    private static final int RECORD_FIXED_LENGTH = 15;
+
+    private static final byte[] NO_DATA = new byte[0];
+
+
+    // ----------------------------------------------------- Instance Variables
+
+    /**
+     * The pathname of the directory in which segments are stored.
+     * This may be an absolute pathname, or a relative path that is
+     * resolved against the temporary work directory for this application.
+     */
+    private String directory = ".";
+
+
+    /**
+     * A File representing the directory in which segments are stored.
+     */
+    private File directoryFile = null;
+
+
+    /**
+     * The size in bytes of each segment file.
+     */
+    private int segmentSize = 16 * 1024 * 1024;
+
+
+    /**
+     * Name to register for this Store, used for logging.
+     */
+    private static final String storeName = "mappedFileStore";
+
+
+    /*
+     * The following fields are guarded by this Store. Segments are held in
+     * the order they were created. The last segment is the one being written.
+     */
+    private boolean open = false;
+    private final Deque<Segment> segments = new ArrayDeque<>();
+    private final Map<String,Location> index = new HashMap<>();
+    private long nextSegmentNumber = 0;
+
+
+    // ------------------------------------------------------------- Properties
+
+    /**
+     * @return The directory path for this Store.
+     */
+    public String getDirectory() {
+        return directory;
+    }
+
+
+    /**
+     * Set the directory path for this Store.
+     *
+     * @param path The new directory path
+     */
+    public void setDirectory(String path) {
+        String oldDirectory = this.directory;
+        this.directory = path;
+        this.directoryFile = null;
+        support.firePropertyChange("directory", oldDirectory, this.directory);
+    }
+
+
+    /**
+     * @return The size in bytes of each segment file.
+     */
+    public int getSegmentSize() {
+        return segmentSize;
+    }
+
+
+    /**
+     * Set the size of each segment file. A session that is larger than this
+     * is written to a segment of its own.
+     *
+     * @param segmentSize The new segment size in bytes
+     */
+    public void setSegmentSize(int segmentSize) {
+        int oldSegmentSize = this.segmentSize;
+        this.segmentSize = segmentSize;
+        support.firePropertyChange("segmentSize", Integer.valueOf(oldSegmentSize),
+                Integer.valueOf(this.segmentSize));
+    }
+
+
+    /**
+     * Return the name for this Store, used for logging.
+     */
+    @Override
+    public String getStoreName() {
+        return storeName;
+    }
+
+
+    /**
+     * Return the number of Sessions present in this Store.
+     *
+     * @exception IOException if an input/output error occurs
+     */
+    @Override
+    public synchronized int getSize() throws IOException {
+        open();
+        return index.size();
+    }
+
+
+    // --------------------------------------------------------- Public Methods
+
+    /**
+     * Remove all of the Sessions in this Store.
+     *
+     * @exception IOException if an input/output error occurs
+     */
+    @Override
+    public synchronized void clear() throws IOException {
+        open();
+        index.clear();
+        while (!segments.isEmpty()) {
+            deleteSegment(segments.removeFirst());
+        }
+    }
+
+
+    /**
+     * Return an array containing the session identifiers of all Sessions
+     * currently saved in this Store.  If there are no such Sessions, a
+     * zero-length array is returned.
+     *
+     * @exception IOException if an input/output error occurred
+     */
+    @Override
+    public synchronized String[] keys() throws IOException {
+        open();
+        return index.keySet().toArray(new String[0]);
+    }
+
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * This implementation uses the last accessed time and maximum inactive
+     * interval recorded when each session was saved so sessions that have not
+     * expired do not have to be loaded.
+     */
+    @Override
+    public String[] expiredKeys() throws IOException {
+        long timeNow = System.currentTimeMillis();
+        List<String> keys = new ArrayList<>();
+        synchronized (this) {
+            open();
+            for (Map.Entry<String,Location> entry : index.entrySet()) {
+                Location location = entry.getValue();
+                // Same test as StoreBase.processExpires()
+                int timeIdle = (int) ((timeNow - location.thisAccessedTime) / 1000L);
+                if (timeIdle >= location.maxInactiveInterval) {
+                    keys.add(entry.getKey());
+                }
+            }
+        }
+        return keys.toArray(new String[0]);
+    }
+
+
+    /**
+     * Load and return the Session associated with the specified session
+     * identifier from this Store, without removing it.  If there is no
+     * such stored Session, return <code>null</code>.
+     *
+     * @param id Session identifier of the session to load
+     *
+     * @exception ClassNotFoundException if a deserialization error occurs
+     * @exception IOException if an input/output error occurs
+     */
+    @Override
+    public Session load(String id) throws ClassNotFoundException, IOException {
+        byte[] data;
+        Location location;
+        synchronized (this) {
+            open();
+            location = index.get(id);
+            if (location == null) {
+                return null;
+            }
+            data = new byte[location.dataLength];
+            ByteBuffer buffer = location.segment.buffer.duplicate();
+            buffer.position(location.dataOffset);
+            buffer.get(data);
+        }
+
+        Context context = getManager().getContext();
+        Log contextLog = context.getLogger();
+
+        if (contextLog.isDebugEnabled()) {
+            contextLog.debug(sm.getString(getStoreName() + ".loading", id,
+                    location.segment.file.getAbsolutePath()));
+        }
+
+        ClassLoader oldThreadContextCL = context.bind(Globals.IS_SECURITY_ENABLED, null);
+
+        try (ObjectInputStream ois = getObjectInputStream(new ByteArrayInputStream(data))) {
+            StandardSession session = (StandardSession) manager.createEmptySession();
+            session.readObjectData(ois);
+            session.setManager(manager);
+            return session;
+        } finally {
+            context.unbind(Globals.IS_SECURITY_ENABLED, oldThreadContextCL);
+        }
+    }
+
+
+    /**
+     * Remove the Session with the specified session identifier from
+     * this Store, if present.  If no such Session is present, this method
+     * takes no action.
+     *
+     * @param id Session identifier of the Session to be removed
+     *
+     * @exception IOException if an input/output error occurs
+     */
+    @Override
+    public void remove(String id) throws IOException {
+        if (manager.getContext().getLogger().isDebugEnabled()) {
+            manager.getContext().getLogger().debug(sm.getString(getStoreName() + ".removing", id));
+        }
+
+        synchronized (this) {
+            open();
+            Location old = index.remove(id);
+            if (old != null) {
+                old.segment.liveBytes -= old.recordLength;
+                // Record the removal so the session is not restored when the
+                // index is rebuilt
+                append(RECORD_REMOVE, id, 0, 0, NO_DATA);
+            }
+        }
+    }
+
+
+    /**
+     * Save the specified Session into this Store.  Any previously saved
+     * information for the associated session identifier is replaced.
+     *
+     * @param session Session to be saved
+     *
+     * @exception IOException if an input/output error occurs
+     */
+    @Override
+    public void save(Session session) throws IOException {
+        String id = session.getIdInternal();
+        if (manager.getContext().getLogger().isDebugEnabled()) {
+            manager.getContext().getLogger().debug(sm.getString(getStoreName() + ".saving", id));
+        }
+
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        try (ObjectOutputStream oos = new ObjectOutputStream(new BufferedOutputStream(bos))) {
+            ((StandardSession) session).writeObjectData(oos);
+        }
+        byte[] data = bos.toByteArray();
+
+        synchronized (this) {
+            open();
+            Location location = append(RECORD_SESSION, id, session.getThisAccessedTimeInternal(),
+                    session.getMaxInactiveInterval(), data);
+            index(id, location);
+        }
+    }
+
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * This implementation also compacts the segments that are mostly unused
+     * and then flushes any changes to disk.
+     */
+    @Override
+    public void processExpires() {
+        super.processExpires();
+
+        if (!getState().isAvailable()) {
+            return;
+        }
+
+        synchronized (this) {
+            try {
+                compact();
+                force();
+            } catch (IOException e) {
+                manager.getContext().getLogger().error(sm.getString("mappedFileStore.compactFailed"), e);
+            }
+        }
+    }
+
+
+    // ------------------------------------------------------ Lifecycle Methods
+
+    @Override
+    protected synchronized void startInternal() throws LifecycleException {
+        try {
+            open();
+        } catch (IOException e) {
+            throw new LifecycleException(sm.getString("mappedFileStore.openFailed", directory), e);
+        }
+        super.startInternal();
+    }
+
+
+    @Override
+    protected synchronized void stopInternal() throws LifecycleException {
+        super.stopInternal();
+        close();
+    }
+
+
+    // -------------------------------------------------------- Private Methods
+
+    /**
+     * Rebuild the index from the segments in the storage directory if that
+     * has not already been done.
+     */
+    private void open() throws IOException {
+        if (open) {
+            return;
+        }
+        long start = System.currentTimeMillis();
+
+        File dir = directory();
+        TreeMap<Long,File> files = new TreeMap<>();
+        String[] names = dir.list();
+        if (names != null) {
+            for (String name : names) {
+                if (name.endsWith(SEGMENT_EXT)) {
+                    try {
+                        Long number = Long.valueOf(name.substring(0, name.length() - SEGMENT_EXT.length()));
+                        files.put(number, new File(dir, name));
+                    } catch (NumberFormatException e) {
+                        // Not a segment. Ignore it.
+                    }
+                }
+            }
+        }
+
+        for (Map.Entry<Long,File> entry : files.entrySet()) {
+            File file = entry.getValue();
+            Segment segment = new Segment(entry.getKey().longValue(), file, (int) file.length());
+            segments.addLast(segment);
+            recover(segment);
+            nextSegmentNumber = segment.number + 1;
+        }
+        open = true;
+
+        if (log.isDebugEnabled()) {
+            log.debug(sm.getString("mappedFileStore.opened", Integer.toString(index.size()),
+                    Integer.toString(segments.size()), Long.toString(System.currentTimeMillis() - start)));
+        }
+    }
+
+
+    private void close() {
+        if (!open) {
+            return;
+        }
+        force();
+        for (Segment segment : segments) {
+            segment.release();
+        }
+        segments.clear();
+        index.clear();
+        open = false;
+    }
+
+
+    /*
+     * Read the records in the segment, applying them to the index, until the
+     * end of the segment or the first record that is incomplete or corrupt.
+     */
+    private void recover(Segment segment) {
+        MappedByteBuffer buffer = segment.buffer;
+        int limit = buffer.capacity();
+        int offset = 0;
+        CRC32 crc = new CRC32();
+        while (offset + RECORD_HEADER_LENGTH <= limit) {
+            int length = buffer.getInt(offset);
+            if (length == 0) {
+                // End of the data written to this segment
+                break;
+            }
+            if (length < RECORD_FIXED_LENGTH || offset + RECORD_HEADER_LENGTH + length > limit ||
+                    !checkCrc(buffer, offset, length, crc)) {
+                log.warn(sm.getString("mappedFileStore.invalidData", segment.file.getAbsolutePath(),
+                        Integer.toString(offset)));
+                // Remove the invalid data so it can't be mistaken for a
+                // record once more records are written after it
+                for (int i = offset; i < limit; i++) {
+                    buffer.put(i, (byte) 0);
+                }
+                segment.dirty = true;
+                break;
+            }
+            Record record = new Record(buffer, offset);
+            if (record.type == RECORD_SESSION) {
+                index(record.id, record.toLocation(segment));
+            } else {
+                Location old = index.remove(record.id);
+                if (old != null) {
+                    old.segment.liveBytes -= old.recordLength;
+                }
+            }
+            offset += record.recordLength;
+        }
+        segment.position = offset;
+    }
+
+
+    private static boolean checkCrc(ByteBuffer buffer, int offset, int length, CRC32 crc) {
+        ByteBuffer data = buffer.duplicate();
+        data.limit(offset + RECORD_HEADER_LENGTH + length);
+        data.position(offset + RECORD_HEADER_LENGTH);
+        crc.reset();
+        crc.update(data);
+        return (int) crc.getValue() == buffer.getInt(offset + 4);
+    }
+
+
+    private void index(String id, Location location) {
+        Location old = index.put(id, location);
+        if (old != null) {
+            old.segment.liveBytes -= old.recordLength;
+        }
+        location.segment.liveBytes += location.recordLength;
+    }
+
+
+    private Location append(byte type, String id, long thisAccessedTime, int maxInactiveInterval,
+            byte[] data) throws IOException {
+        byte[] idBytes = id.getBytes(StandardCharsets.UTF_8);
+        if (idBytes.length > 0xFFFF) {
+            throw new IOException(sm.getString("mappedFileStore.idTooLong", id));
+        }
+        int length = RECORD_FIXED_LENGTH + idBytes.length + data.length;
+        Segment segment = getSegment(RECORD_HEADER_LENGTH + length);
+        int offset = segment.position;
+
+        ByteBuffer buffer = segment.buffer.duplicate();
+        buffer.position(offset + RECORD_HEADER_LENGTH);
+        buffer.put(type);
+        buffer.putLong(thisAccessedTime);
+        buffer.putInt(maxInactiveInterval);
+        buffer.putShort((short) idBytes.length);
+        buffer.put(idBytes);
+        buffer.put(data);
+
+        CRC32 crc = new CRC32();
+        buffer.limit(buffer.position());
+        buffer.position(offset + RECORD_HEADER_LENGTH);
+        crc.update(buffer);
+        segment.buffer.putInt(offset + 4, (int) crc.getValue());
+        segment.buffer.putInt(offset, length);
+
+        segment.position += RECORD_HEADER_LENGTH + length;
+        segment.dirty = true;
+
+        return new Location(segment, offset, RECORD_HEADER_LENGTH + length,
+                offset + RECORD_HEADER_LENGTH + RECORD_FIXED_LENGTH + idBytes.length, data.length,
+                thisAccessedTime, maxInactiveInterval);
+    }
+
+
+    /*
+     * Copy an existing record to the end of the log.
+     */
+    private Location append(Record record) throws IOException {
+        Segment segment = getSegment(record.recordLength);
+        int offset = segment.position;
+
+        ByteBuffer source = record.buffer.duplicate();
+        source.limit(record.offset + record.recordLength);
+        source.position(record.offset);
+        ByteBuffer target = segment.buffer.duplicate();
+        target.position(offset);
+        target.put(source);
+
+        segment.position += record.recordLength;
+        segment.dirty = true;
+
+        Location location = record.toLocation(segment);
+        location.move(offset - record.offset);
+        return location;
+    }
+
+
+    /*
+     * Obtain the segment to write a record of the given length to, starting
+     * a new segment if the current one does not have enough space.
+     */
+    private Segment getSegment(int recordLength) throws IOException {
+        Segment segment = segments.peekLast();
+        // Always leave space for the zero length that marks the end of the
+        // data in the segment
+        if (segment == null || segment.position + recordLength + 4 > segment.buffer.capacity()) {
+            if (segment != null) {
+                segment.force();
+            }
+            int size = Math.max(segmentSize, recordLength + 4);
+            long number = nextSegmentNumber++;
+            segment = new Segment(number, new File(directory(), String.format("%016d", Long.valueOf(number)) +
+                    SEGMENT_EXT), size);
+            segments.addLast(segment);
+        }
+        return segment;
+    }
+
+
+    /*
+     * Starting with the oldest segment, copy the sessions from each segment
+     * where less than half the space is used by sessions to the end of the
+     * log and then delete the segment. Since it is the oldest segment, it is
+     * safe to discard any removal records it contains.
+     */
+    private void compact() throws IOException {
+        while (segments.size() > 1) {
+            Segment oldest = segments.peekFirst();
+            if (oldest.liveBytes * 2L > oldest.position) {
+                break;
+            }
+            int offset = 0;
+            while (offset < oldest.position) {
+                Record record = new Record(oldest.buffer, offset);
+                if (record.type == RECORD_SESSION) {
+                    Location location = index.get(record.id);
+                    if (location != null && location.segment == oldest && location.recordOffset == offset) {
+                        index(record.id, append(record));
+                    }
+                }
+                offset += record.recordLength;
+            }
+            // Make sure the copies are on disk before the originals are
+            // deleted
+            force();
+            segments.removeFirst();
+            deleteSegment(oldest);
+        }
+    }
+
+
+    private void force() {
+        for (Segment segment : segments) {
+            segment.force();
+        }
+    }
+
+
+    private void deleteSegment(Segment segment) {
+        if (log.isDebugEnabled()) {
+            log.debug(sm.getString("mappedFileStore.deleteSegment", segment.file.getAbsolutePath()));
+        }
+        // Some platforms will not delete a file that is still mapped
+        segment.release();
+        if (segment.file.exists() && !segment.file.delete()) {
+            log.warn(sm.getString("mappedFileStore.deleteSegmentFailed", segment.file.getAbsolutePath()));
+        }
+    }
+
+
+    /**
+     * Return a File object representing the pathname to our
+     * segment directory.  The directory will be created if it does not
+     * already exist.
+     */
+    private File directory() throws IOException {
+        if (this.directoryFile != null) {
+            // NOTE:  Race condition is harmless, so do not synchronize
+            return this.directoryFile;
+        }
+        File file = new File(this.directory);
+        if (!file.isAbsolute()) {
+            Context context = manager.getContext();
+            ServletContext servletContext = context.getServletContext();
+            File work = (File) servletContext.getAttribute(ServletContext.TEMPDIR);
+            file = new File(work, this.directory);
+        }
+        if (!file.exists() || !file.isDirectory()) {
+            if (!file.delete() && file.exists()) {
+                throw new IOException(sm.getString("mappedFileStore.deleteFailed", file));
+            }
+            if (!file.mkdirs() && !file.isDirectory()) {
+                throw new IOException(sm.getString("mappedFileStore.createFailed", file));
+            }
+        }
+        this.directoryFile = file;
+        return file;
+    }
+
+
+    // ---------------------------------------------------------- Inner classes
+
+    private static class Segment {
+
+        private final long number;
+        private final File file;
+        private final MappedByteBuffer buffer;
+        private int position;
+        private long liveBytes;
+        private boolean dirty;
+
+        Segment(long number, File file, int size) throws IOException {
+            this.number = number;
+            this.file = file;
+            try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+                    StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                // The mapping remains valid after the channel is closed
+                buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+            }
+        }
+
+        void force() {
+            if (dirty) {
+                buffer.force();
+                dirty = false;
+            }
+        }
+
+        /*
+         * Unmap the segment rather than wait for the buffer to be garbage
+         * collected. The buffer must not be used after this call.
+         */
+        void release() {
+            ByteBufferUtils.cleanDirectBuffer(buffer);
+        }
+    }
+
+
+    private static class Location {
+
+        private final Segment segment;
+        private int recordOffset;
+        private final int recordLength;
+        private int dataOffset;
+        private final int dataLength;
+        private final long thisAccessedTime;
+        private final int maxInactiveInterval;
+
+        Location(Segment segment, int recordOffset, int recordLength, int dataOffset, int dataLength,
+                long thisAccessedTime, int maxInactiveInterval) {
+            this.segment = segment;
+            this.recordOffset = recordOffset;
+            this.recordLength = recordLength;
+            this.dataOffset = dataOffset;
+            this.dataLength = dataLength;
+            this.thisAccessedTime = thisAccessedTime;
+            this.maxInactiveInterval = maxInactiveInterval;
+        }
+
+        void move(int delta) {
+            recordOffset += delta;
+            dataOffset += delta;
+        }
+    }
+
+
+    /*
+     * A record that has already been written to a segment.
+     */
+    private static class Record {
+
+        private final ByteBuffer buffer;
+        private final int offset;
+        private final int recordLength;
+        private final byte type;
+        private final long thisAccessedTime;
+        private final int maxInactiveInterval;
+        private final String id;
+        private final int dataOffset;
+
+        Record(ByteBuffer buffer, int offset) {
+            this.buffer = buffer;
+            this.offset = offset;
+            recordLength = RECORD_HEADER_LENGTH + buffer.getInt(offset);
+            int position = offset + RECORD_HEADER_LENGTH;
+            type = buffer.get(position);
+            thisAccessedTime = buffer.getLong(position + 1);
+            maxInactiveInterval = buffer.getInt(position + 9);
+            int idLength = buffer.getShort(position + 13) & 0xFFFF;
+            byte[] idBytes = new byte[idLength];
+            ByteBuffer idBuffer = buffer.duplicate();
+            idBuffer.position(position + RECORD_FIXED_LENGTH);
+            idBuffer.get(idBytes);
+            id = new String(idBytes, StandardCharsets.UTF_8);
+            dataOffset = position + RECORD_FIXED_LENGTH + idLength;
+        }
+
+        Location toLocation(Segment segment) {
+            return new Location(segment, offset, recordLength, dataOffset,
+                    offset + recordLength - dataOffset, thisAccessedTime, maxInactiveInterval);
+        }
+    }
+}
@@ -0,0 +1,193 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.catalina.session;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+import org.apache.catalina.Session;
+
+/**
+ * Index of sessions by the time at which they are next due to be checked for
+ * expiration. Sessions are grouped into buckets, the width of which is the
+ * accuracy of the index, so the background expiration check only has to
+ * look at the sessions in the buckets that are due rather than at every
+ * session.
+ * <p>
+ * Accessing a session only ever moves its expiration time later so the index
+ * is not updated when a session is accessed. Instead, each session in a
+ * bucket that is due is moved to the bucket for its current expiration time.
+ * A session that has not been accessed since it was indexed will then be
+ * found to have expired when it is checked.
+ * <p>
+ * The bucket of a {@link StandardSession} is recorded in the session so it can
+ * be removed from the index as soon as it is removed from the Manager. Other
+ * {@link Session} implementations are not indexed and are returned by every
+ * call to {@link #poll(long)}.
+ */
+class SessionExpirationIndex {
+
+    static final long NOT_INDEXED = 0;
+
+    private static final long NEVER_EXPIRES = -1;
+
+    private final long accuracy;
+
+    private final ConcurrentSkipListMap<Long,Set<Session>> buckets = new ConcurrentSkipListMap<>();
+
+    private final Set<Session> unindexed = ConcurrentHashMap.newKeySet();
+
+
+    /**
+     * @param accuracy The width, in seconds, of each bucket
+     */
+    SessionExpirationIndex(int accuracy) {
+        this.accuracy = accuracy * 1000L;
+    }
+
+
+    void add(Session session) {
+        if (session instanceof StandardSession) {
+            schedule((StandardSession) session, System.currentTimeMillis());
+        } else {
+            unindexed.add(session);
+        }
+    }
+
+
+    void remove(Session session) {
+        if (session instanceof StandardSession) {
+            StandardSession standardSession = (StandardSession) session;
+            synchronized (standardSession) {
+                removeFromBucket(standardSession);
+                standardSession.expirationBucket = NOT_INDEXED;
+            }
+        } else {
+            unindexed.remove(session);
+        }
+    }
+
+
+    /**
+     * Re-index a session after a change that may have moved its expiration
+     * time earlier.
+     *
+     * @param session The session to re-index
+     */
+    void update(Session session) {
+        if (session instanceof StandardSession) {
+            StandardSession standardSession = (StandardSession) session;
+            synchronized (standardSession) {
+                // Don't add a session that has already been removed
+                if (standardSession.expirationBucket != NOT_INDEXED) {
+                    schedule(standardSession, System.currentTimeMillis());
+                }
+            }
+        }
+    }
+
+
+    /**
+     * Obtain the sessions that may have expired. Each indexed session that is
+     * returned is moved to the bucket for its current expiration time before
+     * this method returns so the caller only needs to check if the session
+     * is still valid.
+     *
+     * @param timeNow The current time
+     *
+     * @return The sessions that may have expired
+     */
+    List<Session> poll(long timeNow) {
+        List<Session> result = new ArrayList<>(unindexed);
+        long currentBucket = timeNow / accuracy;
+        Map.Entry<Long,Set<Session>> entry;
+        while ((entry = buckets.firstEntry()) != null && entry.getKey().longValue() <= currentBucket) {
+            if (!buckets.remove(entry.getKey(), entry.getValue())) {
+                continue;
+            }
+            long bucket = entry.getKey().longValue();
+            for (Session session : entry.getValue()) {
+                StandardSession standardSession = (StandardSession) session;
+                synchronized (standardSession) {
+                    // Skip sessions that have been moved to a different bucket
+                    // or removed since they were added to this one
+                    if (standardSession.expirationBucket == bucket) {
+                        schedule(standardSession, timeNow);
+                        result.add(session);
+                    }
+                }
+            }
+        }
+        return result;
+    }
+
+
+    /*
+     * Package private for testing
+     */
+    int getIndexedCount() {
+        int count = 0;
+        for (Set<Session> bucket : buckets.values()) {
+            count += bucket.size();
+        }
+        return count;
+    }
+
+
+    private void schedule(StandardSession session, long timeNow) {
+        synchronized (session) {
+            removeFromBucket(session);
+            int maxInactiveInterval = session.getMaxInactiveInterval();
+            if (maxInactiveInterval <= 0) {
+                // Keep track of the session in case this changes
+                session.expirationBucket = NEVER_EXPIRES;
+                return;
+            }
+            long expires = timeNow + maxInactiveInterval * 1000L - session.getIdleTimeInternal();
+            // Round up so the session is not checked before it has expired.
+            // Always use a future bucket so a session that has not expired
+            // (e.g. because it is in use) is not checked again immediately.
+            long bucket = Math.max((expires + accuracy - 1) / accuracy, timeNow / accuracy + 1);
+            session.expirationBucket = bucket;
+            Long key = Long.valueOf(bucket);
+            while (true) {
+                Set<Session> sessions = buckets.computeIfAbsent(key, k -> ConcurrentHashMap.newKeySet());
+                sessions.add(session);
+                if (buckets.get(key) == sessions) {
+                    break;
+                }
+                // The bucket was polled concurrently. The session may or may
+                // not have been seen so add it again.
+            }
+        }
+    }
+
+
+    private void removeFromBucket(StandardSession session) {
+        long bucket = session.expirationBucket;
+        if (bucket > 0) {
+            Set<Session> sessions = buckets.get(Long.valueOf(bucket));
+            if (sessions != null) {
+                sessions.remove(session);
+            }
+        }
+    }
+}
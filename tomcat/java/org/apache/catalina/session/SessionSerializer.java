@@ -0,0 +1,113 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.catalina.session;
+
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+
+/**
+ * Defines how the state of a {@link StandardSession} is encoded when the
+ * session is persisted or replicated. The session determines which fields and
+ * attributes are written and in what order. The serializer determines how each
+ * of them is represented in the stream.
+ * <p>
+ * Data written with one serializer can only be read with the same serializer.
+ * All the nodes of a cluster must therefore be configured with the same
+ * serializer and changing the serializer makes any sessions persisted with the
+ * previous serializer unreadable.
+ * <p>
+ * Implementations must be thread safe.
+ */
+public interface SessionSerializer {
+
+    /**
+     * Obtain an {@link Output} that writes to the given stream. A new
+     * {@link Output} is obtained for each session or delta request that is
+     * written and any header required by the format is written by this
+     * method.
+     *
+     * @param out The stream to write to
+     *
+     * @return The {@link Output} to use to write the session data
+     *
+     * @throws IOException if an I/O error occurs
+     */
+    Output getOutput(ObjectOutput out) throws IOException;
+
+
+    /**
+     * Obtain an {@link Input} that reads data written by an {@link Output}
+     * obtained from this serializer from the given stream.
+     *
+     * @param in The stream to read from
+     *
+     * @return The {@link Input} to use to read the session data
+     *
+     * @throws IOException if an I/O error occurs or the stream was not written
+     *         with this serializer
+     */
+    Input getInput(ObjectInput in) throws IOException;
+
+
+    interface Output {
+
+        void writeBoolean(boolean value) throws IOException;
+
+        void writeInt(int value) throws IOException;
+
+        void writeLong(long value) throws IOException;
+
+        /**
+         * Write a String.
+         *
+         * @param value The String to write which may be {@code null}
+         *
+         * @throws IOException if an I/O error occurs
+         */
+        void writeString(String value) throws IOException;
+
+        /**
+         * Write an object such as a session attribute value.
+         *
+         * @param value The object to write which may be {@code null}
+         *
+         * @throws java.io.NotSerializableException if the object, or an
+         *         object it refers to, cannot be serialized. The serializer
+         *         must ensure that the matching call to
+         *         {@link Input#readObject()} then throws a
+         *         {@link java.io.WriteAbortedException} and that the stream
+         *         can still be read after that call.
+         * @throws IOException if an I/O error occurs
+         */
+        void writeObject(Object value) throws IOException;
+    }
+
+
+    interface Input {
+
+        boolean readBoolean() throws IOException;
+
+        int readInt() throws IOException;
+
+        long readLong() throws IOException;
+
+        String readString() throws IOException;
+
+        Object readObject() throws ClassNotFoundException, IOException;
+    }
+}
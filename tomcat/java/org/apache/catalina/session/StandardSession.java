@@ -120,6 +120,12 @@ public class StandardSession implements HttpSession, Session, Serializable {
     protected static final String EMPTY_ARRAY[] = new String[0];
 
 
+    /**
+     * The serializer used if the Manager does not provide one.
+     */
+    private static final SessionSerializer DEFAULT_SESSION_SERIALIZER = new JavaSessionSerializer();
+
+
     /**
      * The collection of user data attributes associated with this Session.
      */
@@ -188,6 +194,13 @@ public class StandardSession implements HttpSession, Session, Serializable {
     protected volatile int maxInactiveInterval = -1;
 
 
+    /**
+     * The bucket of the Manager's expiration index that this session is in.
+     * Only used if the Manager is configured to use an expiration index.
+     */
+    transient long expirationBucket = SessionExpirationIndex.NOT_INDEXED;
+
+
     /**
      * Flag indicating whether this session is new or not.
      */
@@ -561,6 +574,9 @@ public class StandardSession implements HttpSession, Session, Serializable {
     @Override
     public void setMaxInactiveInterval(int interval) {
         this.maxInactiveInterval = interval;
+        if (manager instanceof ManagerBase) {
+            ((ManagerBase) manager).updateExpiration(this);
+        }
     }
 
 
@@ -1530,28 +1546,30 @@ public class StandardSession implements HttpSession, Session, Serializable {
     protected void doReadObject(ObjectInputStream stream)
         throws ClassNotFoundException, IOException {
 
+        SessionSerializer.Input input = getSessionSerializer().getInput(stream);
+
         // Deserialize the scalar instance variables (except Manager)
         authType = null;        // Transient (may be set later)
-        creationTime = ((Long) stream.readObject()).longValue();
-        lastAccessedTime = ((Long) stream.readObject()).longValue();
-        maxInactiveInterval = ((Integer) stream.readObject()).intValue();
-        isNew = ((Boolean) stream.readObject()).booleanValue();
-        isValid = ((Boolean) stream.readObject()).booleanValue();
-        thisAccessedTime = ((Long) stream.readObject()).longValue();
+        creationTime = input.readLong();
+        lastAccessedTime = input.readLong();
+        maxInactiveInterval = input.readInt();
+        isNew = input.readBoolean();
+        isValid = input.readBoolean();
+        thisAccessedTime = input.readLong();
         principal = null;        // Transient (may be set later)
-        //        setId((String) stream.readObject());
-        id = (String) stream.readObject();
+        //        setId(input.readString());
+        id = input.readString();
         if (manager.getContext().getLogger().isDebugEnabled())
             manager.getContext().getLogger().debug
                 ("readObject() loading session " + id);
 
         // The next object read could either be the number of attributes (Integer) or the session's
         // authType followed by a Principal object (not an Integer)
-        Object nextObject = stream.readObject();
+        Object nextObject = input.readObject();
         if (!(nextObject instanceof Integer)) {
             setAuthType((String) nextObject);
             try {
-                setPrincipal((Principal) stream.readObject());
+                setPrincipal((Principal) input.readObject());
             } catch (ClassNotFoundException | ObjectStreamException e) {
                 String msg = sm.getString("standardSession.principalNotDeserializable", id);
                 if (manager.getContext().getLogger().isDebugEnabled()) {
@@ -1562,7 +1580,7 @@ public class StandardSession implements HttpSession, Session, Serializable {
                 throw e;
             }
             // After that, the next object read should be the number of attributes (Integer)
-            nextObject = stream.readObject();
+            nextObject = input.readObject();
         }
 
         // Deserialize the attribute count and attribute values
@@ -1572,10 +1590,10 @@ public class StandardSession implements HttpSession, Session, Serializable {
         boolean isValidSave = isValid;
         isValid = true;
         for (int i = 0; i < n; i++) {
-            String name = (String) stream.readObject();
+            String name = input.readString();
             final Object value;
             try {
-                value = stream.readObject();
+                value = input.readObject();
             } catch (WriteAbortedException wae) {
                 if (wae.getCause() instanceof NotSerializableException) {
                     String msg = sm.getString("standardSession.notDeserializable", name, id);
@@ -1634,14 +1652,16 @@ public class StandardSession implements HttpSession, Session, Serializable {
      */
     protected void doWriteObject(ObjectOutputStream stream) throws IOException {
 
+        SessionSerializer.Output output = getSessionSerializer().getOutput(stream);
+
         // Write the scalar instance variables (except Manager)
-        stream.writeObject(Long.valueOf(creationTime));
-        stream.writeObject(Long.valueOf(lastAccessedTime));
-        stream.writeObject(Integer.valueOf(maxInactiveInterval));
-        stream.writeObject(Boolean.valueOf(isNew));
-        stream.writeObject(Boolean.valueOf(isValid));
-        stream.writeObject(Long.valueOf(thisAccessedTime));
-        stream.writeObject(id);
+        output.writeLong(creationTime);
+        output.writeLong(lastAccessedTime);
+        output.writeInt(maxInactiveInterval);
+        output.writeBoolean(isNew);
+        output.writeBoolean(isValid);
+        output.writeLong(thisAccessedTime);
+        output.writeString(id);
         if (manager.getContext().getLogger().isDebugEnabled())
             manager.getContext().getLogger().debug
                 ("writeObject() storing session " + id);
@@ -1660,9 +1680,9 @@ public class StandardSession implements HttpSession, Session, Serializable {
         }
 
         // Write authentication information (may be null values)
-        stream.writeObject(sessionAuthType);
+        output.writeObject(sessionAuthType);
         try {
-            stream.writeObject(sessionPrincipal);
+            output.writeObject(sessionPrincipal);
         } catch (NotSerializableException e) {
             manager.getContext().getLogger().warn(
                     sm.getString("standardSession.principalNotSerializable", id), e);
@@ -1686,11 +1706,12 @@ public class StandardSession implements HttpSession, Session, Serializable {
 
         // Serialize the attribute count and the Serializable attributes
         int n = saveNames.size();
-        stream.writeObject(Integer.valueOf(n));
+        // Written as an object as it is read as an object
+        output.writeObject(Integer.valueOf(n));
         for (int i = 0; i < n; i++) {
-            stream.writeObject(saveNames.get(i));
+            output.writeString(saveNames.get(i));
             try {
-                stream.writeObject(saveValues.get(i));
+                output.writeObject(saveValues.get(i));
                 if (manager.getContext().getLogger().isDebugEnabled())
                     manager.getContext().getLogger().debug(
                             "  storing attribute '" + saveNames.get(i) + "' with value '" + saveValues.get(i) + "'");
@@ -1702,6 +1723,17 @@ public class StandardSession implements HttpSession, Session, Serializable {
 
     }
 
+    /**
+     * @return The serializer to use to read and write the state of this
+     *         session
+     */
+    protected SessionSerializer getSessionSerializer() {
+        if (manager instanceof ManagerBase) {
+            return ((ManagerBase) manager).getSessionSerializer();
+        }
+        return DEFAULT_SESSION_SERIALIZER;
+    }
+
     /**
      * Return whether authentication information shall be persisted or not.
      *
@@ -0,0 +1,293 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.catalina.startup;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.juli.logging.Log;
+import org.apache.juli.logging.LogFactory;
+import org.apache.tomcat.util.bcel.classfile.AnnotationEntry;
+import org.apache.tomcat.util.bcel.classfile.JavaClass;
+import org.apache.tomcat.util.res.StringManager;
+
+/**
+ * A persistent cache of the results of parsing the classes in a JAR for
+ * annotation scanning. Entries are keyed by the path of the JAR and are only
+ * used if the size and last modified time of the JAR are unchanged. This
+ * allows the parsing of the classes in unchanged JARs to be skipped when a web
+ * application is redeployed.
+ * <p>
+ * The cache stores the information required to check a class against the
+ * {@link jakarta.servlet.annotation.HandlesTypes} annotations of the
+ * {@link jakarta.servlet.ServletContainerInitializer}s and the types of the
+ * annotations present on the class. It is safe for concurrent use.
+ */
+final class AnnotationScanCache {
+
+    private static final Log log = LogFactory.getLog(AnnotationScanCache.class);
+    private static final StringManager sm = StringManager.getManager(AnnotationScanCache.class);
+
+    private static final int VERSION = 1;
+
+    private final File file;
+
+    private final Map<String,CachedJar> loaded = new ConcurrentHashMap<>();
+    private final Map<String,CachedJar> used = new ConcurrentHashMap<>();
+    private volatile boolean modified = false;
+
+
+    /**
+     * Create a cache that is persisted to the given file. Any existing
+     * content is loaded.
+     *
+     * @param file The file used to persist the cache
+     */
+    AnnotationScanCache(File file) {
+        this.file = file;
+        if (file.isFile()) {
+            try {
+                load();
+            } catch (IOException e) {
+                log.warn(sm.getString("annotationScanCache.loadFail", file), e);
+                loaded.clear();
+            }
+        }
+    }
+
+
+    /**
+     * Obtain the cached classes for a JAR.
+     *
+     * @param path         The path of the JAR
+     * @param size         The current size of the JAR
+     * @param lastModified The current last modified time of the JAR
+     *
+     * @return The cached classes or {@code null} if the JAR is not in the
+     *         cache or has changed since it was cached
+     */
+    CachedJar get(String path, long size, long lastModified) {
+        CachedJar result = loaded.get(path);
+        if (result == null || result.size != size || result.lastModified != lastModified) {
+            return null;
+        }
+        used.put(path, result);
+        return result;
+    }
+
+
+    /**
+     * Add the classes for a JAR to the cache, replacing any existing entry.
+     *
+     * @param path         The path of the JAR
+     * @param size         The size of the JAR when it was scanned
+     * @param lastModified The last modified time of the JAR when it was
+     *                     scanned
+     * @param classes      The classes found in the JAR
+     */
+    void put(String path, long size, long lastModified, List<CachedClass> classes) {
+        used.put(path, new CachedJar(size, lastModified, classes));
+        modified = true;
+    }
+
+
+    /**
+     * Write the entries used since this cache was loaded to the file. Entries
+     * for JARs that were not used, e.g. because the JAR has been removed, are
+     * dropped. Nothing is written if the file is already up to date.
+     */
+    void save() {
+        if (!modified && used.size() == loaded.size()) {
+            return;
+        }
+        File dir = file.getAbsoluteFile().getParentFile();
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            log.warn(sm.getString("annotationScanCache.saveFail", file));
+            return;
+        }
+        File tmp = new File(dir, file.getName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(tmp)))) {
+            out.writeInt(VERSION);
+            out.writeInt(used.size());
+            for (Map.Entry<String,CachedJar> entry : used.entrySet()) {
+                CachedJar jar = entry.getValue();
+                out.writeUTF(entry.getKey());
+                out.writeLong(jar.size);
+                out.writeLong(jar.lastModified);
+                out.writeInt(jar.classes.size());
+                for (CachedClass clazz : jar.classes) {
+                    out.writeUTF(clazz.entryName);
+                    out.writeUTF(clazz.className);
+                    out.writeUTF(clazz.superclassName);
+                    out.writeInt(clazz.accessFlags);
+                    writeStrings(out, clazz.interfaceNames);
+                    writeStrings(out, clazz.annotationTypes);
+                }
+            }
+        } catch (IOException e) {
+            log.warn(sm.getString("annotationScanCache.saveFail", file), e);
+            if (!tmp.delete()) {
+                tmp.deleteOnExit();
+            }
+            return;
+        }
+        if ((file.exists() && !file.delete()) || !tmp.renameTo(file)) {
+            log.warn(sm.getString("annotationScanCache.saveFail", file));
+            if (!tmp.delete()) {
+                tmp.deleteOnExit();
+            }
+        }
+    }
+
+
+    private void load() throws IOException {
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != VERSION) {
+                // Written by a different version. It will be replaced.
+                return;
+            }
+            int jarCount = in.readInt();
+            for (int i = 0; i < jarCount; i++) {
+                String path = in.readUTF();
+                long size = in.readLong();
+                long lastModified = in.readLong();
+                int classCount = in.readInt();
+                List<CachedClass> classes = new ArrayList<>(classCount);
+                for (int j = 0; j < classCount; j++) {
+                    classes.add(new CachedClass(in.readUTF(), in.readUTF(), in.readUTF(),
+                            in.readInt(), readStrings(in), readStrings(in)));
+                }
+                loaded.put(path, new CachedJar(size, lastModified, classes));
+            }
+        }
+    }
+
+
+    private static void writeStrings(DataOutputStream out, String[] values) throws IOException {
+        out.writeShort(values.length);
+        for (String value : values) {
+            out.writeUTF(value);
+        }
+    }
+
+
+    private static String[] readStrings(DataInputStream in) throws IOException {
+        String[] result = new String[in.readUnsignedShort()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = in.readUTF();
+        }
+        return result;
+    }
+
+
+    static final class CachedJar {
+
+        private final long size;
+        private final long lastModified;
+        private final List<CachedClass> classes;
+
+        private CachedJar(long size, long lastModified, List<CachedClass> classes) {
+            this.size = size;
+            this.lastModified = lastModified;
+            this.classes = Collections.unmodifiableList(classes);
+        }
+
+        List<CachedClass> getClasses() {
+            return classes;
+        }
+    }
+
+
+    static final class CachedClass {
+
+        private final String entryName;
+        private final String className;
+        private final String superclassName;
+        private final int accessFlags;
+        private final String[] interfaceNames;
+        private final String[] annotationTypes;
+
+        CachedClass(String entryName, JavaClass javaClass) {
+            this(entryName, javaClass.getClassName(), javaClass.getSuperclassName(),
+                    javaClass.getAccessFlags(), javaClass.getInterfaceNames(),
+                    getAnnotationTypes(javaClass));
+        }
+
+        private CachedClass(String entryName, String className, String superclassName,
+                int accessFlags, String[] interfaceNames, String[] annotationTypes) {
+            this.entryName = entryName;
+            this.className = className;
+            this.superclassName = superclassName;
+            this.accessFlags = accessFlags;
+            this.interfaceNames = interfaceNames;
+            this.annotationTypes = annotationTypes;
+        }
+
+        String getEntryName() {
+            return entryName;
+        }
+
+        String getClassName() {
+            return className;
+        }
+
+        String getSuperclassName() {
+            return superclassName;
+        }
+
+        int getAccessFlags() {
+            return accessFlags;
+        }
+
+        String[] getInterfaceNames() {
+            return interfaceNames;
+        }
+
+        /**
+         * @return The types, in descriptor form, of the annotations present
+         *         on the class
+         */
+        String[] getAnnotationTypes() {
+            return annotationTypes;
+        }
+
+        private static String[] getAnnotationTypes(JavaClass javaClass) {
+            AnnotationEntry[] annotationEntries = javaClass.getAnnotationEntries();
+            if (annotationEntries == null) {
+                return new String[0];
+            }
+            String[] result = new String[annotationEntries.length];
+            for (int i = 0; i < result.length; i++) {
+                result[i] = annotationEntries[i].getAnnotationType();
+            }
+            return result;
+        }
+    }
+}
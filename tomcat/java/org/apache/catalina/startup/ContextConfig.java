@@ -23,6 +23,7 @@ import java.io.FileWriter;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.MalformedURLException;
+import java.net.URI;
 import java.net.URISyntaxException;
 import java.net.URL;
 import java.net.URLConnection;
@@ -240,6 +241,13 @@ public class ContextConfig implements LifecycleListener {
     protected boolean handlesTypesNonAnnotations = false;
 
 
+    /**
+     * The cache of annotation scan results for JARs, if enabled for the
+     * Context. Only set while the classes are being processed.
+     */
+    AnnotationScanCache annotationScanCache = null;
+
+
     // ------------------------------------------------------------- Properties
 
     /**
@@ -1405,8 +1413,21 @@ public class ContextConfig implements LifecycleListener {
         // are going to use (remember orderedFragments includes any
         // container fragments)
         if (ok) {
-            processAnnotations(
-                    orderedFragments, webXml.isMetadataComplete(), javaClassCache);
+            File cacheFile = getAnnotationScanCacheFile();
+            if (cacheFile != null) {
+                annotationScanCache = new AnnotationScanCache(cacheFile);
+            }
+            try {
+                processAnnotations(
+                        orderedFragments, webXml.isMetadataComplete(), javaClassCache);
+            } finally {
+                if (annotationScanCache != null) {
+                    if (ok) {
+                        annotationScanCache.save();
+                    }
+                    annotationScanCache = null;
+                }
+            }
         }
 
         // Cache, if used, is no longer required so clear it
@@ -2279,6 +2300,27 @@ public class ContextConfig implements LifecycleListener {
     protected void processAnnotationsJar(URL url, WebXml fragment,
             boolean handlesTypesOnly, Map<String,JavaClassCacheEntry> javaClassCache) {
 
+        AnnotationScanCache scanCache = annotationScanCache;
+        File jarFile = null;
+        long jarSize = 0;
+        long jarLastModified = 0;
+        List<AnnotationScanCache.CachedClass> cachedClasses = null;
+        if (scanCache != null) {
+            jarFile = getJarFile(url);
+        }
+        if (jarFile != null) {
+            jarSize = jarFile.length();
+            jarLastModified = jarFile.lastModified();
+            AnnotationScanCache.CachedJar cachedJar =
+                    scanCache.get(jarFile.getPath(), jarSize, jarLastModified);
+            if (cachedJar != null) {
+                processAnnotationsCachedJar(url, cachedJar, fragment, handlesTypesOnly,
+                        javaClassCache);
+                return;
+            }
+            cachedClasses = new ArrayList<>();
+        }
+
         try (Jar jar = JarFactory.newInstance(url)) {
             if (log.isDebugEnabled()) {
                 log.debug(sm.getString(
@@ -2290,7 +2332,17 @@ public class ContextConfig implements LifecycleListener {
             while (entryName != null) {
                 if (entryName.endsWith(".class")) {
                     try (InputStream is = jar.getEntryInputStream()) {
-                        processAnnotationsStream(is, fragment, handlesTypesOnly, javaClassCache);
+                        if (cachedClasses == null) {
+                            processAnnotationsStream(is, fragment, handlesTypesOnly, javaClassCache);
+                        } else {
+                            ClassParser parser = new ClassParser(is);
+                            JavaClass clazz = parser.parse();
+                            cachedClasses.add(new AnnotationScanCache.CachedClass(entryName, clazz));
+                            checkHandlesTypes(clazz, javaClassCache);
+                            if (!handlesTypesOnly) {
+                                processClass(fragment, clazz);
+                            }
+                        }
                     } catch (IOException | ClassFormatException e) {
                         log.error(sm.getString("contextConfig.inputStreamJar",
                                 entryName, url),e);
@@ -2299,12 +2351,118 @@ public class ContextConfig implements LifecycleListener {
                 jar.nextEntry();
                 entryName = jar.getEntryName();
             }
+            if (cachedClasses != null) {
+                scanCache.put(jarFile.getPath(), jarSize, jarLastModified, cachedClasses);
+            }
+        } catch (IOException e) {
+            log.error(sm.getString("contextConfig.jarFile", url), e);
+        }
+    }
+
+
+    /*
+     * Processes a JAR using the results of a previous scan. Only the classes
+     * that may need to be processed for Servlet annotations are parsed.
+     */
+    private void processAnnotationsCachedJar(URL url, AnnotationScanCache.CachedJar cachedJar,
+            WebXml fragment, boolean handlesTypesOnly,
+            Map<String,JavaClassCacheEntry> javaClassCache) {
+
+        if (log.isDebugEnabled()) {
+            log.debug(sm.getString("contextConfig.processAnnotationsCachedJar.debug", url));
+        }
+
+        Jar jar = null;
+        try {
+            for (AnnotationScanCache.CachedClass cachedClass : cachedJar.getClasses()) {
+                checkHandlesTypes(cachedClass.getClassName(), cachedClass.getAccessFlags(),
+                        cachedClass.getSuperclassName(), cachedClass.getInterfaceNames(),
+                        cachedClass.getAnnotationTypes(), javaClassCache);
+                if (handlesTypesOnly || !hasServletAnnotation(cachedClass.getAnnotationTypes())) {
+                    continue;
+                }
+                if (jar == null) {
+                    jar = JarFactory.newInstance(url);
+                }
+                try (InputStream is = jar.getInputStream(cachedClass.getEntryName())) {
+                    if (is == null) {
+                        continue;
+                    }
+                    ClassParser parser = new ClassParser(is);
+                    processClass(fragment, parser.parse());
+                } catch (IOException | ClassFormatException e) {
+                    log.error(sm.getString("contextConfig.inputStreamJar",
+                            cachedClass.getEntryName(), url),e);
+                }
+            }
         } catch (IOException e) {
             log.error(sm.getString("contextConfig.jarFile", url), e);
+        } finally {
+            if (jar != null) {
+                jar.close();
+            }
         }
     }
 
 
+    private static boolean hasServletAnnotation(String[] annotationTypes) {
+        for (String type : annotationTypes) {
+            if ("Ljakarta/servlet/annotation/WebServlet;".equals(type) ||
+                    "Ljakarta/servlet/annotation/WebFilter;".equals(type) ||
+                    "Ljakarta/servlet/annotation/WebListener;".equals(type)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+
+    /*
+     * Returns the file for a JAR URL if the JAR is a file on the local file
+     * system, otherwise null.
+     */
+    private static File getJarFile(URL url) {
+        String path = url.toString();
+        if (path.startsWith("jar:file:") && path.endsWith("!/")) {
+            path = path.substring(4, path.length() - 2);
+        } else if (!path.startsWith("file:") || !path.endsWith(".jar")) {
+            return null;
+        }
+        try {
+            File file = new File(new URI(path));
+            if (file.isFile()) {
+                return file;
+            }
+        } catch (URISyntaxException | IllegalArgumentException e) {
+            // Not a JAR file on the local file system
+        }
+        return null;
+    }
+
+
+    /*
+     * Returns the file used to persist the annotation scan cache or null if the
+     * cache is not enabled. The file is placed alongside, rather than in, the
+     * work directory of the Context since the work directory is deleted when
+     * the Context is undeployed.
+     */
+    private File getAnnotationScanCacheFile() {
+        if (!(context instanceof StandardContext) ||
+                !((StandardContext) context).getAnnotationScanCache()) {
+            return null;
+        }
+        String workPath = ((StandardContext) context).getWorkPath();
+        if (workPath == null) {
+            return null;
+        }
+        File workDir = new File(workPath);
+        if (workDir.getParentFile() == null) {
+            return null;
+        }
+        return new File(workDir.getParentFile(), workDir.getName() + ".scan");
+    }
+
+
     protected void processAnnotationsFile(File file, WebXml fragment,
             boolean handlesTypesOnly, Map<String,JavaClassCacheEntry> javaClassCache) {
 
@@ -2383,18 +2541,48 @@ public class ContextConfig implements LifecycleListener {
             return;
         }
 
-        if ((javaClass.getAccessFlags() &
+        String[] annotationTypes = null;
+        if (handlesTypesAnnotations) {
+            AnnotationEntry[] annotationEntries = javaClass.getAnnotationEntries();
+            if (annotationEntries != null) {
+                annotationTypes = new String[annotationEntries.length];
+                for (int i = 0; i < annotationTypes.length; i++) {
+                    annotationTypes[i] = annotationEntries[i].getAnnotationType();
+                }
+            }
+        }
+
+        checkHandlesTypes(javaClass.getClassName(), javaClass.getAccessFlags(),
+                javaClass.getSuperclassName(), javaClass.getInterfaceNames(),
+                annotationTypes, javaClassCache);
+    }
+
+
+    /*
+     * Performs the checks for checkHandlesTypes(JavaClass, Map) using the
+     * parsed content of the class. annotationTypes contains the types, in
+     * descriptor form, of the annotations on the class and may be null if
+     * there are none.
+     */
+    private void checkHandlesTypes(String className, int accessFlags, String superclassName,
+            String[] interfaceNames, String[] annotationTypes,
+            Map<String,JavaClassCacheEntry> javaClassCache) {
+
+        // Skip this if we can
+        if (typeInitializerMap.size() == 0) {
+            return;
+        }
+
+        if ((accessFlags &
                 org.apache.tomcat.util.bcel.Const.ACC_ANNOTATION) != 0) {
             // Skip annotations.
             return;
         }
 
-        String className = javaClass.getClassName();
-
         Class<?> clazz = null;
         if (handlesTypesNonAnnotations) {
             // This *might* be match for a HandlesType.
-            populateJavaClassCache(className, javaClass, javaClassCache);
+            populateJavaClassCache(className, superclassName, interfaceNames, javaClassCache);
             JavaClassCacheEntry entry = javaClassCache.get(className);
             if (entry.getSciSet() == null) {
                 try {
@@ -2414,27 +2602,29 @@ public class ContextConfig implements LifecycleListener {
                     return;
                 }
 
-                for (ServletContainerInitializer sci : entry.getSciSet()) {
-                    Set<Class<?>> classes = initializerClassMap.get(sci);
-                    if (classes == null) {
-                        classes = new HashSet<>();
-                        initializerClassMap.put(sci, classes);
+                // Classes may be checked in parallel
+                synchronized (initializerClassMap) {
+                    for (ServletContainerInitializer sci : entry.getSciSet()) {
+                        Set<Class<?>> classes = initializerClassMap.get(sci);
+                        if (classes == null) {
+                            classes = new HashSet<>();
+                            initializerClassMap.put(sci, classes);
+                        }
+                        classes.add(clazz);
                     }
-                    classes.add(clazz);
                 }
             }
         }
 
         if (handlesTypesAnnotations) {
-            AnnotationEntry[] annotationEntries = javaClass.getAnnotationEntries();
-            if (annotationEntries != null) {
+            if (annotationTypes != null) {
                 for (Map.Entry<Class<?>, Set<ServletContainerInitializer>> entry :
                         typeInitializerMap.entrySet()) {
                     if (entry.getKey().isAnnotation()) {
                         String entryClassName = entry.getKey().getName();
-                        for (AnnotationEntry annotationEntry : annotationEntries) {
+                        for (String annotationType : annotationTypes) {
                             if (entryClassName.equals(
-                                    getClassName(annotationEntry.getAnnotationType()))) {
+                                    getClassName(annotationType))) {
                                 if (clazz == null) {
                                     clazz = Introspection.loadClass(
                                             context, className);
@@ -2444,8 +2634,10 @@ public class ContextConfig implements LifecycleListener {
                                         return;
                                     }
                                 }
-                                for (ServletContainerInitializer sci : entry.getValue()) {
-                                    initializerClassMap.get(sci).add(clazz);
+                                synchronized (initializerClassMap) {
+                                    for (ServletContainerInitializer sci : entry.getValue()) {
+                                        initializerClassMap.get(sci).add(clazz);
+                                    }
                                 }
                                 break;
                             }
@@ -2481,18 +2673,18 @@ public class ContextConfig implements LifecycleListener {
         return msg.toString();
     }
 
-    private void populateJavaClassCache(String className, JavaClass javaClass,
-            Map<String,JavaClassCacheEntry> javaClassCache) {
+    private void populateJavaClassCache(String className, String superclassName,
+            String[] interfaceNames, Map<String,JavaClassCacheEntry> javaClassCache) {
         if (javaClassCache.containsKey(className)) {
             return;
         }
 
         // Add this class to the cache
-        javaClassCache.put(className, new JavaClassCacheEntry(javaClass));
+        javaClassCache.put(className, new JavaClassCacheEntry(superclassName, interfaceNames));
 
-        populateJavaClassCache(javaClass.getSuperclassName(), javaClassCache);
+        populateJavaClassCache(superclassName, javaClassCache);
 
-        for (String interfaceName : javaClass.getInterfaceNames()) {
+        for (String interfaceName : interfaceNames) {
             populateJavaClassCache(interfaceName, javaClassCache);
         }
     }
@@ -2507,7 +2699,8 @@ public class ContextConfig implements LifecycleListener {
                 }
                 ClassParser parser = new ClassParser(is);
                 JavaClass clazz = parser.parse();
-                populateJavaClassCache(clazz.getClassName(), clazz, javaClassCache);
+                populateJavaClassCache(clazz.getClassName(), clazz.getSuperclassName(),
+                        clazz.getInterfaceNames(), javaClassCache);
             } catch (ClassFormatException | IOException e) {
                 log.debug(sm.getString("contextConfig.invalidSciHandlesTypes",
                         className), e);
@@ -2921,8 +3114,12 @@ public class ContextConfig implements LifecycleListener {
         private Set<ServletContainerInitializer> sciSet = null;
 
         public JavaClassCacheEntry(JavaClass javaClass) {
-            superclassName = javaClass.getSuperclassName();
-            interfaceNames = javaClass.getInterfaceNames();
+            this(javaClass.getSuperclassName(), javaClass.getInterfaceNames());
+        }
+
+        public JavaClassCacheEntry(String superclassName, String[] interfaceNames) {
+            this.superclassName = superclassName;
+            this.interfaceNames = interfaceNames;
         }
 
         public String getSuperclassName() {
@@ -151,6 +151,14 @@ public class ContextRuleSet implements RuleSet {
                             "setSessionIdGenerator",
                             "org.apache.catalina.SessionIdGenerator");
 
+        digester.addObjectCreate(prefix + "Context/Manager/SessionSerializer",
+                                 null, // MUST be specified in the element
+                                 "className");
+        digester.addSetProperties(prefix + "Context/Manager/SessionSerializer");
+        digester.addSetNext(prefix + "Context/Manager/SessionSerializer",
+                            "setSessionSerializer",
+                            "org.apache.catalina.session.SessionSerializer");
+
         digester.addObjectCreate(prefix + "Context/Parameter",
                                  "org.apache.tomcat.util.descriptor.web.ApplicationParameter");
         digester.addSetProperties(prefix + "Context/Parameter");
@@ -202,6 +202,29 @@ public class ChannelData implements ChannelMessage {
     }
 
     public byte[] getDataPackage(byte[] data, int offset)  {
+        getDataPackageHeader(data, offset);
+        offset += getDataPackageHeaderLength();
+        System.arraycopy(message.getBytesDirect(),0,data,offset,message.getLength());
+        return data;
+    }
+
+    /**
+     * @return the length of the serialized ChannelData excluding the message
+     *         bytes
+     */
+    public int getDataPackageHeaderLength() {
+        return getDataPackageLength() - message.getLength();
+    }
+
+    /**
+     * Serializes the ChannelData object, up to but excluding the message
+     * bytes, into a byte[] array. This allows the message bytes to be sent
+     * directly from the message buffer.
+     * @param data The array to write to
+     * @param offset The position in the array to start writing at
+     * @return the provided array
+     */
+    public byte[] getDataPackageHeader(byte[] data, int offset)  {
         byte[] addr = address.getData(false);
         XByteBuffer.toBytes(options,data,offset);
         offset += 4; //options
@@ -216,8 +239,6 @@ public class ChannelData implements ChannelMessage {
         System.arraycopy(addr,0,data,offset,addr.length);
         offset += addr.length; //addr data
         XByteBuffer.toBytes(message.getLength(),data,offset);
-        offset += 4; //message.length
-        System.arraycopy(message.getBytesDirect(),0,data,offset,message.getLength());
         return data;
     }
 
@@ -355,6 +355,28 @@ public class XByteBuffer implements Serializable {
         return data;
     }
 
+    /**
+     * Creates a complete data package as three buffers: the header (including
+     * the serialized ChannelData fields), the message data and the footer.
+     * The message data is not copied so the buffers must only be used while
+     * the message of the ChannelData is unchanged.
+     * @param cdata - the message data to be contained within the package
+     * @return - a full package (header,size,data,footer) for use with a
+     *           gathering write
+     */
+    public static ByteBuffer[] createDataPackageBuffers(ChannelData cdata) {
+        int dlength = cdata.getDataPackageLength();
+        byte[] header = new byte[START_DATA.length + 4 + cdata.getDataPackageHeaderLength()];
+        System.arraycopy(START_DATA, 0, header, 0, START_DATA.length);
+        toBytes(dlength, header, START_DATA.length);
+        cdata.getDataPackageHeader(header, START_DATA.length + 4);
+        XByteBuffer message = cdata.getMessage();
+        return new ByteBuffer[] {
+                ByteBuffer.wrap(header),
+                ByteBuffer.wrap(message.getBytesDirect(), 0, message.getLength()),
+                ByteBuffer.wrap(END_DATA) };
+    }
+
     public static byte[] createDataPackage(byte[] data, int doff, int dlength, byte[] buffer, int bufoff) {
         if ( (buffer.length-bufoff) > getDataPackageLength(dlength) ) {
             throw new ArrayIndexOutOfBoundsException(sm.getString("xByteBuffer.unableCreate"));
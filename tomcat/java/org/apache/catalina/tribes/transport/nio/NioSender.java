@@ -63,6 +63,9 @@ public class NioSender extends AbstractSender {
     protected ByteBuffer readbuf = null;
     protected ByteBuffer writebuf = null;
     protected volatile byte[] current = null;
+    protected volatile ByteBuffer[] currentBuffers = null;
+    // Views of currentBuffers used when writing them with a gathering write
+    protected ByteBuffer[] writebufs = null;
     protected final XByteBuffer ackbuf = new XByteBuffer(128,true);
     protected int remaining = 0;
     protected boolean complete;
@@ -90,7 +93,7 @@ public class NioSender extends AbstractSender {
         if ( key.isConnectable() ) {
             if ( socketChannel.finishConnect() ) {
                 completeConnect();
-                if ( current != null ) key.interestOps(key.interestOps() | SelectionKey.OP_WRITE);
+                if ( hasMessage() ) key.interestOps(key.interestOps() | SelectionKey.OP_WRITE);
                 return false;
             } else  {
                 //wait for the connection to finish
@@ -167,7 +170,7 @@ public class NioSender extends AbstractSender {
 
     protected boolean read() throws IOException {
         //if there is no message here, we are done
-        if ( current == null ) return true;
+        if ( !hasMessage() ) return true;
         int read = isUdpBased()?dataChannel.read(readbuf) : socketChannel.read(readbuf);
         //end of stream
         if ( read == -1 ) throw new IOException(sm.getString("nioSender.unable.receive.ack"));
@@ -192,11 +195,16 @@ public class NioSender extends AbstractSender {
         if ( (!isConnected()) || (this.socketChannel==null && this.dataChannel==null)) {
             throw new IOException(sm.getString("nioSender.not.connected"));
         }
-        if ( current != null ) {
+        if ( hasMessage() ) {
             if ( remaining > 0 ) {
                 //we have written everything, or we are starting a new package
                 //protect against buffer overwrite
-                int byteswritten = isUdpBased()?dataChannel.write(writebuf) : socketChannel.write(writebuf);
+                long byteswritten;
+                if (writebufs != null) {
+                    byteswritten = isUdpBased()?dataChannel.write(writebufs) : socketChannel.write(writebufs);
+                } else {
+                    byteswritten = isUdpBased()?dataChannel.write(writebuf) : socketChannel.write(writebuf);
+                }
                 if (byteswritten == -1 ) throw new EOFException();
                 remaining -= byteswritten;
                 //if the entire message was written from the buffer
@@ -320,6 +328,8 @@ public class NioSender extends AbstractSender {
         if ( readbuf != null ) readbuf.clear();
         if ( writebuf != null ) writebuf.clear();
         current = null;
+        currentBuffers = null;
+        writebufs = null;
         ackbuf.clear();
         remaining = 0;
         complete = false;
@@ -354,6 +364,8 @@ public class NioSender extends AbstractSender {
         if (data != null) {
             synchronized (this) {
                 current = data;
+                currentBuffers = null;
+                writebufs = null;
                 remaining = length;
                 ackbuf.clear();
                 if (writebuf != null) {
@@ -378,10 +390,67 @@ public class NioSender extends AbstractSender {
         }
     }
 
+    /**
+     * Set the message to send as a series of buffers, typically a header, the
+     * message data and a footer, that are written with a gathering write so
+     * that the message data does not need to be copied. The buffers are not
+     * modified so the same buffers may be passed to several senders.
+     *
+     * @param data The buffers to send
+     * @throws IOException if an error occurs registering for write
+     */
+    public void setMessage(ByteBuffer[] data) throws IOException {
+        if (data != null) {
+            synchronized (this) {
+                int length = 0;
+                for (ByteBuffer buffer : data) {
+                    length += buffer.remaining();
+                }
+                current = null;
+                currentBuffers = data;
+                remaining = length;
+                ackbuf.clear();
+                if (getDirectBuffer()) {
+                    // The data has to be copied into a direct buffer to be
+                    // written so copy it once into the write buffer
+                    writebufs = null;
+                    if (writebuf == null || writebuf.capacity() < length) {
+                        writebuf = getBuffer(length);
+                    } else {
+                        writebuf.clear();
+                    }
+                    for (ByteBuffer buffer : data) {
+                        writebuf.put(buffer.duplicate());
+                    }
+                    writebuf.flip();
+                } else {
+                    writebufs = new ByteBuffer[data.length];
+                    for (int i = 0; i < data.length; i++) {
+                        writebufs[i] = data[i].duplicate();
+                    }
+                }
+                if (isConnected()) {
+                    if (isUdpBased())
+                        dataChannel.register(getSelector(), SelectionKey.OP_WRITE, this);
+                    else
+                        socketChannel.register(getSelector(), SelectionKey.OP_WRITE, this);
+                }
+            }
+        }
+    }
+
     public byte[] getMessage() {
         return current;
     }
 
+    public ByteBuffer[] getMessageBuffers() {
+        return currentBuffers;
+    }
+
+    private boolean hasMessage() {
+        return current != null || currentBuffers != null;
+    }
+
 
     public boolean isComplete() {
         return complete;
@@ -18,6 +18,7 @@ package org.apache.catalina.tribes.transport.nio;
 
 import java.io.IOException;
 import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
 import java.nio.channels.SelectionKey;
 import java.nio.channels.Selector;
 import java.util.ArrayList;
@@ -61,7 +62,7 @@ public class ParallelNioSender extends AbstractSender implements MultiPointSende
             throws ChannelException {
         long start = System.currentTimeMillis();
         this.setUdpBased((msg.getOptions()&Channel.SEND_OPTIONS_UDP) == Channel.SEND_OPTIONS_UDP);
-        byte[] data = XByteBuffer.createDataPackage((ChannelData)msg);
+        ByteBuffer[] data = XByteBuffer.createDataPackageBuffers((ChannelData)msg);
         NioSender[] senders = setupForSend(destination);
         connect(senders);
         setData(senders,data);
@@ -188,7 +189,7 @@ public class ParallelNioSender extends AbstractSender implements MultiPointSende
                     break;
                 }
 
-                byte[] data = sender.getMessage();
+                ByteBuffer[] data = sender.getMessageBuffers();
                 if (retry) {
                     try {
                         sender.disconnect();
@@ -243,7 +244,7 @@ public class ParallelNioSender extends AbstractSender implements MultiPointSende
         if ( x != null ) throw x;
     }
 
-    private void setData(NioSender[] senders, byte[] data) throws ChannelException {
+    private void setData(NioSender[] senders, ByteBuffer[] data) throws ChannelException {
         ChannelException x = null;
         for (NioSender sender : senders) {
             try {
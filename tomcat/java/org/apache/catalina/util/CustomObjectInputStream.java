@@ -141,19 +141,7 @@ public final class CustomObjectInputStream extends ObjectInputStream {
         throws ClassNotFoundException, IOException {
 
         String name = classDesc.getName();
-        if (allowedClassNamePattern != null) {
-            boolean allowed = allowedClassNamePattern.matcher(name).matches();
-            if (!allowed) {
-                boolean doLog = warnOnFailure && reportedClasses.add(name);
-                String msg = sm.getString("customObjectInputStream.nomatch", name, allowedClassNameFilter);
-                if (doLog) {
-                    log.warn(msg);
-                } else if (log.isDebugEnabled()) {
-                    log.debug(msg);
-                }
-                throw new InvalidClassException(msg);
-            }
-        }
+        checkClassName(name);
 
         try {
             return Class.forName(name, false, classLoader);
@@ -170,6 +158,34 @@ public final class CustomObjectInputStream extends ObjectInputStream {
     }
 
 
+    /**
+     * Check that a class may be deserialized using the filter configured for
+     * this stream. This allows objects that are read from the stream without
+     * using Java serialization to be filtered in the same way as objects that
+     * are deserialized.
+     *
+     * @param name The fully qualified name of the class
+     *
+     * @exception InvalidClassException if the class name does not match the
+     *                                  filter
+     */
+    public void checkClassName(String name) throws InvalidClassException {
+        if (allowedClassNamePattern != null) {
+            boolean allowed = allowedClassNamePattern.matcher(name).matches();
+            if (!allowed) {
+                boolean doLog = warnOnFailure && reportedClasses.add(name);
+                String msg = sm.getString("customObjectInputStream.nomatch", name, allowedClassNameFilter);
+                if (doLog) {
+                    log.warn(msg);
+                } else if (log.isDebugEnabled()) {
+                    log.debug(msg);
+                }
+                throw new InvalidClassException(msg);
+            }
+        }
+    }
+
+
     /**
      * Return a proxy class that implements the interfaces named in a proxy
      * class descriptor. Do this using the class loader assigned to this
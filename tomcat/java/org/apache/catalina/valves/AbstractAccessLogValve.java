@@ -20,12 +20,12 @@ package org.apache.catalina.valves;
 import java.io.CharArrayWriter;
 import java.io.IOException;
 import java.net.InetAddress;
+import java.nio.charset.StandardCharsets;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Date;
-import java.util.Enumeration;
 import java.util.HashMap;
-import java.util.Iterator;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
@@ -52,8 +52,12 @@ import org.apache.coyote.RequestInfo;
 import org.apache.juli.logging.Log;
 import org.apache.juli.logging.LogFactory;
 import org.apache.tomcat.util.ExceptionUtils;
+import org.apache.tomcat.util.buf.ByteChunk;
+import org.apache.tomcat.util.buf.CharChunk;
 import org.apache.tomcat.util.buf.HexUtils;
+import org.apache.tomcat.util.buf.MessageBytes;
 import org.apache.tomcat.util.collections.SynchronizedStack;
+import org.apache.tomcat.util.http.MimeHeaders;
 import org.apache.tomcat.util.net.IPv6Utils;
 
 
@@ -706,7 +710,7 @@ public abstract class AbstractAccessLogValve extends ValveBase implements Access
 
         CharArrayWriter result = charArrayWriters.pop();
         if (result == null) {
-            result = new CharArrayWriter(128);
+            result = new LogMessageWriter(128);
         }
 
         for (AccessLogElement logElement : logElements) {
@@ -797,6 +801,48 @@ public abstract class AbstractAccessLogValve extends ValveBase implements Access
         setState(LifecycleState.STOPPING);
     }
 
+    /**
+     * The buffer used to generate a log message. A buffer is only ever used by
+     * one thread at a time so, unlike {@link CharArrayWriter}, the methods
+     * used to write to the buffer are not synchronized. This avoids acquiring
+     * a lock for every character and number written by the elements.
+     */
+    static final class LogMessageWriter extends CharArrayWriter {
+
+        LogMessageWriter(int initialSize) {
+            super(initialSize);
+        }
+
+        private void ensureCapacity(int newCount) {
+            if (newCount > buf.length) {
+                buf = Arrays.copyOf(buf, Math.max(buf.length << 1, newCount));
+            }
+        }
+
+        @Override
+        public void write(int c) {
+            ensureCapacity(count + 1);
+            buf[count++] = (char) c;
+        }
+
+        @Override
+        public void write(char[] c, int off, int len) {
+            if (off < 0 || len < 0 || off > c.length - len) {
+                throw new IndexOutOfBoundsException();
+            }
+            ensureCapacity(count + len);
+            System.arraycopy(c, off, buf, count, len);
+            count += len;
+        }
+
+        @Override
+        public void write(String str, int off, int len) {
+            ensureCapacity(count + len);
+            str.getChars(off, off + len, buf, count);
+            count += len;
+        }
+    }
+
     /**
      * AccessLogElement writes the partial message into the buffer.
      */
@@ -1159,9 +1205,9 @@ public abstract class AbstractAccessLogValve extends ValveBase implements Access
             if (type == FormatType.CLF) {
                 buf.append(localDateCache.get().getFormat(timestamp));
             } else if (type == FormatType.SEC) {
-                buf.append(Long.toString(timestamp / 1000));
+                appendLong(timestamp / 1000, buf);
             } else if (type == FormatType.MSEC) {
-                buf.append(Long.toString(timestamp));
+                appendLong(timestamp, buf);
             } else if (type == FormatType.MSEC_FRAC) {
                 frac = timestamp % 1000;
                 if (frac < 100) {
@@ -1172,26 +1218,44 @@ public abstract class AbstractAccessLogValve extends ValveBase implements Access
                         buf.append('0');
                     }
                 }
-                buf.append(Long.toString(frac));
+                appendLong(frac, buf);
             } else {
                 // FormatType.SDF
                 String temp = localDateCache.get().getFormat(format, locale, timestamp);
                 if (usesMsecs) {
-                    frac = timestamp % 1000;
-                    StringBuilder tripleMsec = new StringBuilder(4);
+                    appendWithMsecs(temp, timestamp % 1000, buf);
+                } else {
+                    buf.append(temp);
+                }
+            }
+        }
+
+        /*
+         * Writes the cached formatted timestamp replacing the placeholders for
+         * the milliseconds. Equivalent to replacing the triple pattern with
+         * the zero padded milliseconds and then the single pattern with the
+         * unpadded milliseconds but without creating intermediate Strings.
+         */
+        private void appendWithMsecs(String temp, long frac, CharArrayWriter buf) {
+            int len = temp.length();
+            int i = 0;
+            while (i < len) {
+                if (temp.startsWith(tripleMsecPattern, i)) {
                     if (frac < 100) {
+                        buf.append('0');
                         if (frac < 10) {
-                            tripleMsec.append('0');
-                            tripleMsec.append('0');
-                        } else {
-                            tripleMsec.append('0');
+                            buf.append('0');
                         }
                     }
-                    tripleMsec.append(frac);
-                    temp = temp.replace(tripleMsecPattern, tripleMsec);
-                    temp = temp.replace(msecPattern, Long.toString(frac));
+                    appendLong(frac, buf);
+                    i += tripleMsecPattern.length();
+                } else if (temp.startsWith(msecPattern, i)) {
+                    appendLong(frac, buf);
+                    i += msecPattern.length();
+                } else {
+                    buf.append(temp.charAt(i));
+                    i++;
                 }
-                buf.append(temp);
             }
         }
     }
@@ -1240,7 +1304,7 @@ public abstract class AbstractAccessLogValve extends ValveBase implements Access
                             .append((char) ('0' + ((status / 10) % 10)))
                             .append((char) ('0' + (status % 10)));
                 } else {
-                   buf.append(Integer.toString(status));
+                   appendLong(status, buf);
                 }
             } else {
                 buf.append('-');
@@ -1286,15 +1350,15 @@ public abstract class AbstractAccessLogValve extends ValveBase implements Access
             if (requestAttributesEnabled && portType == PortType.LOCAL) {
                 Object port = request.getAttribute(SERVER_PORT_ATTRIBUTE);
                 if (port == null) {
-                    buf.append(Integer.toString(request.getServerPort()));
+                    appendLong(request.getServerPort(), buf);
                 } else {
                     buf.append(port.toString());
                 }
             } else {
                 if (portType == PortType.LOCAL) {
-                    buf.append(Integer.toString(request.getServerPort()));
+                    appendLong(request.getServerPort(), buf);
                 } else {
-                    buf.append(Integer.toString(request.getRemotePort()));
+                    appendLong(request.getRemotePort(), buf);
                 }
             }
         }
@@ -1343,7 +1407,7 @@ public abstract class AbstractAccessLogValve extends ValveBase implements Access
             if (length <= 0 && conversion) {
                 buf.append('-');
             } else {
-                buf.append(Long.toString(length));
+                appendLong(length, buf);
             }
         }
     }
@@ -1382,12 +1446,12 @@ public abstract class AbstractAccessLogValve extends ValveBase implements Access
         public void addElement(CharArrayWriter buf, Date date, Request request,
                 Response response, long time) {
             if (micros) {
-                buf.append(Long.toString(TimeUnit.NANOSECONDS.toMicros(time)));
+                appendLong(TimeUnit.NANOSECONDS.toMicros(time), buf);
             } else if (millis) {
-                buf.append(Long.toString(TimeUnit.NANOSECONDS.toMillis(time)));
+                appendLong(TimeUnit.NANOSECONDS.toMillis(time), buf);
             } else {
                 // second
-                buf.append(Long.toString(TimeUnit.NANOSECONDS.toSeconds(time)));
+                appendLong(TimeUnit.NANOSECONDS.toSeconds(time), buf);
             }
         }
     }
@@ -1403,7 +1467,7 @@ public abstract class AbstractAccessLogValve extends ValveBase implements Access
                 buf.append('-');
             } else {
                 long delta = commitTime - request.getCoyoteRequest().getStartTimeNanos();
-                buf.append(Long.toString(TimeUnit.NANOSECONDS.toMillis(delta)));
+                appendLong(TimeUnit.NANOSECONDS.toMillis(delta), buf);
             }
         }
     }
@@ -1519,12 +1583,15 @@ public abstract class AbstractAccessLogValve extends ValveBase implements Access
         @Override
         public void addElement(CharArrayWriter buf, Date date, Request request,
                 Response response, long time) {
-            Enumeration<String> iter = request.getHeaders(header);
-            if (iter.hasMoreElements()) {
-                escapeAndAppend(iter.nextElement(), buf);
-                while (iter.hasMoreElements()) {
+            // Write the values directly rather than via getHeaders() to avoid
+            // converting each value to a String
+            MimeHeaders headers = request.getCoyoteRequest().getMimeHeaders();
+            int pos = headers.findHeader(header, 0);
+            if (pos >= 0) {
+                escapeAndAppend(headers.getValue(pos), buf);
+                while ((pos = headers.findHeader(header, pos + 1)) >= 0) {
                     buf.append(',');
-                    escapeAndAppend(iter.nextElement(), buf);
+                    escapeAndAppend(headers.getValue(pos), buf);
                 }
                 return;
             }
@@ -1573,12 +1640,19 @@ public abstract class AbstractAccessLogValve extends ValveBase implements Access
         public void addElement(CharArrayWriter buf, Date date, Request request,
                 Response response, long time) {
             if (null != response) {
-                Iterator<String> iter = response.getHeaders(header).iterator();
-                if (iter.hasNext()) {
-                    escapeAndAppend(iter.next(), buf);
-                    while (iter.hasNext()) {
-                        buf.append(',');
-                        escapeAndAppend(iter.next(), buf);
+                // Write the values directly rather than via getHeaders() to
+                // avoid creating a collection of Strings. Duplicate values are
+                // skipped, as they are by getHeaders().
+                MimeHeaders headers = response.getCoyoteResponse().getMimeHeaders();
+                int first = headers.findHeader(header, 0);
+                if (first >= 0) {
+                    escapeAndAppend(headers.getValue(first), buf);
+                    int pos = first;
+                    while ((pos = headers.findHeader(header, pos + 1)) >= 0) {
+                        if (!isDuplicate(headers, header, first, pos)) {
+                            buf.append(',');
+                            escapeAndAppend(headers.getValue(pos), buf);
+                        }
                     }
                     return;
                 }
@@ -1587,6 +1661,16 @@ public abstract class AbstractAccessLogValve extends ValveBase implements Access
         }
     }
 
+    private static boolean isDuplicate(MimeHeaders headers, String name, int first, int pos) {
+        MessageBytes value = headers.getValue(pos);
+        for (int i = first; i < pos; i = headers.findHeader(name, i + 1)) {
+            if (headers.getValue(i).equals(value)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     /**
      * write an attribute in the ServletRequest - %{xxx}r
      */
@@ -1911,40 +1995,114 @@ public abstract class AbstractAccessLogValve extends ValveBase implements Access
             return;
         }
 
-        for (char c : input.toCharArray()) {
-            switch (c) {
-            // " and \
-            case '\\':
-                dest.append("\\\\");
-                break;
-            case '\"':
-                dest.append("\\\"");
-                break;
-            // Standard C escapes for whitespace (not all standard C escapes)
-            case '\f':
-                dest.append("\\f");
-                break;
-            case '\n':
-                dest.append("\\n");
-                break;
-            case '\r':
-                dest.append("\\r");
-                break;
-            case '\t':
-                dest.append("\\t");
-                break;
-            case '\u000b':
-                dest.append("\\v");
-                break;
-            default:
-                // Control, delete (127) or above 127
-                if (c < 32 || c > 126) {
-                    dest.append("\\u");
-                    dest.append(HexUtils.toHexString(c));
-                } else {
-                    dest.append(c);
+        int len = input.length();
+        for (int i = 0; i < len; i++) {
+            escapeAndAppend(input.charAt(i), dest);
+        }
+    }
+
+
+    /**
+     * Escapes and appends a header value without converting it to a String.
+     * Values held as ISO-8859-1 bytes, as they are when received from the
+     * client, are written directly. Other values are escaped as per
+     * {@link #escapeAndAppend(String, CharArrayWriter)}.
+     *
+     * @param input The value to escape and append
+     * @param dest  The destination for the escaped value
+     */
+    protected static void escapeAndAppend(MessageBytes input, CharArrayWriter dest) {
+        if (input.getType() == MessageBytes.T_BYTES) {
+            ByteChunk bc = input.getByteChunk();
+            if (StandardCharsets.ISO_8859_1.equals(bc.getCharset())) {
+                int end = bc.getEnd();
+                if (bc.getStart() >= end) {
+                    dest.append('-');
+                    return;
+                }
+                byte[] bytes = bc.getBuffer();
+                for (int i = bc.getStart(); i < end; i++) {
+                    escapeAndAppend((char) (bytes[i] & 0xFF), dest);
                 }
+                return;
+            }
+        } else if (input.getType() == MessageBytes.T_CHARS) {
+            CharChunk cc = input.getCharChunk();
+            int end = cc.getEnd();
+            if (cc.getStart() >= end) {
+                dest.append('-');
+                return;
+            }
+            char[] chars = cc.getBuffer();
+            for (int i = cc.getStart(); i < end; i++) {
+                escapeAndAppend(chars[i], dest);
+            }
+            return;
+        }
+        escapeAndAppend(input.toString(), dest);
+    }
+
+
+    private static void escapeAndAppend(char c, CharArrayWriter dest) {
+        switch (c) {
+        // " and \
+        case '\\':
+            dest.append("\\\\");
+            break;
+        case '\"':
+            dest.append("\\\"");
+            break;
+        // Standard C escapes for whitespace (not all standard C escapes)
+        case '\f':
+            dest.append("\\f");
+            break;
+        case '\n':
+            dest.append("\\n");
+            break;
+        case '\r':
+            dest.append("\\r");
+            break;
+        case '\t':
+            dest.append("\\t");
+            break;
+        case '\u000b':
+            dest.append("\\v");
+            break;
+        default:
+            // Control, delete (127) or above 127
+            if (c < 32 || c > 126) {
+                dest.append("\\u");
+                dest.append(HexUtils.toHexString(c));
+            } else {
+                dest.append(c);
+            }
+        }
+    }
+
+
+    /**
+     * Appends the decimal representation of a number without creating a
+     * String.
+     *
+     * @param value The value to append
+     * @param dest  The destination for the value
+     */
+    protected static void appendLong(long value, CharArrayWriter dest) {
+        if (value < 0) {
+            if (value == Long.MIN_VALUE) {
+                dest.append(Long.toString(value));
+                return;
             }
+            dest.append('-');
+            value = -value;
+        }
+        long divisor = 1;
+        while (divisor <= value / 10) {
+            divisor *= 10;
+        }
+        while (divisor > 0) {
+            dest.append((char) ('0' + (value / divisor) % 10));
+            divisor /= 10;
         }
     }
 }
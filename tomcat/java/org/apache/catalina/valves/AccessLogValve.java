@@ -31,12 +31,15 @@ import java.text.SimpleDateFormat;
 import java.util.Date;
 import java.util.Locale;
 import java.util.TimeZone;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
 
 import org.apache.catalina.LifecycleException;
 import org.apache.juli.logging.Log;
 import org.apache.juli.logging.LogFactory;
 import org.apache.tomcat.util.ExceptionUtils;
 import org.apache.tomcat.util.buf.B2CConverter;
+import org.apache.tomcat.util.collections.LockFreeRingBuffer;
 
 
 /**
@@ -163,6 +166,47 @@ public class AccessLogValve extends AbstractAccessLogValve {
     private int maxDays = -1;
     private volatile boolean checkForOldLogs = false;
 
+    /**
+     * Should log records be written by a dedicated thread rather than by the
+     * request processing threads?
+     */
+    private boolean async = false;
+
+    /**
+     * The maximum number of log records waiting to be written when
+     * {@link #async} is enabled.
+     */
+    private int asyncQueueSize = 8192;
+
+    /**
+     * What to do with a log record when the queue of log records waiting to be
+     * written is full. One of {@link #OVERFLOW_BLOCK} or
+     * {@link #OVERFLOW_DROP}.
+     */
+    private String asyncOverflowPolicy = OVERFLOW_BLOCK;
+
+    /**
+     * The request processing thread waits until there is space in the queue.
+     */
+    public static final String OVERFLOW_BLOCK = "block";
+
+    /**
+     * The log record is discarded and the dropped record count is incremented.
+     */
+    public static final String OVERFLOW_DROP = "drop";
+
+    /**
+     * The maximum number of records written by the writer thread while
+     * holding the lock on the log file.
+     */
+    private static final int ASYNC_BATCH_SIZE = 256;
+
+    private volatile LockFreeRingBuffer<String> asyncQueue = null;
+    private volatile Thread asyncWriterThread = null;
+    private volatile boolean asyncWriterRunning = false;
+    private volatile boolean asyncWriterWaiting = false;
+    private final LongAdder droppedRecordCount = new LongAdder();
+
     // ------------------------------------------------------------- Properties
 
 
@@ -176,6 +220,97 @@ public class AccessLogValve extends AbstractAccessLogValve {
     }
 
 
+    /**
+     * @return <code>true</code> if log records are written by a dedicated
+     *         thread
+     */
+    public boolean isAsync() {
+        return async;
+    }
+
+
+    /**
+     * Configure whether log records are written by a dedicated thread. Changes
+     * take effect when the valve is next started.
+     *
+     * @param async <code>true</code> to write log records using a dedicated
+     *              thread
+     */
+    public void setAsync(boolean async) {
+        this.async = async;
+    }
+
+
+    /**
+     * @return the maximum number of log records waiting to be written when
+     *         {@link #isAsync()} is enabled
+     */
+    public int getAsyncQueueSize() {
+        return asyncQueueSize;
+    }
+
+
+    /**
+     * Set the maximum number of log records waiting to be written when
+     * {@link #isAsync()} is enabled. The value will be rounded up to the next
+     * power of two. Changes take effect when the valve is next started.
+     *
+     * @param asyncQueueSize The maximum number of waiting log records
+     */
+    public void setAsyncQueueSize(int asyncQueueSize) {
+        this.asyncQueueSize = asyncQueueSize;
+    }
+
+
+    /**
+     * @return what happens to a log record when the queue of log records
+     *         waiting to be written is full
+     */
+    public String getAsyncOverflowPolicy() {
+        return asyncOverflowPolicy;
+    }
+
+
+    /**
+     * Configure what happens to a log record when the queue of log records
+     * waiting to be written is full.
+     *
+     * @param asyncOverflowPolicy {@link #OVERFLOW_BLOCK} or
+     *                            {@link #OVERFLOW_DROP}
+     */
+    public void setAsyncOverflowPolicy(String asyncOverflowPolicy) {
+        if (OVERFLOW_BLOCK.equalsIgnoreCase(asyncOverflowPolicy)) {
+            this.asyncOverflowPolicy = OVERFLOW_BLOCK;
+        } else if (OVERFLOW_DROP.equalsIgnoreCase(asyncOverflowPolicy)) {
+            this.asyncOverflowPolicy = OVERFLOW_DROP;
+        } else {
+            throw new IllegalArgumentException(sm.getString(
+                    "accessLogValve.invalidOverflowPolicy", asyncOverflowPolicy));
+        }
+    }
+
+
+    /**
+     * @return the number of log records that have been discarded because the
+     *         queue of log records waiting to be written was full
+     */
+    public long getDroppedRecordCount() {
+        return droppedRecordCount.sum();
+    }
+
+
+    /**
+     * @return the current number of log records waiting to be written
+     */
+    public int getQueueDepth() {
+        LockFreeRingBuffer<String> queue = asyncQueue;
+        if (queue == null) {
+            return 0;
+        }
+        return queue.size();
+    }
+
+
     /**
      * @return the directory in which we create log files.
      */
@@ -586,6 +721,70 @@ public class AccessLogValve extends AbstractAccessLogValve {
     @Override
     public void log(CharArrayWriter message) {
 
+        message.append(System.lineSeparator());
+
+        LockFreeRingBuffer<String> queue = asyncQueue;
+        if (queue != null && logAsync(queue, message)) {
+            return;
+        }
+
+        prepareLogFile();
+
+        // Log this message
+        try {
+            synchronized(this) {
+                if (writer != null) {
+                    message.writeTo(writer);
+                    if (!buffered) {
+                        writer.flush();
+                    }
+                }
+            }
+        } catch (IOException ioe) {
+            log.warn(sm.getString(
+                    "accessLogValve.writeFail", message.toString()), ioe);
+        }
+    }
+
+
+    /*
+     * Called by request processing threads when async is enabled. The message
+     * is copied as the CharArrayWriter is re-used once this method returns.
+     *
+     * Returns false if the queue has been closed because the valve is
+     * stopping, in which case the message must be written by the caller.
+     */
+    private boolean logAsync(LockFreeRingBuffer<String> queue, CharArrayWriter message) {
+        String record = message.toString();
+        if (!queue.offer(record)) {
+            if (queue.isClosed()) {
+                return false;
+            }
+            if (asyncOverflowPolicy == OVERFLOW_DROP) {
+                droppedRecordCount.increment();
+                return true;
+            }
+            do {
+                if (queue.isClosed()) {
+                    return false;
+                }
+                LockSupport.unpark(asyncWriterThread);
+                LockSupport.parkNanos(100_000);
+            } while (!queue.offer(record));
+        }
+        if (asyncWriterWaiting) {
+            LockSupport.unpark(asyncWriterThread);
+        }
+        return true;
+    }
+
+
+    /*
+     * Switch log files if the date has changed or if the current log file has
+     * been removed.
+     */
+    private void prepareLogFile() {
+
         rotate();
 
         /* In case something external rotated the file instead */
@@ -607,21 +806,70 @@ public class AccessLogValve extends AbstractAccessLogValve {
                 }
             }
         }
+    }
 
-        // Log this message
-        try {
-            message.write(System.lineSeparator());
-            synchronized(this) {
+
+    /*
+     * Write up to ASYNC_BATCH_SIZE queued records. Must only be called by one
+     * thread at a time.
+     *
+     * Returns false if there were no records to write.
+     */
+    private boolean writeBatch(LockFreeRingBuffer<String> queue) {
+        String record = queue.poll();
+        if (record == null) {
+            return false;
+        }
+        prepareLogFile();
+        synchronized (this) {
+            int count = 0;
+            do {
                 if (writer != null) {
-                    message.writeTo(writer);
-                    if (!buffered) {
-                        writer.flush();
-                    }
+                    writer.write(record);
+                }
+            } while (++count < ASYNC_BATCH_SIZE && (record = queue.poll()) != null);
+            if (writer != null && !buffered) {
+                writer.flush();
+            }
+        }
+        return true;
+    }
+
+
+    /*
+     * Called with the lock held.
+     */
+    private void stopAsyncWriter() {
+        Thread thread = asyncWriterThread;
+        if (thread == null) {
+            return;
+        }
+        LockFreeRingBuffer<String> queue = asyncQueue;
+        // Close the queue first. Any record that can't be added is then
+        // written by the request processing thread and every record that is
+        // added is written below.
+        queue.close();
+        asyncWriterRunning = false;
+        LockSupport.unpark(thread);
+        try {
+            while (thread.isAlive()) {
+                // Releases the lock so the writer thread can write the
+                // remaining records
+                wait(1000);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        asyncQueue = null;
+        asyncWriterThread = null;
+        if (!thread.isAlive()) {
+            // Records added while the writer thread was stopping. The size
+            // includes records that are still being added.
+            while (queue.size() > 0) {
+                if (!writeBatch(queue)) {
+                    Thread.yield();
                 }
             }
-        } catch (IOException ioe) {
-            log.warn(sm.getString(
-                    "accessLogValve.writeFail", message.toString()), ioe);
         }
     }
 
@@ -684,6 +932,18 @@ public class AccessLogValve extends AbstractAccessLogValve {
         }
         open();
 
+        if (async) {
+            asyncQueue = new LockFreeRingBuffer<>(asyncQueueSize);
+            asyncWriterRunning = true;
+            Thread thread = new Thread(new AsyncWriter(),
+                    "AccessLogWriter[" + getContainer().getName() + "]");
+            thread.setDaemon(true);
+            // Don't retain a reference to a web application class loader
+            thread.setContextClassLoader(AccessLogValve.class.getClassLoader());
+            asyncWriterThread = thread;
+            thread.start();
+        }
+
         super.startInternal();
     }
 
@@ -699,6 +959,46 @@ public class AccessLogValve extends AbstractAccessLogValve {
     protected synchronized void stopInternal() throws LifecycleException {
 
         super.stopInternal();
+        stopAsyncWriter();
         close(false);
     }
+
+
+    /**
+     * Writes the log records queued by the request processing threads when
+     * async is enabled. Records are written in batches and the log file is
+     * rotated by this thread.
+     */
+    private class AsyncWriter implements Runnable {
+
+        @Override
+        public void run() {
+            LockFreeRingBuffer<String> queue = asyncQueue;
+            try {
+                while (asyncWriterRunning) {
+                    boolean written;
+                    try {
+                        written = writeBatch(queue);
+                    } catch (Throwable t) {
+                        ExceptionUtils.handleThrowable(t);
+                        log.warn(sm.getString("accessLogValve.asyncWriteFail"), t);
+                        written = true;
+                    }
+                    if (!written) {
+                        asyncWriterWaiting = true;
+                        // Re-check after setting the flag so a record added
+                        // concurrently is not left waiting for the timeout
+                        if (queue.size() == 0 && asyncWriterRunning) {
+                            LockSupport.parkNanos(1_000_000_000L);
+                        }
+                        asyncWriterWaiting = false;
+                    }
+                }
+            } finally {
+                synchronized (AccessLogValve.this) {
+                    AccessLogValve.this.notifyAll();
+                }
+            }
+        }
+    }
 }
@@ -16,12 +16,12 @@
  */
 package org.apache.catalina.webresources;
 
-import java.util.Comparator;
 import java.util.Iterator;
-import java.util.TreeSet;
+import java.util.LinkedHashMap;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
 
 import org.apache.catalina.WebResource;
 import org.apache.juli.logging.Log;
@@ -39,6 +39,9 @@ public class Cache {
     // objectMaxSize must be < maxSize/20
     private static final int OBJECT_MAX_SIZE_FACTOR = 20;
 
+    // Must be a power of 2
+    private static final int SEGMENT_COUNT = 16;
+
     private final StandardRoot root;
     private final AtomicLong size = new AtomicLong(0);
 
@@ -48,12 +51,23 @@ public class Cache {
 
     private AtomicLong lookupCount = new AtomicLong(0);
     private AtomicLong hitCount = new AtomicLong(0);
+    private AtomicLong evictionCount = new AtomicLong(0);
 
     private final ConcurrentMap<String,CachedResource> resourceCache =
             new ConcurrentHashMap<>();
 
+    /*
+     * The cached resources are also tracked in least recently used order. To
+     * reduce contention, the resources are split across several segments with
+     * each segment maintaining the order of its own resources.
+     */
+    private final CacheSegment[] segments = new CacheSegment[SEGMENT_COUNT];
+
     public Cache(StandardRoot root) {
         this.root = root;
+        for (int i = 0; i < SEGMENT_COUNT; i++) {
+            segments[i] = new CacheSegment();
+        }
     }
 
     protected WebResource getResource(String path, boolean useClassLoaderResources) {
@@ -85,6 +99,7 @@ public class Cache {
                 // newCacheEntry was inserted into the cache - validate it
                 cacheEntry = newCacheEntry;
                 cacheEntry.validateResource(useClassLoaderResources);
+                getSegment(path).add(path, cacheEntry);
 
                 // Even if the resource content larger than objectMaxSizeBytes
                 // there is still benefit in caching the resource metadata
@@ -93,12 +108,8 @@ public class Cache {
                 size.addAndGet(delta);
 
                 if (size.get() > maxSize) {
-                    // Process resources unordered for speed. Trades cache
-                    // efficiency (younger entries may be evicted before older
-                    // ones) for speed since this is on the critical path for
-                    // request processing
                     long targetSize = maxSize * (100 - TARGET_FREE_PERCENT_GET) / 100;
-                    long newSize = evict(targetSize, resourceCache.values().iterator());
+                    long newSize = evict(targetSize);
                     if (newSize > maxSize) {
                         // Unable to create sufficient space for this resource
                         // Remove it from the cache
@@ -131,6 +142,7 @@ public class Cache {
             }
         } else {
             hitCount.incrementAndGet();
+            getSegment(path).recordAccess(path);
         }
 
         return cacheEntry;
@@ -163,18 +175,15 @@ public class Cache {
                 // newCacheEntry was inserted into the cache - validate it
                 cacheEntry = newCacheEntry;
                 cacheEntry.validateResources(useClassLoaderResources);
+                getSegment(path).add(path, cacheEntry);
 
                 // Content will not be cached but we still need metadata size
                 long delta = cacheEntry.getSize();
                 size.addAndGet(delta);
 
                 if (size.get() > maxSize) {
-                    // Process resources unordered for speed. Trades cache
-                    // efficiency (younger entries may be evicted before older
-                    // ones) for speed since this is on the critical path for
-                    // request processing
                     long targetSize = maxSize * (100 - TARGET_FREE_PERCENT_GET) / 100;
-                    long newSize = evict(targetSize, resourceCache.values().iterator());
+                    long newSize = evict(targetSize);
                     if (newSize > maxSize) {
                         // Unable to create sufficient space for this resource
                         // Remove it from the cache
@@ -189,24 +198,16 @@ public class Cache {
             }
         } else {
             hitCount.incrementAndGet();
+            getSegment(path).recordAccess(path);
         }
 
         return cacheEntry.getWebResources();
     }
 
     protected void backgroundProcess() {
-        // Create an ordered set of all cached resources with the least recently
-        // used first. This is a background process so we can afford to take the
-        // time to order the elements first
-        TreeSet<CachedResource> orderedResources =
-                new TreeSet<>(new EvictionOrder());
-        orderedResources.addAll(resourceCache.values());
-
-        Iterator<CachedResource> iter = orderedResources.iterator();
-
         long targetSize =
                 maxSize * (100 - TARGET_FREE_PERCENT_BACKGROUND) / 100;
-        long newSize = evict(targetSize, iter);
+        long newSize = evict(targetSize);
 
         if (newSize > targetSize) {
             log.info(sm.getString("cache.backgroundEvictFail",
@@ -228,22 +229,47 @@ public class Cache {
         return false;
     }
 
-    private long evict(long targetSize, Iterator<CachedResource> iter) {
+    /*
+     * Evicts the least recently used resources that have not been validated
+     * within the TTL until the cache is no larger than the target size or
+     * there are no more resources that may be evicted.
+     *
+     * An access validates a resource that is outside the TTL. Therefore, once
+     * the least recently used resource of a segment is inside the TTL, every
+     * resource in that segment has been used within the TTL and none of them
+     * are evicted. This keeps eviction from scanning the resources that are in
+     * use.
+     */
+    private long evict(long targetSize) {
 
         long now = System.currentTimeMillis();
 
         long newSize = size.get();
 
-        while (newSize > targetSize && iter.hasNext()) {
-            CachedResource resource = iter.next();
-
-            // Don't expire anything that has been checked within the TTL
-            if (resource.getNextCheck() > now) {
-                continue;
+        while (newSize > targetSize) {
+            // Find the segment with the oldest resource that may be evicted
+            // and the age of the oldest such resource in any other segment
+            CacheSegment oldestSegment = null;
+            long oldest = Long.MAX_VALUE;
+            long nextOldest = Long.MAX_VALUE;
+            for (CacheSegment segment : segments) {
+                long lastAccess = segment.getEvictionCandidate(now);
+                if (lastAccess < oldest) {
+                    nextOldest = oldest;
+                    oldest = lastAccess;
+                    oldestSegment = segment;
+                } else if (lastAccess < nextOldest) {
+                    nextOldest = lastAccess;
+                }
+            }
+            if (oldestSegment == null) {
+                // Nothing more can be evicted
+                break;
             }
 
-            // Remove the entry from the cache
-            removeCacheEntry(resource.getWebappPath());
+            // Evict from that segment until the next resource to evict is in
+            // a different segment
+            oldestSegment.evict(now, nextOldest, newSize - targetSize);
 
             newSize = size.get();
         }
@@ -256,11 +282,30 @@ public class Cache {
         // once and the cache size is only updated (if required) once.
         CachedResource cachedResource = resourceCache.remove(path);
         if (cachedResource != null) {
-            long delta = cachedResource.getSize();
+            getSegment(path).remove(path, cachedResource);
+            long delta = cachedResource.getSize() + cachedResource.removeCompressedResources();
             size.addAndGet(-delta);
         }
     }
 
+    private CacheSegment getSegment(String path) {
+        int h = path.hashCode();
+        return segments[(h ^ (h >>> 16)) & (SEGMENT_COUNT - 1)];
+    }
+
+    boolean isCached(CachedResource cachedResource) {
+        return resourceCache.get(cachedResource.getWebappPath()) == cachedResource;
+    }
+
+    /*
+     * Used to account for content added to an existing cache entry, such as a
+     * compressed representation of the resource. Any eviction required is left
+     * to the background process.
+     */
+    void addSize(long delta) {
+        size.addAndGet(delta);
+    }
+
     public long getTtl() {
         return ttl;
     }
@@ -287,6 +332,25 @@ public class Cache {
         return hitCount.get();
     }
 
+    /**
+     * @return the proportion of lookups that were served from the cache
+     */
+    public double getHitRatio() {
+        long lookups = lookupCount.get();
+        if (lookups == 0) {
+            return 0;
+        }
+        return (double) hitCount.get() / lookups;
+    }
+
+    /**
+     * @return the number of resources removed from the cache to make space
+     *         for other resources
+     */
+    public long getEvictionCount() {
+        return evictionCount.get();
+    }
+
     public void setObjectMaxSize(int objectMaxSize) {
         if (objectMaxSize * 1024L > Integer.MAX_VALUE) {
             log.warn(sm.getString("cache.objectMaxSizeTooBigBytes", Integer.valueOf(objectMaxSize)));
@@ -318,7 +382,13 @@ public class Cache {
     }
 
     public void clear() {
+        for (CachedResource cachedResource : resourceCache.values()) {
+            cachedResource.removeCompressedResources();
+        }
         resourceCache.clear();
+        for (CacheSegment segment : segments) {
+            segment.clear();
+        }
         size.set(0);
     }
 
@@ -326,22 +396,127 @@ public class Cache {
         return size.get() / 1024;
     }
 
-    private static class EvictionOrder implements Comparator<CachedResource> {
+    /*
+     * Tracks the resources of one segment of the cache in least recently used
+     * order.
+     */
+    private class CacheSegment {
+
+        private final ReentrantLock lock = new ReentrantLock();
+        private final LinkedHashMap<String,SegmentEntry> entries =
+                new LinkedHashMap<>(16, 0.75f, true);
+
+        void add(String path, CachedResource cachedResource) {
+            lock.lock();
+            try {
+                // Skip a resource that was removed or replaced before it was
+                // added to the segment. Overwriting the entry would leave the
+                // current resource untracked and so impossible to evict.
+                if (resourceCache.get(path) == cachedResource) {
+                    entries.put(path, new SegmentEntry(cachedResource, System.nanoTime()));
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
 
-        @Override
-        public int compare(CachedResource cr1, CachedResource cr2) {
-            long nc1 = cr1.getNextCheck();
-            long nc2 = cr2.getNextCheck();
+        void recordAccess(String path) {
+            // Recording every access is not essential so skip it rather than
+            // block request processing
+            if (lock.tryLock()) {
+                try {
+                    SegmentEntry entry = entries.get(path);
+                    if (entry != null) {
+                        entry.lastAccess = System.nanoTime();
+                    }
+                } finally {
+                    lock.unlock();
+                }
+            }
+        }
 
-            // Oldest resource should be first (so iterator goes from oldest to
-            // youngest.
-            if (nc1 == nc2) {
-                return 0;
-            } else if (nc1 > nc2) {
-                return -1;
-            } else {
-                return 1;
+        void remove(String path, CachedResource cachedResource) {
+            lock.lock();
+            try {
+                SegmentEntry entry = entries.get(path);
+                if (entry != null && entry.resource == cachedResource) {
+                    entries.remove(path);
+                }
+            } finally {
+                lock.unlock();
             }
         }
+
+        /*
+         * Returns the last access time of the least recently used resource in
+         * this segment if it may be evicted or Long.MAX_VALUE if it may not or
+         * the segment is empty.
+         */
+        long getEvictionCandidate(long now) {
+            lock.lock();
+            try {
+                Iterator<SegmentEntry> iter = entries.values().iterator();
+                if (iter.hasNext()) {
+                    SegmentEntry entry = iter.next();
+                    // Don't expire anything that has been checked within the TTL
+                    if (entry.resource.getNextCheck() <= now) {
+                        return entry.lastAccess;
+                    }
+                }
+                return Long.MAX_VALUE;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        void evict(long now, long lastAccessLimit, long bytesToFree) {
+            long freed = 0;
+            lock.lock();
+            try {
+                Iterator<SegmentEntry> iter = entries.values().iterator();
+                while (freed < bytesToFree && iter.hasNext()) {
+                    SegmentEntry entry = iter.next();
+                    if (entry.lastAccess > lastAccessLimit) {
+                        break;
+                    }
+                    // Don't expire anything that has been checked within the TTL
+                    if (entry.resource.getNextCheck() > now) {
+                        break;
+                    }
+                    iter.remove();
+                    CachedResource cachedResource = entry.resource;
+                    if (resourceCache.remove(cachedResource.getWebappPath(), cachedResource)) {
+                        long delta = cachedResource.getSize() +
+                                cachedResource.removeCompressedResources();
+                        size.addAndGet(-delta);
+                        freed += delta;
+                        evictionCount.incrementAndGet();
+                    }
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        void clear() {
+            lock.lock();
+            try {
+                entries.clear();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+
+    private static class SegmentEntry {
+
+        private final CachedResource resource;
+        private long lastAccess;
+
+        SegmentEntry(CachedResource resource, long lastAccess) {
+            this.resource = resource;
+            this.lastAccess = lastAccess;
+        }
     }
 }
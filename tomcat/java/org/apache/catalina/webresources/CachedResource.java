@@ -17,6 +17,7 @@
 package org.apache.catalina.webresources;
 
 import java.io.ByteArrayInputStream;
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.JarURLConnection;
@@ -30,6 +31,9 @@ import java.security.cert.Certificate;
 import java.text.Collator;
 import java.util.Arrays;
 import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.jar.JarEntry;
 import java.util.jar.JarFile;
 import java.util.jar.Manifest;
@@ -74,6 +78,13 @@ public class CachedResource implements WebResource {
     private volatile Boolean cachedIsVirtual = null;
     private volatile Long cachedContentLength = null;
 
+    // Compressed representations of this resource, keyed by content-coding
+    private final ConcurrentMap<String,CompressedResource> compressedResources =
+            new ConcurrentHashMap<>(4);
+    private final Set<String> compressionAttempts = ConcurrentHashMap.newKeySet(4);
+    // Guarded by compressedResources
+    private boolean compressedResourcesRemoved = false;
+
 
     public CachedResource(Cache cache, StandardRoot root, String path, long ttl,
             int objectMaxSizeBytes, boolean usesClassLoaderResources) {
@@ -409,6 +420,85 @@ public class CachedResource implements WebResource {
     }
 
 
+    /**
+     * Obtain a compressed representation of this resource that was previously
+     * added with {@link #addCompressedResource(String, byte[], File)}.
+     *
+     * @param encoding The content-coding of the required representation
+     *
+     * @return The compressed resource or {@code null} if no representation
+     *         using the given content-coding is available
+     */
+    public WebResource getCompressedResource(String encoding) {
+        return compressedResources.get(encoding);
+    }
+
+
+    /**
+     * Register an attempt to create a compressed representation of this
+     * resource. Only one attempt will be permitted for each content-coding
+     * for the lifetime of this cache entry.
+     *
+     * @param encoding The content-coding of the representation
+     *
+     * @return {@code true} if the caller should create the compressed
+     *         representation, otherwise {@code false}
+     */
+    public boolean startCompression(String encoding) {
+        return compressionAttempts.add(encoding);
+    }
+
+
+    /**
+     * Add a compressed representation of this resource to the cache. The
+     * representation will be removed from the cache, and any associated file
+     * deleted, when this entry is removed from the cache.
+     *
+     * @param encoding The content-coding used to compress the content
+     * @param content  The compressed content
+     * @param file     A file containing the compressed content that may be
+     *                     used to serve the resource using sendfile or
+     *                     {@code null} if no such file exists
+     *
+     * @return {@code true} if the compressed representation was added to the
+     *         cache. If {@code false} is returned any file provided has been
+     *         deleted.
+     */
+    public boolean addCompressedResource(String encoding, byte[] content, File file) {
+        CompressedResource compressedResource = new CompressedResource(this, encoding, content, file);
+        synchronized (compressedResources) {
+            if (compressedResourcesRemoved || !cache.isCached(this) ||
+                    compressedResources.putIfAbsent(encoding, compressedResource) != null) {
+                compressedResource.destroy();
+                return false;
+            }
+        }
+        // If this entry was removed from the cache in the meantime the removal
+        // will have accounted for the size of the compressed resource
+        cache.addSize(compressedResource.getSize());
+        return true;
+    }
+
+
+    /*
+     * Removes all compressed representations, deleting any associated files,
+     * and returns the number of bytes to remove from the cache size. No
+     * further representations may be added once this method has been called.
+     */
+    long removeCompressedResources() {
+        long result = 0;
+        synchronized (compressedResources) {
+            compressedResourcesRemoved = true;
+            for (CompressedResource compressedResource : compressedResources.values()) {
+                result += compressedResource.getSize();
+                compressedResource.destroy();
+            }
+            compressedResources.clear();
+        }
+        return result;
+    }
+
+
     // Assume that the cache entry will always include the content unless the
     // resource content is larger than objectMaxSizeBytes. This isn't always the
     // case but it makes tracking the current cache size easier.
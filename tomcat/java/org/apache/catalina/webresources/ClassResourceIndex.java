@@ -0,0 +1,199 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.catalina.webresources;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.jar.JarEntry;
+
+import org.apache.catalina.WebResourceSet;
+import org.apache.juli.logging.Log;
+import org.apache.juli.logging.LogFactory;
+import org.apache.tomcat.util.res.StringManager;
+
+/**
+ * An exact index, by directory, of the contents of the JARs that provide
+ * class loader resources. This allows a lookup for a class loader resource to
+ * skip the JARs that cannot contain the resource rather than checking every
+ * JAR in turn.
+ * <p>
+ * Resource sets that cannot be indexed, such as directories and multi-release
+ * JARs, are always checked. The order in which the resource sets are checked
+ * is unchanged.
+ */
+final class ClassResourceIndex {
+
+    private static final Log log = LogFactory.getLog(ClassResourceIndex.class);
+    private static final StringManager sm = StringManager.getManager(ClassResourceIndex.class);
+
+    private static final String MOUNT = "/WEB-INF/classes";
+    private static final String PREFIX = MOUNT + "/";
+
+    private final List<WebResourceSet> resourceSets;
+    private final List<WebResourceSet> unindexedResourceSets = new ArrayList<>();
+    private final Map<String,List<WebResourceSet>> index = new HashMap<>();
+
+
+    /**
+     * Build the index. The archives are read in parallel using the provided
+     * executor and the calling thread.
+     *
+     * @param resourceSets The class loader resource sets in the order in which
+     *                     they are checked
+     * @param executor     The executor to use to read the archives. If
+     *                     {@code null} they are read by the calling thread.
+     *
+     * @throws InterruptedException if the calling thread is interrupted while
+     *         waiting for the archives to be read
+     */
+    ClassResourceIndex(List<WebResourceSet> resourceSets, Executor executor)
+            throws InterruptedException {
+        this.resourceSets = new ArrayList<>(resourceSets);
+
+        int count = this.resourceSets.size();
+        @SuppressWarnings("unchecked")
+        Set<String>[] directories = new Set[count];
+        AtomicInteger next = new AtomicInteger();
+        CountDownLatch done = new CountDownLatch(count);
+
+        Runnable reader = () -> {
+            int i;
+            while ((i = next.getAndIncrement()) < count) {
+                try {
+                    directories[i] = getDirectories(this.resourceSets.get(i));
+                } finally {
+                    done.countDown();
+                }
+            }
+        };
+
+        // The calling thread also reads archives so the index is built even if
+        // the executor is busy, for example because it is starting this web
+        // application.
+        if (executor != null) {
+            int threads = Math.min(count, Runtime.getRuntime().availableProcessors()) - 1;
+            try {
+                for (int i = 0; i < threads; i++) {
+                    executor.execute(reader);
+                }
+            } catch (RejectedExecutionException e) {
+                // Ignore. The calling thread will read any remaining archives.
+            }
+        }
+        reader.run();
+        done.await();
+
+        for (int i = 0; i < count; i++) {
+            WebResourceSet resourceSet = this.resourceSets.get(i);
+            if (directories[i] == null) {
+                unindexedResourceSets.add(resourceSet);
+                for (List<WebResourceSet> list : index.values()) {
+                    list.add(resourceSet);
+                }
+            } else {
+                for (String directory : directories[i]) {
+                    index.computeIfAbsent(directory,
+                            k -> new ArrayList<>(unindexedResourceSets)).add(resourceSet);
+                }
+            }
+        }
+
+        if (log.isDebugEnabled()) {
+            log.debug(sm.getString("classResourceIndex.built", Integer.valueOf(count),
+                    Integer.valueOf(unindexedResourceSets.size()), Integer.valueOf(index.size())));
+        }
+    }
+
+
+    /**
+     * Obtain the resource sets that may contain the given path.
+     *
+     * @param path The path of the resource, relative to the web application
+     *             root
+     *
+     * @return The resource sets, in the order they should be checked
+     */
+    List<WebResourceSet> getResourceSets(String path) {
+        if (path.length() <= PREFIX.length() || !path.startsWith(PREFIX)) {
+            return resourceSets;
+        }
+        int end = path.length();
+        if (path.charAt(end - 1) == '/') {
+            end--;
+        }
+        int slash = path.lastIndexOf('/', end - 1);
+        List<WebResourceSet> result = index.get(path.substring(PREFIX.length(), slash + 1));
+        if (result == null) {
+            return unindexedResourceSets;
+        }
+        return result;
+    }
+
+
+    /*
+     * Returns the directories in the archive that contain at least one entry
+     * or null if the resource set cannot be indexed.
+     */
+    private static Set<String> getDirectories(WebResourceSet resourceSet) {
+        if (!(resourceSet instanceof AbstractArchiveResourceSet)) {
+            return null;
+        }
+        AbstractArchiveResourceSet archive = (AbstractArchiveResourceSet) resourceSet;
+        if (!MOUNT.equals(archive.getWebAppMount()) || archive.getInternalPath().length() > 0) {
+            return null;
+        }
+        try {
+            Map<String,JarEntry> entries = archive.getArchiveEntries(false);
+            // Lookups in multi-release JARs are not based on the entry name.
+            // Some archives only determine if they are multi-release when the
+            // entries are read.
+            if (entries == null || archive.isMultiRelease()) {
+                return null;
+            }
+            Set<String> result = new HashSet<>();
+            // Top-level entries
+            result.add("");
+            for (String name : entries.keySet()) {
+                int end = name.length();
+                if (end > 0 && name.charAt(end - 1) == '/') {
+                    end--;
+                }
+                // Parent directories contain implicit directory entries
+                int slash;
+                while (end > 0 && (slash = name.lastIndexOf('/', end - 1)) >= 0) {
+                    if (!result.add(name.substring(0, slash + 1))) {
+                        // The remaining parents have already been added
+                        break;
+                    }
+                    end = slash;
+                }
+            }
+            return result;
+        } catch (RuntimeException e) {
+            log.warn(sm.getString("classResourceIndex.archiveFail", archive.getBase()), e);
+            return null;
+        }
+    }
+}
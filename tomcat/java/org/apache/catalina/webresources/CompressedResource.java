@@ -0,0 +1,231 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.catalina.webresources;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.security.cert.Certificate;
+import java.util.jar.Manifest;
+
+import org.apache.catalina.WebResource;
+import org.apache.catalina.WebResourceRoot;
+import org.apache.juli.logging.Log;
+import org.apache.juli.logging.LogFactory;
+import org.apache.tomcat.util.res.StringManager;
+
+/**
+ * A compressed representation of a {@link CachedResource} that is held in the
+ * cache alongside the original. The content is always held in memory. It may
+ * also be written to a file so that it can be served using sendfile.
+ */
+class CompressedResource implements WebResource {
+
+    private static final Log log = LogFactory.getLog(CompressedResource.class);
+    private static final StringManager sm = StringManager.getManager(CompressedResource.class);
+
+    // Estimate of the size of this object, excluding the content
+    private static final long CACHE_ENTRY_SIZE = 200;
+
+    private final CachedResource original;
+    private final String encoding;
+    private final byte[] content;
+    private final File file;
+    private final String canonicalPath;
+
+    private volatile String weakETag;
+
+
+    CompressedResource(CachedResource original, String encoding, byte[] content, File file) {
+        this.original = original;
+        this.encoding = encoding;
+        this.content = content;
+        String canonicalPath = null;
+        if (file != null) {
+            try {
+                canonicalPath = file.getCanonicalPath();
+            } catch (IOException ioe) {
+                // Sendfile will not be available for this resource
+                log.warn(sm.getString("compressedResource.canonicalPathFail", file), ioe);
+                delete(file);
+                file = null;
+            }
+        }
+        this.file = file;
+        this.canonicalPath = canonicalPath;
+    }
+
+
+    String getEncoding() {
+        return encoding;
+    }
+
+
+    long getSize() {
+        return CACHE_ENTRY_SIZE + content.length;
+    }
+
+
+    /**
+     * Remove the file, if any, used to serve this resource via sendfile.
+     */
+    void destroy() {
+        if (file != null) {
+            delete(file);
+        }
+    }
+
+
+    @Override
+    public long getLastModified() {
+        return original.getLastModified();
+    }
+
+    @Override
+    public String getLastModifiedHttp() {
+        return original.getLastModifiedHttp();
+    }
+
+    @Override
+    public boolean exists() {
+        return true;
+    }
+
+    @Override
+    public boolean isVirtual() {
+        return false;
+    }
+
+    @Override
+    public boolean isDirectory() {
+        return false;
+    }
+
+    @Override
+    public boolean isFile() {
+        return true;
+    }
+
+    @Override
+    public boolean delete() {
+        return false;
+    }
+
+    @Override
+    public String getName() {
+        return original.getName();
+    }
+
+    @Override
+    public long getContentLength() {
+        return content.length;
+    }
+
+    @Override
+    public String getCanonicalPath() {
+        return canonicalPath;
+    }
+
+    @Override
+    public boolean canRead() {
+        return true;
+    }
+
+    @Override
+    public String getWebappPath() {
+        return original.getWebappPath();
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The ETag is derived from the ETag of the original resource and the
+     * content-coding so that the compressed and uncompressed representations
+     * never share an ETag.
+     */
+    @Override
+    public String getETag() {
+        if (weakETag == null) {
+            String originalETag = original.getETag();
+            if (originalETag != null && originalETag.endsWith("\"")) {
+                weakETag = originalETag.substring(0, originalETag.length() - 1) +
+                        "-" + encoding + "\"";
+            }
+        }
+        return weakETag;
+    }
+
+    @Override
+    public void setMimeType(String mimeType) {
+        original.setMimeType(mimeType);
+    }
+
+    @Override
+    public String getMimeType() {
+        return original.getMimeType();
+    }
+
+    @Override
+    public InputStream getInputStream() {
+        return new ByteArrayInputStream(content);
+    }
+
+    @Override
+    public byte[] getContent() {
+        return content;
+    }
+
+    @Override
+    public long getCreation() {
+        return original.getCreation();
+    }
+
+    @Override
+    public URL getURL() {
+        // There is no URL that may be used to access the compressed content
+        return null;
+    }
+
+    @Override
+    public URL getCodeBase() {
+        return null;
+    }
+
+    @Override
+    public Certificate[] getCertificates() {
+        return null;
+    }
+
+    @Override
+    public Manifest getManifest() {
+        return null;
+    }
+
+    @Override
+    public WebResourceRoot getWebResourceRoot() {
+        return original.getWebResourceRoot();
+    }
+
+
+    private static void delete(File file) {
+        if (!file.delete() && file.exists()) {
+            log.warn(sm.getString("compressedResource.deleteFail", file));
+        }
+    }
+}
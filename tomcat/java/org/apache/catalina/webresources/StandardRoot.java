@@ -31,13 +31,16 @@ import java.util.List;
 import java.util.Locale;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
 
 import javax.management.ObjectName;
 
+import org.apache.catalina.Container;
 import org.apache.catalina.Context;
 import org.apache.catalina.Host;
 import org.apache.catalina.LifecycleException;
 import org.apache.catalina.LifecycleState;
+import org.apache.catalina.Service;
 import org.apache.catalina.TrackedWebResource;
 import org.apache.catalina.WebResource;
 import org.apache.catalina.WebResourceRoot;
@@ -75,6 +78,9 @@ public class StandardRoot extends LifecycleMBeanBase implements WebResourceRoot
     private final List<WebResourceSet> jarResources = new ArrayList<>();
     private final List<WebResourceSet> postResources = new ArrayList<>();
 
+    private boolean indexClassResources = false;
+    private volatile ClassResourceIndex classResourceIndex = null;
+
     private final Cache cache = new Cache(this);
     private boolean cachingAllowed = true;
     private ObjectName cacheJmxName = null;
@@ -274,7 +280,11 @@ public class StandardRoot extends LifecycleMBeanBase implements WebResourceRoot
         WebResource result = null;
         WebResource virtual = null;
         WebResource mainEmpty = null;
+        ClassResourceIndex classResourceIndex = this.classResourceIndex;
         for (List<WebResourceSet> list : allResources) {
+            if (list == classResources && classResourceIndex != null) {
+                list = classResourceIndex.getResourceSets(path);
+            }
             for (WebResourceSet webResourceSet : list) {
                 if (!useClassLoaderResources &&  !webResourceSet.getClassLoaderOnly() ||
                         useClassLoaderResources && !webResourceSet.getStaticOnly()) {
@@ -321,7 +331,11 @@ public class StandardRoot extends LifecycleMBeanBase implements WebResourceRoot
     protected WebResource[] getResourcesInternal(String path,
             boolean useClassLoaderResources) {
         List<WebResource> result = new ArrayList<>();
+        ClassResourceIndex classResourceIndex = this.classResourceIndex;
         for (List<WebResourceSet> list : allResources) {
+            if (list == classResources && classResourceIndex != null) {
+                list = classResourceIndex.getResourceSets(path);
+            }
             for (WebResourceSet webResourceSet : list) {
                 if (useClassLoaderResources || !webResourceSet.getClassLoaderOnly()) {
                     WebResource webResource = webResourceSet.getResource(path);
@@ -384,6 +398,7 @@ public class StandardRoot extends LifecycleMBeanBase implements WebResourceRoot
                 break;
             case CLASSES_JAR:
                 resourceList = classResources;
+                classResourceIndex = null;
                 break;
             case RESOURCE_JAR:
                 resourceList = jarResources;
@@ -469,6 +484,7 @@ public class StandardRoot extends LifecycleMBeanBase implements WebResourceRoot
     protected void addClassResources(WebResourceSet webResourceSet) {
         webResourceSet.setRoot(this);
         classResources.add(webResourceSet);
+        classResourceIndex = null;
     }
 
     @Override
@@ -554,6 +570,28 @@ public class StandardRoot extends LifecycleMBeanBase implements WebResourceRoot
         return result;
     }
 
+    /**
+     * @return {@code true} if an index of the contents of the JARs that
+     *         provide class loader resources is built when the resources are
+     *         started
+     */
+    public boolean getIndexClassResources() {
+        return indexClassResources;
+    }
+
+    /**
+     * Configure whether an index of the contents of the JARs that provide
+     * class loader resources is built when the resources are started. The
+     * index allows class loader resource lookups to skip the JARs that do not
+     * contain the requested resource. A change takes effect the next time the
+     * resources are started.
+     *
+     * @param indexClassResources {@code true} to build the index
+     */
+    public void setIndexClassResources(boolean indexClassResources) {
+        this.indexClassResources = indexClassResources;
+    }
+
     @Override
     public Context getContext() {
         return context;
@@ -726,11 +764,35 @@ public class StandardRoot extends LifecycleMBeanBase implements WebResourceRoot
             classResource.start();
         }
 
+        if (indexClassResources) {
+            buildClassResourceIndex();
+        }
+
         cache.enforceObjectMaxSizeLimit();
 
         setState(LifecycleState.STARTING);
     }
 
+    private void buildClassResourceIndex() {
+        Executor executor = null;
+        Service service = Container.getService(context);
+        if (service != null && service.getServer() != null) {
+            executor = service.getServer().getUtilityExecutor();
+        }
+        long start = System.nanoTime();
+        try {
+            classResourceIndex = new ClassResourceIndex(classResources, executor);
+        } catch (InterruptedException e) {
+            // Continue without the index
+            Thread.currentThread().interrupt();
+            return;
+        }
+        if (log.isDebugEnabled()) {
+            log.debug(sm.getString("standardRoot.classResourceIndex", context.getName(),
+                    Long.valueOf((System.nanoTime() - start) / 1000000)));
+        }
+    }
+
     protected WebResourceSet createMainResourceSet() {
         String docBase = context.getDocBase();
 
@@ -774,6 +836,7 @@ public class StandardRoot extends LifecycleMBeanBase implements WebResourceRoot
         }
         jarResources.clear();
 
+        classResourceIndex = null;
         for (WebResourceSet webResourceSet : classResources) {
             webResourceSet.destroy();
         }
@@ -23,6 +23,7 @@ import java.util.Iterator;
 import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.Lock;
 
 import jakarta.servlet.RequestDispatcher;
 
@@ -864,7 +865,9 @@ public abstract class AbstractProcessor extends AbstractProcessorLight implement
         SocketWrapperBase<?> socketWrapper = getSocketWrapper();
         Iterator<DispatchType> dispatches = getIteratorAndClearDispatches();
         if (socketWrapper != null) {
-            synchronized (socketWrapper) {
+            Lock lock = socketWrapper.getLock();
+            lock.lock();
+            try {
                 /*
                  * This method is called when non-blocking IO is initiated by defining
                  * a read and/or write listener in a non-container thread. It is called
@@ -875,7 +878,7 @@ public abstract class AbstractProcessor extends AbstractProcessorLight implement
                  * Processing the dispatches requires (for APR/native at least)
                  * that the socket has been added to the waitingRequests queue. This may
                  * not have occurred by the time that the non-container thread completes
-                 * triggering the call to this method. Therefore, the coded syncs on the
+                 * triggering the call to this method. Therefore, the code locks the
                  * SocketWrapper as the container thread that initiated this
                  * non-container thread holds a lock on the SocketWrapper. The container
                  * thread will add the socket to the waitingRequests queue before
@@ -887,6 +890,8 @@ public abstract class AbstractProcessor extends AbstractProcessorLight implement
                     DispatchType dispatchType = dispatches.next();
                     socketWrapper.processSocket(dispatchType.getSocketStatus(), false);
                 }
+            } finally {
+                lock.unlock();
             }
         }
     }
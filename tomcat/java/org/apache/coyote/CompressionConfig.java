@@ -20,8 +20,11 @@ import java.io.IOException;
 import java.io.StringReader;
 import java.util.ArrayList;
 import java.util.Enumeration;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
 import java.util.Set;
 import java.util.StringTokenizer;
 import java.util.regex.Pattern;
@@ -46,6 +49,9 @@ public class CompressionConfig {
             "text/javascript,application/javascript,application/json,application/xml";
     private String[] compressibleMimeTypes = null;
     private int compressionMinSize = 2048;
+    private String compressionEncodings = "gzip";
+    private volatile CompressionEncoding[] compressionEncodingInstances =
+            new CompressionEncoding[] { new GzipCompressionEncoding() };
 
 
     /**
@@ -182,6 +188,93 @@ public class CompressionConfig {
     }
 
 
+    public String getCompressionEncodings() {
+        return compressionEncodings;
+    }
+
+
+    /**
+     * Set the content-codings that may be used to compress responses. The
+     * value is a comma separated list in order of server preference. Each
+     * entry is the name of a built-in encoding (<code>gzip</code>,
+     * <code>br</code> or <code>zstd</code>) or the fully qualified class name
+     * of a {@link CompressionEncoding} implementation, optionally followed by
+     * <code>:</code> and the compression level to use, e.g.
+     * <code>br:5,zstd:3,gzip</code>.
+     *
+     * @param compressionEncodings The content-codings to use
+     *
+     * @throws IllegalArgumentException if the value is not valid
+     */
+    public void setCompressionEncodings(String compressionEncodings) {
+        List<CompressionEncoding> result = new ArrayList<>();
+        Set<String> names = new HashSet<>();
+        StringTokenizer tokens = new StringTokenizer(compressionEncodings, ",");
+        while (tokens.hasMoreTokens()) {
+            String token = tokens.nextToken().trim();
+            if (token.length() == 0) {
+                continue;
+            }
+            String level = null;
+            int colon = token.indexOf(':');
+            if (colon > -1) {
+                level = token.substring(colon + 1).trim();
+                token = token.substring(0, colon).trim();
+            }
+            CompressionEncoding encoding = createCompressionEncoding(token);
+            if (level != null) {
+                try {
+                    encoding.setLevel(Integer.parseInt(level));
+                } catch (NumberFormatException e) {
+                    throw new IllegalArgumentException(sm.getString(
+                            "compressionConfig.invalidLevel", level, token), e);
+                }
+            }
+            if (!names.add(encoding.getName())) {
+                throw new IllegalArgumentException(sm.getString(
+                        "compressionConfig.duplicateEncoding", encoding.getName()));
+            }
+            result.add(encoding);
+        }
+        if (result.isEmpty()) {
+            throw new IllegalArgumentException(sm.getString(
+                    "compressionConfig.noEncodings", compressionEncodings));
+        }
+        this.compressionEncodings = compressionEncodings;
+        this.compressionEncodingInstances = result.toArray(new CompressionEncoding[0]);
+    }
+
+
+    private static CompressionEncoding createCompressionEncoding(String name) {
+        switch (name.toLowerCase(Locale.ENGLISH)) {
+        case "gzip":
+            return new GzipCompressionEncoding();
+        case "br":
+            return new BrotliCompressionEncoding();
+        case "zstd":
+            return new ZstdCompressionEncoding();
+        default:
+            try {
+                Class<?> clazz = Class.forName(name);
+                return (CompressionEncoding) clazz.getConstructor().newInstance();
+            } catch (ReflectiveOperationException | ClassCastException e) {
+                throw new IllegalArgumentException(sm.getString(
+                        "compressionConfig.unknownEncoding", name), e);
+            }
+        }
+    }
+
+
+    /**
+     * Obtain the configured content-codings in order of server preference.
+     *
+     * @return A copy of the currently configured content-codings
+     */
+    public CompressionEncoding[] getCompressionEncodingInstances() {
+        return compressionEncodingInstances.clone();
+    }
+
+
     /**
      * Determines if compression should be enabled for the given response and if
      * it is, sets any necessary headers to mark it as such.
@@ -193,12 +286,28 @@ public class CompressionConfig {
      *         otherwise {@code false}
      */
     public boolean useCompression(Request request, Response response) {
+        return getCompressionEncoding(request, response) != null;
+    }
+
+
+    /**
+     * Determines if compression should be enabled for the given response and if
+     * it is, sets any necessary headers to mark it as such.
+     *
+     * @param request  The request that triggered the response
+     * @param response The response to consider compressing
+     *
+     * @return The content-coding to use to compress the response or
+     *         {@code null} if the response should not be compressed
+     */
+    public CompressionEncoding getCompressionEncoding(Request request, Response response) {
         // Check if compression is enabled
         if (compressionLevel == 0) {
-            return false;
+            return null;
         }
 
         MimeHeaders responseHeaders = response.getMimeHeaders();
+        CompressionEncoding[] encodings = compressionEncodingInstances;
 
         // Check if content is not already compressed
         MessageBytes contentEncodingMB = responseHeaders.getValue("Content-Encoding");
@@ -212,10 +321,15 @@ public class CompressionConfig {
                 // Because we are using StringReader, any exception here is a
                 // Tomcat bug.
                 log.warn(sm.getString("compressionConfig.ContentEncodingParseFail"), e);
-                return false;
+                return null;
             }
             if (tokens.contains("gzip") || tokens.contains("br")) {
-                return false;
+                return null;
+            }
+            for (CompressionEncoding encoding : encodings) {
+                if (tokens.contains(encoding.getName())) {
+                    return null;
+                }
             }
         }
 
@@ -224,14 +338,14 @@ public class CompressionConfig {
             // Check if the response is of sufficient length to trigger the compression
             long contentLength = response.getContentLengthLong();
             if (contentLength != -1 && contentLength < compressionMinSize) {
-                return false;
+                return null;
             }
 
             // Check for compatible MIME-TYPE
             String[] compressibleMimeTypes = getCompressibleMimeTypes();
             if (compressibleMimeTypes != null &&
                     !startsWithStringArray(compressibleMimeTypes, response.getContentType())) {
-                return false;
+                return null;
             }
         }
 
@@ -240,37 +354,25 @@ public class CompressionConfig {
         if (eTag != null && !eTag.trim().startsWith("W/")) {
             // Has an ETag that doesn't start with "W/..." so it must be a
             // strong ETag
-            return false;
+            return null;
         }
 
         // If processing reaches this far, the response might be compressed.
         // Therefore, set the Vary header to keep proxies happy
         ResponseUtil.addVaryFieldName(responseHeaders, "accept-encoding");
 
-        // Check if user-agent supports gzip encoding
-        // Only interested in whether gzip encoding is supported. Other
-        // encodings and weights can be ignored.
-        Enumeration<String> headerValues = request.getMimeHeaders().values("accept-encoding");
-        boolean foundGzip = false;
-        while (!foundGzip && headerValues.hasMoreElements()) {
-            List<AcceptEncoding> acceptEncodings = null;
-            try {
-                acceptEncodings = AcceptEncoding.parse(new StringReader(headerValues.nextElement()));
-            } catch (IOException ioe) {
-                // If there is a problem reading the header, disable compression
-                return false;
-            }
-
-            for (AcceptEncoding acceptEncoding : acceptEncodings) {
-                if ("gzip".equalsIgnoreCase(acceptEncoding.getEncoding())) {
-                    foundGzip = true;
-                    break;
-                }
-            }
+        // Select the content-coding the user agent prefers. Ties are resolved
+        // using the server's order of preference.
+        CompressionEncoding selected;
+        try {
+            selected = selectEncoding(request.getMimeHeaders().values("accept-encoding"), encodings);
+        } catch (IOException ioe) {
+            // If there is a problem reading the header, disable compression
+            return null;
         }
 
-        if (!foundGzip) {
-            return false;
+        if (selected == null) {
+            return null;
         }
 
         // If force mode, the browser checks are skipped
@@ -282,7 +384,7 @@ public class CompressionConfig {
                 if(userAgentValueMB != null) {
                     String userAgentValue = userAgentValueMB.toString();
                     if (noCompressionUserAgents.matcher(userAgentValue).matches()) {
-                        return false;
+                        return null;
                     }
                 }
             }
@@ -293,9 +395,53 @@ public class CompressionConfig {
         // Compressed content length is unknown so mark it as such.
         response.setContentLength(-1);
         // Configure the content encoding for compressed content
-        responseHeaders.setValue("Content-Encoding").setString("gzip");
+        responseHeaders.setValue("Content-Encoding").setString(selected.getName());
+
+        return selected;
+    }
+
+
+    /**
+     * Select the content-coding to use based on the quality values in the
+     * Accept-Encoding request headers. Codings not explicitly listed take the
+     * quality of the <code>*</code> entry, if any. Codings with a quality of
+     * zero are never selected.
+     *
+     * @param acceptEncodingHeaders The values of the Accept-Encoding headers
+     * @param encodings             The available content-codings in order of
+     *                              server preference
+     *
+     * @return The selected content-coding or {@code null} if none of the
+     *         available codings is acceptable
+     *
+     * @throws IOException If the headers cannot be parsed
+     */
+    public static CompressionEncoding selectEncoding(Enumeration<String> acceptEncodingHeaders,
+            CompressionEncoding[] encodings) throws IOException {
+        Map<String,Double> qualities = new HashMap<>();
+        while (acceptEncodingHeaders.hasMoreElements()) {
+            List<AcceptEncoding> acceptEncodings =
+                    AcceptEncoding.parse(new StringReader(acceptEncodingHeaders.nextElement()), true);
+            for (AcceptEncoding acceptEncoding : acceptEncodings) {
+                qualities.putIfAbsent(acceptEncoding.getEncoding().toLowerCase(Locale.ENGLISH),
+                        Double.valueOf(acceptEncoding.getQuality()));
+            }
+        }
 
-        return true;
+        Double wildcard = qualities.get("*");
+        CompressionEncoding selected = null;
+        double selectedQuality = 0;
+        for (CompressionEncoding encoding : encodings) {
+            Double quality = qualities.get(encoding.getName());
+            if (quality == null) {
+                quality = wildcard;
+            }
+            if (quality != null && quality.doubleValue() > selectedQuality) {
+                selected = encoding;
+                selectedQuality = quality.doubleValue();
+            }
+        }
+        return selected;
     }
 
 
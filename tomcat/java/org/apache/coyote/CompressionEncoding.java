@@ -0,0 +1,69 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  See the NOTICE file distributed with
+ *  this work for additional information regarding copyright ownership.
+ *  The ASF licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.coyote;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * A content-coding that may be used to compress HTTP response bodies.
+ * Implementations are configured via the <code>compressionEncodings</code>
+ * attribute of the HTTP connector and must provide a public no-argument
+ * constructor.
+ */
+public interface CompressionEncoding {
+
+    /**
+     * @return the content-coding token, in lower case, used in the
+     *         Accept-Encoding and Content-Encoding headers
+     */
+    String getName();
+
+
+    /**
+     * @return the configured compression level
+     */
+    int getLevel();
+
+
+    /**
+     * Configure the compression level.
+     *
+     * @param level The compression level. The valid range depends on the
+     *              encoding.
+     *
+     * @throws IllegalArgumentException if the level is not valid for this
+     *         encoding
+     */
+    void setLevel(int level);
+
+
+    /**
+     * Create a new stream that compresses the data written to it and writes
+     * the result to the provided stream. {@link OutputStream#flush()} must
+     * write all data received so far in a form the client can decode and
+     * {@link OutputStream#close()} must complete the compressed data and then
+     * close the provided stream.
+     *
+     * @param out The stream to write the compressed data to
+     *
+     * @return The compressing stream
+     *
+     * @throws IOException If the stream cannot be created
+     */
+    OutputStream createOutputStream(OutputStream out) throws IOException;
+}
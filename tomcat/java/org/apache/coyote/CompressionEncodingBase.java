@@ -0,0 +1,64 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  See the NOTICE file distributed with
+ *  this work for additional information regarding copyright ownership.
+ *  The ASF licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.coyote;
+
+import org.apache.tomcat.util.res.StringManager;
+
+/**
+ * Base class for {@link CompressionEncoding} implementations that support a
+ * contiguous range of compression levels.
+ */
+public abstract class CompressionEncodingBase implements CompressionEncoding {
+
+    private static final StringManager sm = StringManager.getManager(CompressionEncodingBase.class);
+
+    private final String name;
+    private final int minLevel;
+    private final int maxLevel;
+    private int level;
+
+
+    protected CompressionEncodingBase(String name, int minLevel, int maxLevel, int defaultLevel) {
+        this.name = name;
+        this.minLevel = minLevel;
+        this.maxLevel = maxLevel;
+        this.level = defaultLevel;
+    }
+
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+
+    @Override
+    public int getLevel() {
+        return level;
+    }
+
+
+    @Override
+    public void setLevel(int level) {
+        if (level < minLevel || level > maxLevel) {
+            throw new IllegalArgumentException(sm.getString("compressionEncoding.invalidLevel",
+                    Integer.toString(level), name, Integer.toString(minLevel),
+                    Integer.toString(maxLevel)));
+        }
+        this.level = level;
+    }
+}
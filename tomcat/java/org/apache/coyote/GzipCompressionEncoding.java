@@ -0,0 +1,48 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  See the NOTICE file distributed with
+ *  this work for additional information regarding copyright ownership.
+ *  The ASF licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.coyote;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * The gzip content-coding, implemented using the JRE's {@link Deflater}.
+ */
+public class GzipCompressionEncoding extends CompressionEncodingBase {
+
+    public GzipCompressionEncoding() {
+        super("gzip", Deflater.DEFAULT_COMPRESSION, Deflater.BEST_COMPRESSION,
+                Deflater.DEFAULT_COMPRESSION);
+    }
+
+
+    @Override
+    public OutputStream createOutputStream(OutputStream out) throws IOException {
+        return new LevelGZIPOutputStream(out, getLevel());
+    }
+
+
+    private static class LevelGZIPOutputStream extends GZIPOutputStream {
+
+        LevelGZIPOutputStream(OutputStream out, int level) throws IOException {
+            super(out, true);
+            def.setLevel(level);
+        }
+    }
+}
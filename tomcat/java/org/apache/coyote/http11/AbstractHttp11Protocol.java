@@ -35,6 +35,7 @@ import jakarta.servlet.http.HttpUpgradeHandler;
 
 import org.apache.coyote.AbstractProtocol;
 import org.apache.coyote.CompressionConfig;
+import org.apache.coyote.CompressionEncoding;
 import org.apache.coyote.ContinueResponseTiming;
 import org.apache.coyote.Processor;
 import org.apache.coyote.Request;
@@ -46,6 +47,7 @@ import org.apache.coyote.http11.upgrade.UpgradeGroupInfo;
 import org.apache.coyote.http11.upgrade.UpgradeProcessorExternal;
 import org.apache.coyote.http11.upgrade.UpgradeProcessorInternal;
 import org.apache.tomcat.util.buf.StringUtils;
+import org.apache.tomcat.util.http.HeaderCountHistogram;
 import org.apache.tomcat.util.modeler.Registry;
 import org.apache.tomcat.util.modeler.Util;
 import org.apache.tomcat.util.net.AbstractEndpoint;
@@ -324,11 +326,24 @@ public abstract class AbstractHttp11Protocol<S> extends AbstractProtocol<S> {
     }
 
 
+    public String getCompressionEncodings() {
+        return compressionConfig.getCompressionEncodings();
+    }
+    public void setCompressionEncodings(String compressionEncodings) {
+        compressionConfig.setCompressionEncodings(compressionEncodings);
+    }
+
+
     public boolean useCompression(Request request, Response response) {
         return compressionConfig.useCompression(request, response);
     }
 
 
+    public CompressionEncoding getCompressionEncoding(Request request, Response response) {
+        return compressionConfig.getCompressionEncoding(request, response);
+    }
+
+
     private Pattern restrictedUserAgents = null;
     /**
      * Get the string form of the regular expression that defines the User
@@ -420,6 +435,15 @@ public abstract class AbstractHttp11Protocol<S> extends AbstractProtocol<S> {
     }
 
 
+    /**
+     * The number of headers seen in recent requests. Used to size the header
+     * storage of each processor so it does not have to be expanded while
+     * parsing a typical request.
+     */
+    private final HeaderCountHistogram headerCountHistogram = new HeaderCountHistogram();
+    HeaderCountHistogram getHeaderCountHistogram() { return headerCountHistogram; }
+
+
     /**
      * This field indicates if the protocol is treated as if it is secure. This
      * normally means https is being used but can be used to fake https e.g
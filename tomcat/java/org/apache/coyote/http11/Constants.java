@@ -131,10 +131,20 @@ public final class Constants {
     public static final int VOID_FILTER = 2;
 
 
+    /**
+     * Compression filter (output).
+     */
+    public static final int COMPRESSION_FILTER = 3;
+
+
     /**
      * GZIP filter (output).
+     *
+     * @deprecated Use {@link #COMPRESSION_FILTER}. Will be removed in Tomcat
+     *             10.1.x.
      */
-    public static final int GZIP_FILTER = 3;
+    @Deprecated
+    public static final int GZIP_FILTER = COMPRESSION_FILTER;
 
 
     /**
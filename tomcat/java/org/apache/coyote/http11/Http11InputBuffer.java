@@ -451,6 +451,12 @@ public class Http11InputBuffer implements InputBuffer, ApplicationBufferHandler
                     if (!fill(false)) // request line parsing
                         return false;
                 }
+                if (chr != Constants.CR) {
+                    skipRequestTarget();
+                    if (byteBuffer.position() >= byteBuffer.limit()) {
+                        continue;
+                    }
+                }
                 int pos = byteBuffer.position();
                 prevChr = chr;
                 chr = byteBuffer.get();
@@ -868,6 +874,11 @@ public class Http11InputBuffer implements InputBuffer, ApplicationBufferHandler
                 }
             }
 
+            skipHeaderName();
+            if (byteBuffer.position() >= byteBuffer.limit()) {
+                continue;
+            }
+
             int pos = byteBuffer.position();
             chr = byteBuffer.get();
             if (chr == Constants.COLON) {
@@ -941,6 +952,13 @@ public class Http11InputBuffer implements InputBuffer, ApplicationBufferHandler
                         }
                     }
 
+                    if (chr != Constants.CR) {
+                        copyHeaderValue();
+                        if (byteBuffer.position() >= byteBuffer.limit()) {
+                            continue;
+                        }
+                    }
+
                     prevChr = chr;
                     chr = byteBuffer.get();
                     if (chr == Constants.CR) {
@@ -1004,6 +1022,102 @@ public class Http11InputBuffer implements InputBuffer, ApplicationBufferHandler
     }
 
 
+    /*
+     * Fast path for the request target. Consumes bytes that need no special
+     * handling directly from the backing array. Stops at the first byte that
+     * needs to be examined by the main parsing loop (delimiters, the start of
+     * the query string, non-ASCII and invalid bytes) or at the end of the
+     * available data.
+     */
+    private void skipRequestTarget() {
+        byte[] buf = byteBuffer.array();
+        int start = byteBuffer.position();
+        int limit = byteBuffer.limit();
+        int pos = start;
+        if (parsingRequestLineQPos == -1) {
+            while (pos < limit) {
+                byte b = buf[pos];
+                if (b < 0 || b == Constants.QUESTION || httpParser.isNotRequestTargetRelaxed(b)) {
+                    break;
+                }
+                pos++;
+            }
+        } else {
+            while (pos < limit) {
+                byte b = buf[pos];
+                if (b < 0 || !httpParser.isQueryRelaxed(b)) {
+                    break;
+                }
+                pos++;
+            }
+        }
+        if (pos > start) {
+            chr = buf[pos - 1];
+            byteBuffer.position(pos);
+        }
+    }
+
+
+    /*
+     * Fast path for header names. Consumes token characters, converting them
+     * to lower case in place, directly from the backing array. Stops at the
+     * first byte that is not a token character (usually the colon) or at the
+     * end of the available data.
+     */
+    private void skipHeaderName() {
+        byte[] buf = byteBuffer.array();
+        int start = byteBuffer.position();
+        int limit = byteBuffer.limit();
+        int pos = start;
+        while (pos < limit) {
+            byte b = buf[pos];
+            if (b < 0 || !HttpParser.isToken(b)) {
+                break;
+            }
+            if ((b >= Constants.A) && (b <= Constants.Z)) {
+                buf[pos] = (byte) (b - Constants.LC_OFFSET);
+            }
+            pos++;
+        }
+        if (pos > start) {
+            chr = buf[pos - 1];
+            byteBuffer.position(pos);
+        }
+    }
+
+
+    /*
+     * Fast path for header values. Finds the run of printable US-ASCII bytes
+     * that starts at the current position and moves it to its final position
+     * in a single copy. Stops at the first CR, LF, HT, other control character
+     * or non-ASCII byte, all of which are left for the main parsing loop, or at
+     * the end of the available data.
+     */
+    private void copyHeaderValue() {
+        byte[] buf = byteBuffer.array();
+        int start = byteBuffer.position();
+        int run = HeaderUtil.printableAsciiLength(buf, start, byteBuffer.limit());
+        if (run == 0) {
+            return;
+        }
+        int realPos = headerData.realPos;
+        if (realPos != start) {
+            System.arraycopy(buf, start, buf, realPos, run);
+        }
+        // Trailing spaces are not significant
+        int significant = run;
+        while (significant > 0 && buf[realPos + significant - 1] == Constants.SP) {
+            significant--;
+        }
+        if (significant > 0) {
+            headerData.lastSignificantChar = realPos + significant;
+        }
+        headerData.realPos = realPos + run;
+        chr = buf[start + run - 1];
+        byteBuffer.position(start + run);
+    }
+
+
     private HeaderParseStatus skipLine() throws IOException {
         headerParsePos = HeaderParsePosition.HEADER_SKIPLINE;
         boolean eol = false;
@@ -62,6 +62,22 @@ public class Http11NioProtocol extends AbstractHttp11JsseProtocol<NioChannel> {
       return ((NioEndpoint)getEndpoint()).getPollerThreadPriority();
     }
 
+    public void setPollerThreadCount(int count) {
+        ((NioEndpoint)getEndpoint()).setPollerThreadCount(count);
+    }
+
+    public int getPollerThreadCount() {
+        return ((NioEndpoint)getEndpoint()).getPollerThreadCount();
+    }
+
+    public void setPollerSelectionPolicy(String pollerSelectionPolicy) {
+        ((NioEndpoint)getEndpoint()).setPollerSelectionPolicy(pollerSelectionPolicy);
+    }
+
+    public String getPollerSelectionPolicy() {
+        return ((NioEndpoint)getEndpoint()).getPollerSelectionPolicy();
+    }
+
 
     // ----------------------------------------------------- JMX related methods
 
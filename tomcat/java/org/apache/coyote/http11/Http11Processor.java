@@ -30,6 +30,7 @@ import jakarta.servlet.http.HttpServletResponse;
 import org.apache.coyote.AbstractProcessor;
 import org.apache.coyote.ActionCode;
 import org.apache.coyote.Adapter;
+import org.apache.coyote.CompressionEncoding;
 import org.apache.coyote.ContinueResponseTiming;
 import org.apache.coyote.ErrorState;
 import org.apache.coyote.Request;
@@ -39,7 +40,7 @@ import org.apache.coyote.UpgradeToken;
 import org.apache.coyote.http11.filters.BufferedInputFilter;
 import org.apache.coyote.http11.filters.ChunkedInputFilter;
 import org.apache.coyote.http11.filters.ChunkedOutputFilter;
-import org.apache.coyote.http11.filters.GzipOutputFilter;
+import org.apache.coyote.http11.filters.CompressionOutputFilter;
 import org.apache.coyote.http11.filters.IdentityInputFilter;
 import org.apache.coyote.http11.filters.IdentityOutputFilter;
 import org.apache.coyote.http11.filters.SavedRequestInputFilter;
@@ -52,6 +53,7 @@ import org.apache.tomcat.util.ExceptionUtils;
 import org.apache.tomcat.util.buf.ByteChunk;
 import org.apache.tomcat.util.buf.MessageBytes;
 import org.apache.tomcat.util.http.FastHttpDateFormat;
+import org.apache.tomcat.util.http.HeaderCountHistogram;
 import org.apache.tomcat.util.http.MimeHeaders;
 import org.apache.tomcat.util.http.parser.HttpParser;
 import org.apache.tomcat.util.http.parser.TokenList;
@@ -182,7 +184,7 @@ public class Http11Processor extends AbstractProcessor {
 
         // Create and add the gzip filters.
         //inputBuffer.addFilter(new GzipInputFilter());
-        outputBuffer.addFilter(new GzipOutputFilter());
+        outputBuffer.addFilter(new CompressionOutputFilter());
 
         pluggableFilterIndex = inputBuffer.getFilters().length;
     }
@@ -280,13 +282,18 @@ public class Http11Processor extends AbstractProcessor {
                     keptAlive = true;
                     // Set this every time in case limit has been changed via JMX
                     request.getMimeHeaders().setLimit(protocol.getMaxHeaderCount());
+                    HeaderCountHistogram headerCountHistogram = protocol.getHeaderCountHistogram();
+                    request.getMimeHeaders().ensureCapacity(headerCountHistogram.getSuggestedSize());
                     // Don't parse headers for HTTP/0.9
-                    if (!http09 && !inputBuffer.parseHeaders()) {
-                        // We've read part of the request, don't recycle it
-                        // instead associate it with the socket
-                        openSocket = true;
-                        readComplete = false;
-                        break;
+                    if (!http09) {
+                        if (!inputBuffer.parseHeaders()) {
+                            // We've read part of the request, don't recycle it
+                            // instead associate it with the socket
+                            openSocket = true;
+                            readComplete = false;
+                            break;
+                        }
+                        headerCountHistogram.record(request.getMimeHeaders().size());
                     }
                     if (!protocol.getDisableUploadTimeout()) {
                         socketWrapper.setReadTimeout(protocol.getConnectionUploadTimeout());
@@ -869,9 +876,9 @@ public class Http11Processor extends AbstractProcessor {
         }
 
         // Check for compression
-        boolean useCompression = false;
+        CompressionEncoding compressionEncoding = null;
         if (entityBody && sendfileData == null) {
-            useCompression = protocol.useCompression(request, response);
+            compressionEncoding = protocol.getCompressionEncoding(request, response);
         }
 
         MimeHeaders headers = response.getMimeHeaders();
@@ -911,8 +918,11 @@ public class Http11Processor extends AbstractProcessor {
             }
         }
 
-        if (useCompression) {
-            outputBuffer.addActiveFilter(outputFilters[Constants.GZIP_FILTER]);
+        if (compressionEncoding != null) {
+            CompressionOutputFilter compressionFilter =
+                    (CompressionOutputFilter) outputFilters[Constants.COMPRESSION_FILTER];
+            compressionFilter.setEncoding(compressionEncoding);
+            outputBuffer.addActiveFilter(compressionFilter);
         }
 
         // Add date header unless application has already set one (e.g. in a
@@ -22,6 +22,8 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Deque;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
@@ -66,6 +68,22 @@ class HpackEncoder {
 
     };
 
+    /*
+     * Limits for the per connection cache of encoded string literals. Strings
+     * longer than MAX_CACHED_LITERAL_LENGTH are unlikely to be repeated and are
+     * never cached.
+     */
+    private static final int MAX_CACHED_LITERALS = 64;
+    private static final int MAX_CACHED_LITERAL_BYTES = 4096;
+    private static final int MAX_CACHED_LITERAL_LENGTH = 256;
+
+    /*
+     * The date header is never indexed so it is encoded for every response.
+     * The value only changes once a second so the encoded form of the current
+     * value is shared by all connections.
+     */
+    private static volatile EncodedLiteral currentDate = null;
+
     private int headersIterator = -1;
     private boolean firstPass = true;
 
@@ -110,6 +128,14 @@ class HpackEncoder {
 
     private final HpackHeaderFunction hpackHeaderFunction;
 
+    /*
+     * Cache of encoded string literals in least recently used order. Used for
+     * names and values that have to be written as literals because they are
+     * not indexed or have been evicted from the dynamic table.
+     */
+    private final Map<String, byte[]> literalCache = new LinkedHashMap<>(16, 0.75f, true);
+    private int literalCacheBytes;
+
     HpackEncoder() {
         this.hpackHeaderFunction = DEFAULT_HEADER_FUNCTION;
     }
@@ -212,9 +238,10 @@ class HpackEncoder {
 
     private void writeHuffmanEncodableName(ByteBuffer target, String headerName) {
         if (hpackHeaderFunction.shouldUseHuffman(headerName)) {
-            if(HPackHuffman.encode(target, headerName, true)) {
-                return;
-            }
+            // Header names are always lower case so the encoded form of the
+            // name is the same as the encoded form of an identical value
+            target.put(getEncodedLiteral(headerName));
+            return;
         }
         target.put((byte) 0); //to use encodeInteger we need to place the first byte in the buffer.
         Hpack.encodeInteger(target, headerName.length(), 7);
@@ -226,15 +253,57 @@ class HpackEncoder {
 
     private void writeHuffmanEncodableValue(ByteBuffer target, String headerName, String val) {
         if (hpackHeaderFunction.shouldUseHuffman(headerName, val)) {
-            if (!HPackHuffman.encode(target, val, false)) {
-                writeValueString(target, val);
+            if ("date".equals(headerName)) {
+                EncodedLiteral date = currentDate;
+                if (date == null || !date.value.equals(val)) {
+                    date = new EncodedLiteral(val, encodeLiteral(val));
+                    currentDate = date;
+                }
+                target.put(date.encoded);
+            } else {
+                target.put(getEncodedLiteral(val));
             }
         } else {
             writeValueString(target, val);
         }
     }
 
-    private void writeValueString(ByteBuffer target, String val) {
+    private byte[] getEncodedLiteral(String literal) {
+        byte[] encoded = literalCache.get(literal);
+        if (encoded == null) {
+            encoded = encodeLiteral(literal);
+            if (literal.length() <= MAX_CACHED_LITERAL_LENGTH) {
+                literalCache.put(literal, encoded);
+                literalCacheBytes += encoded.length;
+                Iterator<byte[]> iter = literalCache.values().iterator();
+                while (literalCache.size() > MAX_CACHED_LITERALS ||
+                        literalCacheBytes > MAX_CACHED_LITERAL_BYTES) {
+                    literalCacheBytes -= iter.next().length;
+                    iter.remove();
+                }
+            }
+        }
+        return encoded;
+    }
+
+    /*
+     * Creates the complete string literal representation, including the length
+     * prefix, using Huffman encoding unless that would be longer than the
+     * original string.
+     */
+    private static byte[] encodeLiteral(String literal) {
+        // Allow for the length prefix
+        ByteBuffer buffer = ByteBuffer.allocate(literal.length() + 6);
+        if (!HPackHuffman.encode(buffer, literal, false)) {
+            writeValueString(buffer, literal);
+        }
+        buffer.flip();
+        byte[] encoded = new byte[buffer.remaining()];
+        buffer.get(encoded);
+        return encoded;
+    }
+
+    private static void writeValueString(ByteBuffer target, String val) {
         target.put((byte) 0); //to use encodeInteger we need to place the first byte in the buffer.
         Hpack.encodeInteger(target, val.length(), 7);
         for (int j = 0; j < val.length(); ++j) {
@@ -380,6 +449,16 @@ class HpackEncoder {
         }
     }
 
+    private static class EncodedLiteral {
+        private final String value;
+        private final byte[] encoded;
+
+        private EncodedLiteral(String value, byte[] encoded) {
+            this.value = value;
+            this.encoded = encoded;
+        }
+    }
+
     private interface HpackHeaderFunction {
         boolean shouldUseIndexing(String header, String value);
 
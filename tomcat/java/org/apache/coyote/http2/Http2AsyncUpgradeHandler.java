@@ -302,6 +302,8 @@ public class Http2AsyncUpgradeHandler extends Http2UpgradeHandler {
             } catch (IOException e) {
                 return SendfileState.ERROR;
             }
+            // With TLS the mapped file is copied through the SSLEngine
+            socketWrapper.countSendfile(!protocol.isSSLEnabled());
             // Actually perform the write
             int frameSize = Integer.min(getMaxFrameSize(), sendfile.connectionReservation);
             boolean finished = (frameSize == sendfile.left) && sendfile.stream.getCoyoteResponse().getTrailerFields() == null;
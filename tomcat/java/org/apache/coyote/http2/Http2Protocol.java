@@ -23,6 +23,7 @@ import javax.management.ObjectName;
 
 import org.apache.coyote.AbstractProtocol;
 import org.apache.coyote.Adapter;
+import org.apache.coyote.CompressionEncoding;
 import org.apache.coyote.ContinueResponseTiming;
 import org.apache.coyote.Processor;
 import org.apache.coyote.Request;
@@ -87,6 +88,7 @@ public class Http2Protocol implements UpgradeProtocol {
     private int overheadWindowUpdateThreshold = DEFAULT_OVERHEAD_WINDOW_UPDATE_THRESHOLD;
 
     private boolean initiatePingDisabled = false;
+    private boolean useExtensiblePriorities = false;
     private boolean useSendfile = true;
     // Reference to HTTP/1.1 protocol that this instance is configured under
     private AbstractHttp11Protocol<?> http11Protocol = null;
@@ -328,11 +330,31 @@ public class Http2Protocol implements UpgradeProtocol {
     }
 
 
+    public void setUseExtensiblePriorities(boolean useExtensiblePriorities) {
+        this.useExtensiblePriorities = useExtensiblePriorities;
+    }
+
+
+    /**
+     * @return {@code true} if the connection flow control window is allocated
+     *         to blocked streams using the RFC 9218 priority of each stream,
+     *         {@code false} if the RFC 7540 priority tree is used
+     */
+    public boolean getUseExtensiblePriorities() {
+        return useExtensiblePriorities;
+    }
+
+
     public boolean useCompression(Request request, Response response) {
         return http11Protocol.useCompression(request, response);
     }
 
 
+    public CompressionEncoding getCompressionEncoding(Request request, Response response) {
+        return http11Protocol.getCompressionEncoding(request, response);
+    }
+
+
     public ContinueResponseTiming getContinueResponseTimingInternal() {
         return http11Protocol.getContinueResponseTimingInternal();
     }
@@ -359,6 +381,11 @@ public class Http2Protocol implements UpgradeProtocol {
     }
 
 
+    boolean isSSLEnabled() {
+        return http11Protocol.isSSLEnabled();
+    }
+
+
     public String getUpgradeProtocolName() {
         if (http11Protocol.isSSLEnabled()) {
             return ALPN_NAME;
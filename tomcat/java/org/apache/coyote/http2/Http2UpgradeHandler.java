@@ -20,10 +20,14 @@ import java.io.EOFException;
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
-import java.util.Map.Entry;
 import java.util.Queue;
 import java.util.Set;
 import java.util.TreeSet;
@@ -31,9 +35,11 @@ import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ConcurrentNavigableMap;
 import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.Lock;
 
 import jakarta.servlet.http.WebConnection;
 
@@ -132,6 +138,20 @@ class Http2UpgradeHandler extends AbstractStream implements InternalHttpUpgradeH
     private final AtomicInteger nextLocalStreamId = new AtomicInteger(2);
     private final PingManager pingManager = getPingManager();
     private volatile int newStreamsSinceLastPrune = 0;
+    private static final Comparator<Stream> URGENCY_ORDER = new Comparator<Stream>() {
+        @Override
+        public int compare(Stream s1, Stream s2) {
+            int result = Integer.compare(s1.getUrgency(), s2.getUrgency());
+            if (result == 0) {
+                result = Boolean.compare(s1.getIncremental(), s2.getIncremental());
+            }
+            if (result == 0) {
+                result = Integer.compare(s1.getIdAsInt(), s2.getIdAsInt());
+            }
+            return result;
+        }
+    };
+
     private final Map<AbstractStream, BacklogTracker> backLogStreams = new ConcurrentHashMap<>();
     private long backLogSize = 0;
     // The time at which the connection will timeout unless data arrives before
@@ -321,12 +341,16 @@ class Http2UpgradeHandler extends AbstractStream implements InternalHttpUpgradeH
         try {
             switch(status) {
             case OPEN_READ:
-                synchronized (socketWrapper) {
+                Lock lock = socketWrapper.getLock();
+                lock.lock();
+                try {
                     if (!socketWrapper.canWrite()) {
                         // Only send a ping if there is no other data waiting to be sent.
                         // Ping manager will ensure they aren't sent too frequently.
                         pingManager.sendPing(false);
                     }
+                } finally {
+                    lock.unlock();
                 }
                 try {
                     // There is data to read so use the read timeout while
@@ -546,9 +570,13 @@ class Http2UpgradeHandler extends AbstractStream implements InternalHttpUpgradeH
         // Payload
         ByteUtil.setFourBytes(rstFrame, 9, se.getError().getCode());
 
-        synchronized (socketWrapper) {
+        Lock lock = socketWrapper.getLock();
+        lock.lock();
+        try {
             socketWrapper.write(true, rstFrame, 0, rstFrame.length);
             socketWrapper.flush(true);
+        } finally {
+            lock.unlock();
         }
     }
 
@@ -634,7 +662,9 @@ class Http2UpgradeHandler extends AbstractStream implements InternalHttpUpgradeH
         byte[] payloadLength = new byte[3];
         ByteUtil.setThreeBytes(payloadLength, 0, len);
 
-        synchronized (socketWrapper) {
+        Lock lock = socketWrapper.getLock();
+        lock.lock();
+        try {
             socketWrapper.write(true, payloadLength, 0, payloadLength.length);
             socketWrapper.write(true, GOAWAY, 0, GOAWAY.length);
             socketWrapper.write(true, fixedPayload, 0, 8);
@@ -642,14 +672,20 @@ class Http2UpgradeHandler extends AbstractStream implements InternalHttpUpgradeH
                 socketWrapper.write(true, debugMsg, 0, debugMsg.length);
             }
             socketWrapper.flush(true);
+        } finally {
+            lock.unlock();
         }
     }
 
     void writeHeaders(Stream stream, int pushedStreamId, MimeHeaders mimeHeaders,
             boolean endOfStream, int payloadSize) throws IOException {
         // This ensures the Stream processing thread has control of the socket.
-        synchronized (socketWrapper) {
+        Lock lock = socketWrapper.getLock();
+        lock.lock();
+        try {
             doWriteHeaders(stream, pushedStreamId, mimeHeaders, endOfStream, payloadSize);
+        } finally {
+            lock.unlock();
         }
         stream.sentHeaders();
         if (endOfStream) {
@@ -660,7 +696,7 @@ class Http2UpgradeHandler extends AbstractStream implements InternalHttpUpgradeH
 
     /*
      * Separate method to allow Http2AsyncUpgradeHandler to call this code
-     * without synchronizing on socketWrapper since it doesn't need to.
+     * without locking socketWrapper since it doesn't need to.
      */
     protected HeaderFrameBuffers doWriteHeaders(Stream stream, int pushedStreamId,
             MimeHeaders mimeHeaders, boolean endOfStream, int payloadSize) throws IOException {
@@ -766,7 +802,9 @@ class Http2UpgradeHandler extends AbstractStream implements InternalHttpUpgradeH
         }
         if (writeable) {
             ByteUtil.set31Bits(header, 5, stream.getIdAsInt());
-            synchronized (socketWrapper) {
+            Lock lock = socketWrapper.getLock();
+            lock.lock();
+            try {
                 try {
                     socketWrapper.write(true, header, 0, header.length);
                     int orgLimit = data.limit();
@@ -777,6 +815,8 @@ class Http2UpgradeHandler extends AbstractStream implements InternalHttpUpgradeH
                 } catch (IOException ioe) {
                     handleAppInitiatedIOException(ioe);
                 }
+            } finally {
+                lock.unlock();
             }
         }
     }
@@ -804,7 +844,9 @@ class Http2UpgradeHandler extends AbstractStream implements InternalHttpUpgradeH
      */
     void writeWindowUpdate(AbstractNonZeroStream stream, int increment, boolean applicationInitiated)
             throws IOException {
-        synchronized (socketWrapper) {
+        Lock lock = socketWrapper.getLock();
+        lock.lock();
+        try {
             // Build window update frame for stream 0
             byte[] frame = new byte[13];
             ByteUtil.setThreeBytes(frame, 0,  4);
@@ -828,12 +870,16 @@ class Http2UpgradeHandler extends AbstractStream implements InternalHttpUpgradeH
             } else {
                 socketWrapper.flush(true);
             }
+        } finally {
+            lock.unlock();
         }
     }
 
 
     protected void processWrites() throws IOException {
-        synchronized (socketWrapper) {
+        Lock lock = socketWrapper.getLock();
+        lock.lock();
+        try {
             if (socketWrapper.flush(false)) {
                 socketWrapper.registerWriteInterest();
             } else {
@@ -841,6 +887,8 @@ class Http2UpgradeHandler extends AbstractStream implements InternalHttpUpgradeH
                 // Ping manager will ensure they aren't sent too frequently.
                 pingManager.sendPing(false);
             }
+        } finally {
+            lock.unlock();
         }
     }
 
@@ -849,6 +897,10 @@ class Http2UpgradeHandler extends AbstractStream implements InternalHttpUpgradeH
         // Need to be holding the stream lock so releaseBacklog() can't notify
         // this thread until after this thread enters wait()
         int allocation = 0;
+        // Set when this thread first has to wait so that the write timeout
+        // applies to the total time spent waiting for an allocation
+        long waitDeadline = 0;
+        boolean waiting = false;
         synchronized (stream) {
             do {
                 synchronized (this) {
@@ -863,10 +915,12 @@ class Http2UpgradeHandler extends AbstractStream implements InternalHttpUpgradeH
                             tracker = new BacklogTracker(reservation);
                             backLogStreams.put(stream, tracker);
                             backLogSize += reservation;
-                            // Add the parents as well
-                            AbstractStream parent = stream.getParentStream();
-                            while (parent != null && backLogStreams.putIfAbsent(parent, new BacklogTracker()) == null) {
-                                parent = parent.getParentStream();
+                            if (!protocol.getUseExtensiblePriorities()) {
+                                // Add the parents as well
+                                AbstractStream parent = stream.getParentStream();
+                                while (parent != null && backLogStreams.putIfAbsent(parent, new BacklogTracker()) == null) {
+                                    parent = parent.getParentStream();
+                                }
                             }
                         } else {
                             if (tracker.getUnusedAllocation() > 0) {
@@ -900,7 +954,18 @@ class Http2UpgradeHandler extends AbstractStream implements InternalHttpUpgradeH
                             // request is for a stream, use the connection
                             // timeout
                             long writeTimeout = protocol.getWriteTimeout();
-                            stream.waitForConnectionAllocation(writeTimeout);
+                            if (!waiting) {
+                                waitDeadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(writeTimeout);
+                                waiting = true;
+                            }
+                            if (writeTimeout < 0) {
+                                stream.waitForConnectionAllocation(-1);
+                            } else {
+                                // Only wait for the remaining time. A timeout
+                                // of zero would wait indefinitely.
+                                stream.waitForConnectionAllocation(Math.max(1,
+                                        TimeUnit.NANOSECONDS.toMillis(waitDeadline - System.nanoTime())));
+                            }
                             // Has this stream been granted an allocation
                             // Note: If the stream in not in this Map then the
                             //       requested write has been fully allocated
@@ -910,6 +975,11 @@ class Http2UpgradeHandler extends AbstractStream implements InternalHttpUpgradeH
                                 tracker = backLogStreams.get(stream);
                             }
                             if (tracker != null && tracker.getUnusedAllocation() == 0) {
+                                if (stream.isActive() && (writeTimeout < 0 || waitDeadline - System.nanoTime() > 0)) {
+                                    // A notification for an allocation that
+                                    // this stream has already used. Wait again.
+                                    continue;
+                                }
                                 String msg;
                                 Http2Error error;
                                 if (stream.isActive()) {
@@ -996,7 +1066,9 @@ class Http2UpgradeHandler extends AbstractStream implements InternalHttpUpgradeH
 
 
     private synchronized Set<AbstractStream> releaseBackLog(int increment) {
-        Set<AbstractStream> result = new HashSet<>();
+        // Streams are notified in the order they are added so, when the
+        // allocation is by urgency, the most urgent streams write first
+        Set<AbstractStream> result = new LinkedHashSet<>();
         if (backLogSize < increment) {
             // Can clear the whole backlog
             result.addAll(backLogStreams.keySet());
@@ -1004,17 +1076,28 @@ class Http2UpgradeHandler extends AbstractStream implements InternalHttpUpgradeH
             backLogSize = 0;
         } else {
             int leftToAllocate = increment;
-            while (leftToAllocate > 0) {
-                leftToAllocate = allocate(this, leftToAllocate);
+            Collection<? extends AbstractStream> recipients;
+            if (protocol.getUseExtensiblePriorities()) {
+                List<Stream> streams = getBacklogByUrgency();
+                leftToAllocate = allocateByUrgency(streams, increment);
+                recipients = streams;
+            } else {
+                // The connection is removed from the backlog once there are
+                // no streams left that need an allocation
+                while (leftToAllocate > 0 && backLogStreams.containsKey(this)) {
+                    leftToAllocate = allocate(this, leftToAllocate);
+                }
+                recipients = backLogStreams.keySet();
             }
-            for (Entry<AbstractStream,BacklogTracker> entry : backLogStreams.entrySet()) {
-                int allocation = entry.getValue().getUnusedAllocation();
-                if (allocation > 0) {
-                    backLogSize -= allocation;
-                    if (!entry.getValue().isNotifyInProgress()) {
-                        result.add(entry.getKey());
-                        entry.getValue().startNotify();
-                    }
+            // Only count what was allocated by this call. Allocations from
+            // previous calls that have not yet been used have already been
+            // counted.
+            backLogSize -= increment - leftToAllocate;
+            for (AbstractStream recipient : recipients) {
+                BacklogTracker tracker = backLogStreams.get(recipient);
+                if (tracker != null && tracker.getUnusedAllocation() > 0 && !tracker.isNotifyInProgress()) {
+                    result.add(recipient);
+                    tracker.startNotify();
                 }
             }
         }
@@ -1022,6 +1105,90 @@ class Http2UpgradeHandler extends AbstractStream implements InternalHttpUpgradeH
     }
 
 
+    /*
+     * Orders the streams in the backlog as required by RFC 9218: lower urgency
+     * values first, then, within the same urgency, non-incremental streams in
+     * the order they were created followed by incremental streams.
+     */
+    private List<Stream> getBacklogByUrgency() {
+        List<Stream> streams = new ArrayList<>(backLogStreams.size());
+        for (AbstractStream stream : backLogStreams.keySet()) {
+            // The connection is never in the backlog in this mode but check
+            // anyway
+            if (stream instanceof Stream) {
+                streams.add((Stream) stream);
+            }
+        }
+        streams.sort(URGENCY_ORDER);
+        return streams;
+    }
+
+
+    /*
+     * Non-incremental streams are allocated as much as they need, one at a
+     * time, before moving on to the next stream. Incremental streams of the
+     * same urgency share what is left in proportion to their weight.
+     */
+    private int allocateByUrgency(List<Stream> streams, int allocation) {
+        int leftToAllocate = allocation;
+        int i = 0;
+        while (leftToAllocate > 0 && i < streams.size()) {
+            Stream stream = streams.get(i);
+            if (!stream.getIncremental()) {
+                if (log.isDebugEnabled()) {
+                    log.debug(sm.getString("upgradeHandler.allocate.debug", getConnectionId(),
+                            stream.getIdAsString(), Integer.toString(leftToAllocate)));
+                }
+                leftToAllocate = backLogStreams.get(stream).allocate(leftToAllocate);
+                i++;
+                continue;
+            }
+
+            // Find all the incremental streams with the same urgency
+            int end = i + 1;
+            while (end < streams.size() && streams.get(end).getUrgency() == stream.getUrgency()) {
+                end++;
+            }
+            List<Stream> recipients = new ArrayList<>(streams.subList(i, end));
+            while (leftToAllocate > 0 && recipients.size() > 0) {
+                int totalWeight = 0;
+                for (Stream recipient : recipients) {
+                    totalWeight += recipient.getWeight();
+                }
+                // Use an Iterator so fully allocated recipients can be removed.
+                Iterator<Stream> iter = recipients.iterator();
+                int allocated = 0;
+                while (iter.hasNext()) {
+                    Stream recipient = iter.next();
+                    int share = leftToAllocate * recipient.getWeight() / totalWeight;
+                    if (share == 0) {
+                        // This is to avoid rounding issues triggering an
+                        // infinite loop
+                        share = 1;
+                    }
+                    // Never allocate more than is available
+                    share = Math.min(share, leftToAllocate - allocated);
+                    if (share == 0) {
+                        break;
+                    }
+                    if (log.isDebugEnabled()) {
+                        log.debug(sm.getString("upgradeHandler.allocate.debug", getConnectionId(),
+                                recipient.getIdAsString(), Integer.toString(share)));
+                    }
+                    int remainder = backLogStreams.get(recipient).allocate(share);
+                    if (remainder > 0) {
+                        iter.remove();
+                    }
+                    allocated += (share - remainder);
+                }
+                leftToAllocate -= allocated;
+            }
+            i = end;
+        }
+        return leftToAllocate;
+    }
+
+
     private int allocate(AbstractStream stream, int allocation) {
         if (log.isDebugEnabled()) {
             log.debug(sm.getString("upgradeHandler.allocate.debug", getConnectionId(),
@@ -1049,7 +1216,11 @@ class Http2UpgradeHandler extends AbstractStream implements InternalHttpUpgradeH
         // Loop until we run out of allocation or recipients
         while (leftToAllocate > 0) {
             if (recipients.size() == 0) {
-                backLogStreams.remove(stream);
+                // A stream with an unused allocation must remain in the
+                // backlog until it has been notified and used the allocation
+                if (tracker.getUnusedAllocation() == 0) {
+                    backLogStreams.remove(stream);
+                }
                 return leftToAllocate;
             }
 
@@ -1338,10 +1509,14 @@ class Http2UpgradeHandler extends AbstractStream implements InternalHttpUpgradeH
         // Synchronized since PUSH_PROMISE frames have to be sent in order. Once
         // the stream has been created we need to ensure that the PUSH_PROMISE
         // is sent before the next stream is created for a PUSH_PROMISE.
-        synchronized (socketWrapper) {
+        Lock lock = socketWrapper.getLock();
+        lock.lock();
+        try {
             pushStream = createLocalStream(request);
             writeHeaders(associatedStream, pushStream.getIdAsInt(), request.getMimeHeaders(),
                     false, Constants.DEFAULT_HEADERS_FRAME_SIZE);
+        } finally {
+            lock.unlock();
         }
 
         pushStream.sentPushPromise();
@@ -1678,9 +1853,13 @@ class Http2UpgradeHandler extends AbstractStream implements InternalHttpUpgradeH
                         "upgradeHandler.unexpectedAck", connectionId, getIdAsString()));
             }
         } else {
-            synchronized (socketWrapper) {
+            Lock lock = socketWrapper.getLock();
+            lock.lock();
+            try {
                 socketWrapper.write(true, SETTINGS_ACK, 0, SETTINGS_ACK.length);
                 socketWrapper.flush(true);
+            } finally {
+                lock.unlock();
             }
         }
     }
@@ -1792,7 +1971,9 @@ class Http2UpgradeHandler extends AbstractStream implements InternalHttpUpgradeH
             if (force || now - lastPingNanoTime > pingIntervalNano) {
                 lastPingNanoTime = now;
                 byte[] payload = new byte[8];
-                synchronized (socketWrapper) {
+                Lock lock = socketWrapper.getLock();
+                lock.lock();
+                try {
                     int sentSequence = ++sequence;
                     PingRecord pingRecord = new PingRecord(sentSequence, now);
                     inflightPings.add(pingRecord);
@@ -1800,6 +1981,8 @@ class Http2UpgradeHandler extends AbstractStream implements InternalHttpUpgradeH
                     socketWrapper.write(true, PING, 0, PING.length);
                     socketWrapper.write(true, payload, 0, payload.length);
                     socketWrapper.flush(true);
+                } finally {
+                    lock.unlock();
                 }
             }
         }
@@ -1830,10 +2013,14 @@ class Http2UpgradeHandler extends AbstractStream implements InternalHttpUpgradeH
 
             } else {
                 // Client originated ping. Echo it back.
-                synchronized (socketWrapper) {
+                Lock lock = socketWrapper.getLock();
+                lock.lock();
+                try {
                     socketWrapper.write(true, PING_ACK, 0, PING_ACK.length);
                     socketWrapper.write(true, payload, 0, payload.length);
                     socketWrapper.flush(true);
+                } finally {
+                    lock.unlock();
                 }
             }
         }
@@ -41,6 +41,7 @@ import org.apache.tomcat.util.buf.ByteChunk;
 import org.apache.tomcat.util.buf.MessageBytes;
 import org.apache.tomcat.util.http.MimeHeaders;
 import org.apache.tomcat.util.http.parser.Host;
+import org.apache.tomcat.util.http.parser.Priority;
 import org.apache.tomcat.util.net.ApplicationBufferHandler;
 import org.apache.tomcat.util.net.WriteBuffer;
 import org.apache.tomcat.util.res.StringManager;
@@ -71,6 +72,11 @@ class Stream extends AbstractNonZeroStream implements HeaderEmitter {
     private final Http2UpgradeHandler handler;
     private final WindowAllocationManager allocationManager = new WindowAllocationManager(this);
 
+    // RFC 9218 priority. Streams that do not send a priority header are
+    // treated as incremental so they share the connection window by weight.
+    private volatile int urgency = Priority.DEFAULT_URGENCY;
+    private volatile boolean incremental = true;
+
     // State machine would be too much overhead
     private int headerState = HEADER_STATE_START;
     private StreamException headerException = null;
@@ -407,6 +413,11 @@ class Stream extends AbstractNonZeroStream implements HeaderEmitter {
             if ("expect".equals(name) && "100-continue".equals(value)) {
                 coyoteRequest.setExpectation(true);
             }
+            if ("priority".equals(name) && headerState != HEADER_STATE_TRAILER) {
+                Priority priority = Priority.parsePriority(value);
+                urgency = priority.getUrgency();
+                incremental = priority.getIncremental();
+            }
             if (pseudoHeader) {
                 headerException = new StreamException(sm.getString(
                         "stream.header.unknownPseudoHeader", getConnectionId(), getIdAsString(),
@@ -424,6 +435,16 @@ class Stream extends AbstractNonZeroStream implements HeaderEmitter {
     }
 
 
+    int getUrgency() {
+        return urgency;
+    }
+
+
+    boolean getIncremental() {
+        return incremental;
+    }
+
+
     @Override
     public void setHeaderException(StreamException streamException) {
         if (headerException == null) {
@@ -19,17 +19,20 @@ package org.apache.coyote.http2;
 import java.io.File;
 import java.io.IOException;
 import java.util.Iterator;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
 
 import org.apache.coyote.AbstractProcessor;
 import org.apache.coyote.ActionCode;
 import org.apache.coyote.Adapter;
+import org.apache.coyote.CompressionEncoding;
 import org.apache.coyote.ContainerThreadMarker;
 import org.apache.coyote.ContinueResponseTiming;
 import org.apache.coyote.ErrorState;
 import org.apache.coyote.Request;
 import org.apache.coyote.RequestGroupInfo;
 import org.apache.coyote.Response;
-import org.apache.coyote.http11.filters.GzipOutputFilter;
+import org.apache.coyote.http11.filters.CompressionOutputFilter;
 import org.apache.juli.logging.Log;
 import org.apache.juli.logging.LogFactory;
 import org.apache.tomcat.util.buf.ByteChunk;
@@ -51,6 +54,8 @@ class StreamProcessor extends AbstractProcessor {
     private final Stream stream;
     private SendfileData sendfileData = null;
     private SendfileState sendfileState = null;
+    // Not a monitor so a virtual thread blocked on I/O is not pinned
+    private final Lock processLock = new ReentrantLock();
 
 
     StreamProcessor(Http2UpgradeHandler handler, Stream stream, Adapter adapter,
@@ -64,8 +69,9 @@ class StreamProcessor extends AbstractProcessor {
 
     final void process(SocketEvent event) {
         try {
-            // FIXME: the regular processor syncs on socketWrapper, but here this deadlocks
-            synchronized (this) {
+            // FIXME: the regular processor locks socketWrapper, but here this deadlocks
+            processLock.lock();
+            try {
                 // HTTP/2 equivalent of AbstractConnectionHandler#process() without the
                 // socket <-> processor mapping
                 ContainerThreadMarker.set();
@@ -113,6 +119,8 @@ class StreamProcessor extends AbstractProcessor {
                     }
                     ContainerThreadMarker.clear();
                 }
+            } finally {
+                processLock.unlock();
             }
         } finally {
             handler.executeQueuedStream();
@@ -161,11 +169,14 @@ class StreamProcessor extends AbstractProcessor {
         // Compression can't be used with sendfile
         // Need to check for compression (and set headers appropriately) before
         // adding headers below
-        if (noSendfile && protocol != null &&
-                protocol.useCompression(coyoteRequest, coyoteResponse)) {
-            // Enable compression. Headers will have been set. Need to configure
-            // output filter at this point.
-            stream.addOutputFilter(new GzipOutputFilter());
+        if (noSendfile && protocol != null) {
+            CompressionEncoding compressionEncoding =
+                    protocol.getCompressionEncoding(coyoteRequest, coyoteResponse);
+            if (compressionEncoding != null) {
+                // Enable compression. Headers will have been set. Need to
+                // configure output filter at this point.
+                stream.addOutputFilter(new CompressionOutputFilter(compressionEncoding));
+            }
         }
 
         // Check to see if a response body is present
@@ -16,6 +16,11 @@
  */
 package org.apache.el;
 
+import java.security.AccessController;
+import java.security.PrivilegedAction;
+import java.util.Properties;
+import java.util.logging.Logger;
+
 import jakarta.el.ELContext;
 import jakarta.el.ELResolver;
 import jakarta.el.ExpressionFactory;
@@ -24,6 +29,7 @@ import jakarta.el.ValueExpression;
 
 import org.apache.el.lang.ELSupport;
 import org.apache.el.lang.ExpressionBuilder;
+import org.apache.el.lang.ExpressionCompiler;
 import org.apache.el.stream.StreamELResolverImpl;
 import org.apache.el.util.MessageFactory;
 
@@ -36,6 +42,42 @@ import org.apache.el.util.MessageFactory;
 @aQute.bnd.annotation.spi.ServiceProvider(value=ExpressionFactory.class)
 public class ExpressionFactoryImpl extends ExpressionFactory {
 
+    /**
+     * Name of the property that enables the compilation of frequently
+     * evaluated value expressions. See {@link ExpressionCompiler}.
+     */
+    public static final String COMPILE =
+            "org.apache.el.ExpressionFactoryImpl.COMPILE";
+
+    /**
+     * Name of the property that sets the number of times a value expression
+     * is evaluated before it is compiled.
+     */
+    public static final String COMPILE_THRESHOLD =
+            "org.apache.el.ExpressionFactoryImpl.COMPILE_THRESHOLD";
+
+    private static final int DEFAULT_COMPILE_THRESHOLD = 100;
+
+    private final ExpressionCompiler compiler;
+
+    public ExpressionFactoryImpl() {
+        this(null);
+    }
+
+    /**
+     * Create a factory configured by the given properties. Properties that
+     * are not specified are read from the system properties.
+     *
+     * @param properties The configuration properties, may be {@code null}
+     */
+    public ExpressionFactoryImpl(Properties properties) {
+        if (Boolean.parseBoolean(getProperty(properties, COMPILE, "false"))) {
+            compiler = new ExpressionCompiler(getCompileThreshold(properties));
+        } else {
+            compiler = null;
+        }
+    }
+
     @Override
     public Object coerceToType(Object obj, Class<?> type) {
         return ELSupport.coerceToType(null, obj, type);
@@ -58,7 +100,7 @@ public class ExpressionFactoryImpl extends ExpressionFactory {
                     .get("error.value.expectedType"));
         }
         ExpressionBuilder builder = new ExpressionBuilder(expression, context);
-        return builder.createValueExpression(expectedType);
+        return builder.createValueExpression(expectedType, compiler);
     }
 
     @Override
@@ -75,4 +117,38 @@ public class ExpressionFactoryImpl extends ExpressionFactory {
     public ELResolver getStreamELResolver() {
         return new StreamELResolverImpl();
     }
+
+    private static int getCompileThreshold(Properties properties) {
+        String value = getProperty(properties, COMPILE_THRESHOLD, null);
+        if (value == null) {
+            return DEFAULT_COMPILE_THRESHOLD;
+        }
+        int threshold;
+        try {
+            threshold = Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            threshold = 0;
+        }
+        if (threshold < 1) {
+            // jasper-el does not depend on JULI so use java.util.logging
+            // directly
+            Logger.getLogger(ExpressionFactoryImpl.class.getName()).warning(
+                    MessageFactory.get("error.compileThreshold", value,
+                            Integer.toString(DEFAULT_COMPILE_THRESHOLD)));
+            return DEFAULT_COMPILE_THRESHOLD;
+        }
+        return threshold;
+    }
+
+    private static String getProperty(Properties properties, String name,
+            String defaultValue) {
+        if (properties != null && properties.containsKey(name)) {
+            return properties.getProperty(name);
+        }
+        if (System.getSecurityManager() == null) {
+            return System.getProperty(name, defaultValue);
+        }
+        return AccessController.doPrivileged(
+                (PrivilegedAction<String>) () -> System.getProperty(name, defaultValue));
+    }
 }
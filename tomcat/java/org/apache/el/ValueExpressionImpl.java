@@ -31,6 +31,7 @@ import jakarta.el.ValueExpression;
 import jakarta.el.ValueReference;
 import jakarta.el.VariableMapper;
 
+import org.apache.el.lang.CompiledExpression;
 import org.apache.el.lang.EvaluationContext;
 import org.apache.el.lang.ExpressionBuilder;
 import org.apache.el.parser.AstLiteralExpression;
@@ -98,17 +99,26 @@ public final class ValueExpressionImpl extends ValueExpression implements
 
     private transient Node node;
 
+    private transient CompiledExpression compiled;
+
     public ValueExpressionImpl() {
         super();
     }
 
     public ValueExpressionImpl(String expr, Node node, FunctionMapper fnMapper,
             VariableMapper varMapper, Class<?> expectedType) {
+        this(expr, node, fnMapper, varMapper, expectedType, null);
+    }
+
+    public ValueExpressionImpl(String expr, Node node, FunctionMapper fnMapper,
+            VariableMapper varMapper, Class<?> expectedType,
+            CompiledExpression compiled) {
         this.expr = expr;
         this.node = node;
         this.fnMapper = fnMapper;
         this.varMapper = varMapper;
         this.expectedType = expectedType;
+        this.compiled = compiled;
     }
 
     /*
@@ -187,7 +197,12 @@ public final class ValueExpressionImpl extends ValueExpression implements
         EvaluationContext ctx = new EvaluationContext(context, this.fnMapper,
                 this.varMapper);
         context.notifyBeforeEvaluation(getExpressionString());
-        Object value = this.getNode().getValue(ctx);
+        Object value;
+        if (this.compiled == null) {
+            value = this.getNode().getValue(ctx);
+        } else {
+            value = this.compiled.getValue(ctx, this.getNode());
+        }
         if (this.expectedType != null) {
             value = context.convertToType(value, this.expectedType);
         }
@@ -0,0 +1,73 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.el.lang;
+
+import jakarta.el.ELException;
+
+import org.apache.el.parser.Node;
+
+/**
+ * The compiled form of a value expression, shared by all the
+ * {@link org.apache.el.ValueExpressionImpl}s created for the same expression
+ * string by one {@link ExpressionCompiler}. The expression is interpreted
+ * until it has been evaluated often enough to be considered stable and is
+ * then compiled.
+ */
+public final class CompiledExpression {
+
+    private final ExpressionCompiler compiler;
+
+    private volatile ExpressionCompiler.Evaluator evaluator;
+
+    // Not thread safe. The threshold does not need to be exact.
+    private int evaluations;
+
+
+    CompiledExpression(ExpressionCompiler compiler) {
+        this.compiler = compiler;
+    }
+
+
+    /**
+     * Evaluate the expression.
+     *
+     * @param ctx  The context to evaluate the expression in
+     * @param node The parsed expression, used until it has been compiled
+     *
+     * @return The value of the expression
+     *
+     * @throws ELException If the expression cannot be evaluated
+     */
+    public Object getValue(EvaluationContext ctx, Node node) throws ELException {
+        ExpressionCompiler.Evaluator evaluator = this.evaluator;
+        if (evaluator != null) {
+            return evaluator.getValue(ctx);
+        }
+        if (++evaluations >= compiler.getThreshold()) {
+            this.evaluator = compiler.compile(node, ctx);
+        }
+        return node.getValue(ctx);
+    }
+
+
+    /**
+     * @return {@code true} if the expression has been compiled
+     */
+    public boolean isCompiled() {
+        return evaluator != null;
+    }
+}
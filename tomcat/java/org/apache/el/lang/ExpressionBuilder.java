@@ -50,7 +50,7 @@ public final class ExpressionBuilder implements NodeVisitor {
 
     private static final SynchronizedStack<ELParser> parserCache = new SynchronizedStack<>();
 
-    private static final int CACHE_SIZE;
+    static final int CACHE_SIZE;
     private static final String CACHE_SIZE_PROP =
         "org.apache.el.ExpressionBuilder.CACHE_SIZE";
 
@@ -233,9 +233,30 @@ public final class ExpressionBuilder implements NodeVisitor {
 
     public ValueExpression createValueExpression(Class<?> expectedType)
             throws ELException {
+        return createValueExpression(expectedType, null);
+    }
+
+    /**
+     * Create a value expression that will be compiled by the given compiler
+     * once it has been evaluated often enough.
+     *
+     * @param expectedType The type the result will be coerced to
+     * @param compiler     The compiler to use or {@code null} to always
+     *                     interpret the expression
+     *
+     * @return The value expression
+     *
+     * @throws ELException If the expression cannot be parsed
+     */
+    public ValueExpression createValueExpression(Class<?> expectedType,
+            ExpressionCompiler compiler) throws ELException {
         Node n = this.build();
+        CompiledExpression compiled = null;
+        if (compiler != null && !(n instanceof AstLiteralExpression)) {
+            compiled = compiler.getExpression(this.expression);
+        }
         return new ValueExpressionImpl(this.expression, n, this.fnMapper,
-                this.varMapper, expectedType);
+                this.varMapper, expectedType, compiled);
     }
 
     public MethodExpression createMethodExpression(Class<?> expectedReturnType,
@@ -0,0 +1,659 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.el.lang;
+
+import java.beans.IntrospectionException;
+import java.beans.Introspector;
+import java.beans.PropertyDescriptor;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.ResourceBundle;
+
+import jakarta.el.ELClass;
+import jakarta.el.ELException;
+import jakarta.el.ELResolver;
+import jakarta.el.PropertyNotFoundException;
+
+import org.apache.el.parser.AstAnd;
+import org.apache.el.parser.AstBracketSuffix;
+import org.apache.el.parser.AstChoice;
+import org.apache.el.parser.AstCompositeExpression;
+import org.apache.el.parser.AstConcatenation;
+import org.apache.el.parser.AstDeferredExpression;
+import org.apache.el.parser.AstDiv;
+import org.apache.el.parser.AstDotSuffix;
+import org.apache.el.parser.AstDynamicExpression;
+import org.apache.el.parser.AstEmpty;
+import org.apache.el.parser.AstEqual;
+import org.apache.el.parser.AstFalse;
+import org.apache.el.parser.AstFloatingPoint;
+import org.apache.el.parser.AstGreaterThan;
+import org.apache.el.parser.AstGreaterThanEqual;
+import org.apache.el.parser.AstInteger;
+import org.apache.el.parser.AstLessThan;
+import org.apache.el.parser.AstLessThanEqual;
+import org.apache.el.parser.AstLiteralExpression;
+import org.apache.el.parser.AstMinus;
+import org.apache.el.parser.AstMod;
+import org.apache.el.parser.AstMult;
+import org.apache.el.parser.AstNot;
+import org.apache.el.parser.AstNotEqual;
+import org.apache.el.parser.AstNull;
+import org.apache.el.parser.AstOr;
+import org.apache.el.parser.AstPlus;
+import org.apache.el.parser.AstString;
+import org.apache.el.parser.AstTrue;
+import org.apache.el.parser.AstValue;
+import org.apache.el.parser.Node;
+import org.apache.el.util.ConcurrentCache;
+import org.apache.el.util.MessageFactory;
+import org.apache.el.util.ReflectionUtil;
+
+/**
+ * Compiles frequently evaluated value expressions into a tree of evaluators
+ * that are specialised for the operators and properties used by the
+ * expression.
+ * <p>
+ * Every <code>.</code> or <code>[]</code> operator with a constant property
+ * name gets an inline cache. For each class of base object seen by the
+ * operator, the cache holds either a method handle for the bean property's
+ * getter or direct access to the entries of a {@link Map}. Other objects,
+ * such as lists and arrays, and classes without a readable property are
+ * resolved through the {@link jakarta.el.ELResolver} as before. An operator
+ * that sees more than {@link #MAX_RECEIVER_TYPES} classes of base object
+ * stops using its cache and always uses the resolver, as the interpreter
+ * does.
+ * <p>
+ * Identifiers, functions, method calls, lambda expressions and any other
+ * nodes that are not compiled are evaluated by the interpreter.
+ * <p>
+ * The inline caches bypass the resolver for beans and maps. They are only
+ * equivalent to the interpreter if the properties of those objects are
+ * resolved by the standard {@link jakarta.el.BeanELResolver} and
+ * {@link jakarta.el.MapELResolver}. The caches are therefore only used if the
+ * resolver of the context implements {@link StandardPropertyResolution} and
+ * reports that this is the case. Otherwise, every property is resolved by the
+ * resolver.
+ */
+public final class ExpressionCompiler {
+
+    /**
+     * The maximum number of classes of base object that a property access
+     * caches before it falls back to the resolver.
+     */
+    public static final int MAX_RECEIVER_TYPES = 4;
+
+    private static final MethodType GETTER_TYPE =
+            MethodType.methodType(Object.class, Object.class);
+
+    private final int threshold;
+
+    private final ConcurrentCache<String, CompiledExpression> cache =
+            new ConcurrentCache<>(ExpressionBuilder.CACHE_SIZE);
+
+
+    /**
+     * @param threshold The number of times an expression is evaluated
+     *                  before it is compiled
+     */
+    public ExpressionCompiler(int threshold) {
+        this.threshold = threshold;
+    }
+
+
+    public int getThreshold() {
+        return threshold;
+    }
+
+
+    /**
+     * Obtain the compiled form of an expression.
+     *
+     * @param expression The expression string
+     *
+     * @return The compiled form shared by all evaluations of the expression
+     */
+    public CompiledExpression getExpression(String expression) {
+        CompiledExpression result = cache.get(expression);
+        if (result == null) {
+            result = new CompiledExpression(this);
+            cache.put(expression, result);
+        }
+        return result;
+    }
+
+
+    /*
+     * The context is only used to obtain the values of literals.
+     */
+    Evaluator compile(Node node, EvaluationContext ctx) {
+        if (node instanceof AstValue) {
+            return compileValue((AstValue) node, ctx);
+        }
+        if (node instanceof AstString || node instanceof AstInteger ||
+                node instanceof AstFloatingPoint || node instanceof AstTrue ||
+                node instanceof AstFalse || node instanceof AstNull ||
+                node instanceof AstLiteralExpression) {
+            return new Constant(node.getValue(ctx));
+        }
+        if (node instanceof AstDeferredExpression || node instanceof AstDynamicExpression) {
+            return compile(node.jjtGetChild(0), ctx);
+        }
+        if (node instanceof AstCompositeExpression) {
+            Evaluator[] children = new Evaluator[node.jjtGetNumChildren()];
+            for (int i = 0; i < children.length; i++) {
+                children[i] = compile(node.jjtGetChild(i), ctx);
+            }
+            return new Composite(children);
+        }
+        if (node instanceof AstPlus) {
+            return binary(node, ctx, (c, a, b) -> ELArithmetic.add(a, b));
+        }
+        if (node instanceof AstMinus) {
+            return binary(node, ctx, (c, a, b) -> ELArithmetic.subtract(a, b));
+        }
+        if (node instanceof AstMult) {
+            return binary(node, ctx, (c, a, b) -> ELArithmetic.multiply(a, b));
+        }
+        if (node instanceof AstDiv) {
+            return binary(node, ctx, (c, a, b) -> ELArithmetic.divide(a, b));
+        }
+        if (node instanceof AstMod) {
+            return binary(node, ctx, (c, a, b) -> ELArithmetic.mod(a, b));
+        }
+        if (node instanceof AstConcatenation) {
+            return binary(node, ctx, (c, a, b) ->
+                    ELSupport.coerceToString(c, a) + ELSupport.coerceToString(c, b));
+        }
+        if (node instanceof AstEqual) {
+            return binary(node, ctx, (c, a, b) -> Boolean.valueOf(ELSupport.equals(c, a, b)));
+        }
+        if (node instanceof AstNotEqual) {
+            return binary(node, ctx, (c, a, b) -> Boolean.valueOf(!ELSupport.equals(c, a, b)));
+        }
+        if (node instanceof AstLessThanEqual) {
+            return binary(node, ctx, (c, a, b) -> Boolean.valueOf(
+                    a == b || a != null && b != null && ELSupport.compare(c, a, b) <= 0));
+        }
+        if (node instanceof AstGreaterThanEqual) {
+            return binary(node, ctx, (c, a, b) -> Boolean.valueOf(
+                    a == b || a != null && b != null && ELSupport.compare(c, a, b) >= 0));
+        }
+        if (node instanceof AstLessThan || node instanceof AstGreaterThan) {
+            return new Ordered(compile(node.jjtGetChild(0), ctx),
+                    compile(node.jjtGetChild(1), ctx), node instanceof AstGreaterThan);
+        }
+        if (node instanceof AstAnd || node instanceof AstOr) {
+            return new Logical(compile(node.jjtGetChild(0), ctx),
+                    compile(node.jjtGetChild(1), ctx), node instanceof AstAnd);
+        }
+        if (node instanceof AstNot) {
+            return new Not(compile(node.jjtGetChild(0), ctx));
+        }
+        if (node instanceof AstEmpty) {
+            return new Empty(compile(node.jjtGetChild(0), ctx));
+        }
+        if (node instanceof AstChoice) {
+            return new Choice(compile(node.jjtGetChild(0), ctx),
+                    compile(node.jjtGetChild(1), ctx), compile(node.jjtGetChild(2), ctx));
+        }
+        return new Interpreted(node);
+    }
+
+
+    private Evaluator binary(Node node, EvaluationContext ctx, Operator operator) {
+        return new Binary(compile(node.jjtGetChild(0), ctx),
+                compile(node.jjtGetChild(1), ctx), operator);
+    }
+
+
+    private Evaluator compileValue(AstValue node, EvaluationContext ctx) {
+        Suffix[] suffixes = new Suffix[node.jjtGetNumChildren() - 1];
+        for (int i = 0; i < suffixes.length; i++) {
+            Node child = node.jjtGetChild(i + 1);
+            if (child instanceof AstDotSuffix) {
+                suffixes[i] = new PropertySite(child.getImage());
+            } else if (child instanceof AstBracketSuffix) {
+                Node property = child.jjtGetChild(0);
+                if (property instanceof AstString) {
+                    suffixes[i] = new PropertySite((String) property.getValue(ctx));
+                } else {
+                    suffixes[i] = new Suffix(compile(property, ctx));
+                }
+            } else {
+                // Method call
+                return new Interpreted(node);
+            }
+        }
+        return new Value(compile(node.jjtGetChild(0), ctx), suffixes);
+    }
+
+
+    private static Accessor createAccessor(Object base, String property) {
+        Class<?> type = base.getClass();
+        if (base instanceof Map<?,?>) {
+            return new MapAccessor(type);
+        }
+        if (base instanceof List<?> || type.isArray() || base instanceof ResourceBundle ||
+                base instanceof ELClass) {
+            return new Accessor(type);
+        }
+        try {
+            for (PropertyDescriptor pd : Introspector.getBeanInfo(type).getPropertyDescriptors()) {
+                if (property.equals(pd.getName())) {
+                    Method read = ReflectionUtil.getMethod(type, base, pd.getReadMethod());
+                    if (read == null) {
+                        break;
+                    }
+                    return new BeanAccessor(type,
+                            MethodHandles.publicLookup().unreflect(read).asType(GETTER_TYPE));
+                }
+            }
+        } catch (IntrospectionException | IllegalAccessException e) {
+            // Leave it to the resolver
+        }
+        return new Accessor(type);
+    }
+
+
+    private static boolean isStandardPropertyResolution(ELResolver resolver) {
+        return resolver instanceof StandardPropertyResolution &&
+                ((StandardPropertyResolution) resolver).isStandardPropertyResolution();
+    }
+
+
+    @FunctionalInterface
+    private interface Operator {
+        Object apply(EvaluationContext ctx, Object obj0, Object obj1);
+    }
+
+
+    abstract static class Evaluator {
+        abstract Object getValue(EvaluationContext ctx) throws ELException;
+    }
+
+
+    private static final class Interpreted extends Evaluator {
+
+        private final Node node;
+
+        Interpreted(Node node) {
+            this.node = node;
+        }
+
+        @Override
+        Object getValue(EvaluationContext ctx) {
+            return node.getValue(ctx);
+        }
+    }
+
+
+    private static final class Constant extends Evaluator {
+
+        private final Object value;
+
+        Constant(Object value) {
+            this.value = value;
+        }
+
+        @Override
+        Object getValue(EvaluationContext ctx) {
+            return value;
+        }
+    }
+
+
+    private static final class Composite extends Evaluator {
+
+        private final Evaluator[] children;
+
+        Composite(Evaluator[] children) {
+            this.children = children;
+        }
+
+        @Override
+        Object getValue(EvaluationContext ctx) {
+            StringBuilder sb = new StringBuilder(16);
+            for (Evaluator child : children) {
+                Object obj = child.getValue(ctx);
+                if (obj != null) {
+                    sb.append(ELSupport.coerceToString(ctx, obj));
+                }
+            }
+            return sb.toString();
+        }
+    }
+
+
+    private static final class Binary extends Evaluator {
+
+        private final Evaluator left;
+        private final Evaluator right;
+        private final Operator operator;
+
+        Binary(Evaluator left, Evaluator right, Operator operator) {
+            this.left = left;
+            this.right = right;
+            this.operator = operator;
+        }
+
+        @Override
+        Object getValue(EvaluationContext ctx) {
+            Object obj0 = left.getValue(ctx);
+            Object obj1 = right.getValue(ctx);
+            return operator.apply(ctx, obj0, obj1);
+        }
+    }
+
+
+    private static final class Ordered extends Evaluator {
+
+        private final Evaluator left;
+        private final Evaluator right;
+        private final boolean greaterThan;
+
+        Ordered(Evaluator left, Evaluator right, boolean greaterThan) {
+            this.left = left;
+            this.right = right;
+            this.greaterThan = greaterThan;
+        }
+
+        @Override
+        Object getValue(EvaluationContext ctx) {
+            Object obj0 = left.getValue(ctx);
+            if (obj0 == null) {
+                return Boolean.FALSE;
+            }
+            Object obj1 = right.getValue(ctx);
+            if (obj1 == null) {
+                return Boolean.FALSE;
+            }
+            int result = ELSupport.compare(ctx, obj0, obj1);
+            return Boolean.valueOf(greaterThan ? result > 0 : result < 0);
+        }
+    }
+
+
+    private static final class Logical extends Evaluator {
+
+        private final Evaluator left;
+        private final Evaluator right;
+        private final boolean and;
+
+        Logical(Evaluator left, Evaluator right, boolean and) {
+            this.left = left;
+            this.right = right;
+            this.and = and;
+        }
+
+        @Override
+        Object getValue(EvaluationContext ctx) {
+            Boolean b = ELSupport.coerceToBoolean(ctx, left.getValue(ctx), true);
+            if (b.booleanValue() != and) {
+                return b;
+            }
+            return ELSupport.coerceToBoolean(ctx, right.getValue(ctx), true);
+        }
+    }
+
+
+    private static final class Not extends Evaluator {
+
+        private final Evaluator child;
+
+        Not(Evaluator child) {
+            this.child = child;
+        }
+
+        @Override
+        Object getValue(EvaluationContext ctx) {
+            Boolean b = ELSupport.coerceToBoolean(ctx, child.getValue(ctx), true);
+            return Boolean.valueOf(!b.booleanValue());
+        }
+    }
+
+
+    private static final class Empty extends Evaluator {
+
+        private final Evaluator child;
+
+        Empty(Evaluator child) {
+            this.child = child;
+        }
+
+        @Override
+        Object getValue(EvaluationContext ctx) {
+            Object obj = child.getValue(ctx);
+            if (obj == null) {
+                return Boolean.TRUE;
+            } else if (obj instanceof String) {
+                return Boolean.valueOf(((String) obj).length() == 0);
+            } else if (obj instanceof Object[]) {
+                return Boolean.valueOf(((Object[]) obj).length == 0);
+            } else if (obj instanceof Collection<?>) {
+                return Boolean.valueOf(((Collection<?>) obj).isEmpty());
+            } else if (obj instanceof Map<?,?>) {
+                return Boolean.valueOf(((Map<?,?>) obj).isEmpty());
+            }
+            return Boolean.FALSE;
+        }
+    }
+
+
+    private static final class Choice extends Evaluator {
+
+        private final Evaluator condition;
+        private final Evaluator whenTrue;
+        private final Evaluator whenFalse;
+
+        Choice(Evaluator condition, Evaluator whenTrue, Evaluator whenFalse) {
+            this.condition = condition;
+            this.whenTrue = whenTrue;
+            this.whenFalse = whenFalse;
+        }
+
+        @Override
+        Object getValue(EvaluationContext ctx) {
+            Boolean b = ELSupport.coerceToBoolean(ctx, condition.getValue(ctx), true);
+            return b.booleanValue() ? whenTrue.getValue(ctx) : whenFalse.getValue(ctx);
+        }
+    }
+
+
+    /*
+     * Same logic as AstValue.getValue() without support for method calls.
+     */
+    private static final class Value extends Evaluator {
+
+        private final Evaluator base;
+        private final Suffix[] suffixes;
+
+        Value(Evaluator base, Suffix[] suffixes) {
+            this.base = base;
+            this.suffixes = suffixes;
+        }
+
+        @Override
+        Object getValue(EvaluationContext ctx) {
+            Object base = this.base.getValue(ctx);
+            Object property = null;
+            int i = 0;
+            while (base != null && i < suffixes.length) {
+                Suffix suffix = suffixes[i];
+                property = suffix.getProperty(ctx);
+                if (property == null) {
+                    return null;
+                }
+                ctx.setPropertyResolved(false);
+                base = suffix.getValue(ctx, base, property);
+                i++;
+            }
+            if (!ctx.isPropertyResolved()) {
+                throw new PropertyNotFoundException(MessageFactory.get(
+                        "error.resolver.unhandled", base, property));
+            }
+            return base;
+        }
+    }
+
+
+    /*
+     * A property with a value that is only known at evaluation time. It is
+     * always resolved by the resolver.
+     */
+    private static class Suffix {
+
+        private final Evaluator property;
+
+        Suffix(Evaluator property) {
+            this.property = property;
+        }
+
+        Object getProperty(EvaluationContext ctx) {
+            return property.getValue(ctx);
+        }
+
+        Object getValue(EvaluationContext ctx, Object base, Object property) {
+            return ctx.getELResolver().getValue(ctx, base, property);
+        }
+    }
+
+
+    private static final class PropertySite extends Suffix {
+
+        private static final Accessor[] NO_ACCESSORS = new Accessor[0];
+
+        private final String property;
+
+        // Replaced rather than modified so it can be read without locking
+        private volatile Accessor[] accessors = NO_ACCESSORS;
+
+        private volatile boolean megamorphic;
+
+        PropertySite(String property) {
+            super(null);
+            this.property = property;
+        }
+
+        @Override
+        Object getProperty(EvaluationContext ctx) {
+            return property;
+        }
+
+        @Override
+        Object getValue(EvaluationContext ctx, Object base, Object property) {
+            if (!isStandardPropertyResolution(ctx.getELResolver())) {
+                // An earlier resolver may handle maps or beans differently
+                return super.getValue(ctx, base, property);
+            }
+            Class<?> type = base.getClass();
+            for (Accessor accessor : accessors) {
+                if (accessor.type == type) {
+                    return accessor.getValue(ctx, base, property);
+                }
+            }
+            if (megamorphic) {
+                return super.getValue(ctx, base, property);
+            }
+
+            Accessor[] current = accessors;
+            if (current.length == MAX_RECEIVER_TYPES) {
+                // Too many types. Give up on the cache.
+                megamorphic = true;
+                accessors = NO_ACCESSORS;
+                return super.getValue(ctx, base, property);
+            }
+            Accessor accessor = createAccessor(base, this.property);
+            Accessor[] updated = Arrays.copyOf(current, current.length + 1);
+            updated[current.length] = accessor;
+            accessors = updated;
+            return accessor.getValue(ctx, base, property);
+        }
+    }
+
+
+    /*
+     * Access to a property for one class of base object. This implementation
+     * uses the resolver.
+     */
+    private static class Accessor {
+
+        private final Class<?> type;
+
+        Accessor(Class<?> type) {
+            this.type = type;
+        }
+
+        Object getValue(EvaluationContext ctx, Object base, Object property) {
+            return ctx.getELResolver().getValue(ctx, base, property);
+        }
+    }
+
+
+    /*
+     * Same logic as MapELResolver.getValue().
+     */
+    private static final class MapAccessor extends Accessor {
+
+        MapAccessor(Class<?> type) {
+            super(type);
+        }
+
+        @Override
+        Object getValue(EvaluationContext ctx, Object base, Object property) {
+            ctx.setPropertyResolved(base, property);
+            return ((Map<?,?>) base).get(property);
+        }
+    }
+
+
+    /*
+     * Same logic as BeanELResolver.getValue().
+     */
+    private static final class BeanAccessor extends Accessor {
+
+        private final MethodHandle getter;
+
+        BeanAccessor(Class<?> type, MethodHandle getter) {
+            super(type);
+            this.getter = getter;
+        }
+
+        @Override
+        Object getValue(EvaluationContext ctx, Object base, Object property) {
+            ctx.setPropertyResolved(base, property);
+            try {
+                return getter.invokeExact(base);
+            } catch (Throwable t) {
+                if (t instanceof ThreadDeath) {
+                    throw (ThreadDeath) t;
+                }
+                if (t instanceof VirtualMachineError) {
+                    throw (VirtualMachineError) t;
+                }
+                throw new ELException(MessageFactory.get("error.property.read",
+                        base.getClass().getName(), property), t);
+            }
+        }
+    }
+}
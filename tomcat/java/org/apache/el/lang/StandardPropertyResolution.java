@@ -0,0 +1,36 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.el.lang;
+
+/**
+ * Implemented by an {@link jakarta.el.ELResolver} that can report whether the
+ * properties of {@link java.util.Map}s and beans are resolved exactly as the
+ * standard {@link jakarta.el.MapELResolver} and
+ * {@link jakarta.el.BeanELResolver} would resolve them. The
+ * {@link ExpressionCompiler} only accesses such properties directly, rather
+ * than through the resolver, when the resolver of the context reports that
+ * this is the case.
+ */
+public interface StandardPropertyResolution {
+
+    /**
+     * @return {@code true} if no resolver that might resolve the properties
+     *         of a map or a bean is consulted before the standard map and bean
+     *         resolvers
+     */
+    boolean isStandardPropertyResolution();
+}
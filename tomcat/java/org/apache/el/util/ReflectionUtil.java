@@ -418,11 +418,21 @@ public class ReflectionUtil {
     }
 
 
-    /*
-     * This class duplicates code in jakarta.el.Util. When making changes keep
+    /**
+     * Find a version of the given method that can be invoked on the given
+     * object. If the declaring class is not accessible, a matching method of
+     * an accessible interface or superclass is used instead.
+     * <p>
+     * This method duplicates code in jakarta.el.Util. When making changes keep
      * the code in sync.
+     *
+     * @param type  The class to search
+     * @param base  The object the method will be invoked on
+     * @param m     The method to find an accessible version of
+     *
+     * @return The accessible method or {@code null} if there is none
      */
-    private static Method getMethod(Class<?> type, Object base, Method m) {
+    public static Method getMethod(Class<?> type, Object base, Method m) {
         JreCompat jreCompat = JreCompat.getInstance();
         // If base is null, method MUST be static
         // If base is non-null, method may be static or non-static
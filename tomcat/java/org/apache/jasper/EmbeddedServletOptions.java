@@ -237,6 +237,16 @@ public final class EmbeddedServletOptions implements Options {
 
     private boolean useInstanceManagerForTags = false;
 
+    /**
+     * Should all the JSPs be compiled when the JSP Servlet starts?
+     */
+    private boolean precompileOnStartup = false;
+
+    /**
+     * The maximum number of threads used to compile JSPs on start-up.
+     */
+    private int precompileThreads = Runtime.getRuntime().availableProcessors();
+
     public String getProperty(String name ) {
         return settings.getProperty( name );
     }
@@ -556,6 +566,16 @@ public final class EmbeddedServletOptions implements Options {
         return useInstanceManagerForTags;
     }
 
+    @Override
+    public boolean getPrecompileOnStartup() {
+        return precompileOnStartup;
+    }
+
+    @Override
+    public int getPrecompileThreads() {
+        return precompileThreads;
+    }
+
     /**
      * Create an EmbeddedServletOptions object using data available from
      * ServletConfig and ServletContext.
@@ -971,6 +991,31 @@ public final class EmbeddedServletOptions implements Options {
             }
         }
 
+        String precompileOnStartup = config.getInitParameter("precompileOnStartup");
+        if (precompileOnStartup != null) {
+            if (precompileOnStartup.equalsIgnoreCase("true")) {
+                this.precompileOnStartup = true;
+            } else if (precompileOnStartup.equalsIgnoreCase("false")) {
+                this.precompileOnStartup = false;
+            } else {
+                if (log.isWarnEnabled()) {
+                    log.warn(Localizer.getMessage("jsp.warning.precompileOnStartup"));
+                }
+            }
+        }
+
+        String precompileThreads = config.getInitParameter("precompileThreads");
+        if (precompileThreads != null) {
+            try {
+                this.precompileThreads = Integer.parseInt(precompileThreads);
+            } catch(NumberFormatException ex) {
+                if (log.isWarnEnabled()) {
+                    log.warn(Localizer.getMessage("jsp.warning.precompileThreads",
+                            "" + this.precompileThreads));
+                }
+            }
+        }
+
         // Setup the global Tag Libraries location cache for this
         // web-application.
         tldCache = TldCache.getInstance(context);
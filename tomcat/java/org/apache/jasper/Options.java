@@ -372,4 +372,28 @@ public interface Options {
     public default boolean getGeneratedJavaAddTimestamp() {
         return true;
     }
+
+
+    /**
+     * Should all the JSPs in the web application be compiled in the background
+     * when the JSP Servlet starts rather than when each JSP is first
+     * requested? Defaults to {@code false}.
+     *
+     * @return {@code true} to compile the JSPs on start-up
+     */
+    public default boolean getPrecompileOnStartup() {
+        return false;
+    }
+
+
+    /**
+     * The maximum number of threads used to compile JSPs when
+     * {@link #getPrecompileOnStartup()} is {@code true}. Defaults to the
+     * number of available processors.
+     *
+     * @return The maximum number of compilation threads
+     */
+    public default int getPrecompileThreads() {
+        return Runtime.getRuntime().availableProcessors();
+    }
 }
@@ -20,12 +20,18 @@ package org.apache.jasper.compiler;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
 import java.io.OutputStreamWriter;
 import java.io.PrintWriter;
 import java.io.UnsupportedEncodingException;
 import java.net.JarURLConnection;
 import java.net.URL;
 import java.net.URLConnection;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.Map;
 import java.util.Map.Entry;
 
@@ -36,6 +42,7 @@ import org.apache.jasper.servlet.JspServletWrapper;
 import org.apache.juli.logging.Log;
 import org.apache.juli.logging.LogFactory;
 import org.apache.tomcat.Jar;
+import org.apache.tomcat.util.buf.HexUtils;
 import org.apache.tomcat.util.scan.JarFactory;
 
 /**
@@ -383,6 +390,12 @@ public abstract class Compiler {
 
         try {
             final Long jspLastModified = ctxt.getLastModified(ctxt.getJspFile());
+            // Hash the content before it is compiled. The hash is only kept
+            // if the page is not modified while it is being compiled.
+            String contentHash = null;
+            if (compileClass && options.getPrecompileOnStartup()) {
+                contentHash = getContentHash();
+            }
             Map<String,SmapStratum> smaps = generateJava();
             File javaFile = new File(ctxt.getServletJavaFileName());
             if (!javaFile.setLastModified(jspLastModified.longValue())) {
@@ -402,6 +415,13 @@ public abstract class Compiler {
                         jsw.setServletClassLastModifiedTime(
                                 jspLastModified.longValue());
                     }
+                    if (options.getPrecompileOnStartup()) {
+                        if (jspLastModified.equals(ctxt.getLastModified(ctxt.getJspFile()))) {
+                            writeContentHash(contentHash);
+                        } else {
+                            writeContentHash(null);
+                        }
+                    }
                 }
             }
         } finally {
@@ -484,11 +504,21 @@ public abstract class Compiler {
         }
 
         if (targetLastModified != jspRealLastModified.longValue()) {
-            if (log.isDebugEnabled()) {
-                log.debug("Compiler: outdated: " + targetFile + " "
-                        + targetLastModified);
+            if (checkClass && options.getPrecompileOnStartup() && isContentUnchanged() &&
+                    targetFile.setLastModified(jspRealLastModified.longValue())) {
+                // The source has a new timestamp, e.g. after a reload, but
+                // the same content. Keep the class and adopt the new timestamp
+                // so the content is not hashed again.
+                if (jsw != null) {
+                    jsw.setServletClassLastModifiedTime(jspRealLastModified.longValue());
+                }
+            } else {
+                if (log.isDebugEnabled()) {
+                    log.debug("Compiler: outdated: " + targetFile + " "
+                            + targetLastModified);
+                }
+                return true;
             }
-            return true;
         }
 
         // determine if source dependent files (e.g. includes using include
@@ -548,6 +578,71 @@ public abstract class Compiler {
 
     }
 
+    /*
+     * Only the page itself is hashed. Pages that depend on other files are
+     * still checked against the timestamps of those files.
+     */
+    private boolean isContentUnchanged() {
+        File hashFile = getContentHashFile();
+        if (!hashFile.isFile()) {
+            return false;
+        }
+        String hash = getContentHash();
+        if (hash == null) {
+            return false;
+        }
+        try {
+            return hash.equals(new String(Files.readAllBytes(hashFile.toPath()),
+                    StandardCharsets.ISO_8859_1));
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+
+    private void writeContentHash(String hash) {
+        File hashFile = getContentHashFile();
+        try {
+            if (hash == null) {
+                Files.deleteIfExists(hashFile.toPath());
+            } else {
+                Files.write(hashFile.toPath(), hash.getBytes(StandardCharsets.ISO_8859_1));
+            }
+        } catch (IOException e) {
+            log.warn(Localizer.getMessage("jsp.warning.compiler.hash.fail",
+                    hashFile.getAbsolutePath()), e);
+        }
+    }
+
+
+    private File getContentHashFile() {
+        String classFileName = ctxt.getClassFileName();
+        return new File(classFileName.substring(0, classFileName.length() - 6) + ".hash");
+    }
+
+
+    private String getContentHash() {
+        if (ctxt.getTagFileJar() != null) {
+            // Tag files packaged in JARs are not hashed
+            return null;
+        }
+        try (InputStream is = ctxt.getResourceAsStream(ctxt.getJspFile())) {
+            if (is == null) {
+                return null;
+            }
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            byte[] buf = new byte[8192];
+            int n;
+            while ((n = is.read(buf)) > 0) {
+                digest.update(buf, 0, n);
+            }
+            return HexUtils.toHexString(digest.digest());
+        } catch (IOException | NoSuchAlgorithmException e) {
+            return null;
+        }
+    }
+
+
     /**
      * @return the error dispatcher.
      */
@@ -602,6 +697,7 @@ public abstract class Compiler {
                             classFile.getAbsolutePath()));
                 }
             }
+            Files.deleteIfExists(getContentHashFile().toPath());
         } catch (Exception e) {
             // Remove as much as possible, log possible exceptions
             log.warn(Localizer.getMessage("jsp.warning.compiler.classfile.delete.fail.unknown"),
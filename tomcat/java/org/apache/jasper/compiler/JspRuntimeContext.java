@@ -28,9 +28,13 @@ import java.security.PermissionCollection;
 import java.security.Policy;
 import java.security.cert.Certificate;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import jakarta.servlet.ServletContext;
@@ -44,6 +48,7 @@ import org.apache.jasper.servlet.JspServletWrapper;
 import org.apache.jasper.util.FastRemovalDequeue;
 import org.apache.juli.logging.Log;
 import org.apache.juli.logging.LogFactory;
+import org.apache.tomcat.util.threads.TaskThreadFactory;
 
 
 /**
@@ -183,6 +188,11 @@ public final class JspRuntimeContext {
      */
     private volatile boolean compileCheckInProgress = false;
 
+    /**
+     * Executor used to compile JSPs on start-up, if any.
+     */
+    private volatile ThreadPoolExecutor precompileExecutor = null;
+
 
     // ------------------------------------------------------ Public Methods
 
@@ -297,6 +307,10 @@ public final class JspRuntimeContext {
      * Process a "destroy" event for this web application context.
      */
     public void destroy() {
+        ThreadPoolExecutor executor = precompileExecutor;
+        if (executor != null) {
+            executor.shutdownNow();
+        }
         for (JspServletWrapper jspServletWrapper : jsps.values()) {
             jspServletWrapper.destroy();
         }
@@ -420,6 +434,79 @@ public final class JspRuntimeContext {
         return compileCheckInProgress;
     }
 
+
+    /**
+     * Compile the given JSPs in the background using up to
+     * {@link Options#getPrecompileThreads()} threads. JSPs that are up to date
+     * are not recompiled. The time taken for each JSP is logged.
+     *
+     * @param wrappers The wrappers for the JSPs to compile
+     */
+    public void precompile(Collection<JspServletWrapper> wrappers) {
+        if (wrappers.isEmpty()) {
+            return;
+        }
+        int threads = Math.max(1, Math.min(options.getPrecompileThreads(), wrappers.size()));
+        String contextPath = context.getContextPath();
+        log.info(Localizer.getMessage("jsp.message.precompile.start",
+                Integer.valueOf(wrappers.size()), contextPath, Integer.valueOf(threads)));
+
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 0,
+                TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(),
+                new TaskThreadFactory("JspPrecompile[" + contextPath + "]-", true,
+                        Thread.NORM_PRIORITY));
+        precompileExecutor = executor;
+
+        long start = System.nanoTime();
+        AtomicInteger remaining = new AtomicInteger(wrappers.size());
+        for (JspServletWrapper jsw : wrappers) {
+            executor.execute(() -> {
+                precompile(jsw);
+                if (remaining.decrementAndGet() == 0) {
+                    log.info(Localizer.getMessage("jsp.message.precompile.complete",
+                            Integer.valueOf(wrappers.size()), contextPath,
+                            Long.valueOf(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start))));
+                }
+            });
+        }
+        // Threads exit once the queue is empty
+        executor.shutdown();
+    }
+
+
+    private void precompile(JspServletWrapper jsw) {
+        if (Thread.currentThread().isInterrupted()) {
+            // Shutting down
+            return;
+        }
+        Thread currentThread = Thread.currentThread();
+        ClassLoader originalClassLoader = currentThread.getContextClassLoader();
+        currentThread.setContextClassLoader(parentClassLoader);
+        long start = System.nanoTime();
+        try {
+            JspCompilationContext ctxt = jsw.getJspEngineContext();
+            // Sync on JspServletWrapper when calling ctxt.compile()
+            synchronized (jsw) {
+                try {
+                    ctxt.compile();
+                } catch (FileNotFoundException ex) {
+                    ctxt.incrementRemoved();
+                    return;
+                } catch (Throwable t) {
+                    ExceptionUtils.handleThrowable(t);
+                    log.warn(Localizer.getMessage("jsp.error.precompilation", jsw.getJspUri()), t);
+                    return;
+                }
+            }
+            if (log.isDebugEnabled()) {
+                log.debug(Localizer.getMessage("jsp.message.precompiled", jsw.getJspUri(),
+                        Long.valueOf(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start))));
+            }
+        } finally {
+            currentThread.setContextClassLoader(originalClassLoader);
+        }
+    }
+
     /**
      * @return the classpath that is passed off to the Java compiler.
      */
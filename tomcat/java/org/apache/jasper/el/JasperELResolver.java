@@ -37,6 +37,8 @@ import jakarta.el.StaticFieldELResolver;
 import jakarta.servlet.jsp.el.ImplicitObjectELResolver;
 import jakarta.servlet.jsp.el.ScopedAttributeELResolver;
 
+import org.apache.el.lang.StandardPropertyResolution;
+import org.apache.el.stream.StreamELResolverImpl;
 import org.apache.jasper.runtime.ExceptionUtils;
 import org.apache.jasper.runtime.JspRuntimeLibrary;
 
@@ -44,17 +46,23 @@ import org.apache.jasper.runtime.JspRuntimeLibrary;
  * Jasper-specific CompositeELResolver that optimizes certain functions to avoid
  * unnecessary resolver calls.
  */
-public class JasperELResolver extends CompositeELResolver {
+public class JasperELResolver extends CompositeELResolver
+        implements StandardPropertyResolution {
 
     private static final int STANDARD_RESOLVERS_COUNT = 9;
 
     private AtomicInteger resolversSize = new AtomicInteger(0);
     private volatile ELResolver[] resolvers;
     private final int appResolversSize;
+    private final boolean standardPropertyResolution;
 
     public JasperELResolver(List<ELResolver> appResolvers,
             ELResolver streamResolver) {
         appResolversSize = appResolvers.size();
+        // Only the application and stream resolvers are consulted before the
+        // map and bean resolvers for a non-null base
+        standardPropertyResolution = appResolversSize == 0 &&
+                streamResolver instanceof StreamELResolverImpl && !JspRuntimeLibrary.GRAAL;
         resolvers = new ELResolver[appResolversSize + STANDARD_RESOLVERS_COUNT];
 
         add(new ImplicitObjectELResolver());
@@ -92,6 +100,11 @@ public class JasperELResolver extends CompositeELResolver {
         resolversSize.incrementAndGet();
     }
 
+    @Override
+    public boolean isStandardPropertyResolution() {
+        return standardPropertyResolution;
+    }
+
     @Override
     public Object getValue(ELContext context, Object base, Object property)
         throws NullPointerException, PropertyNotFoundException, ELException {
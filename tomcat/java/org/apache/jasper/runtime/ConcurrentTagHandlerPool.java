@@ -0,0 +1,143 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jasper.runtime;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import jakarta.servlet.ServletConfig;
+import jakarta.servlet.jsp.JspException;
+import jakarta.servlet.jsp.tagext.Tag;
+
+/**
+ * Pool of tag handlers that can be reused without locking. Enable it by
+ * setting the {@link TagHandlerPool#OPTION_TAGPOOL} option to the name of this
+ * class.
+ * <p>
+ * Each thread first uses a slot selected by its ID. The number of slots is the
+ * largest power of two that does not exceed
+ * {@link TagHandlerPool#OPTION_MAXSIZE}, limited to the number of processors
+ * rounded up to a power of two. When a thread's slot is empty or already
+ * occupied, the thread falls back to a shared lock-free stack that holds up to
+ * {@link TagHandlerPool#OPTION_MAXSIZE} handlers. Slots are used rather than
+ * {@link ThreadLocal}s so that the pooled handlers, which are usually loaded
+ * by the web application class loader, are not referenced from the
+ * container's threads after the application is stopped.
+ */
+public class ConcurrentTagHandlerPool extends TagHandlerPool {
+
+    private AtomicReferenceArray<Tag> slots;
+    private int slotMask;
+    private final AtomicReference<Node> top = new AtomicReference<>();
+    private final AtomicInteger stackSize = new AtomicInteger();
+    private int maxStackSize;
+
+
+    @Override
+    protected void init(ServletConfig config) {
+        // The base class is not initialised as it would allocate an array of
+        // handlers that this pool does not use
+        useInstanceManagerForTags = Boolean.parseBoolean(
+                getOption(config, OPTION_USEIMFORTAGS, "false"));
+        instanceManager = InstanceManagerFactory.getInstanceManager(config);
+        maxStackSize = getMaxSize(config);
+        int slotCount = maxStackSize == 0 ? 0 : Integer.highestOneBit(maxStackSize);
+        int processors = Runtime.getRuntime().availableProcessors();
+        while (slotCount > 1 && slotCount >> 1 >= processors) {
+            slotCount >>= 1;
+        }
+        slots = new AtomicReferenceArray<>(slotCount);
+        slotMask = slotCount - 1;
+    }
+
+
+    @Override
+    public Tag get(Class<? extends Tag> handlerClass) throws JspException {
+        if (slotMask >= 0) {
+            int slot = slot();
+            Tag handler = slots.get(slot);
+            if (handler != null && slots.compareAndSet(slot, handler, null)) {
+                return handler;
+            }
+        }
+
+        Node node;
+        while ((node = top.get()) != null) {
+            if (top.compareAndSet(node, node.next)) {
+                stackSize.decrementAndGet();
+                return node.handler;
+            }
+        }
+
+        return newHandler(handlerClass);
+    }
+
+
+    @Override
+    public void reuse(Tag handler) {
+        if (slotMask >= 0) {
+            int slot = slot();
+            if (slots.get(slot) == null && slots.compareAndSet(slot, null, handler)) {
+                return;
+            }
+        }
+
+        if (stackSize.incrementAndGet() <= maxStackSize) {
+            Node node = new Node(handler);
+            do {
+                node.next = top.get();
+            } while (!top.compareAndSet(node.next, node));
+            return;
+        }
+        stackSize.decrementAndGet();
+        JspRuntimeLibrary.releaseTag(handler, instanceManager);
+    }
+
+
+    @Override
+    public void release() {
+        for (int i = 0; i < slots.length(); i++) {
+            Tag handler = slots.getAndSet(i, null);
+            if (handler != null) {
+                JspRuntimeLibrary.releaseTag(handler, instanceManager);
+            }
+        }
+        Node node = top.getAndSet(null);
+        while (node != null) {
+            stackSize.decrementAndGet();
+            JspRuntimeLibrary.releaseTag(node.handler, instanceManager);
+            node = node.next;
+        }
+    }
+
+
+    private int slot() {
+        return (int) Thread.currentThread().getId() & slotMask;
+    }
+
+
+    private static class Node {
+
+        private final Tag handler;
+        private Node next;
+
+        Node(Tag handler) {
+            this.handler = handler;
+        }
+    }
+}
@@ -63,18 +63,7 @@ public class TagHandlerPool {
     }
 
     protected void init(ServletConfig config) {
-        int maxSize = -1;
-        String maxSizeS = getOption(config, OPTION_MAXSIZE, null);
-        if (maxSizeS != null) {
-            try {
-                maxSize = Integer.parseInt(maxSizeS);
-            } catch (Exception ex) {
-                maxSize = -1;
-            }
-        }
-        if (maxSize < 0) {
-            maxSize = Constants.MAX_POOL_SIZE;
-        }
+        int maxSize = getMaxSize(config);
         String useInstanceManagerForTagsValue = getOption(config, OPTION_USEIMFORTAGS, "false");
         useInstanceManagerForTags = Boolean.valueOf(useInstanceManagerForTagsValue).booleanValue();
         this.handlers = new Tag[maxSize];
@@ -111,6 +100,19 @@ public class TagHandlerPool {
 
         // Out of sync block - there is no need for other threads to
         // wait for us to construct a tag for this thread.
+        return newHandler(handlerClass);
+    }
+
+    /**
+     * Instantiates a new tag handler.
+     *
+     * @param handlerClass
+     *            Tag handler class
+     * @return Newly instantiated tag handler
+     * @throws JspException
+     *             if a tag handler cannot be instantiated
+     */
+    protected Tag newHandler(Class<? extends Tag> handlerClass) throws JspException {
         try {
             if (useInstanceManagerForTags) {
                 return (Tag) instanceManager.newInstance(
@@ -157,6 +159,32 @@ public class TagHandlerPool {
     }
 
 
+    /**
+     * Obtain the configured maximum number of tag handlers a pool should
+     * hold.
+     *
+     * @param config The configuration of the JSP
+     * @return The value of the {@link #OPTION_MAXSIZE} option or
+     *         {@link Constants#MAX_POOL_SIZE} if the option is not set to a
+     *         valid value
+     */
+    protected static int getMaxSize(ServletConfig config) {
+        int maxSize = -1;
+        String maxSizeS = getOption(config, OPTION_MAXSIZE, null);
+        if (maxSizeS != null) {
+            try {
+                maxSize = Integer.parseInt(maxSizeS);
+            } catch (Exception ex) {
+                maxSize = -1;
+            }
+        }
+        if (maxSize < 0) {
+            maxSize = Constants.MAX_POOL_SIZE;
+        }
+        return maxSize;
+    }
+
+
     protected static String getOption(ServletConfig config, String name,
             String defaultV) {
         if (config == null)
@@ -24,6 +24,9 @@ import java.net.MalformedURLException;
 import java.security.AccessController;
 import java.security.PrivilegedActionException;
 import java.security.PrivilegedExceptionAction;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
 
 import jakarta.servlet.RequestDispatcher;
 import jakarta.servlet.ServletConfig;
@@ -149,6 +152,14 @@ public class JspServlet extends HttpServlet implements PeriodicEventListener {
                     options.getScratchDir().toString()));
             log.debug(Localizer.getMessage("jsp.message.dont.modify.servlets"));
         }
+
+        // Only the main JSP Servlet, not those for JSPs configured as
+        // Servlets, precompiles the web application
+        if (jspFile == null && options.getPrecompileOnStartup()) {
+            List<JspServletWrapper> wrappers = new ArrayList<>();
+            findJsps("/", wrappers);
+            rctxt.precompile(wrappers);
+        }
     }
 
 
@@ -384,6 +395,33 @@ public class JspServlet extends HttpServlet implements PeriodicEventListener {
     }
 
 
+    /*
+     * Find every JSP under the given path and create a wrapper for it, if one
+     * does not already exist.
+     */
+    private void findJsps(String path, List<JspServletWrapper> wrappers) {
+        Set<String> paths = context.getResourcePaths(path);
+        if (paths == null) {
+            return;
+        }
+        for (String jspUri : paths) {
+            if (jspUri.endsWith("/")) {
+                findJsps(jspUri, wrappers);
+            } else if (jspUri.endsWith(".jsp") || jspUri.endsWith(".jspx")) {
+                JspServletWrapper wrapper;
+                synchronized(this) {
+                    wrapper = rctxt.getWrapper(jspUri);
+                    if (wrapper == null) {
+                        wrapper = new JspServletWrapper(config, options, jspUri, rctxt);
+                        rctxt.addWrapper(jspUri, wrapper);
+                    }
+                }
+                wrappers.add(wrapper);
+            }
+        }
+    }
+
+
     private void handleMissingResource(HttpServletRequest request,
             HttpServletResponse response, String jspUri)
             throws ServletException, IOException {
@@ -154,6 +154,11 @@ public final class SSL {
 
     public static final int SSL_OP_NO_TICKET                        = 0x00004000;
 
+    /* OpenSSL 3.0 onwards. Use kernel TLS (kTLS) for the record layer when the
+     * SSL is attached to a socket and the kernel supports the negotiated
+     * cipher. Earlier versions ignore this bit. */
+    public static final int SSL_OP_ENABLE_KTLS                      = 0x00000008;
+
     // SSL_OP_PKCS1_CHECK_1 and SSL_OP_PKCS1_CHECK_2 flags are unsupported
     // in the current version of OpenSSL library. See ssl.h changes in commit
     // 7409d7ad517650db332ae528915a570e4e0ab88b (30 Apr 2011) of OpenSSL.
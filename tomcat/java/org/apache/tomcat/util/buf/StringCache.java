@@ -17,25 +17,28 @@
 package org.apache.tomcat.util.buf;
 
 import java.nio.charset.Charset;
-import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.Map.Entry;
-import java.util.TreeMap;
-
-import org.apache.juli.logging.Log;
-import org.apache.juli.logging.LogFactory;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
  * This class implements a String cache for ByteChunk and CharChunk.
+ * <p>
+ * Each cache is an open addressing hash table that is updated continuously
+ * rather than generated once at the end of a training period. A frequency
+ * sketch records approximately how often each value has been converted and a
+ * new value only replaces an existing entry if it has been converted more
+ * often. The frequencies are halved periodically so the cache adapts as the
+ * request mix changes.
+ * <p>
+ * No locks are used. Entries are immutable and are stored with plain writes so
+ * concurrent updates to the table or to the frequencies may occasionally be
+ * lost. That reduces the hit rate slightly but never affects the Strings that
+ * are returned.
  *
  * @author Remy Maucherat
  */
 public class StringCache {
 
 
-    private static final Log log = LogFactory.getLog(StringCache.class);
-
-
     // ------------------------------------------------------- Static Variables
 
 
@@ -50,6 +53,10 @@ public class StringCache {
             "tomcat.util.buf.StringCache.char.enabled", "false")));
 
 
+    /**
+     * The number of frequency increments after which all the frequencies are
+     * halved.
+     */
     protected static int trainThreshold = Integer.parseInt(System.getProperty(
             "tomcat.util.buf.StringCache.trainThreshold", "20000"));
 
@@ -63,54 +70,42 @@ public class StringCache {
                     "tomcat.util.buf.StringCache.maxStringSize", "128"));
 
 
-   /**
-     * Statistics hash map for byte chunk.
-     */
-    protected static final HashMap<ByteEntry,int[]> bcStats =
-            new HashMap<>(cacheSize);
-
-
     /**
-     * toString count for byte chunk.
+     * The maximum number of slots examined, starting at the slot selected by
+     * the hash, when looking for an entry.
      */
-    protected static int bcCount = 0;
+    private static final int PROBE_LIMIT = 8;
 
 
     /**
      * Cache for byte chunk.
      */
-    protected static volatile ByteEntry[] bcCache = null;
+    private static volatile Cache bcCache = new Cache(cacheSize);
 
 
     /**
-     * Statistics hash map for char chunk.
-     */
-    protected static final HashMap<CharEntry,int[]> ccStats =
-            new HashMap<>(cacheSize);
-
-
-    /**
-     * toString count for char chunk.
+     * Cache for char chunk.
      */
-    protected static int ccCount = 0;
+    private static volatile Cache ccCache = new Cache(cacheSize);
 
 
     /**
-     * Cache for char chunk.
+     * Access count.
      */
-    protected static volatile CharEntry[] ccCache = null;
+    private static final LongAdder accessCount = new LongAdder();
 
 
     /**
-     * Access count.
+     * Hit count.
      */
-    protected static int accessCount = 0;
+    private static final LongAdder hitCount = new LongAdder();
 
 
     /**
-     * Hit count.
+     * Number of entries that have been replaced by a more frequently used
+     * value.
      */
-    protected static int hitCount = 0;
+    private static final LongAdder evictionCount = new LongAdder();
 
 
     // ------------------------------------------------------------ Properties
@@ -125,10 +120,15 @@ public class StringCache {
 
 
     /**
+     * Set the size of the caches. The size is rounded up to a power of two
+     * and the current contents of the caches are discarded.
+     *
      * @param cacheSize The cacheSize to set.
      */
     public void setCacheSize(int cacheSize) {
         StringCache.cacheSize = cacheSize;
+        bcCache = new Cache(cacheSize);
+        ccCache = new Cache(cacheSize);
     }
 
 
@@ -184,7 +184,7 @@ public class StringCache {
      * @return Returns the accessCount.
      */
     public int getAccessCount() {
-        return accessCount;
+        return accessCount.intValue();
     }
 
 
@@ -192,7 +192,36 @@ public class StringCache {
      * @return Returns the hitCount.
      */
     public int getHitCount() {
-        return hitCount;
+        return hitCount.intValue();
+    }
+
+
+    /**
+     * @return the proportion of accesses that were served from the cache
+     */
+    public double getHitRatio() {
+        long accesses = accessCount.sum();
+        if (accesses == 0) {
+            return 0;
+        }
+        return (double) hitCount.sum() / accesses;
+    }
+
+
+    /**
+     * @return the number of entries that have been replaced by a more
+     *         frequently used value
+     */
+    public long getEvictionCount() {
+        return evictionCount.sum();
+    }
+
+
+    /**
+     * @return the number of Strings currently cached
+     */
+    public int getEntryCount() {
+        return bcCache.getEntryCount() + ccCache.getEntryCount();
     }
 
 
@@ -200,512 +229,309 @@ public class StringCache {
 
 
     public void reset() {
-        hitCount = 0;
-        accessCount = 0;
-        synchronized (bcStats) {
-            bcCache = null;
-            bcCount = 0;
-        }
-        synchronized (ccStats) {
-            ccCache = null;
-            ccCount = 0;
-        }
+        hitCount.reset();
+        accessCount.reset();
+        evictionCount.reset();
+        bcCache = new Cache(cacheSize);
+        ccCache = new Cache(cacheSize);
     }
 
 
     public static String toString(ByteChunk bc) {
 
-        // If the cache is null, then either caching is disabled, or we're
-        // still training
-        if (bcCache == null) {
-            String value = bc.toStringInternal();
-            if (byteEnabled && (value.length() < maxStringSize)) {
-                // If training, everything is synced
-                synchronized (bcStats) {
-                    // If the cache has been generated on a previous invocation
-                    // while waiting for the lock, just return the toString
-                    // value we just calculated
-                    if (bcCache != null) {
-                        return value;
-                    }
-                    // Two cases: either we just exceeded the train count, in
-                    // which case the cache must be created, or we just update
-                    // the count for the string
-                    if (bcCount > trainThreshold) {
-                        long t1 = System.currentTimeMillis();
-                        // Sort the entries according to occurrence
-                        TreeMap<Integer,ArrayList<ByteEntry>> tempMap =
-                                new TreeMap<>();
-                        for (Entry<ByteEntry,int[]> item : bcStats.entrySet()) {
-                            ByteEntry entry = item.getKey();
-                            int[] countA = item.getValue();
-                            Integer count = Integer.valueOf(countA[0]);
-                            // Add to the list for that count
-                            ArrayList<ByteEntry> list = tempMap.get(count);
-                            if (list == null) {
-                                // Create list
-                                list = new ArrayList<>();
-                                tempMap.put(count, list);
-                            }
-                            list.add(entry);
-                        }
-                        // Allocate array of the right size
-                        int size = bcStats.size();
-                        if (size > cacheSize) {
-                            size = cacheSize;
-                        }
-                        ByteEntry[] tempbcCache = new ByteEntry[size];
-                        // Fill it up using an alphabetical order
-                        // and a dumb insert sort
-                        ByteChunk tempChunk = new ByteChunk();
-                        int n = 0;
-                        while (n < size) {
-                            Object key = tempMap.lastKey();
-                            ArrayList<ByteEntry> list = tempMap.get(key);
-                            for (int i = 0; i < list.size() && n < size; i++) {
-                                ByteEntry entry = list.get(i);
-                                tempChunk.setBytes(entry.name, 0,
-                                        entry.name.length);
-                                int insertPos = findClosest(tempChunk,
-                                        tempbcCache, n);
-                                if (insertPos == n) {
-                                    tempbcCache[n + 1] = entry;
-                                } else {
-                                    System.arraycopy(tempbcCache, insertPos + 1,
-                                            tempbcCache, insertPos + 2,
-                                            n - insertPos - 1);
-                                    tempbcCache[insertPos + 1] = entry;
-                                }
-                                n++;
-                            }
-                            tempMap.remove(key);
-                        }
-                        bcCount = 0;
-                        bcStats.clear();
-                        bcCache = tempbcCache;
-                        if (log.isDebugEnabled()) {
-                            long t2 = System.currentTimeMillis();
-                            log.debug("ByteCache generation time: " +
-                                    (t2 - t1) + "ms");
-                        }
-                    } else {
-                        bcCount++;
-                        // Allocate new ByteEntry for the lookup
-                        ByteEntry entry = new ByteEntry();
-                        entry.value = value;
-                        int[] count = bcStats.get(entry);
-                        if (count == null) {
-                            int end = bc.getEnd();
-                            int start = bc.getStart();
-                            // Create byte array and copy bytes
-                            entry.name = new byte[bc.getLength()];
-                            System.arraycopy(bc.getBuffer(), start, entry.name,
-                                    0, end - start);
-                            // Set encoding
-                            entry.charset = bc.getCharset();
-                            // Initialize occurrence count to one
-                            count = new int[1];
-                            count[0] = 1;
-                            // Set in the stats hash map
-                            bcStats.put(entry, count);
-                        } else {
-                            count[0] = count[0] + 1;
-                        }
-                    }
-                }
-            }
-            return value;
-        } else {
-            accessCount++;
-            // Find the corresponding String
-            String result = find(bc);
-            if (result == null) {
-                return bc.toStringInternal();
+        int start = bc.getStart();
+        int end = bc.getEnd();
+        if (!byteEnabled || end - start >= maxStringSize) {
+            return bc.toStringInternal();
+        }
+        accessCount.increment();
+
+        byte[] buf = bc.getBuffer();
+        Charset charset = bc.getCharset();
+        if (charset == null) {
+            charset = ByteChunk.DEFAULT_CHARSET;
+        }
+        int hash = 0;
+        for (int i = start; i < end; i++) {
+            hash = 31 * hash + buf[i];
+        }
+        hash = spread(hash);
+
+        Cache cache = bcCache;
+        Entry[] table = cache.table;
+        int mask = table.length - 1;
+        for (int i = 0; i < cache.probeLimit; i++) {
+            ByteEntry entry = (ByteEntry) table[(hash + i) & mask];
+            if (entry != null && entry.hash == hash && entry.matches(buf, start, end, charset)) {
+                cache.sketch.increment(hash, false);
+                hitCount.increment();
+                return entry.value;
             }
-            // Note: We don't care about safety for the stats
-            hitCount++;
-            return result;
         }
 
+        String value = bc.toStringInternal();
+        int slot = cache.admit(hash);
+        if (slot >= 0) {
+            byte[] name = new byte[end - start];
+            System.arraycopy(buf, start, name, 0, end - start);
+            table[slot] = new ByteEntry(hash, value, name, charset);
+        }
+        return value;
     }
 
 
     public static String toString(CharChunk cc) {
 
-        // If the cache is null, then either caching is disabled, or we're
-        // still training
-        if (ccCache == null) {
-            String value = cc.toStringInternal();
-            if (charEnabled && (value.length() < maxStringSize)) {
-                // If training, everything is synced
-                synchronized (ccStats) {
-                    // If the cache has been generated on a previous invocation
-                    // while waiting for the lock, just return the toString
-                    // value we just calculated
-                    if (ccCache != null) {
-                        return value;
-                    }
-                    // Two cases: either we just exceeded the train count, in
-                    // which case the cache must be created, or we just update
-                    // the count for the string
-                    if (ccCount > trainThreshold) {
-                        long t1 = System.currentTimeMillis();
-                        // Sort the entries according to occurrence
-                        TreeMap<Integer,ArrayList<CharEntry>> tempMap =
-                                new TreeMap<>();
-                        for (Entry<CharEntry,int[]> item : ccStats.entrySet()) {
-                            CharEntry entry = item.getKey();
-                            int[] countA = item.getValue();
-                            Integer count = Integer.valueOf(countA[0]);
-                            // Add to the list for that count
-                            ArrayList<CharEntry> list = tempMap.get(count);
-                            if (list == null) {
-                                // Create list
-                                list = new ArrayList<>();
-                                tempMap.put(count, list);
-                            }
-                            list.add(entry);
-                        }
-                        // Allocate array of the right size
-                        int size = ccStats.size();
-                        if (size > cacheSize) {
-                            size = cacheSize;
-                        }
-                        CharEntry[] tempccCache = new CharEntry[size];
-                        // Fill it up using an alphabetical order
-                        // and a dumb insert sort
-                        CharChunk tempChunk = new CharChunk();
-                        int n = 0;
-                        while (n < size) {
-                            Object key = tempMap.lastKey();
-                            ArrayList<CharEntry> list = tempMap.get(key);
-                            for (int i = 0; i < list.size() && n < size; i++) {
-                                CharEntry entry = list.get(i);
-                                tempChunk.setChars(entry.name, 0,
-                                        entry.name.length);
-                                int insertPos = findClosest(tempChunk,
-                                        tempccCache, n);
-                                if (insertPos == n) {
-                                    tempccCache[n + 1] = entry;
-                                } else {
-                                    System.arraycopy(tempccCache, insertPos + 1,
-                                            tempccCache, insertPos + 2,
-                                            n - insertPos - 1);
-                                    tempccCache[insertPos + 1] = entry;
-                                }
-                                n++;
-                            }
-                            tempMap.remove(key);
-                        }
-                        ccCount = 0;
-                        ccStats.clear();
-                        ccCache = tempccCache;
-                        if (log.isDebugEnabled()) {
-                            long t2 = System.currentTimeMillis();
-                            log.debug("CharCache generation time: " +
-                                    (t2 - t1) + "ms");
-                        }
-                    } else {
-                        ccCount++;
-                        // Allocate new CharEntry for the lookup
-                        CharEntry entry = new CharEntry();
-                        entry.value = value;
-                        int[] count = ccStats.get(entry);
-                        if (count == null) {
-                            int end = cc.getEnd();
-                            int start = cc.getStart();
-                            // Create char array and copy chars
-                            entry.name = new char[cc.getLength()];
-                            System.arraycopy(cc.getBuffer(), start, entry.name,
-                                    0, end - start);
-                            // Initialize occurrence count to one
-                            count = new int[1];
-                            count[0] = 1;
-                            // Set in the stats hash map
-                            ccStats.put(entry, count);
-                        } else {
-                            count[0] = count[0] + 1;
-                        }
-                    }
-                }
-            }
-            return value;
-        } else {
-            accessCount++;
-            // Find the corresponding String
-            String result = find(cc);
-            if (result == null) {
-                return cc.toStringInternal();
+        int start = cc.getStart();
+        int end = cc.getEnd();
+        if (!charEnabled || end - start >= maxStringSize) {
+            return cc.toStringInternal();
+        }
+        accessCount.increment();
+
+        char[] buf = cc.getBuffer();
+        int hash = 0;
+        for (int i = start; i < end; i++) {
+            hash = 31 * hash + buf[i];
+        }
+        hash = spread(hash);
+
+        Cache cache = ccCache;
+        Entry[] table = cache.table;
+        int mask = table.length - 1;
+        for (int i = 0; i < cache.probeLimit; i++) {
+            CharEntry entry = (CharEntry) table[(hash + i) & mask];
+            if (entry != null && entry.hash == hash && entry.matches(buf, start, end)) {
+                cache.sketch.increment(hash, false);
+                hitCount.increment();
+                return entry.value;
             }
-            // Note: We don't care about safety for the stats
-            hitCount++;
-            return result;
         }
 
+        String value = cc.toStringInternal();
+        int slot = cache.admit(hash);
+        if (slot >= 0) {
+            char[] name = new char[end - start];
+            System.arraycopy(buf, start, name, 0, end - start);
+            table[slot] = new CharEntry(hash, value, name);
+        }
+        return value;
     }
 
 
-    // ----------------------------------------------------- Protected Methods
+    // ------------------------------------------------------- Private Methods
 
 
-    /**
-     * Compare given byte chunk with byte array.
-     * @param name The name to compare
-     * @param compareTo The compared to data
-     * @return -1, 0 or +1 if inferior, equal, or superior to the String.
+    /*
+     * Spreads the bits of the String style hash so that the low bits used to
+     * select a slot depend on every character.
      */
-    protected static final int compare(ByteChunk name, byte[] compareTo) {
-        int result = 0;
-
-        byte[] b = name.getBuffer();
-        int start = name.getStart();
-        int end = name.getEnd();
-        int len = compareTo.length;
-
-        if ((end - start) < len) {
-            len = end - start;
-        }
-        for (int i = 0; (i < len) && (result == 0); i++) {
-            if (b[i + start] > compareTo[i]) {
-                result = 1;
-            } else if (b[i + start] < compareTo[i]) {
-                result = -1;
-            }
-        }
-        if (result == 0) {
-            if (compareTo.length > (end - start)) {
-                result = -1;
-            } else if (compareTo.length < (end - start)) {
-                result = 1;
-            }
-        }
-        return result;
+    private static int spread(int hash) {
+        int h = hash * 0x9E3779B9;
+        return h ^ (h >>> 16);
     }
 
 
-    /**
-     * Find an entry given its name in the cache and return the associated
-     * String.
-     * @param name The name to find
-     * @return the corresponding value
-     */
-    protected static final String find(ByteChunk name) {
-        int pos = findClosest(name, bcCache, bcCache.length);
-        if ((pos < 0) || (compare(name, bcCache[pos].name) != 0)
-                || !(name.getCharset().equals(bcCache[pos].charset))) {
-            return null;
-        } else {
-            return bcCache[pos].value;
-        }
-    }
+    // ------------------------------------------------------ Cache Inner Class
 
 
-    /**
-     * Find an entry given its name in a sorted array of map elements.
-     * This will return the index for the closest inferior or equal item in the
-     * given array.
-     * @param name The name to find
-     * @param array The array in which to look
-     * @param len The effective length of the array
-     * @return the position of the best match
-     */
-    protected static final int findClosest(ByteChunk name, ByteEntry[] array,
-            int len) {
+    private static final class Cache {
 
-        int a = 0;
-        int b = len - 1;
+        private final Entry[] table;
+        private final int probeLimit;
+        private final FrequencySketch sketch;
 
-        // Special cases: -1 and 0
-        if (b == -1) {
-            return -1;
+        private Cache(int size) {
+            int capacity = 1;
+            while (capacity < size) {
+                capacity <<= 1;
+            }
+            table = new Entry[capacity];
+            probeLimit = Math.min(PROBE_LIMIT, capacity);
+            // Several counters per entry keeps the over-estimates caused by
+            // collisions low
+            sketch = new FrequencySketch(capacity * 16);
         }
 
-        if (compare(name, array[0].name) < 0) {
+        /**
+         * Record a conversion of a value that is not in the cache and decide
+         * whether the value should be added.
+         *
+         * @param hash The hash of the value
+         *
+         * @return The slot in which the value should be stored or -1 if the
+         *         value should not be cached
+         */
+        private int admit(int hash) {
+            sketch.increment(hash, true);
+            int mask = table.length - 1;
+            int victim = -1;
+            int victimFrequency = Integer.MAX_VALUE;
+            for (int i = 0; i < probeLimit; i++) {
+                int slot = (hash + i) & mask;
+                Entry entry = table[slot];
+                if (entry == null) {
+                    return slot;
+                }
+                int frequency = sketch.frequency(entry.hash);
+                if (frequency < victimFrequency) {
+                    victim = slot;
+                    victimFrequency = frequency;
+                }
+            }
+            if (sketch.frequency(hash) > victimFrequency) {
+                evictionCount.increment();
+                return victim;
+            }
             return -1;
         }
-        if (b == 0) {
-            return 0;
-        }
 
-        int i = 0;
-        while (true) {
-            i = (b + a) >>> 1;
-            int result = compare(name, array[i].name);
-            if (result == 1) {
-                a = i;
-            } else if (result == 0) {
-                return i;
-            } else {
-                b = i;
-            }
-            if ((b - a) == 1) {
-                int result2 = compare(name, array[b].name);
-                if (result2 < 0) {
-                    return a;
-                } else {
-                    return b;
+        private int getEntryCount() {
+            int count = 0;
+            for (Entry entry : table) {
+                if (entry != null) {
+                    count++;
                 }
             }
+            return count;
         }
-
     }
 
 
+    // -------------------------------------------- FrequencySketch Inner Class
+
+
     /**
-     * Compare given char chunk with char array.
-     * @param name The name to compare
-     * @param compareTo The compared to data
-     * @return -1, 0 or +1 if inferior, equal, or superior to the String.
+     * A count-min sketch of saturating counters. A counter is only written
+     * while it is below the maximum and a hit stops at the first counter if
+     * that is saturated so hits on popular values read a single counter and
+     * write nothing. Misses always count towards the next halving of the counters
+     * so that, once the popular values have saturated their counters, a
+     * change in the popular values is still detected.
      */
-    protected static final int compare(CharChunk name, char[] compareTo) {
-        int result = 0;
+    private static final class FrequencySketch {
 
-        char[] c = name.getBuffer();
-        int start = name.getStart();
-        int end = name.getEnd();
-        int len = compareTo.length;
+        private static final int[] SEEDS = new int[] {
+                0x97CB3127, 0xB6E6D2B5, 0x9E3779B9, 0x85EBCA6B };
+        private static final int MAX_FREQUENCY = 15;
 
-        if ((end - start) < len) {
-            len = end - start;
+        private final byte[] counters;
+        private final int shift;
+        private int additions = 0;
+
+        private FrequencySketch(int size) {
+            counters = new byte[size];
+            shift = Integer.numberOfLeadingZeros(size) + 1;
         }
-        for (int i = 0; (i < len) && (result == 0); i++) {
-            if (c[i + start] > compareTo[i]) {
-                result = 1;
-            } else if (c[i + start] < compareTo[i]) {
-                result = -1;
+
+        private void increment(int hash, boolean miss) {
+            if (!miss && counters[(hash * SEEDS[0]) >>> shift] == MAX_FREQUENCY) {
+                return;
             }
-        }
-        if (result == 0) {
-            if (compareTo.length > (end - start)) {
-                result = -1;
-            } else if (compareTo.length < (end - start)) {
-                result = 1;
+            boolean added = false;
+            for (int seed : SEEDS) {
+                int index = (hash * seed) >>> shift;
+                int count = counters[index];
+                if (count < MAX_FREQUENCY) {
+                    counters[index] = (byte) (count + 1);
+                    added = true;
+                }
+            }
+            if ((added || miss) && ++additions >= trainThreshold) {
+                age();
             }
         }
-        return result;
-    }
 
+        private int frequency(int hash) {
+            int frequency = MAX_FREQUENCY;
+            for (int seed : SEEDS) {
+                int count = counters[(hash * seed) >>> shift];
+                if (count < frequency) {
+                    frequency = count;
+                }
+            }
+            return frequency;
+        }
 
-    /**
-     * Find an entry given its name in the cache and return the associated
-     * String.
-     * @param name The name to find
-     * @return the corresponding value
-     */
-    protected static final String find(CharChunk name) {
-        int pos = findClosest(name, ccCache, ccCache.length);
-        if ((pos < 0) || (compare(name, ccCache[pos].name) != 0)) {
-            return null;
-        } else {
-            return ccCache[pos].value;
+        private void age() {
+            additions = 0;
+            for (int i = 0; i < counters.length; i++) {
+                counters[i] = (byte) (counters[i] >> 1);
+            }
         }
     }
 
 
-    /**
-     * Find an entry given its name in a sorted array of map elements.
-     * This will return the index for the closest inferior or equal item in the
-     * given array.
-     * @param name The name to find
-     * @param array The array in which to look
-     * @param len The effective length of the array
-     * @return the position of the best match
-     */
-    protected static final int findClosest(CharChunk name, CharEntry[] array,
-            int len) {
+    // ------------------------------------------------------ Entry Inner Class
 
-        int a = 0;
-        int b = len - 1;
 
-        // Special cases: -1 and 0
-        if (b == -1) {
-            return -1;
-        }
+    private abstract static class Entry {
 
-        if (compare(name, array[0].name) < 0 ) {
-            return -1;
-        }
-        if (b == 0) {
-            return 0;
-        }
+        protected final int hash;
+        protected final String value;
 
-        int i = 0;
-        while (true) {
-            i = (b + a) >>> 1;
-            int result = compare(name, array[i].name);
-            if (result == 1) {
-                a = i;
-            } else if (result == 0) {
-                return i;
-            } else {
-                b = i;
-            }
-            if ((b - a) == 1) {
-                int result2 = compare(name, array[b].name);
-                if (result2 < 0) {
-                    return a;
-                } else {
-                    return b;
-                }
-            }
+        protected Entry(int hash, String value) {
+            this.hash = hash;
+            this.value = value;
         }
 
+        @Override
+        public String toString() {
+            return value;
+        }
     }
 
 
     // -------------------------------------------------- ByteEntry Inner Class
 
 
-    private static class ByteEntry {
+    private static final class ByteEntry extends Entry {
 
-        private byte[] name = null;
-        private Charset charset = null;
-        private String value = null;
+        private final byte[] name;
+        private final Charset charset;
 
-        @Override
-        public String toString() {
-            return value;
+        private ByteEntry(int hash, String value, byte[] name, Charset charset) {
+            super(hash, value);
+            this.name = name;
+            this.charset = charset;
         }
-        @Override
-        public int hashCode() {
-            return value.hashCode();
-        }
-        @Override
-        public boolean equals(Object obj) {
-            if (obj instanceof ByteEntry) {
-                return value.equals(((ByteEntry) obj).value);
+
+        private boolean matches(byte[] buf, int start, int end, Charset charset) {
+            if (end - start != name.length) {
+                return false;
             }
-            return false;
+            for (int i = 0; i < name.length; i++) {
+                if (buf[start + i] != name[i]) {
+                    return false;
+                }
+            }
+            return this.charset == charset || this.charset.equals(charset);
         }
-
     }
 
 
     // -------------------------------------------------- CharEntry Inner Class
 
 
-    private static class CharEntry {
+    private static final class CharEntry extends Entry {
 
-        private char[] name = null;
-        private String value = null;
+        private final char[] name;
 
-        @Override
-        public String toString() {
-            return value;
-        }
-        @Override
-        public int hashCode() {
-            return value.hashCode();
+        private CharEntry(int hash, String value, char[] name) {
+            super(hash, value);
+            this.name = name;
         }
-        @Override
-        public boolean equals(Object obj) {
-            if (obj instanceof CharEntry) {
-                return value.equals(((CharEntry) obj).value);
+
+        private boolean matches(char[] buf, int start, int end) {
+            if (end - start != name.length) {
+                return false;
+            }
+            for (int i = 0; i < name.length; i++) {
+                if (buf[start + i] != name[i]) {
+                    return false;
+                }
             }
-            return false;
+            return true;
         }
-
     }
-
-
 }
@@ -0,0 +1,257 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.tomcat.util.collections;
+
+import java.util.Collection;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A bounded, lock-free, multi-producer, multi-consumer queue backed by a ring
+ * of pre-allocated slots so adding and removing elements creates no garbage.
+ * Each slot has a sequence number that indicates whether it is available to a
+ * producer or a consumer for a given position.
+ * <p>
+ * Once the queue is closed, no more elements may be added. Elements added
+ * before the queue was closed may still be removed.
+ *
+ * @param <E> The type of element held in this queue
+ */
+public class LockFreeRingBuffer<E> {
+
+    /*
+     * Set in the enqueue position once the queue is closed so that any
+     * attempt to claim a position after the queue was closed fails.
+     */
+    private static final long CLOSED = 1L << 62;
+
+    /*
+     * The enqueue and dequeue positions are heavily contended by different
+     * threads so they are placed far enough apart in a single array that they
+     * will not share a cache line.
+     */
+    private static final int ENQUEUE = 8;
+    private static final int DEQUEUE = 16;
+
+    private final int mask;
+    private final AtomicReferenceArray<E> elements;
+    private final AtomicLongArray sequences;
+    private final AtomicLongArray positions = new AtomicLongArray(DEQUEUE + 8);
+
+
+    /**
+     * Create a queue.
+     *
+     * @param capacity The minimum number of elements the queue can hold. It
+     *                 will be rounded up to the next power of two that is at
+     *                 least two.
+     */
+    public LockFreeRingBuffer(int capacity) {
+        if (capacity < 1 || capacity > 1 << 30) {
+            throw new IllegalArgumentException(Integer.toString(capacity));
+        }
+        // A single slot can't distinguish full from empty
+        int size = Math.max(2, Integer.highestOneBit(capacity - 1) << 1);
+        mask = size - 1;
+        elements = new AtomicReferenceArray<>(size);
+        sequences = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) {
+            sequences.set(i, i);
+        }
+    }
+
+
+    /**
+     * Add an element to the tail of the queue.
+     *
+     * @param e The element to add
+     *
+     * @return {@code true} if the element was added or {@code false} if the
+     *         queue was full or closed
+     */
+    public boolean offer(E e) {
+        if (e == null) {
+            throw new NullPointerException();
+        }
+        long pos = positions.get(ENQUEUE);
+        while ((pos & CLOSED) == 0) {
+            int index = (int) pos & mask;
+            long diff = sequences.get(index) - pos;
+            if (diff == 0) {
+                if (positions.compareAndSet(ENQUEUE, pos, pos + 1)) {
+                    elements.lazySet(index, e);
+                    // Volatile write so it can't be reordered with a
+                    // subsequent volatile read by the producer, such as a
+                    // check for a consumer that is waiting for an element
+                    sequences.set(index, pos + 1);
+                    return true;
+                }
+            } else if (diff < 0) {
+                // Full
+                return false;
+            }
+            pos = positions.get(ENQUEUE);
+        }
+        return false;
+    }
+
+
+    /**
+     * Remove the element at the head of the queue.
+     *
+     * @return The element or {@code null} if the queue was empty
+     */
+    public E poll() {
+        long pos = positions.get(DEQUEUE);
+        while (true) {
+            int index = (int) pos & mask;
+            long diff = sequences.get(index) - (pos + 1);
+            if (diff == 0) {
+                if (positions.compareAndSet(DEQUEUE, pos, pos + 1)) {
+                    // Null if the element was removed
+                    E result = elements.getAndSet(index, null);
+                    sequences.lazySet(index, pos + mask + 1);
+                    if (result != null) {
+                        return result;
+                    }
+                }
+            } else if (diff < 0) {
+                // Empty
+                return null;
+            }
+            pos = positions.get(DEQUEUE);
+        }
+    }
+
+
+    /**
+     * @return The element at the head of the queue without removing it or
+     *         {@code null} if the queue was empty
+     */
+    public E peek() {
+        long dequeue = positions.get(DEQUEUE);
+        long enqueue = enqueuePosition();
+        for (long pos = dequeue; pos < enqueue; pos++) {
+            int index = (int) pos & mask;
+            if (sequences.get(index) == pos + 1) {
+                E result = elements.get(index);
+                if (result != null) {
+                    return result;
+                }
+            }
+        }
+        return null;
+    }
+
+
+    /**
+     * Remove the given element from the queue. This leaves an empty slot that
+     * is skipped by consumers so the size of the queue will not be reduced
+     * until that slot is reached.
+     *
+     * @param o The element to remove
+     *
+     * @return {@code true} if the element was removed
+     */
+    public boolean remove(Object o) {
+        if (o == null) {
+            return false;
+        }
+        long dequeue = positions.get(DEQUEUE);
+        long enqueue = enqueuePosition();
+        for (long pos = dequeue; pos < enqueue; pos++) {
+            int index = (int) pos & mask;
+            if (sequences.get(index) == pos + 1 && elements.get(index) == o) {
+                @SuppressWarnings("unchecked")
+                E e = (E) o;
+                if (elements.compareAndSet(index, e, null)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+
+    /**
+     * Add the elements currently in the queue, in order, to the given
+     * collection without removing them from the queue.
+     *
+     * @param c The collection to add the elements to
+     */
+    public void copyTo(Collection<? super E> c) {
+        long dequeue = positions.get(DEQUEUE);
+        long enqueue = enqueuePosition();
+        for (long pos = dequeue; pos < enqueue; pos++) {
+            int index = (int) pos & mask;
+            if (sequences.get(index) == pos + 1) {
+                E e = elements.get(index);
+                if (e != null) {
+                    c.add(e);
+                }
+            }
+        }
+    }
+
+
+    /**
+     * @return The approximate number of elements in the queue, including any
+     *         that are still being added
+     */
+    public int size() {
+        // Read the dequeue position first so the result can't be negative
+        // other than as a result of a removal
+        long dequeue = positions.get(DEQUEUE);
+        long enqueue = enqueuePosition();
+        return (int) Math.max(0, Math.min(enqueue - dequeue, mask + 1));
+    }
+
+
+    /**
+     * @return The maximum number of elements the queue can hold
+     */
+    public int capacity() {
+        return mask + 1;
+    }
+
+
+    /**
+     * Close the queue. Any subsequent attempt to add an element will fail.
+     * Once this method returns, every element that has been added, or that is
+     * still being added by a concurrent call to {@link #offer(Object)}, is
+     * included in {@link #size()}.
+     */
+    public void close() {
+        long pos;
+        do {
+            pos = positions.get(ENQUEUE);
+        } while ((pos & CLOSED) == 0 && !positions.compareAndSet(ENQUEUE, pos, pos | CLOSED));
+    }
+
+
+    /**
+     * @return {@code true} if the queue has been closed
+     */
+    public boolean isClosed() {
+        return (positions.get(ENQUEUE) & CLOSED) != 0;
+    }
+
+
+    private long enqueuePosition() {
+        return positions.get(ENQUEUE) & ~CLOSED;
+    }
+}
@@ -27,6 +27,7 @@ import java.net.URLConnection;
 import java.nio.channels.ServerSocketChannel;
 import java.nio.channels.SocketChannel;
 import java.util.Deque;
+import java.util.concurrent.ThreadFactory;
 import java.util.jar.JarFile;
 
 import javax.net.ssl.SSLEngine;
@@ -45,6 +46,7 @@ public class JreCompat {
 
     private static final JreCompat instance;
     private static final boolean graalAvailable;
+    private static final boolean jre21Available;
     private static final boolean jre16Available;
     private static final boolean jre11Available;
     private static final boolean jre9Available;
@@ -67,18 +69,26 @@ public class JreCompat {
 
         // This is Tomcat 10 with a minimum Java version of Java 8.
         // Look for the highest supported JVM first
-        if (Jre16Compat.isSupported()) {
+        if (Jre21Compat.isSupported()) {
+            instance = new Jre21Compat();
+            jre9Available = true;
+            jre16Available = true;
+            jre21Available = true;
+        } else if (Jre16Compat.isSupported()) {
             instance = new Jre16Compat();
             jre9Available = true;
             jre16Available = true;
+            jre21Available = false;
         } else if (Jre9Compat.isSupported()) {
             instance = new Jre9Compat();
             jre9Available = true;
             jre16Available = false;
+            jre21Available = false;
         } else {
             instance = new JreCompat();
             jre9Available = false;
             jre16Available = false;
+            jre21Available = false;
         }
         jre11Available = instance.jarFileRuntimeMajorVersion() >= 11;
 
@@ -125,6 +135,11 @@ public class JreCompat {
     }
 
 
+    public static boolean isJre21Available() {
+        return jre21Available;
+    }
+
+
     // Java 8 implementation of Java 9 methods
 
     /**
@@ -329,4 +344,19 @@ public class JreCompat {
         throw new UnsupportedOperationException(sm.getString("jreCompat.noUnixDomainSocket"));
     }
 
+
+    // Java 8 implementation of Java 21 methods
+
+    /**
+     * Create a thread factory that creates virtual threads.
+     *
+     * @param namePrefix The prefix for the names of the created threads. A
+     *                   sequence number starting at 1 is appended.
+     *
+     * @return the thread factory
+     */
+    public ThreadFactory createVirtualThreadFactory(String namePrefix) {
+        throw new UnsupportedOperationException(sm.getString("jreCompat.noVirtualThreads"));
+    }
+
 }
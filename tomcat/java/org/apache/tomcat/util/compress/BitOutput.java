@@ -0,0 +1,146 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  See the NOTICE file distributed with
+ *  this work for additional information regarding copyright ownership.
+ *  The ASF licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.tomcat.util.compress;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+/**
+ * Growable bit buffer. Bits are packed starting with the least significant bit
+ * of each byte, as required by both the brotli and zstd formats.
+ */
+class BitOutput {
+
+    private byte[] bytes;
+    private int byteCount = 0;
+    private long accumulator = 0;
+    private int bitCount = 0;
+
+
+    BitOutput(int initialCapacity) {
+        bytes = new byte[Math.max(16, initialCapacity)];
+    }
+
+
+    /**
+     * Append bits to the buffer.
+     *
+     * @param value The bits to append, only the lowest <code>count</code>
+     *              bits are used
+     * @param count The number of bits to append, at most 56
+     */
+    void writeBits(long value, int count) {
+        if (count == 0) {
+            return;
+        }
+        accumulator |= (value & ((1L << count) - 1)) << bitCount;
+        bitCount += count;
+        while (bitCount >= 8) {
+            ensureCapacity(1);
+            bytes[byteCount++] = (byte) accumulator;
+            accumulator >>>= 8;
+            bitCount -= 8;
+        }
+    }
+
+
+    /**
+     * Pad the buffer with zero bits to the next byte boundary.
+     */
+    void alignToByte() {
+        if (bitCount > 0) {
+            writeBits(0, 8 - bitCount);
+        }
+    }
+
+
+    void writeBytes(byte[] src, int off, int len) {
+        if (bitCount == 0) {
+            ensureCapacity(len);
+            System.arraycopy(src, off, bytes, byteCount, len);
+            byteCount += len;
+        } else {
+            for (int i = 0; i < len; i++) {
+                writeBits(src[off + i] & 0xFF, 8);
+            }
+        }
+    }
+
+
+    /**
+     * Append the complete content of another buffer, including any bits that
+     * have not yet formed a complete byte.
+     *
+     * @param other The buffer to append
+     */
+    void writeBitOutput(BitOutput other) {
+        writeBytes(other.bytes, 0, other.byteCount);
+        writeBits(other.accumulator, other.bitCount);
+    }
+
+
+    /**
+     * @return the number of bits written to the buffer
+     */
+    long getBitLength() {
+        return ((long) byteCount << 3) + bitCount;
+    }
+
+
+    /**
+     * @return the number of complete bytes written to the buffer
+     */
+    int getByteCount() {
+        return byteCount;
+    }
+
+
+    byte[] getBytes() {
+        return bytes;
+    }
+
+
+    /**
+     * Write the complete bytes to the given stream and remove them from this
+     * buffer. Any trailing partial byte is retained.
+     *
+     * @param out The stream to write to
+     *
+     * @throws IOException If an I/O error occurs writing to the stream
+     */
+    void drainTo(OutputStream out) throws IOException {
+        if (byteCount > 0) {
+            out.write(bytes, 0, byteCount);
+            byteCount = 0;
+        }
+    }
+
+
+    void reset() {
+        byteCount = 0;
+        accumulator = 0;
+        bitCount = 0;
+    }
+
+
+    private void ensureCapacity(int extra) {
+        if (byteCount + extra > bytes.length) {
+            bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, byteCount + extra));
+        }
+    }
+}
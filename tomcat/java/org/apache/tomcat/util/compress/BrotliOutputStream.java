@@ -0,0 +1,831 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  See the NOTICE file distributed with
+ *  this work for additional information regarding copyright ownership.
+ *  The ASF licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.tomcat.util.compress;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+import org.apache.tomcat.util.res.StringManager;
+
+/**
+ * Pure Java brotli (RFC 7932) encoder.
+ * <p>
+ * The level selects the window size (from 256kB to 1MB), the depth of the hash
+ * chain search, whether lazy matching is used and the maximum number of
+ * literal prefix codes per meta-block. Literals are modelled using the UTF8
+ * context mode with the 64 contexts clustered into a small number of prefix
+ * codes. Distances are coded using the ring buffer of the last four distances
+ * where possible. There is a single block type per category and the static
+ * dictionary is not used so the compression ratio is lower than that of the
+ * reference implementation at the same level.
+ * <p>
+ * {@link #flush()} completes the current meta-block and pads the output to a
+ * byte boundary so that all data written so far may be decoded by the
+ * recipient.
+ */
+public class BrotliOutputStream extends FilterOutputStream {
+
+    private static final StringManager sm = StringManager.getManager(BrotliOutputStream.class);
+
+    public static final int MIN_LEVEL = 0;
+    public static final int MAX_LEVEL = 11;
+    public static final int DEFAULT_LEVEL = 5;
+
+    /*
+     * Window bits, maximum hash bits, maximum hash chain length, lazy depth,
+     * nice match length and maximum number of literal prefix codes for each
+     * level.
+     */
+    private static final int[][] LEVELS = {
+            { 18, 14,    2, 0,  16,  1 },
+            { 18, 15,    4, 0,  16,  2 },
+            { 18, 15,    8, 0,  24,  4 },
+            { 18, 16,   16, 1,  32,  4 },
+            { 19, 16,   24, 1,  48,  8 },
+            { 19, 16,   32, 2,  48,  8 },
+            { 20, 16,   48, 2,  64, 12 },
+            { 20, 17,   64, 2,  96, 16 },
+            { 20, 17,  128, 2, 128, 16 },
+            { 20, 17,  192, 2, 192, 16 },
+            { 20, 17,  512, 2, 256, 16 },
+            { 20, 17, 1024, 2, 512, 16 } };
+
+    private static final int BLOCK_SIZE = 1 << 17;
+
+    private static final int LITERAL_ALPHABET = 256;
+    private static final int COMMAND_ALPHABET = 704;
+    private static final int DISTANCE_ALPHABET = 64;
+    private static final int LITERAL_CONTEXTS = 64;
+    private static final int MAX_CODE_LENGTH = 15;
+    private static final int MAX_CODE_LENGTH_CODE_LENGTH = 5;
+    private static final int CONTEXT_MODE_UTF8 = 2;
+
+    private static final int[] INSERT_BASE = { 0, 1, 2, 3, 4, 5, 6, 8, 10, 14, 18, 26,
+            34, 50, 66, 98, 130, 194, 322, 578, 1090, 2114, 6210, 22594 };
+    private static final int[] INSERT_EXTRA = { 0, 0, 0, 0, 0, 0, 1, 1, 2, 2, 3, 3,
+            4, 4, 5, 5, 6, 7, 8, 9, 10, 12, 14, 24 };
+    private static final int[] COPY_BASE = { 2, 3, 4, 5, 6, 7, 8, 9, 10, 12, 14, 18,
+            22, 30, 38, 54, 70, 102, 134, 198, 326, 582, 1094, 2118 };
+    private static final int[] COPY_EXTRA = { 0, 0, 0, 0, 0, 0, 0, 0, 1, 1, 2, 2,
+            3, 3, 4, 4, 5, 5, 6, 7, 8, 9, 10, 24 };
+
+    /*
+     * For distance codes 0 to 15, the index into the ring buffer of previous
+     * distances (0 is the most recent) and the offset to apply.
+     */
+    private static final int[] DISTANCE_CACHE_INDEX = {
+            0, 1, 2, 3, 0, 0, 0, 0, 0, 0, 1, 1, 1, 1, 1, 1 };
+    private static final int[] DISTANCE_CACHE_OFFSET = {
+            0, 0, 0, 0, -1, 1, -2, 2, -3, 3, -1, 1, -2, 2, -3, 3 };
+
+    /*
+     * The order in which the code lengths of the code length alphabet are
+     * written and the static code used to write them.
+     */
+    private static final int[] CODE_LENGTH_ORDER = {
+            1, 2, 3, 4, 0, 5, 17, 6, 16, 7, 8, 9, 10, 11, 12, 13, 14, 15 };
+    private static final int[] CODE_LENGTH_CODE_SYMBOLS = { 0, 7, 3, 2, 1, 15 };
+    private static final int[] CODE_LENGTH_CODE_BITS = { 2, 4, 3, 2, 2, 4 };
+
+    /*
+     * Context lookup for the UTF8 context mode. The context is
+     * UTF8_LUT0[p1] | UTF8_LUT1[p2] where p1 is the previous byte and p2 the
+     * one before that.
+     */
+    private static final int[] UTF8_LUT0 = new int[256];
+    private static final int[] UTF8_LUT1 = new int[256];
+
+    static {
+        int[] lut0 = {
+                0,  0,  0,  0,  0,  0,  0,  0,  0,  4,  4,  0,  0,  4,  0,  0,
+                0,  0,  0,  0,  0,  0,  0,  0,  0,  0,  0,  0,  0,  0,  0,  0,
+                8, 12, 16, 12, 12, 20, 12, 16, 24, 28, 12, 12, 32, 12, 36, 12,
+               44, 44, 44, 44, 44, 44, 44, 44, 44, 44, 32, 32, 24, 40, 28, 12,
+               12, 48, 52, 52, 52, 48, 52, 52, 52, 48, 52, 52, 52, 52, 52, 48,
+               52, 52, 52, 52, 52, 48, 52, 52, 52, 52, 52, 24, 12, 28, 12, 12,
+               12, 56, 60, 60, 60, 56, 60, 60, 60, 56, 60, 60, 60, 60, 60, 56,
+               60, 60, 60, 60, 60, 56, 60, 60, 60, 60, 60, 24, 12, 28, 12,  0 };
+        int[] lut1 = {
+                0,  0,  0,  0,  0,  0,  0,  0,  0,  0,  0,  0,  0,  0,  0,  0,
+                0,  0,  0,  0,  0,  0,  0,  0,  0,  0,  0,  0,  0,  0,  0,  0,
+                0,  1,  1,  1,  1,  1,  1,  1,  1,  1,  1,  1,  1,  1,  1,  1,
+                2,  2,  2,  2,  2,  2,  2,  2,  2,  2,  1,  1,  1,  1,  1,  1,
+                1,  2,  2,  2,  2,  2,  2,  2,  2,  2,  2,  2,  2,  2,  2,  2,
+                2,  2,  2,  2,  2,  2,  2,  2,  2,  2,  2,  1,  1,  1,  1,  1,
+                1,  3,  3,  3,  3,  3,  3,  3,  3,  3,  3,  3,  3,  3,  3,  3,
+                3,  3,  3,  3,  3,  3,  3,  3,  3,  3,  3,  1,  1,  1,  1,  0 };
+        for (int i = 0; i < 128; i++) {
+            UTF8_LUT0[i] = lut0[i];
+            UTF8_LUT1[i] = lut1[i];
+        }
+        for (int i = 128; i < 256; i++) {
+            // Continuation bytes alternate 0/1, lead bytes alternate 2/3
+            UTF8_LUT0[i] = (i < 192 ? 0 : 2) + (i & 1);
+            UTF8_LUT1[i] = i < 224 ? 0 : 2;
+        }
+    }
+
+    private final int windowBits;
+    private final int maxLiteralTrees;
+    private final MatchFinder matchFinder;
+    private final BitOutput bits = new BitOutput(1024);
+    private final BitOutput metaBlock = new BitOutput(1024);
+    private final byte[] singleByte = new byte[1];
+
+    // Ring buffer of the last four distances, most recent first
+    private final int[] distanceCache = { 4, 11, 15, 16 };
+
+    private boolean headerWritten = false;
+    private boolean finished = false;
+
+
+    public BrotliOutputStream(OutputStream out) {
+        this(out, DEFAULT_LEVEL);
+    }
+
+
+    /**
+     * Create a new brotli encoder.
+     *
+     * @param out   The stream to which the compressed data will be written
+     * @param level The compression level, from {@link #MIN_LEVEL} to
+     *              {@link #MAX_LEVEL}
+     */
+    public BrotliOutputStream(OutputStream out, int level) {
+        super(out);
+        if (level < MIN_LEVEL || level > MAX_LEVEL) {
+            throw new IllegalArgumentException(sm.getString("brotli.invalidLevel",
+                    Integer.toString(level)));
+        }
+        int[] parameters = LEVELS[level - MIN_LEVEL];
+        windowBits = parameters[0];
+        maxLiteralTrees = parameters[5];
+        matchFinder = new MatchFinder((1 << windowBits) - 16, BLOCK_SIZE, parameters[1],
+                parameters[2], parameters[3], parameters[4]);
+    }
+
+
+    @Override
+    public void write(int b) throws IOException {
+        singleByte[0] = (byte) b;
+        write(singleByte, 0, 1);
+    }
+
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        if (finished) {
+            throw new IOException(sm.getString("brotli.finished"));
+        }
+        while (len > 0) {
+            int count = matchFinder.append(b, off, len);
+            off += count;
+            len -= count;
+            if (matchFinder.isBlockFull()) {
+                writeMetaBlock();
+                bits.drainTo(out);
+            }
+        }
+    }
+
+
+    /**
+     * Compress any buffered data, pad the compressed stream to a byte boundary
+     * and flush the underlying stream.
+     */
+    @Override
+    public void flush() throws IOException {
+        if (!finished) {
+            writeMetaBlock();
+            writeHeader();
+            // Empty metadata meta-block: ISLAST=0, MNIBBLES=0 (coded as 3),
+            // reserved bit, MSKIPBYTES=0 and then padding to a byte boundary
+            bits.writeBits(0, 1);
+            bits.writeBits(3, 2);
+            bits.writeBits(0, 1);
+            bits.writeBits(0, 2);
+            bits.alignToByte();
+            bits.drainTo(out);
+        }
+        out.flush();
+    }
+
+
+    /**
+     * Complete the compressed stream without closing the underlying stream.
+     *
+     * @throws IOException If an I/O error occurs writing to the underlying
+     *                     stream
+     */
+    public void finish() throws IOException {
+        if (finished) {
+            return;
+        }
+        writeMetaBlock();
+        writeHeader();
+        // ISLAST=1, ISLASTEMPTY=1
+        bits.writeBits(3, 2);
+        bits.alignToByte();
+        bits.drainTo(out);
+        finished = true;
+    }
+
+
+    @Override
+    public void close() throws IOException {
+        try {
+            finish();
+        } finally {
+            out.close();
+        }
+    }
+
+
+    private void writeHeader() {
+        if (!headerWritten) {
+            if (windowBits == 16) {
+                bits.writeBits(0, 1);
+            } else {
+                // WBITS from 18 to 24
+                bits.writeBits(1, 1);
+                bits.writeBits(windowBits - 17, 3);
+            }
+            headerWritten = true;
+        }
+    }
+
+
+    private void writeMetaBlock() {
+        int length = matchFinder.pending();
+        if (length == 0) {
+            return;
+        }
+        writeHeader();
+        matchFinder.parse();
+
+        int[] savedDistanceCache = distanceCache.clone();
+        metaBlock.reset();
+        encodeCompressed(metaBlock);
+
+        // ISLAST=0, MNIBBLES, MLEN-1
+        int nibbles = length - 1 < (1 << 16) ? 4 : length - 1 < (1 << 20) ? 5 : 6;
+        bits.writeBits(0, 1);
+        bits.writeBits(nibbles - 4, 2);
+        bits.writeBits(length - 1, nibbles * 4);
+        // The uncompressed form requires the ISUNCOMPRESSED bit and up to 7
+        // bits of padding
+        if (metaBlock.getBitLength() < ((long) length << 3) + 8) {
+            bits.writeBitOutput(metaBlock);
+        } else {
+            System.arraycopy(savedDistanceCache, 0, distanceCache, 0, distanceCache.length);
+            bits.writeBits(1, 1);
+            bits.alignToByte();
+            bits.writeBytes(matchFinder.getWindow(), matchFinder.getParsedStart(), length);
+        }
+        matchFinder.slide();
+    }
+
+
+    /*
+     * Writes the remainder of a compressed meta-block header (starting with
+     * ISUNCOMPRESSED) and the meta-block data.
+     */
+    private void encodeCompressed(BitOutput bo) {
+        byte[] window = matchFinder.getWindow();
+        int start = matchFinder.getParsedStart();
+        int sequenceCount = matchFinder.getSequenceCount();
+        int[] literalLengths = matchFinder.getLiteralLengths();
+        int[] matchLengths = matchFinder.getMatchLengths();
+        int[] distances = matchFinder.getDistances();
+        int lastLiterals = matchFinder.getLastLiterals();
+
+        int commandCount = sequenceCount + (lastLiterals > 0 ? 1 : 0);
+        int[] commandCodes = new int[commandCount];
+        int[] distanceCodes = new int[sequenceCount];
+        int[][] literalFrequencies = new int[LITERAL_CONTEXTS][LITERAL_ALPHABET];
+        int[] commandFrequencies = new int[COMMAND_ALPHABET];
+        int[] distanceFrequencies = new int[DISTANCE_ALPHABET];
+
+        int pos = start;
+        for (int i = 0; i < commandCount; i++) {
+            int insert;
+            int copy;
+            int distanceCode = -1;
+            if (i < sequenceCount) {
+                insert = literalLengths[i];
+                copy = matchLengths[i];
+                distanceCode = distanceCode(distances[i]);
+                distanceCodes[i] = distanceCode;
+            } else {
+                insert = lastLiterals;
+                copy = COPY_BASE[0];
+            }
+            int commandCode = commandCode(insertCode(insert), copyCode(copy), distanceCode == 0);
+            commandCodes[i] = commandCode;
+            commandFrequencies[commandCode]++;
+            if (commandCode >= 128 && distanceCode >= 0) {
+                distanceFrequencies[distanceCode]++;
+            }
+            for (int j = 0; j < insert; j++) {
+                literalFrequencies[context(window, pos + j)][window[pos + j] & 0xFF]++;
+            }
+            pos += insert + copy;
+        }
+
+        int[] contextMap = clusterLiterals(literalFrequencies);
+        int literalTrees = 0;
+        for (int tree : contextMap) {
+            literalTrees = Math.max(literalTrees, tree + 1);
+        }
+        int[][] clusteredFrequencies = new int[literalTrees][LITERAL_ALPHABET];
+        for (int c = 0; c < LITERAL_CONTEXTS; c++) {
+            int[] from = literalFrequencies[c];
+            int[] to = clusteredFrequencies[contextMap[c]];
+            for (int s = 0; s < LITERAL_ALPHABET; s++) {
+                to[s] += from[s];
+            }
+        }
+
+        // ISUNCOMPRESSED=0
+        bo.writeBits(0, 1);
+        // NBLTYPESL, NBLTYPESI, NBLTYPESD = 1
+        bo.writeBits(0, 3);
+        // NPOSTFIX=0, NDIRECT=0
+        bo.writeBits(0, 6);
+        // Context mode for the single literal block type
+        bo.writeBits(CONTEXT_MODE_UTF8, 2);
+        // NTREESL and the literal context map
+        writeVarLenUint8(bo, literalTrees - 1);
+        if (literalTrees > 1) {
+            writeContextMap(bo, contextMap, literalTrees);
+        }
+        // NTREESD=1
+        bo.writeBits(0, 1);
+
+        int[][] literalCodeLengths = new int[literalTrees][];
+        int[][] literalCodes = new int[literalTrees][];
+        for (int t = 0; t < literalTrees; t++) {
+            literalCodeLengths[t] = writePrefixCode(bo, clusteredFrequencies[t], LITERAL_ALPHABET, 8);
+            literalCodes[t] = reversedCodes(literalCodeLengths[t]);
+        }
+        int[] commandLengthsCode = writePrefixCode(bo, commandFrequencies, COMMAND_ALPHABET, 10);
+        int[] commandCodesTable = reversedCodes(commandLengthsCode);
+        int[] distanceLengthsCode = writePrefixCode(bo, distanceFrequencies, DISTANCE_ALPHABET, 6);
+        int[] distanceCodesTable = reversedCodes(distanceLengthsCode);
+
+        pos = start;
+        for (int i = 0; i < commandCount; i++) {
+            int insert;
+            int copy;
+            if (i < sequenceCount) {
+                insert = literalLengths[i];
+                copy = matchLengths[i];
+            } else {
+                insert = lastLiterals;
+                copy = COPY_BASE[0];
+            }
+            int commandCode = commandCodes[i];
+            bo.writeBits(commandCodesTable[commandCode], commandLengthsCode[commandCode]);
+            int insertCode = insertCode(insert);
+            bo.writeBits(insert - INSERT_BASE[insertCode], INSERT_EXTRA[insertCode]);
+            int copyCode = copyCode(copy);
+            bo.writeBits(copy - COPY_BASE[copyCode], COPY_EXTRA[copyCode]);
+            for (int j = 0; j < insert; j++) {
+                int tree = contextMap[context(window, pos + j)];
+                int literal = window[pos + j] & 0xFF;
+                bo.writeBits(literalCodes[tree][literal], literalCodeLengths[tree][literal]);
+            }
+            if (i < sequenceCount && commandCode >= 128) {
+                int distanceCode = distanceCodes[i];
+                bo.writeBits(distanceCodesTable[distanceCode], distanceLengthsCode[distanceCode]);
+                if (distanceCode >= 16) {
+                    int v = distances[i] + 3;
+                    int extraBits = 31 - Integer.numberOfLeadingZeros(v) - 1;
+                    bo.writeBits(v & ((1 << extraBits) - 1), extraBits);
+                }
+            }
+            pos += insert + copy;
+        }
+    }
+
+
+    private static int context(byte[] window, int pos) {
+        int p1 = pos > 0 ? window[pos - 1] & 0xFF : 0;
+        int p2 = pos > 1 ? window[pos - 2] & 0xFF : 0;
+        return UTF8_LUT0[p1] | UTF8_LUT1[p2];
+    }
+
+
+    /*
+     * Greedily merge the literal histograms of the 64 contexts while doing so
+     * reduces the estimated size or there are more clusters than permitted.
+     * Returns the context map.
+     */
+    private int[] clusterLiterals(int[][] frequencies) {
+        int[] contextMap = new int[LITERAL_CONTEXTS];
+        if (maxLiteralTrees == 1) {
+            return contextMap;
+        }
+        int[][] clusters = new int[LITERAL_CONTEXTS][];
+        double[] costs = new double[LITERAL_CONTEXTS];
+        int[] members = new int[LITERAL_CONTEXTS];
+        int clusterCount = 0;
+        int empty = -1;
+        for (int c = 0; c < LITERAL_CONTEXTS; c++) {
+            int total = 0;
+            for (int f : frequencies[c]) {
+                total += f;
+            }
+            if (total == 0) {
+                // Empty contexts are merged into any cluster at no cost
+                contextMap[c] = empty;
+                continue;
+            }
+            clusters[clusterCount] = frequencies[c].clone();
+            costs[clusterCount] = histogramCost(clusters[clusterCount]);
+            contextMap[c] = clusterCount;
+            members[clusterCount] = c;
+            clusterCount++;
+        }
+        if (clusterCount == 0) {
+            return new int[LITERAL_CONTEXTS];
+        }
+
+        // Cost change from merging each pair of clusters
+        double[][] delta = new double[clusterCount][clusterCount];
+        int[] merged = new int[LITERAL_ALPHABET];
+        for (int i = 0; i < clusterCount; i++) {
+            for (int j = i + 1; j < clusterCount; j++) {
+                delta[i][j] = mergeCost(clusters[i], clusters[j], merged) - costs[i] - costs[j];
+            }
+        }
+        // Cluster i has been merged into cluster alias[i]
+        int[] alias = new int[clusterCount];
+        for (int i = 0; i < clusterCount; i++) {
+            alias[i] = i;
+        }
+        int remaining = clusterCount;
+        while (remaining > 1) {
+            int bestI = -1;
+            int bestJ = -1;
+            double best = Double.MAX_VALUE;
+            for (int i = 0; i < clusterCount; i++) {
+                if (alias[i] != i) {
+                    continue;
+                }
+                for (int j = i + 1; j < clusterCount; j++) {
+                    if (alias[j] == j && delta[i][j] < best) {
+                        best = delta[i][j];
+                        bestI = i;
+                        bestJ = j;
+                    }
+                }
+            }
+            if (best >= 0 && remaining <= maxLiteralTrees) {
+                break;
+            }
+            int[] target = clusters[bestI];
+            int[] source = clusters[bestJ];
+            for (int s = 0; s < LITERAL_ALPHABET; s++) {
+                target[s] += source[s];
+            }
+            costs[bestI] = histogramCost(target);
+            alias[bestJ] = bestI;
+            remaining--;
+            for (int k = 0; k < clusterCount; k++) {
+                if (alias[k] == k && k != bestI) {
+                    double d = mergeCost(target, clusters[k], merged) - costs[bestI] - costs[k];
+                    if (k < bestI) {
+                        delta[k][bestI] = d;
+                    } else {
+                        delta[bestI][k] = d;
+                    }
+                }
+            }
+        }
+
+        // Number the surviving clusters in order of first use
+        int[] treeIndex = new int[clusterCount];
+        int trees = 0;
+        for (int i = 0; i < clusterCount; i++) {
+            if (alias[i] == i) {
+                treeIndex[i] = trees++;
+            }
+        }
+        for (int c = 0; c < LITERAL_CONTEXTS; c++) {
+            int cluster = contextMap[c];
+            if (cluster == empty) {
+                contextMap[c] = 0;
+            } else {
+                while (alias[cluster] != cluster) {
+                    cluster = alias[cluster];
+                }
+                contextMap[c] = treeIndex[cluster];
+            }
+        }
+        return contextMap;
+    }
+
+
+    private static double mergeCost(int[] a, int[] b, int[] merged) {
+        for (int s = 0; s < LITERAL_ALPHABET; s++) {
+            merged[s] = a[s] + b[s];
+        }
+        return histogramCost(merged);
+    }
+
+
+    /*
+     * Estimated size in bits of the symbols plus an allowance for the prefix
+     * code description.
+     */
+    private static double histogramCost(int[] histogram) {
+        long total = 0;
+        double sum = 0;
+        int used = 0;
+        for (int count : histogram) {
+            if (count > 0) {
+                total += count;
+                sum += count * log2(count);
+                used++;
+            }
+        }
+        if (used <= 1) {
+            return 12;
+        }
+        return total * log2(total) - sum + 12 + 5 * used;
+    }
+
+
+    private static double log2(long value) {
+        return Math.log(value) * 1.4426950408889634;
+    }
+
+
+    /*
+     * Write a context map using a move-to-front transform and no run length
+     * coding of zeros.
+     */
+    private static void writeContextMap(BitOutput bo, int[] contextMap, int trees) {
+        int[] mtf = new int[trees];
+        for (int i = 0; i < trees; i++) {
+            mtf[i] = i;
+        }
+        int[] symbols = new int[contextMap.length];
+        int[] frequencies = new int[trees];
+        for (int i = 0; i < contextMap.length; i++) {
+            int value = contextMap[i];
+            int index = 0;
+            while (mtf[index] != value) {
+                index++;
+            }
+            System.arraycopy(mtf, 0, mtf, 1, index);
+            mtf[0] = value;
+            symbols[i] = index;
+            frequencies[index]++;
+        }
+        // RLEMAX=0
+        bo.writeBits(0, 1);
+        int alphabetBits = 32 - Integer.numberOfLeadingZeros(trees - 1);
+        int[] lengths = writePrefixCode(bo, frequencies, trees, alphabetBits);
+        int[] codes = reversedCodes(lengths);
+        for (int symbol : symbols) {
+            bo.writeBits(codes[symbol], lengths[symbol]);
+        }
+        // IMTF=1
+        bo.writeBits(1, 1);
+    }
+
+
+    private static void writeVarLenUint8(BitOutput bo, int value) {
+        if (value == 0) {
+            bo.writeBits(0, 1);
+        } else {
+            int n = 31 - Integer.numberOfLeadingZeros(value);
+            bo.writeBits(1, 1);
+            bo.writeBits(n, 3);
+            bo.writeBits(value - (1 << n), n);
+        }
+    }
+
+
+    /*
+     * Find the shortest code for the distance, using the ring buffer of
+     * previous distances where possible, and update the ring buffer as the
+     * decoder will.
+     */
+    private int distanceCode(int distance) {
+        int code = -1;
+        for (int i = 0; i < 16; i++) {
+            if (distanceCache[DISTANCE_CACHE_INDEX[i]] + DISTANCE_CACHE_OFFSET[i] == distance) {
+                code = i;
+                break;
+            }
+        }
+        if (code == -1) {
+            int v = distance + 3;
+            int extraBits = 31 - Integer.numberOfLeadingZeros(v) - 1;
+            code = 16 + (((extraBits - 1) << 1) | ((v >>> extraBits) & 1));
+        }
+        if (code != 0) {
+            System.arraycopy(distanceCache, 0, distanceCache, 1, 3);
+            distanceCache[0] = distance;
+        }
+        return code;
+    }
+
+
+    private static int insertCode(int insert) {
+        return code(INSERT_BASE, insert);
+    }
+
+
+    private static int copyCode(int copy) {
+        return code(COPY_BASE, copy);
+    }
+
+
+    private static int code(int[] base, int value) {
+        int code = base.length - 1;
+        while (base[code] > value) {
+            code--;
+        }
+        return code;
+    }
+
+
+    /*
+     * Combined insert and copy length code. When the last distance is re-used,
+     * and the lengths are short enough, a code with an implicit distance is
+     * used.
+     */
+    private static int commandCode(int insertCode, int copyCode, boolean lastDistance) {
+        int cell;
+        if (lastDistance && insertCode < 8 && copyCode < 16) {
+            cell = copyCode < 8 ? 0 : 64;
+        } else if (insertCode < 8 && copyCode < 16) {
+            cell = copyCode < 8 ? 128 : 192;
+        } else if (insertCode < 16 && copyCode < 16) {
+            cell = copyCode < 8 ? 256 : 320;
+        } else if (insertCode < 8) {
+            cell = 384;
+        } else if (copyCode < 8) {
+            cell = 448;
+        } else if (insertCode < 16) {
+            cell = 512;
+        } else if (copyCode < 16) {
+            cell = 576;
+        } else {
+            cell = 640;
+        }
+        return cell | ((insertCode & 7) << 3) | (copyCode & 7);
+    }
+
+
+    private static int[] reversedCodes(int[] lengths) {
+        int[] codes = HuffmanCodeBuilder.buildCodes(lengths);
+        for (int i = 0; i < codes.length; i++) {
+            codes[i] = HuffmanCodeBuilder.reverse(codes[i], lengths[i]);
+        }
+        return codes;
+    }
+
+
+    /*
+     * Writes the prefix code and returns the code lengths.
+     */
+    private static int[] writePrefixCode(BitOutput bo, int[] frequencies, int alphabetSize,
+            int alphabetBits) {
+        int[] lengths = HuffmanCodeBuilder.buildLengths(frequencies, alphabetSize, MAX_CODE_LENGTH);
+        int used = 0;
+        int lastUsed = 0;
+        for (int i = 0; i < alphabetSize; i++) {
+            if (frequencies[i] > 0) {
+                used++;
+                lastUsed = i;
+            }
+        }
+        if (used < 2) {
+            // Simple prefix code with a single symbol that requires no bits
+            bo.writeBits(1, 2);
+            bo.writeBits(0, 2);
+            bo.writeBits(lastUsed, alphabetBits);
+            return lengths;
+        }
+
+        // Run length encode the code lengths
+        int[] symbols = new int[alphabetSize];
+        int[] extra = new int[alphabetSize];
+        int count = 0;
+        int end = lastUsed + 1;
+        int i = 0;
+        while (i < end) {
+            int value = lengths[i];
+            int run = 1;
+            while (i + run < end && lengths[i + run] == value) {
+                run++;
+            }
+            i += run;
+            if (value == 0) {
+                boolean previousRepeat = false;
+                while (run > 0) {
+                    if (run >= 3 && !previousRepeat) {
+                        int n = Math.min(run, 10);
+                        symbols[count] = 17;
+                        extra[count++] = n - 3;
+                        run -= n;
+                        previousRepeat = true;
+                    } else {
+                        symbols[count++] = 0;
+                        run--;
+                        previousRepeat = false;
+                    }
+                }
+            } else {
+                symbols[count++] = value;
+                run--;
+                boolean previousRepeat = false;
+                while (run > 0) {
+                    if (run >= 3 && !previousRepeat) {
+                        int n = Math.min(run, 6);
+                        symbols[count] = 16;
+                        extra[count++] = n - 3;
+                        run -= n;
+                        previousRepeat = true;
+                    } else {
+                        symbols[count++] = value;
+                        run--;
+                        previousRepeat = false;
+                    }
+                }
+            }
+        }
+
+        int[] codeLengthFrequencies = new int[18];
+        for (int j = 0; j < count; j++) {
+            codeLengthFrequencies[symbols[j]]++;
+        }
+        int[] codeLengthLengths = HuffmanCodeBuilder.buildLengths(
+                codeLengthFrequencies, 18, MAX_CODE_LENGTH_CODE_LENGTH);
+        int codeLengthsUsed = 0;
+        for (int j = 0; j < 18; j++) {
+            if (codeLengthFrequencies[j] > 0) {
+                codeLengthsUsed++;
+            }
+        }
+
+        // HSKIP=0
+        bo.writeBits(0, 2);
+        int toWrite = CODE_LENGTH_ORDER.length;
+        if (codeLengthsUsed == 1) {
+            // A single code length symbol is written with a non-zero length
+            // and all the code lengths must be written. The symbol then
+            // requires zero bits.
+            for (int j = 0; j < 18; j++) {
+                if (codeLengthFrequencies[j] > 0) {
+                    codeLengthLengths[j] = 1;
+                }
+            }
+        } else {
+            while (codeLengthLengths[CODE_LENGTH_ORDER[toWrite - 1]] == 0) {
+                toWrite--;
+            }
+        }
+        for (int j = 0; j < toWrite; j++) {
+            int length = codeLengthLengths[CODE_LENGTH_ORDER[j]];
+            bo.writeBits(CODE_LENGTH_CODE_SYMBOLS[length], CODE_LENGTH_CODE_BITS[length]);
+        }
+        int[] codeLengthCodes;
+        if (codeLengthsUsed == 1) {
+            codeLengthCodes = new int[18];
+            codeLengthLengths = new int[18];
+        } else {
+            codeLengthCodes = reversedCodes(codeLengthLengths);
+        }
+        for (int j = 0; j < count; j++) {
+            int symbol = symbols[j];
+            bo.writeBits(codeLengthCodes[symbol], codeLengthLengths[symbol]);
+            if (symbol == 16) {
+                bo.writeBits(extra[j], 2);
+            } else if (symbol == 17) {
+                bo.writeBits(extra[j], 3);
+            }
+        }
+        return lengths;
+    }
+}
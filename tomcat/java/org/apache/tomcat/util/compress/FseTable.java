@@ -0,0 +1,305 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  See the NOTICE file distributed with
+ *  this work for additional information regarding copyright ownership.
+ *  The ASF licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.tomcat.util.compress;
+
+/**
+ * Finite State Entropy (tANS) encoding table built from a normalised
+ * distribution, following the construction used by the reference zstd
+ * implementation so that the decoder arrives at the same state machine.
+ * <p>
+ * A table with an accuracy log of zero has a single state and encodes its only
+ * symbol with zero bits. This is used for the RLE mode of the zstd sequence
+ * codes.
+ */
+class FseTable {
+
+    static final int MIN_TABLE_LOG = 5;
+
+    private final int tableLog;
+    private final int[] normalizedCounts;
+    private final int[] stateTable;
+    private final int[] deltaNbBits;
+    private final int[] deltaFindState;
+
+
+    /**
+     * @param normalizedCounts The normalised count for each symbol. The counts
+     *                         must sum to <code>1 &lt;&lt; tableLog</code>. A
+     *                         count of -1 indicates a symbol with a
+     *                         probability of less than one state.
+     * @param tableLog         The accuracy log of the table
+     */
+    FseTable(int[] normalizedCounts, int tableLog) {
+        this.tableLog = tableLog;
+        this.normalizedCounts = normalizedCounts;
+        int tableSize = 1 << tableLog;
+        int tableMask = tableSize - 1;
+        int symbolCount = normalizedCounts.length;
+        int step = (tableSize >> 1) + (tableSize >> 3) + 3;
+
+        int[] tableSymbol = new int[tableSize];
+        int[] cumulative = new int[symbolCount + 1];
+        int highThreshold = tableSize - 1;
+        for (int s = 0; s < symbolCount; s++) {
+            if (normalizedCounts[s] == -1) {
+                cumulative[s + 1] = cumulative[s] + 1;
+                tableSymbol[highThreshold--] = s;
+            } else {
+                cumulative[s + 1] = cumulative[s] + normalizedCounts[s];
+            }
+        }
+        int position = 0;
+        for (int s = 0; s < symbolCount; s++) {
+            for (int n = 0; n < normalizedCounts[s]; n++) {
+                tableSymbol[position] = s;
+                do {
+                    position = (position + step) & tableMask;
+                } while (position > highThreshold);
+            }
+        }
+
+        stateTable = new int[tableSize];
+        for (int u = 0; u < tableSize; u++) {
+            int s = tableSymbol[u];
+            stateTable[cumulative[s]++] = tableSize + u;
+        }
+
+        deltaNbBits = new int[symbolCount];
+        deltaFindState = new int[symbolCount];
+        int total = 0;
+        for (int s = 0; s < symbolCount; s++) {
+            int count = normalizedCounts[s];
+            if (count == -1 || count == 1) {
+                deltaNbBits[s] = (tableLog << 16) - tableSize;
+                deltaFindState[s] = total - 1;
+                total++;
+            } else if (count > 1) {
+                int maxBitsOut = tableLog - (31 - Integer.numberOfLeadingZeros(count - 1));
+                int minStatePlus = count << maxBitsOut;
+                deltaNbBits[s] = (maxBitsOut << 16) - minStatePlus;
+                deltaFindState[s] = total - count;
+                total += count;
+            }
+        }
+    }
+
+
+    /**
+     * Create a table that encodes a single symbol using zero bits.
+     *
+     * @param symbol The symbol
+     *
+     * @return the new table
+     */
+    static FseTable rle(int symbol) {
+        int[] counts = new int[symbol + 1];
+        counts[symbol] = 1;
+        return new FseTable(counts, 0);
+    }
+
+
+    int getTableLog() {
+        return tableLog;
+    }
+
+
+    /**
+     * @param symbol The symbol
+     *
+     * @return <code>true</code> if the table is able to encode the symbol
+     */
+    boolean canEncode(int symbol) {
+        return symbol < normalizedCounts.length && normalizedCounts[symbol] != 0;
+    }
+
+
+    /**
+     * Estimate the cost of encoding symbols with this table.
+     *
+     * @param counts    The number of occurrences of each symbol
+     * @param maxSymbol The largest symbol with a non-zero count
+     *
+     * @return the estimated size in bits or -1 if the table cannot encode one
+     *         of the symbols
+     */
+    long cost(int[] counts, int maxSymbol) {
+        double bits = 0;
+        for (int s = 0; s <= maxSymbol; s++) {
+            if (counts[s] == 0) {
+                continue;
+            }
+            if (!canEncode(s)) {
+                return -1;
+            }
+            int count = normalizedCounts[s] == -1 ? 1 : normalizedCounts[s];
+            bits += counts[s] * (tableLog - log2(count));
+        }
+        return (long) bits;
+    }
+
+
+    long initState(int symbol) {
+        int nbBitsOut = (deltaNbBits[symbol] + (1 << 15)) >> 16;
+        int value = (nbBitsOut << 16) - deltaNbBits[symbol];
+        return stateTable[(value >> nbBitsOut) + deltaFindState[symbol]];
+    }
+
+
+    long encode(BitOutput bo, long state, int symbol) {
+        int nbBitsOut = (int) ((state + deltaNbBits[symbol]) >> 16);
+        bo.writeBits(state, nbBitsOut);
+        return stateTable[(int) (state >> nbBitsOut) + deltaFindState[symbol]];
+    }
+
+
+    void flush(BitOutput bo, long state) {
+        bo.writeBits(state, tableLog);
+    }
+
+
+    /**
+     * Write the table description in the format used by zstd.
+     *
+     * @param bo The buffer to write to
+     */
+    void writeDescription(BitOutput bo) {
+        int tableSize = 1 << tableLog;
+        int symbolCount = normalizedCounts.length;
+        bo.writeBits(tableLog - MIN_TABLE_LOG, 4);
+        int remaining = tableSize + 1;
+        int threshold = tableSize;
+        int nbBits = tableLog + 1;
+        int symbol = 0;
+        boolean previousZero = false;
+        while (symbol < symbolCount && remaining > 1) {
+            if (previousZero) {
+                int start = symbol;
+                while (normalizedCounts[symbol] == 0) {
+                    symbol++;
+                }
+                while (symbol >= start + 24) {
+                    start += 24;
+                    bo.writeBits(0xFFFF, 16);
+                }
+                while (symbol >= start + 3) {
+                    start += 3;
+                    bo.writeBits(3, 2);
+                }
+                bo.writeBits(symbol - start, 2);
+            }
+            int count = normalizedCounts[symbol++];
+            int max = (2 * threshold - 1) - remaining;
+            remaining -= count < 0 ? -count : count;
+            count++;
+            if (count >= threshold) {
+                count += max;
+            }
+            bo.writeBits(count, count < max ? nbBits - 1 : nbBits);
+            previousZero = count == 1;
+            while (remaining < threshold) {
+                nbBits--;
+                threshold >>= 1;
+            }
+        }
+        bo.alignToByte();
+    }
+
+
+    /**
+     * Select the accuracy log for a table, as the reference implementation
+     * does.
+     *
+     * @param maxTableLog The maximum permitted accuracy log
+     * @param total       The number of symbols to be encoded
+     * @param maxSymbol   The largest symbol to be encoded
+     *
+     * @return the accuracy log to use
+     */
+    static int optimalTableLog(int maxTableLog, int total, int maxSymbol) {
+        int tableLog = maxTableLog;
+        int maxBitsSource = highBit(total - 1) - 2;
+        int minBits = Math.min(highBit(total) + 1, highBit(maxSymbol) + 2);
+        if (maxBitsSource < tableLog) {
+            tableLog = maxBitsSource;
+        }
+        if (minBits > tableLog) {
+            tableLog = minBits;
+        }
+        return Math.max(MIN_TABLE_LOG, Math.min(maxTableLog, tableLog));
+    }
+
+
+    /**
+     * Scale symbol counts so that they sum to the table size while ensuring
+     * that every symbol that is present may still be encoded.
+     *
+     * @param counts    The number of occurrences of each symbol
+     * @param maxSymbol The largest symbol with a non-zero count
+     * @param total     The sum of the counts
+     * @param tableLog  The accuracy log of the table
+     *
+     * @return the normalised counts
+     */
+    static int[] normalize(int[] counts, int maxSymbol, int total, int tableLog) {
+        int tableSize = 1 << tableLog;
+        int[] normalized = new int[maxSymbol + 1];
+        int distributed = 0;
+        int largest = 0;
+        for (int s = 0; s <= maxSymbol; s++) {
+            if (counts[s] == 0) {
+                continue;
+            }
+            int n = (int) (((long) counts[s] * tableSize + (total >> 1)) / total);
+            if (n < 1) {
+                n = 1;
+            }
+            normalized[s] = n;
+            distributed += n;
+            if (counts[s] > counts[largest]) {
+                largest = s;
+            }
+        }
+        int difference = tableSize - distributed;
+        if (difference > 0 || normalized[largest] + difference >= (normalized[largest] + 1) / 2) {
+            normalized[largest] += difference;
+        } else {
+            // Too many rounded up small counts. Take states from the largest
+            // counts one at a time.
+            while (difference < 0) {
+                int s = largest;
+                for (int i = 0; i <= maxSymbol; i++) {
+                    if (normalized[i] > normalized[s]) {
+                        s = i;
+                    }
+                }
+                normalized[s]--;
+                difference++;
+            }
+        }
+        return normalized;
+    }
+
+
+    static int highBit(int value) {
+        return 31 - Integer.numberOfLeadingZeros(value);
+    }
+
+
+    private static double log2(int value) {
+        return Math.log(value) / Math.log(2);
+    }
+}
@@ -0,0 +1,183 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  See the NOTICE file distributed with
+ *  this work for additional information regarding copyright ownership.
+ *  The ASF licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.tomcat.util.compress;
+
+import java.util.Arrays;
+
+/**
+ * Builds length limited prefix codes from symbol frequencies. The codes
+ * generated are always complete (i.e. the Kraft sum is exactly one) provided
+ * that at least two symbols have a non-zero frequency. If only a single symbol
+ * is used, it is assigned a length of zero and it is the responsibility of the
+ * caller to handle that case.
+ */
+final class HuffmanCodeBuilder {
+
+    private HuffmanCodeBuilder() {
+        // Utility class. Hide default constructor
+    }
+
+
+    /**
+     * Calculate code lengths.
+     *
+     * @param frequencies The frequency of each symbol
+     * @param count       The number of symbols
+     * @param maxLength   The maximum permitted code length
+     *
+     * @return the code length for each symbol, zero for unused symbols
+     */
+    static int[] buildLengths(int[] frequencies, int count, int maxLength) {
+        int[] lengths = new int[count];
+        int used = 0;
+        for (int i = 0; i < count; i++) {
+            if (frequencies[i] > 0) {
+                used++;
+            }
+        }
+        if (used < 2) {
+            return lengths;
+        }
+        /*
+         * If the optimal code is too long, flatten the distribution by raising
+         * the smallest frequencies and try again. This is the approach used by
+         * the reference brotli encoder.
+         */
+        int[] adjusted = new int[count];
+        for (int minimum = 1; ; minimum *= 2) {
+            for (int i = 0; i < count; i++) {
+                adjusted[i] = frequencies[i] == 0 ? 0 : Math.max(frequencies[i], minimum);
+            }
+            if (buildUnlimited(adjusted, lengths) <= maxLength) {
+                return lengths;
+            }
+        }
+    }
+
+
+    /*
+     * Standard Huffman construction. Returns the maximum length.
+     */
+    private static int buildUnlimited(int[] frequencies, int[] lengths) {
+        int count = frequencies.length;
+        // Leaves are sorted by frequency, internal nodes are created in order
+        // of increasing weight so a two queue merge avoids the need for a heap
+        long[] leaves = new long[count];
+        int leafCount = 0;
+        for (int i = 0; i < count; i++) {
+            if (frequencies[i] > 0) {
+                leaves[leafCount++] = ((long) frequencies[i] << 32) | i;
+            }
+        }
+        Arrays.sort(leaves, 0, leafCount);
+
+        int nodeCount = leafCount - 1;
+        long[] nodeWeights = new long[nodeCount];
+        // Leaves are indexed first, followed by the internal nodes
+        int[] parent = new int[leafCount + nodeCount];
+        int leafIndex = 0;
+        int nodeIndex = 0;
+        for (int n = 0; n < nodeCount; n++) {
+            long weight = 0;
+            for (int c = 0; c < 2; c++) {
+                int child;
+                if (nodeIndex < n && (leafIndex >= leafCount ||
+                        nodeWeights[nodeIndex] < (leaves[leafIndex] >>> 32))) {
+                    weight += nodeWeights[nodeIndex];
+                    child = leafCount + nodeIndex;
+                    nodeIndex++;
+                } else {
+                    weight += leaves[leafIndex] >>> 32;
+                    child = leafIndex;
+                    leafIndex++;
+                }
+                parent[child] = leafCount + n;
+            }
+            nodeWeights[n] = weight;
+        }
+
+        // Depths. The root is the last node. Parents always have higher
+        // indexes than their children so process in reverse order.
+        int[] depth = new int[leafCount + nodeCount];
+        int root = leafCount + nodeCount - 1;
+        depth[root] = 0;
+        for (int i = root - 1; i >= 0; i--) {
+            depth[i] = depth[parent[i]] + 1;
+        }
+        Arrays.fill(lengths, 0);
+        int max = 0;
+        for (int i = 0; i < leafCount; i++) {
+            int d = depth[i];
+            lengths[(int) leaves[i]] = d;
+            if (d > max) {
+                max = d;
+            }
+        }
+        return max;
+    }
+
+
+    /**
+     * Assign canonical codes, shortest codes first and in symbol order within a
+     * given length, as used by deflate and brotli.
+     *
+     * @param lengths The code lengths
+     *
+     * @return the codes, most significant bit first
+     */
+    static int[] buildCodes(int[] lengths) {
+        int maxLength = 0;
+        for (int length : lengths) {
+            maxLength = Math.max(maxLength, length);
+        }
+        int[] lengthCounts = new int[maxLength + 1];
+        for (int length : lengths) {
+            lengthCounts[length]++;
+        }
+        lengthCounts[0] = 0;
+        int[] nextCode = new int[maxLength + 2];
+        int code = 0;
+        for (int bits = 1; bits <= maxLength; bits++) {
+            code = (code + lengthCounts[bits - 1]) << 1;
+            nextCode[bits] = code;
+        }
+        int[] codes = new int[lengths.length];
+        for (int i = 0; i < lengths.length; i++) {
+            if (lengths[i] != 0) {
+                codes[i] = nextCode[lengths[i]]++;
+            }
+        }
+        return codes;
+    }
+
+
+    /**
+     * Reverse the bit order of a code so that it may be written least
+     * significant bit first.
+     *
+     * @param code   The code
+     * @param length The number of bits in the code
+     *
+     * @return the reversed code
+     */
+    static int reverse(int code, int length) {
+        if (length == 0) {
+            return 0;
+        }
+        return Integer.reverse(code) >>> (32 - length);
+    }
+}
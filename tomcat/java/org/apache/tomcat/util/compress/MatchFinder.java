@@ -0,0 +1,488 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  See the NOTICE file distributed with
+ *  this work for additional information regarding copyright ownership.
+ *  The ASF licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.tomcat.util.compress;
+
+import java.util.Arrays;
+
+/**
+ * LZ77 match finder based on hash chains that is shared by the brotli and zstd
+ * encoders. Data is appended to an internal window buffer and then parsed, one
+ * block at a time, into a series of sequences. Each sequence consists of a
+ * number of literals followed by a back reference. The previous block(s) remain
+ * in the window so that back references may cross block boundaries.
+ * <p>
+ * Both formats can encode a back reference that re-uses one of the most
+ * recently used distances far more cheaply than an explicit distance so the
+ * parser tracks the last three distances and prefers them. Depending on the
+ * configured lazy depth, the parser checks whether starting a match one or two
+ * bytes later would be cheaper before committing to a match. The cost
+ * estimates are those used by the lazy strategies of the reference zstd
+ * encoder.
+ * <p>
+ * The window, hash table and hash chain buffers start small and grow as data
+ * is appended so that short responses do not pay for the maximum window size.
+ */
+class MatchFinder {
+
+    static final int MIN_MATCH = 4;
+
+    private static final int INITIAL_WINDOW_SIZE = 1 << 14;
+
+    private final int maxDistance;
+    private final int blockSize;
+    private final int maxHashBits;
+    private final int maxChain;
+    private final int lazyDepth;
+    private final int niceLength;
+    private final int maxWindowSize;
+    private final int maxPrevSize;
+
+    private byte[] window;
+    private int hashBits;
+    private int[] head;
+    private int[] prev;
+    private int prevMask;
+
+    /*
+     * Positions stored in the hash tables are absolute, i.e. relative to the
+     * start of the stream rather than the start of the window.
+     */
+    private int windowBase = 0;
+    private int blockStart = 0;
+    private int windowEnd = 0;
+    // The next window position to add to the hash chains
+    private int nextInsert = 0;
+
+    // The most recently used distances, most recent first
+    private int rep0 = 1;
+    private int rep1 = 4;
+    private int rep2 = 8;
+
+    // Result of the most recent call to findMatch()
+    private int foundLength;
+    private int foundDistance;
+
+    // Output of the most recent call to parse()
+    private int[] literalLengths = new int[64];
+    private int[] matchLengths = new int[64];
+    private int[] distances = new int[64];
+    private int sequenceCount;
+    private int lastLiterals;
+    private int parsedStart;
+    private int parsedLength;
+
+
+    /**
+     * @param maxDistance The maximum distance of a back reference
+     * @param blockSize   The maximum number of bytes in a single block
+     * @param hashBits    The maximum number of bits used for the hash table
+     *                    index
+     * @param maxChain    The maximum number of hash chain entries to examine
+     *                    when looking for a match
+     * @param lazyDepth   0 to accept the first match found, 1 or 2 to check
+     *                    that many following positions for a better match
+     * @param niceLength  The match length considered good enough to stop
+     *                    searching
+     */
+    MatchFinder(int maxDistance, int blockSize, int hashBits, int maxChain, int lazyDepth,
+            int niceLength) {
+        this.maxDistance = maxDistance;
+        this.blockSize = blockSize;
+        this.maxHashBits = hashBits;
+        this.maxChain = maxChain;
+        this.lazyDepth = lazyDepth;
+        this.niceLength = niceLength;
+        maxWindowSize = maxDistance + blockSize;
+        maxPrevSize = Integer.highestOneBit(maxDistance - 1) << 1;
+        window = new byte[Math.min(INITIAL_WINDOW_SIZE, maxWindowSize)];
+        prev = new int[Math.min(INITIAL_WINDOW_SIZE, maxPrevSize)];
+        prevMask = prev.length - 1;
+        this.hashBits = hashBitsFor(prev.length);
+        head = new int[1 << this.hashBits];
+        Arrays.fill(head, -1);
+    }
+
+
+    /**
+     * Add data to the current block.
+     *
+     * @param b   The source array
+     * @param off The offset of the first byte to add
+     * @param len The number of bytes available
+     *
+     * @return the number of bytes actually added which may be less than
+     *         <code>len</code> if the current block is full
+     */
+    int append(byte[] b, int off, int len) {
+        int count = Math.min(len, blockSize - (windowEnd - blockStart));
+        if (count > 0) {
+            ensureCapacity(windowEnd + count);
+            System.arraycopy(b, off, window, windowEnd, count);
+            windowEnd += count;
+        }
+        return count;
+    }
+
+
+    /**
+     * @return the number of bytes in the current block
+     */
+    int pending() {
+        return windowEnd - blockStart;
+    }
+
+
+    boolean isBlockFull() {
+        return windowEnd - blockStart == blockSize;
+    }
+
+
+    /**
+     * Parse the current block into sequences, make the results available via
+     * the accessors and start a new block.
+     */
+    void parse() {
+        sequenceCount = 0;
+        parsedStart = blockStart;
+        parsedLength = windowEnd - blockStart;
+
+        final int end = windowEnd;
+        final int last = end - MIN_MATCH;
+        int pos = blockStart;
+        int anchor = pos;
+        while (pos <= last) {
+            findMatch(pos, end);
+            int length = foundLength;
+            int distance = foundDistance;
+            if (length < MIN_MATCH) {
+                pos++;
+                continue;
+            }
+
+            // Lazy evaluation: is a match starting at one of the following
+            // positions cheaper overall?
+            int start = pos;
+            int depth = 0;
+            while (depth < lazyDepth && length < niceLength && start + depth + 1 <= last) {
+                int candidate = start + depth + 1;
+                findMatch(candidate, end);
+                int bonus = depth == 0 ? 4 : 7;
+                if (foundLength >= MIN_MATCH &&
+                        gain(foundLength, foundDistance) > gain(length, distance) + bonus) {
+                    start = candidate;
+                    length = foundLength;
+                    distance = foundDistance;
+                    depth = 0;
+                } else {
+                    depth++;
+                }
+            }
+
+            // Extend the match backwards over literals that also match
+            if (distance != rep0) {
+                while (start > anchor && start - distance > 0 &&
+                        window[start - 1] == window[start - 1 - distance]) {
+                    start--;
+                    length++;
+                }
+            }
+
+            addSequence(start - anchor, length, distance);
+            pos = start + length;
+            anchor = pos;
+
+            // A match immediately following a match that uses the previous
+            // distance is common in structured data and is very cheap to
+            // encode
+            while (pos <= last && rep1 <= pos && rep1 <= maxDistance) {
+                int repLength = matchLength(pos - rep1, pos, end);
+                if (repLength < MIN_MATCH) {
+                    break;
+                }
+                addSequence(0, repLength, rep1);
+                pos += repLength;
+                anchor = pos;
+            }
+        }
+        lastLiterals = end - anchor;
+        blockStart = end;
+    }
+
+
+    /**
+     * Make space for a new block, if necessary, by discarding data that is no
+     * longer within reach of a back reference. This must only be called after
+     * the results of the previous call to {@link #parse()} have been consumed.
+     */
+    void slide() {
+        if (windowEnd + blockSize <= maxWindowSize) {
+            return;
+        }
+        int keep = Math.min(maxDistance, windowEnd);
+        int shift = windowEnd - keep;
+        System.arraycopy(window, shift, window, 0, keep);
+        windowBase += shift;
+        blockStart -= shift;
+        windowEnd -= shift;
+        nextInsert -= shift;
+        if (windowBase > 0x40000000) {
+            // Avoid overflow of the absolute positions for very long streams
+            // at the cost of losing the history
+            windowBase = 0;
+            Arrays.fill(head, -1);
+            Arrays.fill(prev, -1);
+            nextInsert = windowEnd;
+        }
+    }
+
+
+    private void ensureCapacity(int required) {
+        if (required > window.length) {
+            int newSize = window.length;
+            while (newSize < required) {
+                newSize <<= 1;
+            }
+            window = Arrays.copyOf(window, Math.min(newSize, maxWindowSize));
+        }
+        if (required > prev.length && prev.length < maxPrevSize) {
+            // The window has not yet slid so absolute positions are the same
+            // as window positions and existing entries keep their index
+            int newSize = prev.length;
+            while (newSize < required && newSize < maxPrevSize) {
+                newSize <<= 1;
+            }
+            prev = Arrays.copyOf(prev, newSize);
+            prevMask = newSize - 1;
+            int newHashBits = hashBitsFor(newSize);
+            if (newHashBits != hashBits) {
+                // Re-build the hash table and chains for the larger table
+                hashBits = newHashBits;
+                head = new int[1 << hashBits];
+                Arrays.fill(head, -1);
+                int inserted = nextInsert;
+                nextInsert = 0;
+                insertUpTo(inserted);
+            }
+        }
+    }
+
+
+    /*
+     * There is little point in having more hash table entries than positions
+     * in the window.
+     */
+    private int hashBitsFor(int prevSize) {
+        return Math.min(maxHashBits, Math.max(10, 31 - Integer.numberOfLeadingZeros(prevSize)));
+    }
+
+
+    /*
+     * Estimate, in quarter bits, the saving from using a match. Re-using the
+     * most recent distance is almost free.
+     */
+    private int gain(int length, int distance) {
+        return length * 4 - distanceCost(distance);
+    }
+
+
+    private int distanceCost(int distance) {
+        if (distance == rep0) {
+            return 0;
+        }
+        if (distance == rep1 || distance == rep2) {
+            return 1;
+        }
+        return 31 - Integer.numberOfLeadingZeros(distance + 3);
+    }
+
+
+    private int hash(int pos) {
+        byte[] b = window;
+        int v = (b[pos] & 0xFF) | (b[pos + 1] & 0xFF) << 8 | (b[pos + 2] & 0xFF) << 16 |
+                (b[pos + 3] & 0xFF) << 24;
+        return (v * 0x9E3779B1) >>> (32 - hashBits);
+    }
+
+
+    /*
+     * Add all positions before the given position to the hash chains.
+     */
+    private void insertUpTo(int pos) {
+        int[] head = this.head;
+        int[] prev = this.prev;
+        int prevMask = this.prevMask;
+        int base = windowBase;
+        for (int i = nextInsert; i < pos; i++) {
+            int h = hash(i);
+            int abs = base + i;
+            prev[abs & prevMask] = head[h];
+            head[h] = abs;
+        }
+        if (pos > nextInsert) {
+            nextInsert = pos;
+        }
+    }
+
+
+    private int matchLength(int from, int pos, int end) {
+        byte[] w = window;
+        int length = 0;
+        int max = end - pos;
+        while (length < max && w[from + length] == w[pos + length]) {
+            length++;
+        }
+        return length;
+    }
+
+
+    /*
+     * Find the cheapest match at the given position considering the repeat
+     * distances and the hash chain. Sets foundLength and foundDistance.
+     */
+    private void findMatch(int pos, int end) {
+        insertUpTo(pos);
+        int bestLength = 0;
+        int bestDistance = 0;
+        int bestGain = 0;
+
+        // Repeat distances
+        for (int i = 0; i < 3; i++) {
+            int distance = i == 0 ? rep0 : i == 1 ? rep1 : rep2;
+            if (distance > pos || distance > maxDistance) {
+                continue;
+            }
+            int length = matchLength(pos - distance, pos, end);
+            if (length >= MIN_MATCH) {
+                int g = gain(length, distance);
+                if (g > bestGain) {
+                    bestGain = g;
+                    bestLength = length;
+                    bestDistance = distance;
+                }
+            }
+        }
+        if (bestLength >= niceLength) {
+            foundLength = bestLength;
+            foundDistance = bestDistance;
+            return;
+        }
+
+        byte[] w = window;
+        int abs = windowBase + pos;
+        int limit = Math.max(abs - maxDistance, windowBase);
+        int maxLength = end - pos;
+        // Candidates must beat the best length so far to be of interest
+        int checkLength = Math.max(bestLength, MIN_MATCH - 1);
+        int candidate = head[hash(pos)];
+        int chain = maxChain;
+        while (candidate >= limit && chain-- > 0) {
+            int c = candidate - windowBase;
+            if (checkLength < maxLength && w[c + checkLength] == w[pos + checkLength] &&
+                    w[c] == w[pos]) {
+                int length = matchLength(c, pos, end);
+                if (length > checkLength) {
+                    int distance = pos - c;
+                    int g = gain(length, distance);
+                    if (g > bestGain) {
+                        bestGain = g;
+                        bestLength = length;
+                        bestDistance = distance;
+                    }
+                    checkLength = length;
+                    if (length >= maxLength || length >= niceLength) {
+                        break;
+                    }
+                }
+            }
+            int next = prev[candidate & prevMask];
+            if (next >= candidate) {
+                break;
+            }
+            candidate = next;
+        }
+        foundLength = bestLength;
+        foundDistance = bestDistance;
+    }
+
+
+    private void addSequence(int literalLength, int matchLength, int distance) {
+        if (sequenceCount == literalLengths.length) {
+            int newSize = sequenceCount * 2;
+            literalLengths = Arrays.copyOf(literalLengths, newSize);
+            matchLengths = Arrays.copyOf(matchLengths, newSize);
+            distances = Arrays.copyOf(distances, newSize);
+        }
+        literalLengths[sequenceCount] = literalLength;
+        matchLengths[sequenceCount] = matchLength;
+        distances[sequenceCount] = distance;
+        sequenceCount++;
+        if (distance != rep0) {
+            if (distance != rep1) {
+                rep2 = rep1;
+            }
+            rep1 = rep0;
+            rep0 = distance;
+        }
+    }
+
+
+    byte[] getWindow() {
+        return window;
+    }
+
+
+    /**
+     * @return the offset in the window of the first byte of the parsed block
+     */
+    int getParsedStart() {
+        return parsedStart;
+    }
+
+
+    int getParsedLength() {
+        return parsedLength;
+    }
+
+
+    int getSequenceCount() {
+        return sequenceCount;
+    }
+
+
+    int[] getLiteralLengths() {
+        return literalLengths;
+    }
+
+
+    int[] getMatchLengths() {
+        return matchLengths;
+    }
+
+
+    int[] getDistances() {
+        return distances;
+    }
+
+
+    /**
+     * @return the number of literals in the parsed block that follow the final
+     *         sequence
+     */
+    int getLastLiterals() {
+        return lastLiterals;
+    }
+}
@@ -0,0 +1,746 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  See the NOTICE file distributed with
+ *  this work for additional information regarding copyright ownership.
+ *  The ASF licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.tomcat.util.compress;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+import org.apache.tomcat.util.res.StringManager;
+
+/**
+ * Pure Java Zstandard (RFC 8878) encoder.
+ * <p>
+ * The encoder writes a single frame. The level selects the window size (from
+ * 128kB to 1MB), the depth of the hash chain search and whether lazy matching
+ * is used. Literals are Huffman coded. For each block, each of the three
+ * sequence code streams uses whichever of the predefined, RLE, repeat or
+ * block specific FSE tables is estimated to be the smallest and the repeat
+ * offsets are used where possible. There is no optimal parsing, no dictionary
+ * support and no checksum.
+ * <p>
+ * {@link #flush()} completes the current block so that all data written so
+ * far may be decoded by the recipient.
+ */
+public class ZstdOutputStream extends FilterOutputStream {
+
+    private static final StringManager sm = StringManager.getManager(ZstdOutputStream.class);
+
+    public static final int MIN_LEVEL = 1;
+    public static final int MAX_LEVEL = 19;
+    public static final int DEFAULT_LEVEL = 3;
+
+    /*
+     * Window log, maximum hash bits, maximum hash chain length, lazy depth and
+     * nice match length for each level.
+     */
+    private static final int[][] LEVELS = {
+            { 17, 15,    4, 0,  16 },
+            { 17, 15,    8, 0,  24 },
+            { 18, 16,   16, 1,  32 },
+            { 18, 16,   24, 1,  48 },
+            { 18, 16,   32, 2,  48 },
+            { 19, 16,   48, 2,  64 },
+            { 19, 17,   64, 2,  64 },
+            { 19, 17,   96, 2,  96 },
+            { 20, 17,  128, 2, 128 },
+            { 20, 17,  160, 2, 128 },
+            { 20, 17,  192, 2, 160 },
+            { 20, 17,  256, 2, 192 },
+            { 20, 17,  320, 2, 224 },
+            { 20, 17,  384, 2, 256 },
+            { 20, 17,  512, 2, 256 },
+            { 20, 17,  640, 2, 320 },
+            { 20, 17,  768, 2, 384 },
+            { 20, 17, 1024, 2, 512 },
+            { 20, 17, 1536, 2, 768 } };
+
+    private static final int MAGIC = 0xFD2FB528;
+    private static final int BLOCK_SIZE = 1 << 17;
+
+    private static final int BLOCK_RAW = 0;
+    private static final int BLOCK_RLE = 1;
+    private static final int BLOCK_COMPRESSED = 2;
+
+    private static final int LITERALS_RAW = 0;
+    private static final int LITERALS_RLE = 1;
+    private static final int LITERALS_COMPRESSED = 2;
+
+    private static final int MODE_PREDEFINED = 0;
+    private static final int MODE_RLE = 1;
+    private static final int MODE_COMPRESSED = 2;
+    private static final int MODE_REPEAT = 3;
+
+    private static final int MAX_HUFFMAN_BITS = 11;
+    private static final int MAX_WEIGHT_TABLE_LOG = 6;
+    private static final int MAX_DIRECT_WEIGHTS = 128;
+
+    private static final int MAX_LITERAL_LENGTH_LOG = 9;
+    private static final int MAX_MATCH_LENGTH_LOG = 9;
+    private static final int MAX_OFFSET_LOG = 8;
+
+    private static final int[] LITERAL_LENGTH_BASE = { 0, 1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11,
+            12, 13, 14, 15, 16, 18, 20, 22, 24, 28, 32, 40, 48, 64, 128, 256, 512, 1024,
+            2048, 4096, 8192, 16384, 32768, 65536 };
+    private static final int[] LITERAL_LENGTH_BITS = { 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0,
+            0, 0, 0, 0, 1, 1, 1, 1, 2, 2, 3, 3, 4, 6, 7, 8, 9, 10, 11, 12, 13, 14, 15, 16 };
+    private static final int[] MATCH_LENGTH_BASE = { 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13,
+            14, 15, 16, 17, 18, 19, 20, 21, 22, 23, 24, 25, 26, 27, 28, 29, 30, 31, 32, 33,
+            34, 35, 37, 39, 41, 43, 47, 51, 59, 67, 83, 99, 131, 259, 515, 1027, 2051,
+            4099, 8195, 16387, 32771, 65539 };
+    private static final int[] MATCH_LENGTH_BITS = { 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0,
+            0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 1, 1, 1, 1, 2, 2, 3,
+            3, 4, 4, 5, 7, 8, 9, 10, 11, 12, 13, 14, 15, 16 };
+
+    private static final FseTable LITERAL_LENGTH_TABLE = new FseTable(new int[] {
+            4, 3, 2, 2, 2, 2, 2, 2, 2, 2, 2, 2, 2, 1, 1, 1, 2, 2, 2, 2, 2, 2, 2, 2, 2, 3, 2,
+            1, 1, 1, 1, 1, -1, -1, -1, -1 }, 6);
+    private static final FseTable MATCH_LENGTH_TABLE = new FseTable(new int[] {
+            1, 4, 3, 2, 2, 2, 2, 2, 2, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1,
+            1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, -1, -1, -1, -1, -1, -1,
+            -1 }, 6);
+    private static final FseTable OFFSET_TABLE = new FseTable(new int[] {
+            1, 1, 1, 1, 1, 1, 2, 2, 2, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, -1, -1,
+            -1, -1, -1 }, 5);
+
+    private final int windowLog;
+    private final MatchFinder matchFinder;
+    private final BitOutput bits = new BitOutput(1024);
+    private final BitOutput literals = new BitOutput(1024);
+    private final BitOutput sequences = new BitOutput(1024);
+    private final byte[] singleByte = new byte[1];
+
+    private byte[] literalBuffer = new byte[1024];
+    private int[] literalLengthCodes = new int[64];
+    private int[] matchLengthCodes = new int[64];
+    private int[] offsetValues = new int[64];
+    private int[] offsetCodes = new int[64];
+
+    // Repeat offsets as seen by the decoder, most recent first
+    private int rep0 = 1;
+    private int rep1 = 4;
+    private int rep2 = 8;
+
+    // Tables used by the previous compressed block, for repeat mode
+    private FseTable previousLiteralLengthTable;
+    private FseTable previousOffsetTable;
+    private FseTable previousMatchLengthTable;
+    // The mode chosen by the most recent call to selectTable()
+    private int lastMode;
+
+    private boolean headerWritten = false;
+    private boolean finished = false;
+
+
+    public ZstdOutputStream(OutputStream out) {
+        this(out, DEFAULT_LEVEL);
+    }
+
+
+    /**
+     * Create a new Zstandard encoder.
+     *
+     * @param out   The stream to which the compressed data will be written
+     * @param level The compression level, from {@link #MIN_LEVEL} to
+     *              {@link #MAX_LEVEL}
+     */
+    public ZstdOutputStream(OutputStream out, int level) {
+        super(out);
+        if (level < MIN_LEVEL || level > MAX_LEVEL) {
+            throw new IllegalArgumentException(sm.getString("zstd.invalidLevel",
+                    Integer.toString(level)));
+        }
+        int[] parameters = LEVELS[level - MIN_LEVEL];
+        windowLog = parameters[0];
+        matchFinder = new MatchFinder(1 << windowLog, BLOCK_SIZE, parameters[1], parameters[2],
+                parameters[3], parameters[4]);
+    }
+
+
+    @Override
+    public void write(int b) throws IOException {
+        singleByte[0] = (byte) b;
+        write(singleByte, 0, 1);
+    }
+
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        if (finished) {
+            throw new IOException(sm.getString("zstd.finished"));
+        }
+        while (len > 0) {
+            int count = matchFinder.append(b, off, len);
+            off += count;
+            len -= count;
+            if (matchFinder.isBlockFull()) {
+                writeBlock(false);
+                bits.drainTo(out);
+            }
+        }
+    }
+
+
+    /**
+     * Compress any buffered data as a complete block and flush the underlying
+     * stream.
+     */
+    @Override
+    public void flush() throws IOException {
+        if (!finished) {
+            writeBlock(false);
+            bits.drainTo(out);
+        }
+        out.flush();
+    }
+
+
+    /**
+     * Complete the frame without closing the underlying stream.
+     *
+     * @throws IOException If an I/O error occurs writing to the underlying
+     *                     stream
+     */
+    public void finish() throws IOException {
+        if (finished) {
+            return;
+        }
+        writeBlock(true);
+        bits.drainTo(out);
+        finished = true;
+    }
+
+
+    @Override
+    public void close() throws IOException {
+        try {
+            finish();
+        } finally {
+            out.close();
+        }
+    }
+
+
+    private void writeHeader() {
+        if (!headerWritten) {
+            bits.writeBits(MAGIC, 32);
+            // Frame header descriptor: no content size, no checksum, no
+            // dictionary and not single segment
+            bits.writeBits(0, 8);
+            // Window descriptor: exponent only
+            bits.writeBits((windowLog - 10) << 3, 8);
+            headerWritten = true;
+        }
+    }
+
+
+    private void writeBlock(boolean last) {
+        int length = matchFinder.pending();
+        if (length == 0 && !last) {
+            return;
+        }
+        writeHeader();
+        if (length == 0) {
+            writeBlockHeader(true, BLOCK_RAW, 0);
+            return;
+        }
+        matchFinder.parse();
+        byte[] window = matchFinder.getWindow();
+        int start = matchFinder.getParsedStart();
+
+        boolean rle = true;
+        for (int i = start + 1; i < start + length; i++) {
+            if (window[i] != window[start]) {
+                rle = false;
+                break;
+            }
+        }
+
+        if (rle && length > 1) {
+            writeBlockHeader(last, BLOCK_RLE, length);
+            bits.writeBits(window[start], 8);
+        } else {
+            // Save the state that a compressed block would modify so it can be
+            // restored if the block is stored uncompressed
+            int savedRep0 = rep0;
+            int savedRep1 = rep1;
+            int savedRep2 = rep2;
+            FseTable savedLiteralLengthTable = previousLiteralLengthTable;
+            FseTable savedOffsetTable = previousOffsetTable;
+            FseTable savedMatchLengthTable = previousMatchLengthTable;
+
+            literals.reset();
+            sequences.reset();
+            encodeLiterals();
+            encodeSequences();
+            long compressedSize = (literals.getBitLength() + sequences.getBitLength()) >> 3;
+            if (compressedSize < length) {
+                writeBlockHeader(last, BLOCK_COMPRESSED, (int) compressedSize);
+                bits.writeBitOutput(literals);
+                bits.writeBitOutput(sequences);
+            } else {
+                rep0 = savedRep0;
+                rep1 = savedRep1;
+                rep2 = savedRep2;
+                previousLiteralLengthTable = savedLiteralLengthTable;
+                previousOffsetTable = savedOffsetTable;
+                previousMatchLengthTable = savedMatchLengthTable;
+                writeBlockHeader(last, BLOCK_RAW, length);
+                bits.writeBytes(window, start, length);
+            }
+        }
+        matchFinder.slide();
+    }
+
+
+    private void writeBlockHeader(boolean last, int type, int size) {
+        bits.writeBits((last ? 1 : 0) | (type << 1) | (size << 3), 24);
+    }
+
+
+    private void encodeLiterals() {
+        // Gather the literals
+        byte[] window = matchFinder.getWindow();
+        int pos = matchFinder.getParsedStart();
+        int sequenceCount = matchFinder.getSequenceCount();
+        int[] literalLengths = matchFinder.getLiteralLengths();
+        int[] matchLengths = matchFinder.getMatchLengths();
+        if (literalBuffer.length < matchFinder.getParsedLength()) {
+            literalBuffer = new byte[matchFinder.getParsedLength()];
+        }
+        int count = 0;
+        for (int i = 0; i < sequenceCount; i++) {
+            System.arraycopy(window, pos, literalBuffer, count, literalLengths[i]);
+            count += literalLengths[i];
+            pos += literalLengths[i] + matchLengths[i];
+        }
+        System.arraycopy(window, pos, literalBuffer, count, matchFinder.getLastLiterals());
+        count += matchFinder.getLastLiterals();
+
+        int[] frequencies = new int[256];
+        int maxSymbol = 0;
+        int used = 0;
+        for (int i = 0; i < count; i++) {
+            int symbol = literalBuffer[i] & 0xFF;
+            if (frequencies[symbol]++ == 0) {
+                used++;
+                if (symbol > maxSymbol) {
+                    maxSymbol = symbol;
+                }
+            }
+        }
+
+        if (used == 1 && count > 1) {
+            writeLiteralsHeader(LITERALS_RLE, count);
+            literals.writeBits(literalBuffer[0], 8);
+            return;
+        }
+        if (used > 1 && count > 32) {
+            if (encodeHuffmanLiterals(frequencies, maxSymbol, count)) {
+                return;
+            }
+            literals.reset();
+        }
+        writeLiteralsHeader(LITERALS_RAW, count);
+        literals.writeBytes(literalBuffer, 0, count);
+    }
+
+
+    private void writeLiteralsHeader(int type, int size) {
+        if (size < 32) {
+            literals.writeBits(type | (size << 3), 8);
+        } else if (size < 4096) {
+            literals.writeBits(type | (1 << 2) | (size << 4), 16);
+        } else {
+            literals.writeBits(type | (3 << 2) | (size << 4), 24);
+        }
+    }
+
+
+    /*
+     * Returns false if Huffman coding does not reduce the size of the literals.
+     */
+    private boolean encodeHuffmanLiterals(int[] frequencies, int maxSymbol, int count) {
+        int[] lengths = HuffmanCodeBuilder.buildLengths(frequencies, maxSymbol + 1, MAX_HUFFMAN_BITS);
+        int maxBits = 0;
+        for (int length : lengths) {
+            maxBits = Math.max(maxBits, length);
+        }
+        int[] codes = buildZstdCodes(lengths, maxBits);
+
+        BitOutput compressed = new BitOutput(count);
+        if (!writeHuffmanTree(compressed, lengths, maxSymbol, maxBits)) {
+            return false;
+        }
+
+        boolean singleStream = count <= 1023;
+        if (singleStream) {
+            writeHuffmanStream(compressed, codes, lengths, 0, count);
+        } else {
+            int segment = (count + 3) / 4;
+            BitOutput[] streams = new BitOutput[4];
+            for (int i = 0; i < 4; i++) {
+                int segmentStart = i * segment;
+                int segmentEnd = Math.min(count, segmentStart + segment);
+                streams[i] = new BitOutput(segment);
+                writeHuffmanStream(streams[i], codes, lengths, segmentStart, segmentEnd);
+            }
+            for (int i = 0; i < 3; i++) {
+                compressed.writeBits(streams[i].getByteCount(), 16);
+            }
+            for (int i = 0; i < 4; i++) {
+                compressed.writeBitOutput(streams[i]);
+            }
+        }
+
+        int compressedSize = compressed.getByteCount();
+        int headerSize;
+        int sizeFormat;
+        int max = Math.max(count, compressedSize);
+        if (singleStream && max < 1024) {
+            headerSize = 3;
+            sizeFormat = 0;
+        } else if (max < 1024) {
+            headerSize = 3;
+            sizeFormat = 1;
+        } else if (max < 16384) {
+            headerSize = 4;
+            sizeFormat = 2;
+        } else {
+            headerSize = 5;
+            sizeFormat = 3;
+        }
+        if (singleStream && sizeFormat != 0) {
+            // Single stream is only permitted with the smallest header
+            return false;
+        }
+        if (compressedSize + headerSize >= count + 3) {
+            return false;
+        }
+        long header = LITERALS_COMPRESSED | (sizeFormat << 2) | ((long) count << 4);
+        int sizeBits = headerSize * 8 - 4;
+        header |= (long) compressedSize << (4 + sizeBits / 2);
+        literals.writeBits(header, headerSize * 8);
+        literals.writeBitOutput(compressed);
+        return true;
+    }
+
+
+    /*
+     * Write the Huffman tree description. The weight of the last symbol is
+     * implied. The weights are FSE compressed if that is smaller (or
+     * necessary because there are too many weights for the direct
+     * representation). Returns false if the tree cannot be described.
+     */
+    private static boolean writeHuffmanTree(BitOutput bo, int[] lengths, int maxSymbol,
+            int maxBits) {
+        int[] weights = new int[maxSymbol];
+        int[] weightCounts = new int[MAX_HUFFMAN_BITS + 1];
+        int maxWeight = 0;
+        for (int i = 0; i < maxSymbol; i++) {
+            int w = weight(lengths[i], maxBits);
+            weights[i] = w;
+            weightCounts[w]++;
+            maxWeight = Math.max(maxWeight, w);
+        }
+
+        BitOutput fse = null;
+        int largestCount = 0;
+        for (int c : weightCounts) {
+            largestCount = Math.max(largestCount, c);
+        }
+        if (maxSymbol >= 2 && largestCount < maxSymbol && largestCount > 1) {
+            fse = new BitOutput(maxSymbol);
+            int tableLog = FseTable.optimalTableLog(MAX_WEIGHT_TABLE_LOG, maxSymbol, maxWeight);
+            FseTable table = new FseTable(
+                    FseTable.normalize(weightCounts, maxWeight, maxSymbol, tableLog), tableLog);
+            table.writeDescription(fse);
+            // Two interleaved states, in the same order as the reference
+            // implementation so the decoder recovers the right symbol count
+            int i = maxSymbol;
+            long state1;
+            long state2;
+            if ((maxSymbol & 1) != 0) {
+                state1 = table.initState(weights[--i]);
+                state2 = table.initState(weights[--i]);
+                state1 = table.encode(fse, state1, weights[--i]);
+            } else {
+                state2 = table.initState(weights[--i]);
+                state1 = table.initState(weights[--i]);
+            }
+            while (i > 0) {
+                state2 = table.encode(fse, state2, weights[--i]);
+                state1 = table.encode(fse, state1, weights[--i]);
+            }
+            table.flush(fse, state2);
+            table.flush(fse, state1);
+            fse.writeBits(1, 1);
+            fse.alignToByte();
+            if (fse.getByteCount() >= 128) {
+                fse = null;
+            }
+        }
+
+        int directSize = (maxSymbol + 1) / 2;
+        if (fse != null && (maxSymbol > MAX_DIRECT_WEIGHTS || fse.getByteCount() < directSize)) {
+            bo.writeBits(fse.getByteCount(), 8);
+            bo.writeBitOutput(fse);
+            return true;
+        }
+        if (maxSymbol > MAX_DIRECT_WEIGHTS) {
+            return false;
+        }
+        bo.writeBits(127 + maxSymbol, 8);
+        for (int i = 0; i < maxSymbol; i += 2) {
+            int high = weights[i];
+            int low = i + 1 < maxSymbol ? weights[i + 1] : 0;
+            bo.writeBits((high << 4) | low, 8);
+        }
+        return true;
+    }
+
+
+    private static int weight(int length, int maxBits) {
+        return length == 0 ? 0 : maxBits + 1 - length;
+    }
+
+
+    /*
+     * Zstd assigns codes starting with the longest codes and, within a given
+     * length, in symbol order.
+     */
+    private static int[] buildZstdCodes(int[] lengths, int maxBits) {
+        int[] codes = new int[lengths.length];
+        int code = 0;
+        for (int length = maxBits; length > 0; length--) {
+            for (int i = 0; i < lengths.length; i++) {
+                if (lengths[i] == length) {
+                    codes[i] = code++;
+                }
+            }
+            code >>= 1;
+        }
+        return codes;
+    }
+
+
+    /*
+     * Huffman streams are read backwards so the literals are written in
+     * reverse order, followed by a single bit to mark the end of the stream.
+     */
+    private void writeHuffmanStream(BitOutput bo, int[] codes, int[] lengths, int start, int end) {
+        for (int i = end - 1; i >= start; i--) {
+            int symbol = literalBuffer[i] & 0xFF;
+            bo.writeBits(codes[symbol], lengths[symbol]);
+        }
+        bo.writeBits(1, 1);
+        bo.alignToByte();
+    }
+
+
+    private void encodeSequences() {
+        int sequenceCount = matchFinder.getSequenceCount();
+        if (sequenceCount < 128) {
+            sequences.writeBits(sequenceCount, 8);
+        } else if (sequenceCount < 0x7F00) {
+            sequences.writeBits((sequenceCount >> 8) + 128, 8);
+            sequences.writeBits(sequenceCount & 0xFF, 8);
+        } else {
+            sequences.writeBits(0xFF, 8);
+            sequences.writeBits(sequenceCount - 0x7F00, 16);
+        }
+        if (sequenceCount == 0) {
+            return;
+        }
+
+        int[] literalLengths = matchFinder.getLiteralLengths();
+        int[] matchLengths = matchFinder.getMatchLengths();
+        int[] distances = matchFinder.getDistances();
+        if (literalLengthCodes.length < sequenceCount) {
+            literalLengthCodes = new int[literalLengths.length];
+            matchLengthCodes = new int[literalLengths.length];
+            offsetValues = new int[literalLengths.length];
+            offsetCodes = new int[literalLengths.length];
+        }
+
+        int[] literalLengthCounts = new int[LITERAL_LENGTH_BASE.length];
+        int[] matchLengthCounts = new int[MATCH_LENGTH_BASE.length];
+        int[] offsetCounts = new int[32];
+        for (int n = 0; n < sequenceCount; n++) {
+            int llCode = code(LITERAL_LENGTH_BASE, literalLengths[n]);
+            int mlCode = code(MATCH_LENGTH_BASE, matchLengths[n]);
+            int offsetValue = offsetValue(distances[n], literalLengths[n] == 0);
+            int ofCode = FseTable.highBit(offsetValue);
+            literalLengthCodes[n] = llCode;
+            matchLengthCodes[n] = mlCode;
+            offsetValues[n] = offsetValue;
+            offsetCodes[n] = ofCode;
+            literalLengthCounts[llCode]++;
+            matchLengthCounts[mlCode]++;
+            offsetCounts[ofCode]++;
+        }
+
+        // Symbol compression modes, written once the tables are known
+        BitOutput tables = new BitOutput(256);
+        int modes = 0;
+        FseTable llTable = selectTable(tables, literalLengthCounts, sequenceCount,
+                MAX_LITERAL_LENGTH_LOG, LITERAL_LENGTH_TABLE, previousLiteralLengthTable);
+        modes |= lastMode << 6;
+        FseTable ofTable = selectTable(tables, offsetCounts, sequenceCount,
+                MAX_OFFSET_LOG, OFFSET_TABLE, previousOffsetTable);
+        modes |= lastMode << 4;
+        FseTable mlTable = selectTable(tables, matchLengthCounts, sequenceCount,
+                MAX_MATCH_LENGTH_LOG, MATCH_LENGTH_TABLE, previousMatchLengthTable);
+        modes |= lastMode << 2;
+        previousLiteralLengthTable = llTable;
+        previousOffsetTable = ofTable;
+        previousMatchLengthTable = mlTable;
+        sequences.writeBits(modes, 8);
+        sequences.writeBitOutput(tables);
+
+        int n = sequenceCount - 1;
+        long mlState = mlTable.initState(matchLengthCodes[n]);
+        long ofState = ofTable.initState(offsetCodes[n]);
+        long llState = llTable.initState(literalLengthCodes[n]);
+        writeExtraBits(sequences, literalLengths[n], literalLengthCodes[n], matchLengths[n],
+                matchLengthCodes[n], offsetValues[n], offsetCodes[n]);
+
+        for (n = sequenceCount - 2; n >= 0; n--) {
+            ofState = ofTable.encode(sequences, ofState, offsetCodes[n]);
+            mlState = mlTable.encode(sequences, mlState, matchLengthCodes[n]);
+            llState = llTable.encode(sequences, llState, literalLengthCodes[n]);
+            writeExtraBits(sequences, literalLengths[n], literalLengthCodes[n], matchLengths[n],
+                    matchLengthCodes[n], offsetValues[n], offsetCodes[n]);
+        }
+
+        mlTable.flush(sequences, mlState);
+        ofTable.flush(sequences, ofState);
+        llTable.flush(sequences, llState);
+        sequences.writeBits(1, 1);
+        sequences.alignToByte();
+    }
+
+
+    /*
+     * Choose the cheapest way to encode the given symbol counts, writing the
+     * table description (if any) to the given buffer.
+     */
+    private FseTable selectTable(BitOutput bo, int[] counts, int total, int maxTableLog,
+            FseTable predefined, FseTable previous) {
+        int maxSymbol = 0;
+        int used = 0;
+        for (int s = 0; s < counts.length; s++) {
+            if (counts[s] > 0) {
+                maxSymbol = s;
+                used++;
+            }
+        }
+        if (used == 1 && total > 2) {
+            lastMode = MODE_RLE;
+            bo.writeBits(maxSymbol, 8);
+            return FseTable.rle(maxSymbol);
+        }
+
+        FseTable best = predefined;
+        int bestMode = MODE_PREDEFINED;
+        long bestCost = predefined.cost(counts, maxSymbol);
+        if (bestCost < 0) {
+            bestCost = Long.MAX_VALUE;
+        }
+        if (previous != null && previous.getTableLog() > 0) {
+            long cost = previous.cost(counts, maxSymbol);
+            if (cost >= 0 && cost < bestCost) {
+                best = previous;
+                bestMode = MODE_REPEAT;
+                bestCost = cost;
+            }
+        }
+        BitOutput description = null;
+        if (total > 8) {
+            int tableLog = FseTable.optimalTableLog(maxTableLog, total, maxSymbol);
+            FseTable compressed = new FseTable(
+                    FseTable.normalize(counts, maxSymbol, total, tableLog), tableLog);
+            description = new BitOutput(64);
+            compressed.writeDescription(description);
+            long cost = compressed.cost(counts, maxSymbol) + description.getBitLength();
+            if (cost < bestCost) {
+                best = compressed;
+                bestMode = MODE_COMPRESSED;
+            }
+        }
+        lastMode = bestMode;
+        if (bestMode == MODE_COMPRESSED) {
+            bo.writeBitOutput(description);
+        }
+        return best;
+    }
+
+
+    /*
+     * Map a distance to an offset value, using the repeat offsets where
+     * possible, and update the repeat offsets as the decoder will. When there
+     * are no literals, offset values 1 to 3 refer to the second and third most
+     * recent offsets and the most recent offset minus one.
+     */
+    private int offsetValue(int distance, boolean noLiterals) {
+        int value;
+        if (noLiterals) {
+            if (distance == rep1) {
+                value = 1;
+            } else if (distance == rep2) {
+                value = 2;
+            } else if (distance == rep0 - 1) {
+                value = 3;
+            } else {
+                value = distance + 3;
+            }
+        } else {
+            if (distance == rep0) {
+                return 1;
+            } else if (distance == rep1) {
+                value = 2;
+            } else if (distance == rep2) {
+                value = 3;
+            } else {
+                value = distance + 3;
+            }
+        }
+        if (distance != rep1) {
+            rep2 = rep1;
+        }
+        rep1 = rep0;
+        rep0 = distance;
+        return value;
+    }
+
+
+    private static void writeExtraBits(BitOutput bo, int literalLength, int llCode,
+            int matchLength, int mlCode, int offsetValue, int ofCode) {
+        bo.writeBits(literalLength - LITERAL_LENGTH_BASE[llCode], LITERAL_LENGTH_BITS[llCode]);
+        bo.writeBits(matchLength - MATCH_LENGTH_BASE[mlCode], MATCH_LENGTH_BITS[mlCode]);
+        bo.writeBits(offsetValue, ofCode);
+    }
+
+
+    private static int code(int[] base, int value) {
+        int code = base.length - 1;
+        while (base[code] > value) {
+            code--;
+        }
+        return code;
+    }
+}
@@ -0,0 +1,101 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  See the NOTICE file distributed with
+ *  this work for additional information regarding copyright ownership.
+ *  The ASF licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.tomcat.util.http;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * A rolling histogram of the number of headers per request, used to size
+ * {@link MimeHeaders} so that the header array does not have to be expanded
+ * while the headers of a typical request are parsed.
+ * <p>
+ * Older samples are aged by halving every bucket once enough samples have been
+ * recorded so the suggested size follows changes in the traffic mix.
+ */
+public class HeaderCountHistogram {
+
+    private static final int BUCKETS = 128;
+    private static final int RECALCULATE_INTERVAL = 256;
+    private static final int DECAY_THRESHOLD = 16384;
+    // Suggest a size large enough for this percentage of requests
+    private static final int PERCENTILE = 95;
+
+    private final AtomicIntegerArray buckets = new AtomicIntegerArray(BUCKETS);
+    private final AtomicInteger samples = new AtomicInteger();
+
+    private volatile int suggestedSize = MimeHeaders.DEFAULT_HEADER_SIZE;
+
+
+    /**
+     * Record the number of headers in a request.
+     *
+     * @param count The number of headers
+     */
+    public void record(int count) {
+        if (count < 0) {
+            return;
+        }
+        buckets.incrementAndGet(Math.min(count, BUCKETS - 1));
+        int n = samples.incrementAndGet();
+        if (n % RECALCULATE_INTERVAL == 0) {
+            recalculate(n >= DECAY_THRESHOLD);
+        }
+    }
+
+
+    /**
+     * @return the number of headers that a {@link MimeHeaders} instance should
+     *         have space for. Never less than
+     *         {@link MimeHeaders#DEFAULT_HEADER_SIZE}.
+     */
+    public int getSuggestedSize() {
+        return suggestedSize;
+    }
+
+
+    private synchronized void recalculate(boolean decay) {
+        int total = 0;
+        int[] counts = new int[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++) {
+            counts[i] = buckets.get(i);
+            total += counts[i];
+        }
+        if (total > 0) {
+            long target = ((long) total * PERCENTILE + 99) / 100;
+            long cumulative = 0;
+            int size = BUCKETS - 1;
+            for (int i = 0; i < BUCKETS; i++) {
+                cumulative += counts[i];
+                if (cumulative >= target) {
+                    size = i;
+                    break;
+                }
+            }
+            suggestedSize = Math.max(size, MimeHeaders.DEFAULT_HEADER_SIZE);
+        }
+        if (decay) {
+            int removed = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                int half = counts[i] / 2;
+                buckets.addAndGet(i, -half);
+                removed += half;
+            }
+            samples.addAndGet(-removed);
+        }
+    }
+}
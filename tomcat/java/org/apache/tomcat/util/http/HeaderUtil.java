@@ -47,6 +47,62 @@ public class HeaderUtil {
     }
 
 
+    private static final long ONES = 0x0101010101010101L;
+    private static final long HIGH_BITS = 0x8080808080808080L;
+    private static final long SPACES = 0x2020202020202020L;
+    private static final long DELS = 0x7F7F7F7F7F7F7F7FL;
+
+
+    /**
+     * Determines the length of the run of printable US-ASCII bytes (0x20 to
+     * 0x7E inclusive) that starts at the given position. Eight bytes are
+     * examined at a time.
+     *
+     * @param bytes The bytes to examine
+     * @param start The position of the first byte to examine
+     * @param end   The position after the last byte to examine
+     *
+     * @return The number of printable bytes before the first byte that is a
+     *         control character, DEL or not US-ASCII, or before {@code end}
+     */
+    public static int printableAsciiLength(byte[] bytes, int start, int end) {
+        int pos = start;
+        while (pos + 8 <= end) {
+            long word = getLongLE(bytes, pos);
+            // Sets the high bit of every byte that is >= 0x80, < 0x20 or 0x7F.
+            // Borrows only propagate towards the more significant bytes and
+            // only from a byte that is itself flagged so the least significant
+            // flag always marks the first byte that is not printable.
+            long delete = word ^ DELS;
+            long mask = (word | ((word - SPACES) & ~word) | ((delete - ONES) & ~delete)) & HIGH_BITS;
+            if (mask != 0) {
+                return pos - start + (Long.numberOfTrailingZeros(mask) >>> 3);
+            }
+            pos += 8;
+        }
+        while (pos < end) {
+            byte b = bytes[pos];
+            if (b < 0x20 || b == 0x7F) {
+                break;
+            }
+            pos++;
+        }
+        return pos - start;
+    }
+
+
+    private static long getLongLE(byte[] bytes, int pos) {
+        return (bytes[pos] & 0xFFL) |
+                (bytes[pos + 1] & 0xFFL) << 8 |
+                (bytes[pos + 2] & 0xFFL) << 16 |
+                (bytes[pos + 3] & 0xFFL) << 24 |
+                (bytes[pos + 4] & 0xFFL) << 32 |
+                (bytes[pos + 5] & 0xFFL) << 40 |
+                (bytes[pos + 6] & 0xFFL) << 48 |
+                (bytes[pos + 7] & 0xFFL) << 56;
+    }
+
+
     private HeaderUtil() {
         // Utility class. Hide default constructor.
     }
@@ -134,6 +134,24 @@ public class MimeHeaders {
         }
     }
 
+    /**
+     * Ensure there is space for at least the given number of header fields
+     * without the need to expand the internal array. The capacity is never
+     * increased beyond the limit, if one is set.
+     *
+     * @param capacity The number of header fields to allow space for
+     */
+    public void ensureCapacity(int capacity) {
+        if (limit > 0 && capacity > limit) {
+            capacity = limit;
+        }
+        if (capacity > headers.length) {
+            MimeHeaderField tmp[] = new MimeHeaderField[capacity];
+            System.arraycopy(headers, 0, tmp, 0, headers.length);
+            headers = tmp;
+        }
+    }
+
     /**
      * Clears all header fields.
      */
@@ -41,6 +41,24 @@ public class AcceptEncoding {
 
 
     public static List<AcceptEncoding> parse(StringReader input) throws IOException {
+        return parse(input, false);
+    }
+
+
+    /**
+     * Parse an Accept-Encoding header value.
+     *
+     * @param input              The header value
+     * @param includeNotAccepted Should entries with a quality of zero, which
+     *                           explicitly mark an encoding as not acceptable,
+     *                           be included in the result
+     *
+     * @return The parsed entries in the order they appear in the header
+     *
+     * @throws IOException If an error occurs reading the header value
+     */
+    public static List<AcceptEncoding> parse(StringReader input, boolean includeNotAccepted)
+            throws IOException {
 
         List<AcceptEncoding> result = new ArrayList<>();
 
@@ -64,7 +82,7 @@ public class AcceptEncoding {
                 quality = HttpParser.readWeight(input, ',');
             }
 
-            if (quality > 0) {
+            if (quality > 0 || includeNotAccepted && quality == 0) {
                 result.add(new AcceptEncoding(encoding, quality));
             }
         } while (true);
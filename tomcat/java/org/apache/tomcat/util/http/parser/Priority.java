@@ -0,0 +1,101 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  See the NOTICE file distributed with
+ *  this work for additional information regarding copyright ownership.
+ *  The ASF licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.tomcat.util.http.parser;
+
+/**
+ * HTTP extensible priority as defined by RFC 9218.
+ */
+public class Priority {
+
+    public static final int DEFAULT_URGENCY = 3;
+    public static final boolean DEFAULT_INCREMENTAL = false;
+
+    private final int urgency;
+    private final boolean incremental;
+
+    protected Priority(int urgency, boolean incremental) {
+        this.urgency = urgency;
+        this.incremental = incremental;
+    }
+
+    /**
+     * @return the urgency from 0 (most urgent) to 7 (least urgent)
+     */
+    public int getUrgency() {
+        return urgency;
+    }
+
+    public boolean getIncremental() {
+        return incremental;
+    }
+
+
+    /**
+     * Parse a Priority header value. The value is a structured field
+     * dictionary. As required by RFC 9218, unknown members, member parameters
+     * and members with invalid values are ignored and the default value is
+     * used instead.
+     *
+     * @param input The header value
+     *
+     * @return The priority described by the header value. Never {@code null}.
+     */
+    public static Priority parsePriority(String input) {
+        int urgency = DEFAULT_URGENCY;
+        boolean incremental = DEFAULT_INCREMENTAL;
+
+        for (String member : input.split(",")) {
+            int semicolon = member.indexOf(';');
+            if (semicolon > -1) {
+                member = member.substring(0, semicolon);
+            }
+            String key;
+            String value;
+            int equals = member.indexOf('=');
+            if (equals == -1) {
+                key = member.trim();
+                // A bare key is the boolean true
+                value = "?1";
+            } else {
+                key = member.substring(0, equals).trim();
+                value = member.substring(equals + 1).trim();
+            }
+            // If a key appears more than once, the last value is used
+            switch (key) {
+                case "u": {
+                    if (value.length() == 1 && value.charAt(0) >= '0' && value.charAt(0) <= '7') {
+                        urgency = value.charAt(0) - '0';
+                    }
+                    break;
+                }
+                case "i": {
+                    if ("?1".equals(value)) {
+                        incremental = true;
+                    } else if ("?0".equals(value)) {
+                        incremental = false;
+                    }
+                    break;
+                }
+                default: {
+                    // Ignore
+                }
+            }
+        }
+
+        return new Priority(urgency, incremental);
+    }
+}
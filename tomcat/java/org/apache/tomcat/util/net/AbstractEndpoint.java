@@ -37,6 +37,7 @@ import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ScheduledThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 import javax.management.MalformedObjectNameException;
 import javax.management.ObjectName;
@@ -436,6 +437,30 @@ public abstract class AbstractEndpoint<S,U> {
     }
 
 
+    /**
+     * The number of sendfile transfers written to the socket without copying
+     * the file content through user space and the number that had to be
+     * copied, typically because the content had to be encrypted by an
+     * {@link javax.net.ssl.SSLEngine}. Both are visible on the "ThreadPool"
+     * MBean.
+     */
+    private final AtomicLong sendfileZeroCopyCount = new AtomicLong();
+    private final AtomicLong sendfileCopyCount = new AtomicLong();
+    public long getSendfileZeroCopyCount() {
+        return sendfileZeroCopyCount.get();
+    }
+    public long getSendfileCopyCount() {
+        return sendfileCopyCount.get();
+    }
+    protected void countSendfile(boolean zeroCopy) {
+        if (zeroCopy) {
+            sendfileZeroCopyCount.incrementAndGet();
+        } else {
+            sendfileCopyCount.incrementAndGet();
+        }
+    }
+
+
     /**
      * Time to wait for the internal executor (if used) to terminate when the
      * endpoint is stopped in milliseconds. Defaults to 5000 (5 seconds).
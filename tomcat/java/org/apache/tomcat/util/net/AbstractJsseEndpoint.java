@@ -38,6 +38,11 @@ public abstract class AbstractJsseEndpoint<S,U> extends AbstractEndpoint<S,U> {
 
     private SSLImplementation sslImplementation = null;
 
+    /**
+     * Pool of direct buffers used for the socket buffers, if enabled.
+     */
+    private volatile DirectBufferPool directBufferPool = null;
+
     public String getSslImplementationName() {
         return sslImplementationName;
     }
@@ -63,6 +68,80 @@ public abstract class AbstractJsseEndpoint<S,U> extends AbstractEndpoint<S,U> {
     }
 
 
+    protected DirectBufferPool getDirectBufferPool() {
+        return directBufferPool;
+    }
+
+
+    /**
+     * Create the direct buffer pool if direct buffers are in use and pooling
+     * has been enabled via <code>socket.directBufferPoolSize</code>.
+     */
+    protected void createDirectBufferPool() {
+        if (socketProperties.getDirectBuffer() && socketProperties.getDirectBufferPoolSize() != 0) {
+            directBufferPool = new DirectBufferPool(socketProperties.getDirectBufferPoolSize());
+        }
+    }
+
+
+    protected void destroyDirectBufferPool() {
+        DirectBufferPool directBufferPool = this.directBufferPool;
+        if (directBufferPool != null) {
+            directBufferPool.close();
+            this.directBufferPool = null;
+        }
+    }
+
+
+    protected SocketBufferHandler createSocketBufferHandler() {
+        return new SocketBufferHandler(
+                socketProperties.getAppReadBufSize(),
+                socketProperties.getAppWriteBufSize(),
+                socketProperties.getDirectBuffer(),
+                directBufferPool);
+    }
+
+
+    /**
+     * @return the number of bytes in pooled direct buffers currently in use
+     *         or -1 if the direct buffer pool is not enabled
+     */
+    public long getDirectBufferPoolBytesInUse() {
+        DirectBufferPool directBufferPool = this.directBufferPool;
+        return (directBufferPool == null) ? -1 : directBufferPool.getBytesInUse();
+    }
+
+
+    /**
+     * @return the maximum number of bytes in pooled direct buffers in use at
+     *         any one time or -1 if the direct buffer pool is not enabled
+     */
+    public long getDirectBufferPoolHighWaterMark() {
+        DirectBufferPool directBufferPool = this.directBufferPool;
+        return (directBufferPool == null) ? -1 : directBufferPool.getHighWaterMark();
+    }
+
+
+    /**
+     * @return the number of bytes in idle direct buffers held by the pool or
+     *         -1 if the direct buffer pool is not enabled
+     */
+    public long getDirectBufferPoolPooledBytes() {
+        DirectBufferPool directBufferPool = this.directBufferPool;
+        return (directBufferPool == null) ? -1 : directBufferPool.getPooledBytes();
+    }
+
+
+    /**
+     * @return the proportion of direct buffer allocations satisfied from the
+     *         pool or -1 if the direct buffer pool is not enabled
+     */
+    public double getDirectBufferPoolHitRate() {
+        DirectBufferPool directBufferPool = this.directBufferPool;
+        return (directBufferPool == null) ? -1 : directBufferPool.getHitRate();
+    }
+
+
     protected void initialiseSsl() throws Exception {
         if (isSSLEnabled()) {
             sslImplementation = SSLImplementation.getInstance(getSslImplementationName());
@@ -83,6 +162,10 @@ public abstract class AbstractJsseEndpoint<S,U> extends AbstractEndpoint<S,U> {
 
     @Override
     protected void createSSLContext(SSLHostConfig sslHostConfig) throws IllegalArgumentException {
+        if (sslHostConfig.getKernelTls()) {
+            // The SSLEngine API keeps the TLS record layer in user space
+            getLog().warn(sm.getString("endpoint.jsse.kernelTlsNotSupported", sslHostConfig.getHostName()));
+        }
         boolean firstCertificate = true;
         for (SSLHostConfigCertificate certificate : sslHostConfig.getCertificates(true)) {
             SSLUtil sslUtil = sslImplementation.getSSLUtil(certificate);
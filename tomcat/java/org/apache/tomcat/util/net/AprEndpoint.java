@@ -2005,7 +2005,9 @@ public class AprEndpoint extends AbstractEndpoint<Long,Long> implements SNICallB
         @Override
         public void run() {
 
-            synchronized (socket) {
+            Lock lock = socket.getLock();
+            lock.lock();
+            try {
                 if (!deferAccept) {
                     if (setSocketOptions(socket)) {
                         getPoller().add(socket.getSocket().longValue(),
@@ -2033,6 +2035,8 @@ public class AprEndpoint extends AbstractEndpoint<Long,Long> implements SNICallB
                         socket = null;
                     }
                 }
+            } finally {
+                lock.unlock();
             }
         }
 
@@ -2449,6 +2453,8 @@ public class AprEndpoint extends AbstractEndpoint<Long,Long> implements SNICallB
         @Override
         public SendfileState processSendfile(SendfileDataBase sendfileData) {
             ((SendfileData) sendfileData).socket = getSocket().longValue();
+            // Sendfile is disabled when TLS is enabled
+            getEndpoint().countSendfile(true);
             return ((AprEndpoint) getEndpoint()).getSendfile().add((SendfileData) sendfileData);
         }
 
@@ -0,0 +1,208 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  See the NOTICE file distributed with
+ *  this work for additional information regarding copyright ownership.
+ *  The ASF licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.tomcat.util.net;
+
+import java.nio.ByteBuffer;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.apache.tomcat.util.buf.ByteBufferUtils;
+import org.apache.tomcat.util.collections.SynchronizedStack;
+
+/**
+ * Endpoint wide pool of direct {@link ByteBuffer}s used by
+ * {@link SocketBufferHandler} so that the native memory backing the socket
+ * buffers is re-used rather than being allocated and released (via the
+ * <code>Cleaner</code>) for every connection.
+ * <p>
+ * Buffers are grouped into size classes, one per distinct buffer capacity,
+ * and released buffers are placed in the shared stack for the size class.
+ * There is no per-thread tier since buffers are usually allocated on the
+ * acceptor thread and released on a poller or worker thread. The total number
+ * of bytes held by the pool when idle is limited by
+ * <code>maxPooledBytes</code>. Buffers that cannot be pooled are released
+ * immediately.
+ */
+public class DirectBufferPool {
+
+    private final long maxPooledBytes;
+
+    private final Map<Integer,SynchronizedStack<ByteBuffer>> sizeClasses = new ConcurrentHashMap<>();
+
+    private final AtomicLong pooledBytes = new AtomicLong(0);
+    private final AtomicLong bytesInUse = new AtomicLong(0);
+    private final AtomicLong highWaterMark = new AtomicLong(0);
+    private final LongAdder hitCount = new LongAdder();
+    private final LongAdder missCount = new LongAdder();
+
+    private volatile boolean closed = false;
+
+
+    /**
+     * Create a new pool.
+     *
+     * @param maxPooledBytes The maximum number of bytes held by the pool in
+     *                       buffers that are not in use. -1 means unlimited.
+     */
+    public DirectBufferPool(long maxPooledBytes) {
+        this.maxPooledBytes = maxPooledBytes;
+    }
+
+
+    /**
+     * Obtain a direct buffer with the given capacity, re-using a pooled buffer
+     * if one is available.
+     *
+     * @param capacity The required capacity
+     *
+     * @return A cleared direct buffer with exactly the given capacity
+     */
+    public ByteBuffer allocate(int capacity) {
+        ByteBuffer result = null;
+        SynchronizedStack<ByteBuffer> stack = sizeClasses.get(Integer.valueOf(capacity));
+        if (stack != null) {
+            result = stack.pop();
+        }
+        if (result == null) {
+            missCount.increment();
+            result = ByteBuffer.allocateDirect(capacity);
+        } else {
+            hitCount.increment();
+            pooledBytes.addAndGet(-capacity);
+            result.clear();
+        }
+        long inUse = bytesInUse.addAndGet(capacity);
+        long max = highWaterMark.get();
+        while (inUse > max && !highWaterMark.compareAndSet(max, inUse)) {
+            max = highWaterMark.get();
+        }
+        return result;
+    }
+
+
+    /**
+     * Return a buffer obtained from {@link #allocate(int)} to the pool. The
+     * caller must not use the buffer after calling this method.
+     *
+     * @param buffer The buffer to return
+     */
+    public void release(ByteBuffer buffer) {
+        int capacity = buffer.capacity();
+        bytesInUse.addAndGet(-capacity);
+        if (!closed && reserve(capacity)) {
+            SynchronizedStack<ByteBuffer> stack = sizeClasses.computeIfAbsent(
+                    Integer.valueOf(capacity), k -> new SynchronizedStack<>());
+            if (stack.push(buffer)) {
+                if (closed) {
+                    // Raced with close(). Make sure the buffer is not left
+                    // counted in a stack that will never be drained.
+                    drain(stack);
+                }
+                return;
+            }
+            pooledBytes.addAndGet(-capacity);
+        }
+        ByteBufferUtils.cleanDirectBuffer(buffer);
+    }
+
+
+    private boolean reserve(int capacity) {
+        if (maxPooledBytes == -1) {
+            pooledBytes.addAndGet(capacity);
+            return true;
+        }
+        long current;
+        do {
+            current = pooledBytes.get();
+            if (current + capacity > maxPooledBytes) {
+                return false;
+            }
+        } while (!pooledBytes.compareAndSet(current, current + capacity));
+        return true;
+    }
+
+
+    /**
+     * Release all the buffers held by the pool and stop pooling buffers
+     * returned after this call.
+     */
+    public void close() {
+        closed = true;
+        for (SynchronizedStack<ByteBuffer> stack : sizeClasses.values()) {
+            drain(stack);
+        }
+    }
+
+
+    private void drain(SynchronizedStack<ByteBuffer> stack) {
+        ByteBuffer buffer;
+        while ((buffer = stack.pop()) != null) {
+            pooledBytes.addAndGet(-buffer.capacity());
+            ByteBufferUtils.cleanDirectBuffer(buffer);
+        }
+    }
+
+
+    /**
+     * @return the number of bytes in buffers that have been handed out by the
+     *         pool and not yet returned
+     */
+    public long getBytesInUse() {
+        return bytesInUse.get();
+    }
+
+
+    /**
+     * @return the highest value observed for {@link #getBytesInUse()}
+     */
+    public long getHighWaterMark() {
+        return highWaterMark.get();
+    }
+
+
+    /**
+     * @return the number of bytes in idle buffers currently held by the pool
+     */
+    public long getPooledBytes() {
+        return pooledBytes.get();
+    }
+
+
+    public long getHitCount() {
+        return hitCount.sum();
+    }
+
+
+    public long getMissCount() {
+        return missCount.sum();
+    }
+
+
+    /**
+     * @return the proportion of allocations that were satisfied from the pool
+     */
+    public double getHitRate() {
+        long hits = hitCount.sum();
+        long total = hits + missCount.sum();
+        if (total == 0) {
+            return 0;
+        }
+        return (double) hits / total;
+    }
+}
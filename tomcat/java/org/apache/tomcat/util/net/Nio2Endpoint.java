@@ -150,6 +150,7 @@ public class Nio2Endpoint extends AbstractJsseEndpoint<Nio2Channel,AsynchronousS
                 nioChannels = new SynchronizedStack<>(SynchronizedStack.DEFAULT_SIZE,
                         actualBufferPool);
             }
+            createDirectBufferPool();
             // Create worker collection
             if (getExecutor() == null) {
                 createExecutor();
@@ -210,6 +211,7 @@ public class Nio2Endpoint extends AbstractJsseEndpoint<Nio2Channel,AsynchronousS
                 nioChannels.clear();
                 nioChannels = null;
             }
+            destroyDirectBufferPool();
             if (processorCache != null) {
                 processorCache.clear();
                 processorCache = null;
@@ -294,10 +296,7 @@ public class Nio2Endpoint extends AbstractJsseEndpoint<Nio2Channel,AsynchronousS
                 channel = nioChannels.pop();
             }
             if (channel == null) {
-                SocketBufferHandler bufhandler = new SocketBufferHandler(
-                        socketProperties.getAppReadBufSize(),
-                        socketProperties.getAppWriteBufSize(),
-                        socketProperties.getDirectBuffer());
+                SocketBufferHandler bufhandler = createSocketBufferHandler();
                 if (isSSLEnabled()) {
                     channel = new SecureNio2Channel(bufhandler, this);
                 } else {
@@ -1385,6 +1384,8 @@ public class Nio2Endpoint extends AbstractJsseEndpoint<Nio2Channel,AsynchronousS
         public SendfileState processSendfile(SendfileDataBase sendfileData) {
             SendfileData data = (SendfileData) sendfileData;
             setSendfileData(data);
+            // The file is always read into the write buffer
+            getEndpoint().countSendfile(false);
             // Configure the send file data
             if (data.fchannel == null || !data.fchannel.isOpen()) {
                 java.nio.file.Path path = new File(sendfileData.fileName).toPath();
@@ -48,7 +48,9 @@ import java.util.Set;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
 
 import javax.net.ssl.SSLEngine;
 
@@ -66,7 +68,7 @@ import org.apache.tomcat.util.net.jsse.JSSESupport;
  * NIO tailored thread pool, providing the following services:
  * <ul>
  * <li>Socket acceptor thread</li>
- * <li>Socket poller thread</li>
+ * <li>Socket poller threads</li>
  * <li>Worker threads pool</li>
  * </ul>
  *
@@ -87,6 +89,9 @@ public class NioEndpoint extends AbstractJsseEndpoint<NioChannel,SocketChannel>
 
     public static final int OP_REGISTER = 0x100; //register interest op
 
+    public static final String POLLER_SELECTION_ROUND_ROBIN = "roundRobin";
+    public static final String POLLER_SELECTION_LEAST_REGISTERED = "leastRegistered";
+
     // ----------------------------------------------------------------- Fields
 
     /**
@@ -99,11 +104,6 @@ public class NioEndpoint extends AbstractJsseEndpoint<NioChannel,SocketChannel>
      */
     private volatile CountDownLatch stopLatch = null;
 
-    /**
-     * Cache for poller events
-     */
-    private SynchronizedStack<PollerEvent> eventCache;
-
     /**
      * Bytebuffer cache, each channel holds a set of buffers (two, except for SSL holds four)
      */
@@ -153,10 +153,46 @@ public class NioEndpoint extends AbstractJsseEndpoint<NioChannel,SocketChannel>
     public void setSelectorTimeout(long timeout) { this.selectorTimeout = timeout;}
     public long getSelectorTimeout() { return this.selectorTimeout; }
 
+
+    /**
+     * Number of poller threads. Each poller owns its own selector, event queue
+     * and event cache and new connections are spread across the pollers.
+     */
+    private int pollerThreadCount = 1;
+    public void setPollerThreadCount(int pollerThreadCount) {
+        if (pollerThreadCount < 1) {
+            throw new IllegalArgumentException(sm.getString(
+                    "endpoint.nio.invalidPollerThreadCount", Integer.toString(pollerThreadCount)));
+        }
+        this.pollerThreadCount = pollerThreadCount;
+    }
+    public int getPollerThreadCount() { return pollerThreadCount; }
+
+
+    /**
+     * Policy used to select the poller a new connection is registered with.
+     * Either {@link #POLLER_SELECTION_ROUND_ROBIN} or
+     * {@link #POLLER_SELECTION_LEAST_REGISTERED}.
+     */
+    private String pollerSelectionPolicy = POLLER_SELECTION_ROUND_ROBIN;
+    public void setPollerSelectionPolicy(String pollerSelectionPolicy) {
+        if (POLLER_SELECTION_ROUND_ROBIN.equalsIgnoreCase(pollerSelectionPolicy)) {
+            this.pollerSelectionPolicy = POLLER_SELECTION_ROUND_ROBIN;
+        } else if (POLLER_SELECTION_LEAST_REGISTERED.equalsIgnoreCase(pollerSelectionPolicy)) {
+            this.pollerSelectionPolicy = POLLER_SELECTION_LEAST_REGISTERED;
+        } else {
+            throw new IllegalArgumentException(sm.getString(
+                    "endpoint.nio.invalidPollerSelectionPolicy", pollerSelectionPolicy));
+        }
+    }
+    public String getPollerSelectionPolicy() { return pollerSelectionPolicy; }
+
+
     /**
-     * The socket poller.
+     * The socket pollers.
      */
-    private Poller poller = null;
+    private Poller[] pollers = null;
+    private final AtomicInteger pollerRotater = new AtomicInteger(0);
 
 
     // --------------------------------------------------------- Public Methods
@@ -168,11 +204,53 @@ public class NioEndpoint extends AbstractJsseEndpoint<NioChannel,SocketChannel>
      *         for the next request to be received on the socket
      */
     public int getKeepAliveCount() {
-        if (poller == null) {
+        Poller[] pollers = this.pollers;
+        if (pollers == null) {
             return 0;
         } else {
-            return poller.getKeyCount();
+            int sum = 0;
+            for (Poller poller : pollers) {
+                sum += poller.getKeyCount();
+            }
+            return sum;
+        }
+    }
+
+
+    /**
+     * Number of sockets currently registered with each poller.
+     *
+     * @return The number of registered sockets, indexed by poller
+     */
+    public int[] getPollerRegistrationCounts() {
+        Poller[] pollers = this.pollers;
+        if (pollers == null) {
+            return new int[0];
+        }
+        int[] result = new int[pollers.length];
+        for (int i = 0; i < pollers.length; i++) {
+            result[i] = pollers[i].getRegistrationCount();
+        }
+        return result;
+    }
+
+
+    /**
+     * Total number of selected keys processed by each poller since the
+     * endpoint was started.
+     *
+     * @return The number of selected keys, indexed by poller
+     */
+    public long[] getPollerSelectedKeyCounts() {
+        Poller[] pollers = this.pollers;
+        if (pollers == null) {
+            return new long[0];
+        }
+        long[] result = new long[pollers.length];
+        for (int i = 0; i < pollers.length; i++) {
+            result[i] = pollers[i].getSelectedKeyCount();
         }
+        return result;
     }
 
 
@@ -185,7 +263,7 @@ public class NioEndpoint extends AbstractJsseEndpoint<NioChannel,SocketChannel>
     public void bind() throws Exception {
         initServerSocket();
 
-        setStopLatch(new CountDownLatch(1));
+        setStopLatch(new CountDownLatch(getPollerThreadCount()));
 
         // Initialize SSL if needed
         initialiseSsl();
@@ -237,16 +315,13 @@ public class NioEndpoint extends AbstractJsseEndpoint<NioChannel,SocketChannel>
                 processorCache = new SynchronizedStack<>(SynchronizedStack.DEFAULT_SIZE,
                         socketProperties.getProcessorCache());
             }
-            if (socketProperties.getEventCache() != 0) {
-                eventCache = new SynchronizedStack<>(SynchronizedStack.DEFAULT_SIZE,
-                        socketProperties.getEventCache());
-            }
             int actualBufferPool =
                     socketProperties.getActualBufferPool(isSSLEnabled() ? getSniParseLimit() * 2 : 0);
             if (actualBufferPool != 0) {
                 nioChannels = new SynchronizedStack<>(SynchronizedStack.DEFAULT_SIZE,
                         actualBufferPool);
             }
+            createDirectBufferPool();
 
             // Create worker collection
             if (getExecutor() == null) {
@@ -255,12 +330,22 @@ public class NioEndpoint extends AbstractJsseEndpoint<NioChannel,SocketChannel>
 
             initializeConnectionLatch();
 
-            // Start poller thread
-            poller = new Poller();
-            Thread pollerThread = new Thread(poller, getName() + "-Poller");
-            pollerThread.setPriority(threadPriority);
-            pollerThread.setDaemon(true);
-            pollerThread.start();
+            // Start poller threads
+            Poller[] pollers = new Poller[getPollerThreadCount()];
+            for (int i = 0; i < pollers.length; i++) {
+                pollers[i] = new Poller();
+            }
+            this.pollers = pollers;
+            for (int i = 0; i < pollers.length; i++) {
+                String threadName = getName() + "-Poller";
+                if (pollers.length > 1) {
+                    threadName = threadName + "-" + i;
+                }
+                Thread pollerThread = new Thread(pollers[i], threadName);
+                pollerThread.setPriority(threadPriority);
+                pollerThread.setDaemon(true);
+                pollerThread.start();
+            }
 
             startAcceptorThread();
         }
@@ -278,9 +363,12 @@ public class NioEndpoint extends AbstractJsseEndpoint<NioChannel,SocketChannel>
         if (running) {
             running = false;
             acceptor.stop(10);
-            if (poller != null) {
-                poller.destroy();
-                poller = null;
+            Poller[] pollers = this.pollers;
+            if (pollers != null) {
+                for (Poller poller : pollers) {
+                    poller.destroy();
+                }
+                this.pollers = null;
             }
             try {
                 if (!getStopLatch().await(selectorTimeout + 100, TimeUnit.MILLISECONDS)) {
@@ -290,14 +378,16 @@ public class NioEndpoint extends AbstractJsseEndpoint<NioChannel,SocketChannel>
                 log.warn(sm.getString("endpoint.nio.stopLatchAwaitInterrupted"), e);
             }
             shutdownExecutor();
-            if (eventCache != null) {
-                eventCache.clear();
-                eventCache = null;
+            if (pollers != null) {
+                for (Poller poller : pollers) {
+                    poller.clearEventCache();
+                }
             }
             if (nioChannels != null) {
                 nioChannels.clear();
                 nioChannels = null;
             }
+            destroyDirectBufferPool();
             if (processorCache != null) {
                 processorCache.clear();
                 processorCache = null;
@@ -392,8 +482,34 @@ public class NioEndpoint extends AbstractJsseEndpoint<NioChannel,SocketChannel>
     }
 
 
+    /**
+     * Obtain the poller a new connection should be registered with, based on
+     * the configured poller selection policy.
+     *
+     * @return The selected poller or <code>null</code> if the endpoint is not
+     *         running
+     */
     protected Poller getPoller() {
-        return poller;
+        Poller[] pollers = this.pollers;
+        if (pollers == null) {
+            return null;
+        }
+        if (pollers.length == 1) {
+            return pollers[0];
+        }
+        if (POLLER_SELECTION_LEAST_REGISTERED.equals(pollerSelectionPolicy)) {
+            Poller result = pollers[0];
+            int min = result.getRegistrationCount();
+            for (int i = 1; i < pollers.length; i++) {
+                int count = pollers[i].getRegistrationCount();
+                if (count < min) {
+                    min = count;
+                    result = pollers[i];
+                }
+            }
+            return result;
+        }
+        return pollers[Math.abs(pollerRotater.incrementAndGet() % pollers.length)];
     }
 
 
@@ -424,10 +540,7 @@ public class NioEndpoint extends AbstractJsseEndpoint<NioChannel,SocketChannel>
                 channel = nioChannels.pop();
             }
             if (channel == null) {
-                SocketBufferHandler bufhandler = new SocketBufferHandler(
-                        socketProperties.getAppReadBufSize(),
-                        socketProperties.getAppWriteBufSize(),
-                        socketProperties.getDirectBuffer());
+                SocketBufferHandler bufhandler = createSocketBufferHandler();
                 if (isSSLEnabled()) {
                     channel = new SecureNioChannel(bufhandler, this);
                 } else {
@@ -449,7 +562,7 @@ public class NioEndpoint extends AbstractJsseEndpoint<NioChannel,SocketChannel>
             socketWrapper.setReadTimeout(getConnectionTimeout());
             socketWrapper.setWriteTimeout(getConnectionTimeout());
             socketWrapper.setKeepAliveLeft(NioEndpoint.this.getMaxKeepAliveRequests());
-            poller.register(socketWrapper);
+            socketWrapper.getPoller().register(socketWrapper);
             return true;
         } catch (Throwable t) {
             ExceptionUtils.handleThrowable(t);
@@ -551,6 +664,11 @@ public class NioEndpoint extends AbstractJsseEndpoint<NioChannel,SocketChannel>
         private final SynchronizedQueue<PollerEvent> events =
                 new SynchronizedQueue<>();
 
+        /**
+         * Cache for poller events
+         */
+        private final SynchronizedStack<PollerEvent> eventCache;
+
         private volatile boolean close = false;
         // Optimize expiration handling
         private long nextExpiration = 0;
@@ -559,12 +677,33 @@ public class NioEndpoint extends AbstractJsseEndpoint<NioChannel,SocketChannel>
 
         private volatile int keyCount = 0;
 
+        private final AtomicInteger registrationCount = new AtomicInteger(0);
+
+        // Only updated by the poller thread
+        private volatile long selectedKeyCount = 0;
+
         public Poller() throws IOException {
             this.selector = Selector.open();
+            if (socketProperties.getEventCache() != 0) {
+                eventCache = new SynchronizedStack<>(SynchronizedStack.DEFAULT_SIZE,
+                        socketProperties.getEventCache());
+            } else {
+                eventCache = null;
+            }
         }
 
         public int getKeyCount() { return keyCount; }
 
+        /**
+         * @return the number of sockets currently registered with this poller
+         */
+        public int getRegistrationCount() { return registrationCount.get(); }
+
+        /**
+         * @return the total number of selected keys processed by this poller
+         */
+        public long getSelectedKeyCount() { return selectedKeyCount; }
+
         public Selector getSelector() { return selector; }
 
         /**
@@ -578,6 +717,12 @@ public class NioEndpoint extends AbstractJsseEndpoint<NioChannel,SocketChannel>
             selector.wakeup();
         }
 
+        protected void clearEventCache() {
+            if (eventCache != null) {
+                eventCache.clear();
+            }
+        }
+
         private void addEvent(PollerEvent event) {
             events.offer(event);
             if (wakeupCounter.incrementAndGet() == 0) {
@@ -676,6 +821,10 @@ public class NioEndpoint extends AbstractJsseEndpoint<NioChannel,SocketChannel>
          */
         public void register(final NioSocketWrapper socketWrapper) {
             socketWrapper.interestOps(SelectionKey.OP_READ);//this is what OP_REGISTER turns into.
+            if (!socketWrapper.registered) {
+                socketWrapper.registered = true;
+                registrationCount.incrementAndGet();
+            }
             PollerEvent event = null;
             if (eventCache != null) {
                 event = eventCache.pop();
@@ -740,6 +889,9 @@ public class NioEndpoint extends AbstractJsseEndpoint<NioChannel,SocketChannel>
                             keyCount = selector.select(selectorTimeout);
                         }
                         wakeupCounter.set(0);
+                        if (keyCount > 0) {
+                            selectedKeyCount += keyCount;
+                        }
                     }
                     if (close) {
                         events();
@@ -801,10 +953,8 @@ public class NioEndpoint extends AbstractJsseEndpoint<NioChannel,SocketChannel>
                                         closeSocket = true;
                                     }
                                 } else if (socketWrapper.readBlocking) {
-                                    synchronized (socketWrapper.readLock) {
-                                        socketWrapper.readBlocking = false;
-                                        socketWrapper.readLock.notify();
-                                    }
+                                    socketWrapper.readBlocking = false;
+                                    LockSupport.unpark(socketWrapper.readBlockingThread);
                                 } else if (!processSocket(socketWrapper, SocketEvent.OPEN_READ, true)) {
                                     closeSocket = true;
                                 }
@@ -815,10 +965,8 @@ public class NioEndpoint extends AbstractJsseEndpoint<NioChannel,SocketChannel>
                                         closeSocket = true;
                                     }
                                 } else if (socketWrapper.writeBlocking) {
-                                    synchronized (socketWrapper.writeLock) {
-                                        socketWrapper.writeBlocking = false;
-                                        socketWrapper.writeLock.notify();
-                                    }
+                                    socketWrapper.writeBlocking = false;
+                                    LockSupport.unpark(socketWrapper.writeBlockingThread);
                                 } else if (!processSocket(socketWrapper, SocketEvent.OPEN_WRITE, true)) {
                                     closeSocket = true;
                                 }
@@ -901,7 +1049,7 @@ public class NioEndpoint extends AbstractJsseEndpoint<NioChannel,SocketChannel>
                             if (log.isDebugEnabled()) {
                                 log.debug("Send file connection is being closed");
                             }
-                            poller.cancelledKey(sk, socketWrapper);
+                            cancelledKey(sk, socketWrapper);
                             break;
                         }
                         case PIPELINED: {
@@ -909,7 +1057,7 @@ public class NioEndpoint extends AbstractJsseEndpoint<NioChannel,SocketChannel>
                                 log.debug("Connection is keep alive, processing pipe-lined data");
                             }
                             if (!processSocket(socketWrapper, SocketEvent.OPEN_READ, true)) {
-                                poller.cancelledKey(sk, socketWrapper);
+                                cancelledKey(sk, socketWrapper);
                             }
                             break;
                         }
@@ -939,13 +1087,13 @@ public class NioEndpoint extends AbstractJsseEndpoint<NioChannel,SocketChannel>
                     log.debug("Unable to complete sendfile request:", e);
                 }
                 if (!calledByProcessor && sc != null) {
-                    poller.cancelledKey(sk, socketWrapper);
+                    cancelledKey(sk, socketWrapper);
                 }
                 return SendfileState.ERROR;
             } catch (Throwable t) {
                 log.error(sm.getString("endpoint.sendfile.error"), t);
                 if (!calledByProcessor && sc != null) {
-                    poller.cancelledKey(sk, socketWrapper);
+                    cancelledKey(sk, socketWrapper);
                 }
                 return SendfileState.ERROR;
             }
@@ -1059,11 +1207,17 @@ public class NioEndpoint extends AbstractJsseEndpoint<NioChannel,SocketChannel>
         private volatile long lastRead = System.currentTimeMillis();
         private volatile long lastWrite = lastRead;
 
-        private final Object readLock;
+        // Blocking reads and writes park the calling thread rather than
+        // waiting on a monitor so virtual threads are not pinned to their
+        // carrier thread while they wait for the Poller
+        private volatile Thread readBlockingThread = null;
         private volatile boolean readBlocking = false;
-        private final Object writeLock;
+        private volatile Thread writeBlockingThread = null;
         private volatile boolean writeBlocking = false;
 
+        // Tracks whether this socket is counted as registered with its poller
+        private volatile boolean registered = false;
+
         public NioSocketWrapper(NioChannel channel, NioEndpoint endpoint) {
             super(channel, endpoint);
             if (endpoint.getUnixDomainSocketPath() != null) {
@@ -1078,8 +1232,6 @@ public class NioEndpoint extends AbstractJsseEndpoint<NioChannel,SocketChannel>
             nioChannels = endpoint.getNioChannels();
             poller = endpoint.getPoller();
             socketBufferHandler = channel.getBufHandler();
-            readLock = (readPending == null) ? new Object() : readPending;
-            writeLock = (writePending == null) ? new Object() : writePending;
         }
 
         public Poller getPoller() { return poller; }
@@ -1203,6 +1355,10 @@ public class NioEndpoint extends AbstractJsseEndpoint<NioChannel,SocketChannel>
                 socketBufferHandler = SocketBufferHandler.EMPTY;
                 nonBlockingWriteBuffer.clear();
                 reset(NioChannel.CLOSED_NIO_CHANNEL);
+                if (registered) {
+                    registered = false;
+                    poller.registrationCount.decrementAndGet();
+                }
             }
             try {
                 SendfileData data = getSendfileData();
@@ -1246,22 +1402,14 @@ public class NioEndpoint extends AbstractJsseEndpoint<NioChannel,SocketChannel>
                     if (n == -1) {
                         throw new EOFException();
                     } else if (n == 0) {
+                        readBlockingThread = Thread.currentThread();
                         readBlocking = true;
                         registerReadInterest();
-                        synchronized (readLock) {
-                            if (readBlocking) {
-                                try {
-                                    if (timeout > 0) {
-                                        startNanos = System.nanoTime();
-                                        readLock.wait(timeout);
-                                    } else {
-                                        readLock.wait();
-                                    }
-                                } catch (InterruptedException e) {
-                                    // Continue
-                                }
-                                readBlocking = false;
+                        if (readBlocking) {
+                            if (timeout > 0) {
+                                startNanos = System.nanoTime();
                             }
+                            awaitRead(timeout, startNanos);
                         }
                     }
                 } while (n == 0); // TLS needs to loop as reading zero application bytes is possible
@@ -1299,22 +1447,14 @@ public class NioEndpoint extends AbstractJsseEndpoint<NioChannel,SocketChannel>
                     if (n == -1) {
                         throw new EOFException();
                     } else if (n == 0) {
+                        writeBlockingThread = Thread.currentThread();
                         writeBlocking = true;
                         registerWriteInterest();
-                        synchronized (writeLock) {
-                            if (writeBlocking) {
-                                try {
-                                    if (timeout > 0) {
-                                        startNanos = System.nanoTime();
-                                        writeLock.wait(timeout);
-                                    } else {
-                                        writeLock.wait();
-                                    }
-                                } catch (InterruptedException e) {
-                                    // Continue
-                                }
-                                writeBlocking = false;
+                        if (writeBlocking) {
+                            if (timeout > 0) {
+                                startNanos = System.nanoTime();
                             }
+                            awaitWrite(timeout, startNanos);
                         }
                     } else if (startNanos > 0) {
                         // If something was written, reset timeout
@@ -1338,6 +1478,48 @@ public class NioEndpoint extends AbstractJsseEndpoint<NioChannel,SocketChannel>
         }
 
 
+        private void awaitRead(long timeout, long startNanos) {
+            while (readBlocking) {
+                if (timeout > 0) {
+                    long remaining = TimeUnit.MILLISECONDS.toNanos(timeout) - (System.nanoTime() - startNanos);
+                    if (remaining <= 0) {
+                        break;
+                    }
+                    LockSupport.parkNanos(this, remaining);
+                } else {
+                    LockSupport.park(this);
+                }
+                if (Thread.interrupted()) {
+                    // Continue
+                    break;
+                }
+            }
+            readBlocking = false;
+            readBlockingThread = null;
+        }
+
+
+        private void awaitWrite(long timeout, long startNanos) {
+            while (writeBlocking) {
+                if (timeout > 0) {
+                    long remaining = TimeUnit.MILLISECONDS.toNanos(timeout) - (System.nanoTime() - startNanos);
+                    if (remaining <= 0) {
+                        break;
+                    }
+                    LockSupport.parkNanos(this, remaining);
+                } else {
+                    LockSupport.park(this);
+                }
+                if (Thread.interrupted()) {
+                    // Continue
+                    break;
+                }
+            }
+            writeBlocking = false;
+            writeBlockingThread = null;
+        }
+
+
         @Override
         public void registerReadInterest() {
             if (log.isDebugEnabled()) {
@@ -1365,6 +1547,12 @@ public class NioEndpoint extends AbstractJsseEndpoint<NioChannel,SocketChannel>
         @Override
         public SendfileState processSendfile(SendfileDataBase sendfileData) {
             setSendfileData((SendfileData) sendfileData);
+            // TLS has to copy the file content through the SSLEngine
+            boolean zeroCopy = !(getSocket() instanceof SecureNioChannel);
+            getEndpoint().countSendfile(zeroCopy);
+            if (log.isDebugEnabled()) {
+                log.debug("Send file [" + sendfileData.fileName + "] zero copy [" + zeroCopy + "]");
+            }
             SelectionKey key = getSocket().getIOChannel().keyFor(getPoller().getSelector());
             // Might as well do the first write on this thread
             return getPoller().processSendfile(key, this, true);
@@ -1611,11 +1799,11 @@ public class NioEndpoint extends AbstractJsseEndpoint<NioChannel,SocketChannel>
              * in turn can result in unintentionally closing currently active
              * connections.
              */
-            Poller poller = NioEndpoint.this.poller;
-            if (poller == null) {
+            if (NioEndpoint.this.pollers == null) {
                 socketWrapper.close();
                 return;
             }
+            Poller poller = ((NioSocketWrapper) socketWrapper).getPoller();
 
             try {
                 int handshake = -1;
@@ -1693,7 +1881,7 @@ public class NioEndpoint extends AbstractJsseEndpoint<NioChannel,SocketChannel>
                 return null;
             }
 
-            return socketChannel.keyFor(NioEndpoint.this.poller.getSelector());
+            return socketChannel.keyFor(((NioSocketWrapper) socketWrapper).getPoller().getSelector());
         }
     }
 
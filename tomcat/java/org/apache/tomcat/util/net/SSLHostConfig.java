@@ -121,6 +121,7 @@ public class SSLHostConfig implements Serializable {
     private boolean disableCompression = true;
     private boolean disableSessionTickets = false;
     private boolean insecureRenegotiation = false;
+    private boolean kernelTls = false;
     private OpenSSLConf openSslConf = null;
 
     public SSLHostConfig() {
@@ -743,6 +744,17 @@ public class SSLHostConfig implements Serializable {
     }
 
 
+    public void setKernelTls(boolean kernelTls) {
+        setProperty("kernelTls", Type.OPENSSL);
+        this.kernelTls = kernelTls;
+    }
+
+
+    public boolean getKernelTls() {
+        return kernelTls;
+    }
+
+
     // --------------------------------------------------------- Support methods
 
     public static String adjustRelativePath(String path) throws FileNotFoundException {
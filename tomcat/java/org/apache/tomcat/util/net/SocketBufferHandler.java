@@ -23,6 +23,8 @@ import org.apache.tomcat.util.buf.ByteBufferUtils;
 
 public class SocketBufferHandler {
 
+    private static final ByteBuffer EMPTY_BUFFER = ByteBuffer.allocate(0);
+
     static SocketBufferHandler EMPTY = new SocketBufferHandler(0, 0, false) {
         @Override
         public void expand(int newSize) {
@@ -48,10 +50,33 @@ public class SocketBufferHandler {
 
     private final boolean direct;
 
+    private final DirectBufferPool bufferPool;
+
     public SocketBufferHandler(int readBufferSize, int writeBufferSize,
             boolean direct) {
+        this(readBufferSize, writeBufferSize, direct, null);
+    }
+
+    /**
+     * Create the read and write buffers for a socket.
+     *
+     * @param readBufferSize  The size of the read buffer
+     * @param writeBufferSize The size of the write buffer
+     * @param direct          Should direct buffers be used
+     * @param bufferPool      The pool from which direct buffers should be
+     *                        obtained and to which they are returned when
+     *                        this handler is freed. If <code>null</code> or
+     *                        if direct buffers are not used the buffers are
+     *                        allocated directly.
+     */
+    public SocketBufferHandler(int readBufferSize, int writeBufferSize,
+            boolean direct, DirectBufferPool bufferPool) {
         this.direct = direct;
-        if (direct) {
+        this.bufferPool = direct ? bufferPool : null;
+        if (this.bufferPool != null) {
+            readBuffer = this.bufferPool.allocate(readBufferSize);
+            writeBuffer = this.bufferPool.allocate(writeBufferSize);
+        } else if (direct) {
             readBuffer = ByteBuffer.allocateDirect(readBufferSize);
             writeBuffer = ByteBuffer.allocateDirect(writeBufferSize);
         } else {
@@ -219,13 +244,41 @@ public class SocketBufferHandler {
 
     public void expand(int newSize) {
         configureReadBufferForWrite();
-        readBuffer = ByteBufferUtils.expand(readBuffer, newSize);
+        readBuffer = expand(readBuffer, newSize);
         configureWriteBufferForWrite();
-        writeBuffer = ByteBufferUtils.expand(writeBuffer, newSize);
+        writeBuffer = expand(writeBuffer, newSize);
+    }
+
+    private ByteBuffer expand(ByteBuffer in, int newSize) {
+        if (bufferPool == null) {
+            return ByteBufferUtils.expand(in, newSize);
+        }
+        if (in.capacity() >= newSize) {
+            return in;
+        }
+        ByteBuffer out = bufferPool.allocate(newSize);
+        // Copy data
+        in.flip();
+        out.put(in);
+        bufferPool.release(in);
+        return out;
     }
 
     public void free() {
-        if (direct) {
+        if (bufferPool != null) {
+            // Ensure the buffers can't be used once they have been returned
+            // to the pool and handed to another connection
+            ByteBuffer oldReadBuffer = readBuffer;
+            ByteBuffer oldWriteBuffer = writeBuffer;
+            readBuffer = EMPTY_BUFFER;
+            writeBuffer = EMPTY_BUFFER;
+            if (oldReadBuffer != EMPTY_BUFFER) {
+                bufferPool.release(oldReadBuffer);
+            }
+            if (oldWriteBuffer != EMPTY_BUFFER) {
+                bufferPool.release(oldWriteBuffer);
+            }
+        } else if (direct) {
             ByteBufferUtils.cleanDirectBuffer(readBuffer);
             ByteBufferUtils.cleanDirectBuffer(writeBuffer);
         }
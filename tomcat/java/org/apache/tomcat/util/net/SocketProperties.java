@@ -106,6 +106,14 @@ public class SocketProperties {
      */
     protected int bufferPoolSize = -2;
 
+    /**
+     * Maximum number of bytes held in idle direct buffers by the endpoint
+     * wide direct buffer pool. Only used if directBuffer is enabled.
+     * -1 means unlimited, 0 means no pool
+     * Default value is 0
+     */
+    protected long directBufferPoolSize = 0;
+
     /**
      * TCP_NO_DELAY option. JVM default used if not set.
      */
@@ -313,6 +321,10 @@ public class SocketProperties {
         return bufferPoolSize;
     }
 
+    public long getDirectBufferPoolSize() {
+        return directBufferPoolSize;
+    }
+
     public int getEventCache() {
         return eventCache;
     }
@@ -402,6 +414,10 @@ public class SocketProperties {
         this.bufferPoolSize = bufferPoolSize;
     }
 
+    public void setDirectBufferPoolSize(long directBufferPoolSize) {
+        this.directBufferPoolSize = directBufferPoolSize;
+    }
+
     public void setEventCache(int eventCache) {
         this.eventCache = eventCache;
     }
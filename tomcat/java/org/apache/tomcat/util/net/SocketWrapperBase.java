@@ -29,6 +29,8 @@ import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
 
 import org.apache.juli.logging.Log;
 import org.apache.juli.logging.LogFactory;
@@ -46,6 +48,14 @@ public abstract class SocketWrapperBase<E> {
 
     protected final AtomicBoolean closed = new AtomicBoolean(false);
 
+    /*
+     * Used to ensure that processing of the socket does not occur in parallel.
+     * A Lock is used rather than synchronizing on the wrapper as a virtual
+     * thread that blocks on I/O while holding a monitor is pinned to its
+     * carrier thread.
+     */
+    private final Lock lock = new ReentrantLock();
+
     // Volatile because I/O and setting the timeout values occurs on a different
     // thread to the thread checking the timeout.
     private volatile long readTimeout = -1;
@@ -123,6 +133,16 @@ public abstract class SocketWrapperBase<E> {
         return socket;
     }
 
+    /**
+     * Obtain the lock used to ensure that only one thread processes the socket
+     * at any one time.
+     *
+     * @return The lock for this socket wrapper
+     */
+    public Lock getLock() {
+        return lock;
+    }
+
     protected void reset(E closedSocket) {
         socket = closedSocket;
     }
@@ -789,6 +809,18 @@ public abstract class SocketWrapperBase<E> {
     public abstract SSLSupport getSslSupport(String clientCertProvider);
 
 
+    /**
+     * Record a sendfile transfer performed on this connection by a component
+     * other than the endpoint, such as HTTP/2, in the endpoint statistics.
+     *
+     * @param zeroCopy {@code true} if the file content is written without
+     *                 being copied through user space
+     */
+    public void countSendfile(boolean zeroCopy) {
+        getEndpoint().countSendfile(zeroCopy);
+    }
+
+
     // ------------------------------------------------------- NIO 2 style APIs
 
 
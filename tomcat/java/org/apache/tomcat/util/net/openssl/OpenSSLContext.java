@@ -16,7 +16,11 @@
  */
 package org.apache.tomcat.util.net.openssl;
 
+import java.io.IOException;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.security.PrivateKey;
 import java.security.SecureRandom;
 import java.security.cert.CertificateException;
@@ -240,6 +244,15 @@ public class OpenSSLContext implements org.apache.tomcat.util.net.SSLContext {
                 SSLContext.clearOptions(ctx, SSL.SSL_OP_NO_TICKET);
             }
 
+            // Use kernel TLS if requested and available
+            if (sslHostConfig.getKernelTls()) {
+                if (isKernelTlsAvailable()) {
+                    SSLContext.setOptions(ctx, SSL.SSL_OP_ENABLE_KTLS);
+                } else {
+                    log.warn(sm.getString("openssl.kernelTlsUnavailable", sslHostConfig.getHostName()));
+                }
+            }
+
             // List the ciphers that the client is permitted to negotiate
             SSLContext.setCipherSuite(ctx, sslHostConfig.getCiphers());
 
@@ -414,6 +427,34 @@ public class OpenSSLContext implements org.apache.tomcat.util.net.SSLContext {
     }
 
 
+    /*
+     * Kernel TLS requires OpenSSL 3.0 or later and a Linux kernel with the tls
+     * upper layer protocol available. OpenSSL falls back to user space TLS per
+     * connection if the kernel does not support the negotiated cipher.
+     */
+    private static boolean isKernelTlsAvailable() {
+        if (SSL.version() < 0x30000000) {
+            return false;
+        }
+        Path ulps = Paths.get("/proc/sys/net/ipv4/tcp_available_ulp");
+        if (!Files.isReadable(ulps)) {
+            return false;
+        }
+        try {
+            for (String line : Files.readAllLines(ulps, StandardCharsets.US_ASCII)) {
+                for (String ulp : line.trim().split("\\s+")) {
+                    if ("tls".equals(ulp)) {
+                        return true;
+                    }
+                }
+            }
+        } catch (IOException e) {
+            log.debug(sm.getString("openssl.kernelTlsCheckFail"), e);
+        }
+        return false;
+    }
+
+
     private static int getCertificateIndex(SSLHostConfigCertificate certificate) {
         int result;
         // If the type is undefined there will only be one certificate (enforced
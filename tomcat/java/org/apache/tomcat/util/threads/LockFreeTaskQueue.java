@@ -0,0 +1,414 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.tomcat.util.threads;
+
+import java.util.AbstractQueue;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+import org.apache.tomcat.util.collections.LockFreeRingBuffer;
+import org.apache.tomcat.util.res.StringManager;
+
+/**
+ * A lock-free alternative to {@link TaskQueue} with the same behaviour when
+ * used with {@link ThreadPoolExecutor}, i.e. new threads are created, up to
+ * the maximum, in preference to queueing tasks.
+ * <p>
+ * Tasks are held in a {@link LockFreeRingBuffer} of pre-allocated slots that
+ * multiple producers and consumers access using only atomic operations. If the
+ * ring is full and the capacity of the queue has not been reached, tasks
+ * overflow into a linked queue until the backlog has cleared. Threads waiting
+ * for a task spin briefly before parking.
+ * <p>
+ * The capacity limit is enforced on a best effort basis and may be exceeded
+ * briefly when multiple threads add tasks concurrently.
+ */
+public class LockFreeTaskQueue extends AbstractQueue<Runnable> implements RetryableQueue<Runnable> {
+
+    protected static final StringManager sm = StringManager
+            .getManager("org.apache.tomcat.util.threads.res");
+
+    private static final int MAX_RING_SIZE = 1 << 14;
+    // Spinning is pointless on a single processor
+    private static final int SPIN_COUNT = Runtime.getRuntime().availableProcessors() > 1 ? 64 : 0;
+    private static final int SPIN_YIELD_COUNT = SPIN_COUNT / 4;
+    private static final long SPACE_WAIT_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private final int capacity;
+    private final LockFreeRingBuffer<Runnable> ring;
+
+    private final ConcurrentLinkedQueue<Runnable> overflow = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger overflowSize = new AtomicInteger(0);
+
+    private final ConcurrentLinkedQueue<Waiter> waiters = new ConcurrentLinkedQueue<>();
+
+    private volatile ThreadPoolExecutor parent = null;
+
+
+    public LockFreeTaskQueue() {
+        this(Integer.MAX_VALUE);
+    }
+
+
+    public LockFreeTaskQueue(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException();
+        }
+        this.capacity = capacity;
+        ring = new LockFreeRingBuffer<>(Math.min(capacity, MAX_RING_SIZE));
+    }
+
+
+    public void setParent(ThreadPoolExecutor tp) {
+        parent = tp;
+    }
+
+
+    @Override
+    public boolean force(Runnable o) {
+        if (parent == null || parent.isShutdown()) {
+            throw new RejectedExecutionException(sm.getString("taskQueue.notRunning"));
+        }
+        return enqueue(o);
+    }
+
+
+    @Override
+    public boolean force(Runnable o, long timeout, TimeUnit unit) throws InterruptedException {
+        if (parent == null || parent.isShutdown()) {
+            throw new RejectedExecutionException(sm.getString("taskQueue.notRunning"));
+        }
+        return offer(o, timeout, unit);
+    }
+
+
+    @Override
+    public boolean offer(Runnable o) {
+        ThreadPoolExecutor parent = this.parent;
+        // The same logic as TaskQueue
+        if (parent == null) {
+            return enqueue(o);
+        }
+        int poolSize = parent.getPoolSize();
+        int maximumPoolSize = parent.getMaximumPoolSize();
+        if (poolSize == maximumPoolSize) {
+            return enqueue(o);
+        }
+        if (parent.getSubmittedCount() <= poolSize) {
+            return enqueue(o);
+        }
+        if (poolSize < maximumPoolSize) {
+            return false;
+        }
+        return enqueue(o);
+    }
+
+
+    @Override
+    public boolean offer(Runnable o, long timeout, TimeUnit unit) throws InterruptedException {
+        long nanos = unit.toNanos(timeout);
+        final long deadline = System.nanoTime() + nanos;
+        while (!enqueue(o)) {
+            // Only a bounded queue can be full. It is expected that waiting
+            // for space will be rare so use a simple polling approach.
+            if (nanos <= 0) {
+                return false;
+            }
+            LockSupport.parkNanos(this, Math.min(nanos, SPACE_WAIT_NANOS));
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+            nanos = deadline - System.nanoTime();
+        }
+        return true;
+    }
+
+
+    @Override
+    public void put(Runnable o) throws InterruptedException {
+        while (!enqueue(o)) {
+            LockSupport.parkNanos(this, SPACE_WAIT_NANOS);
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+        }
+    }
+
+
+    @Override
+    public Runnable poll() {
+        Runnable result = ring.poll();
+        if (result == null && overflowSize.get() > 0) {
+            result = overflow.poll();
+            if (result != null) {
+                overflowSize.decrementAndGet();
+            }
+        }
+        return result;
+    }
+
+
+    @Override
+    public Runnable poll(long timeout, TimeUnit unit) throws InterruptedException {
+        Runnable runnable = await(true, unit.toNanos(timeout));
+        if (runnable == null && parent != null) {
+            // the poll timed out, it gives an opportunity to stop the current
+            // thread if needed to avoid memory leaks.
+            parent.stopCurrentThreadIfNeeded();
+        }
+        return runnable;
+    }
+
+
+    @Override
+    public Runnable take() throws InterruptedException {
+        ThreadPoolExecutor parent = this.parent;
+        if (parent != null && parent.currentThreadShouldBeStopped()) {
+            // As per TaskQueue, this may return null
+            return poll(parent.getKeepAliveTime(TimeUnit.MILLISECONDS), TimeUnit.MILLISECONDS);
+        }
+        return await(false, 0);
+    }
+
+
+    @Override
+    public Runnable peek() {
+        Runnable result = ring.peek();
+        if (result != null) {
+            return result;
+        }
+        return overflow.peek();
+    }
+
+
+    @Override
+    public int size() {
+        long result = (long) ring.size() + overflowSize.get();
+        return (int) Math.min(result, Integer.MAX_VALUE);
+    }
+
+
+    @Override
+    public int remainingCapacity() {
+        if (capacity == Integer.MAX_VALUE) {
+            return Integer.MAX_VALUE;
+        }
+        return Math.max(0, capacity - size());
+    }
+
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Removal of a task from the ring leaves an empty slot that is skipped by
+     * consumers so the size of the queue will not be reduced until that slot
+     * is reached.
+     */
+    @Override
+    public boolean remove(Object o) {
+        if (ring.remove(o)) {
+            return true;
+        }
+        if (overflow.remove(o)) {
+            overflowSize.decrementAndGet();
+            return true;
+        }
+        return false;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The iterator operates on a snapshot of the queue taken when this method
+     * is called.
+     */
+    @Override
+    public Iterator<Runnable> iterator() {
+        List<Runnable> snapshot = new ArrayList<>();
+        ring.copyTo(snapshot);
+        snapshot.addAll(overflow);
+        return new SnapshotIterator(snapshot.iterator());
+    }
+
+
+    @Override
+    public int drainTo(Collection<? super Runnable> c) {
+        return drainTo(c, Integer.MAX_VALUE);
+    }
+
+
+    @Override
+    public int drainTo(Collection<? super Runnable> c, int maxElements) {
+        if (c == this) {
+            throw new IllegalArgumentException();
+        }
+        int count = 0;
+        Runnable r;
+        while (count < maxElements && (r = poll()) != null) {
+            c.add(r);
+            count++;
+        }
+        return count;
+    }
+
+
+    private boolean enqueue(Runnable o) {
+        if (o == null) {
+            throw new NullPointerException();
+        }
+        if (capacity != Integer.MAX_VALUE && size() >= capacity) {
+            return false;
+        }
+        // Once tasks have overflowed, keep using the overflow queue until it
+        // has been drained to maintain (approximate) FIFO ordering
+        if (overflowSize.get() > 0 || !ring.offer(o)) {
+            overflowSize.incrementAndGet();
+            overflow.offer(o);
+        }
+        if (!waiters.isEmpty()) {
+            signalWaiter();
+        }
+        return true;
+    }
+
+
+    private Runnable await(boolean timed, long nanos) throws InterruptedException {
+        if (timed && nanos <= 0) {
+            return poll();
+        }
+        final long deadline = timed ? System.nanoTime() + nanos : 0;
+        while (true) {
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+            for (int i = 0; i < SPIN_COUNT; i++) {
+                Runnable result = poll();
+                if (result != null) {
+                    return result;
+                }
+                if (i >= SPIN_COUNT - SPIN_YIELD_COUNT) {
+                    Thread.yield();
+                }
+            }
+
+            Waiter waiter = new Waiter(Thread.currentThread());
+            waiters.offer(waiter);
+            // Check again now the waiter is visible to producers else a task
+            // added after the last poll and before the waiter was added would
+            // not trigger a signal
+            Runnable result = poll();
+            if (result == null) {
+                if (timed) {
+                    long remaining = deadline - System.nanoTime();
+                    if (remaining > 0) {
+                        LockSupport.parkNanos(this, remaining);
+                    }
+                } else {
+                    LockSupport.park(this);
+                }
+                result = poll();
+            }
+
+            boolean signalled = !waiter.claim();
+            boolean interrupted = result == null && Thread.currentThread().isInterrupted();
+            boolean timedOut = result == null && timed && deadline - System.nanoTime() <= 0;
+            if (result != null || interrupted || timedOut) {
+                if (signalled && !isEmpty()) {
+                    // This thread consumed a signal it is not going to act
+                    // on. Pass it on so it isn't lost.
+                    signalWaiter();
+                }
+                if (result == null && !signalled) {
+                    waiters.remove(waiter);
+                }
+                if (interrupted) {
+                    Thread.interrupted();
+                    throw new InterruptedException();
+                }
+                return result;
+            }
+        }
+    }
+
+
+    private void signalWaiter() {
+        Waiter waiter;
+        while ((waiter = waiters.poll()) != null) {
+            if (waiter.claim()) {
+                LockSupport.unpark(waiter.thread);
+                return;
+            }
+        }
+    }
+
+
+    private static class Waiter {
+
+        private final Thread thread;
+        // Set by a producer signalling the waiter or by the waiter itself
+        // when it stops waiting. Only the first of these takes effect.
+        private final AtomicBoolean claimed = new AtomicBoolean(false);
+
+        Waiter(Thread thread) {
+            this.thread = thread;
+        }
+
+        boolean claim() {
+            return claimed.compareAndSet(false, true);
+        }
+    }
+
+
+    private class SnapshotIterator implements Iterator<Runnable> {
+
+        private final Iterator<Runnable> iterator;
+        private Runnable last;
+
+        SnapshotIterator(Iterator<Runnable> iterator) {
+            this.iterator = iterator;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return iterator.hasNext();
+        }
+
+        @Override
+        public Runnable next() {
+            last = iterator.next();
+            return last;
+        }
+
+        @Override
+        public void remove() {
+            if (last == null) {
+                throw new IllegalStateException();
+            }
+            LockFreeTaskQueue.this.remove(last);
+            last = null;
+        }
+    }
+}
@@ -0,0 +1,58 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.tomcat.util.threads;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A queue for use with {@link ThreadPoolExecutor} that allows a task that was
+ * rejected by the executor, typically because the queue declined the task so
+ * that a new thread would be created, to be forced onto the queue.
+ *
+ * @param <T> The type of element held in the queue
+ */
+public interface RetryableQueue<T> extends BlockingQueue<T> {
+
+    /**
+     * Used to add a task to the queue if the task has been rejected by the
+     * Executor.
+     *
+     * @param o The task to add to the queue
+     *
+     * @return {@code true} if the task was added to the queue, otherwise
+     *         {@code false}
+     */
+    boolean force(T o);
+
+
+    /**
+     * Used to add a task to the queue if the task has been rejected by the
+     * Executor, waiting if necessary for space to become available.
+     *
+     * @param o       The task to add to the queue
+     * @param timeout The maximum time to wait for space to become available
+     * @param unit    The units in which the timeout is expressed
+     *
+     * @return {@code true} if the task was added to the queue, otherwise
+     *         {@code false}
+     *
+     * @throws InterruptedException If the call was interrupted while waiting
+     *                              for space to become available
+     */
+    boolean force(T o, long timeout, TimeUnit unit) throws InterruptedException;
+}
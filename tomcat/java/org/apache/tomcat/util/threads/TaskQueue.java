@@ -30,7 +30,7 @@ import org.apache.tomcat.util.res.StringManager;
  * there are idle threads and you wont be able to force items onto the queue
  * itself.
  */
-public class TaskQueue extends LinkedBlockingQueue<Runnable> {
+public class TaskQueue extends LinkedBlockingQueue<Runnable> implements RetryableQueue<Runnable> {
 
     private static final long serialVersionUID = 1L;
     protected static final StringManager sm = StringManager
@@ -59,11 +59,13 @@ public class TaskQueue extends LinkedBlockingQueue<Runnable> {
         parent = tp;
     }
 
+    @Override
     public boolean force(Runnable o) {
         if (parent == null || parent.isShutdown()) throw new RejectedExecutionException(sm.getString("taskQueue.notRunning"));
         return super.offer(o); //forces the item onto the queue, to be used if the task is rejected
     }
 
+    @Override
     public boolean force(Runnable o, long timeout, TimeUnit unit) throws InterruptedException {
         if (parent == null || parent.isShutdown()) throw new RejectedExecutionException(sm.getString("taskQueue.notRunning"));
         return super.offer(o,timeout,unit); //forces the item onto the queue, to be used if the task is rejected
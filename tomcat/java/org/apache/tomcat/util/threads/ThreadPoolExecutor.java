@@ -172,8 +172,8 @@ public class ThreadPoolExecutor extends java.util.concurrent.ThreadPoolExecutor
         try {
             super.execute(command);
         } catch (RejectedExecutionException rx) {
-            if (super.getQueue() instanceof TaskQueue) {
-                final TaskQueue queue = (TaskQueue)super.getQueue();
+            if (super.getQueue() instanceof RetryableQueue) {
+                final RetryableQueue<Runnable> queue = (RetryableQueue<Runnable>) super.getQueue();
                 try {
                     if (!queue.force(command, timeout, unit)) {
                         submittedCount.decrementAndGet();
@@ -0,0 +1,187 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.tomcat.util.threads;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.tomcat.util.compat.JreCompat;
+import org.apache.tomcat.util.res.StringManager;
+
+/**
+ * An executor that starts a new virtual thread for every task. There is no
+ * pool and no queue. Tasks that block in I/O, or waiting for a lock, unmount
+ * from the carrier thread rather than holding on to a platform thread.
+ * <p>
+ * Requires Java 21 or later. Use {@link JreCompat#isJre21Available()} to
+ * check before creating an instance.
+ */
+public class VirtualThreadExecutor extends AbstractExecutorService {
+
+    private static final StringManager sm = StringManager
+            .getManager("org.apache.tomcat.util.threads.res");
+
+    private final ThreadFactory threadFactory;
+    private final AtomicInteger activeCount = new AtomicInteger();
+    private final AtomicInteger largestActiveCount = new AtomicInteger();
+    private final AtomicLong completedTaskCount = new AtomicLong();
+    private final Object terminationLock = new Object();
+
+    private volatile boolean shutdown = false;
+
+
+    /**
+     * Create a new executor.
+     *
+     * @param namePrefix The prefix to use for the names of the virtual threads
+     *
+     * @throws UnsupportedOperationException If the JRE does not support
+     *         virtual threads
+     */
+    public VirtualThreadExecutor(String namePrefix) {
+        threadFactory = JreCompat.getInstance().createVirtualThreadFactory(namePrefix);
+    }
+
+
+    @Override
+    public void execute(final Runnable command) {
+        if (command == null) {
+            throw new NullPointerException();
+        }
+        // Increment before checking shutdown so a concurrent shutdown always
+        // sees this task
+        int active = activeCount.incrementAndGet();
+        if (shutdown) {
+            taskDone();
+            throw new RejectedExecutionException(sm.getString("virtualThreadExecutor.shutdown"));
+        }
+        updateLargestActiveCount(active);
+        Thread t = threadFactory.newThread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    command.run();
+                } finally {
+                    completedTaskCount.incrementAndGet();
+                    taskDone();
+                }
+            }
+        });
+        t.start();
+    }
+
+
+    private void updateLargestActiveCount(int active) {
+        int largest = largestActiveCount.get();
+        while (active > largest && !largestActiveCount.compareAndSet(largest, active)) {
+            largest = largestActiveCount.get();
+        }
+    }
+
+
+    private void taskDone() {
+        if (activeCount.decrementAndGet() == 0 && shutdown) {
+            synchronized (terminationLock) {
+                terminationLock.notifyAll();
+            }
+        }
+    }
+
+
+    @Override
+    public void shutdown() {
+        shutdown = true;
+        if (activeCount.get() == 0) {
+            synchronized (terminationLock) {
+                terminationLock.notifyAll();
+            }
+        }
+    }
+
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * As there is no queue, the returned list is always empty. Running tasks
+     * are not interrupted.
+     */
+    @Override
+    public List<Runnable> shutdownNow() {
+        shutdown();
+        return Collections.emptyList();
+    }
+
+
+    @Override
+    public boolean isShutdown() {
+        return shutdown;
+    }
+
+
+    @Override
+    public boolean isTerminated() {
+        return shutdown && activeCount.get() == 0;
+    }
+
+
+    @Override
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        long nanos = unit.toNanos(timeout);
+        long deadline = System.nanoTime() + nanos;
+        synchronized (terminationLock) {
+            while (!isTerminated()) {
+                if (nanos <= 0) {
+                    return false;
+                }
+                TimeUnit.NANOSECONDS.timedWait(terminationLock, nanos);
+                nanos = deadline - System.nanoTime();
+            }
+        }
+        return true;
+    }
+
+
+    /**
+     * @return the number of tasks that are currently executing
+     */
+    public int getActiveCount() {
+        return activeCount.get();
+    }
+
+
+    /**
+     * @return the largest number of tasks that have been executing at the same
+     *         time
+     */
+    public int getLargestActiveCount() {
+        return largestActiveCount.get();
+    }
+
+
+    /**
+     * @return the number of tasks that have completed execution
+     */
+    public long getCompletedTaskCount() {
+        return completedTaskCount.get();
+    }
+}
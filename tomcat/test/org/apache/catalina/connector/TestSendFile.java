@@ -27,10 +27,14 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Random;
+import java.util.Set;
 import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
 
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
 import jakarta.servlet.ServletException;
 import jakarta.servlet.http.HttpServlet;
 import jakarta.servlet.http.HttpServletRequest;
@@ -44,6 +48,7 @@ import org.apache.catalina.Globals;
 import org.apache.catalina.startup.Tomcat;
 import org.apache.catalina.startup.TomcatBaseTest;
 import org.apache.tomcat.util.buf.ByteChunk;
+import org.apache.tomcat.util.modeler.Registry;
 
 public class TestSendFile extends TomcatBaseTest {
 
@@ -86,6 +91,15 @@ public class TestSendFile extends TomcatBaseTest {
 
                 bc.recycle();
             }
+
+            // Each transfer is counted against the path it used
+            MBeanServer mbeanServer = Registry.getRegistry(null, null).getMBeanServer();
+            Set<ObjectName> onames = mbeanServer.queryNames(new ObjectName("*:type=ThreadPool,*"), null);
+            Assert.assertEquals(1, onames.size());
+            ObjectName oname = onames.iterator().next();
+            long zeroCopy = ((Long) mbeanServer.getAttribute(oname, "sendfileZeroCopyCount")).longValue();
+            long copy = ((Long) mbeanServer.getAttribute(oname, "sendfileCopyCount")).longValue();
+            Assert.assertEquals(ITERATIONS, zeroCopy + copy);
         } finally {
             for (File f : files) {
                 Assert.assertTrue("Failed to clean up [" + f + "]", f.delete());
@@ -0,0 +1,195 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.catalina.core;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import jakarta.servlet.http.HttpServlet;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Test;
+
+import org.apache.catalina.Context;
+import org.apache.catalina.startup.Tomcat;
+import org.apache.catalina.startup.TomcatBaseTest;
+import org.apache.tomcat.util.buf.ByteChunk;
+import org.apache.tomcat.util.compat.JreCompat;
+
+public class TestStandardVirtualThreadExecutor extends TomcatBaseTest {
+
+    /*
+     * Run all virtual threads on a single carrier thread so that a request
+     * that is pinned to its carrier prevents any other request from being
+     * processed. This has to be configured before the first virtual thread
+     * is created.
+     */
+    static {
+        System.setProperty("jdk.virtualThreadScheduler.parallelism", "1");
+        System.setProperty("jdk.virtualThreadScheduler.maxPoolSize", "1");
+    }
+
+    @Test
+    public void testExecute() throws Exception {
+        StandardVirtualThreadExecutor executor = new StandardVirtualThreadExecutor();
+        executor.setName("test");
+        executor.init();
+        executor.start();
+        try {
+            Assert.assertEquals(Boolean.valueOf(JreCompat.isJre21Available()),
+                    Boolean.valueOf(executor.isVirtual()));
+
+            final int count = 100;
+            final CountDownLatch release = new CountDownLatch(1);
+            final CountDownLatch done = new CountDownLatch(count);
+            Runnable task = new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        release.await();
+                    } catch (InterruptedException e) {
+                        // Ignore
+                    }
+                    done.countDown();
+                }
+            };
+            for (int i = 0; i < count; i++) {
+                executor.execute(task);
+            }
+            Assert.assertTrue(executor.getActiveCount() > 0);
+
+            release.countDown();
+            Assert.assertTrue(done.await(60, TimeUnit.SECONDS));
+        } finally {
+            executor.stop();
+            executor.destroy();
+        }
+    }
+
+
+    @Test
+    public void testConnector() throws Exception {
+        Tomcat tomcat = getTomcatInstance();
+
+        StandardVirtualThreadExecutor executor = new StandardVirtualThreadExecutor();
+        executor.setName("virtual");
+        tomcat.getService().addExecutor(executor);
+        tomcat.getConnector().getProtocolHandler().setExecutor(executor);
+
+        Tomcat.addServlet(tomcat.addContext("", null), "hello", new HelloWorldServlet())
+                .addMapping("/");
+
+        tomcat.start();
+
+        ByteChunk res = getUrl("http://localhost:" + getPort() + "/");
+        Assert.assertEquals(HelloWorldServlet.RESPONSE_TEXT, res.toString());
+    }
+
+
+    @Test
+    public void testBlockingReadReleasesCarrier() throws Exception {
+        Assume.assumeTrue(JreCompat.isJre21Available());
+
+        Tomcat tomcat = getTomcatInstance();
+
+        StandardVirtualThreadExecutor executor = new StandardVirtualThreadExecutor();
+        executor.setName("virtual");
+        tomcat.getService().addExecutor(executor);
+        tomcat.getConnector().getProtocolHandler().setExecutor(executor);
+
+        Context ctx = tomcat.addContext("", null);
+        BlockingReadServlet servlet = new BlockingReadServlet();
+        Tomcat.addServlet(ctx, "read", servlet).addMapping("/read");
+        Tomcat.addServlet(ctx, "hello", new HelloWorldServlet()).addMapping("/hello");
+
+        tomcat.start();
+
+        try (Socket socket = new Socket("localhost", getPort())) {
+            socket.setSoTimeout(30000);
+            OutputStream os = socket.getOutputStream();
+            // Send one of the two bytes of the body so the servlet blocks
+            os.write(("POST /read HTTP/1.1\r\n" +
+                    "Host: localhost\r\n" +
+                    "Content-Length: 2\r\n" +
+                    "Connection: close\r\n" +
+                    "\r\n" +
+                    "A").getBytes(StandardCharsets.ISO_8859_1));
+            os.flush();
+
+            Assert.assertTrue(servlet.firstByteRead.await(30, TimeUnit.SECONDS));
+            Thread reader = servlet.reader;
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(30);
+            while (reader.getState() != Thread.State.WAITING &&
+                    reader.getState() != Thread.State.TIMED_WAITING) {
+                Assert.assertTrue(System.nanoTime() - deadline < 0);
+                Thread.sleep(10);
+            }
+
+            // Only possible if the blocked request released the carrier
+            ByteChunk res = new ByteChunk();
+            int rc = getUrl("http://localhost:" + getPort() + "/hello", res, 10000, null, null);
+            Assert.assertEquals(HttpServletResponse.SC_OK, rc);
+            Assert.assertEquals(HelloWorldServlet.RESPONSE_TEXT, res.toString());
+
+            os.write('B');
+            os.flush();
+
+            InputStream is = socket.getInputStream();
+            ByteChunk response = new ByteChunk();
+            byte[] buf = new byte[1024];
+            int read;
+            while ((read = is.read(buf)) > 0) {
+                response.append(buf, 0, read);
+            }
+            String result = response.toString();
+            Assert.assertTrue(result, result.startsWith("HTTP/1.1 200"));
+            Assert.assertTrue(result, result.endsWith("AB"));
+        }
+    }
+
+
+    private static class BlockingReadServlet extends HttpServlet {
+
+        private static final long serialVersionUID = 1L;
+
+        private final CountDownLatch firstByteRead = new CountDownLatch(1);
+        private volatile Thread reader;
+
+        @Override
+        protected void doPost(HttpServletRequest req, HttpServletResponse resp)
+                throws IOException {
+            InputStream is = req.getInputStream();
+            int first = is.read();
+            reader = Thread.currentThread();
+            firstByteRead.countDown();
+            // Blocks until the client sends the rest of the body
+            int second = is.read();
+            resp.setContentType("text/plain");
+            resp.setCharacterEncoding("ISO-8859-1");
+            resp.getWriter().print((char) first);
+            resp.getWriter().print((char) second);
+        }
+    }
+}
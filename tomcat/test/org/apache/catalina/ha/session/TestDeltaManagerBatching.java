@@ -0,0 +1,179 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.catalina.ha.session;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import org.apache.catalina.ha.ClusterMessage;
+import org.apache.catalina.ha.tcp.SimpleTcpCluster;
+import org.apache.catalina.tribes.group.GroupChannel;
+import org.apache.tomcat.unittest.TesterContext;
+import org.apache.tomcat.unittest.TesterServletContext;
+
+public class TestDeltaManagerBatching {
+
+    private ScheduledThreadPoolExecutor executor;
+    private TesterCluster cluster;
+    private DeltaManager manager;
+
+
+    @Before
+    public void setUp() {
+        executor = new ScheduledThreadPoolExecutor(1);
+        GroupChannel channel = new GroupChannel();
+        channel.setUtilityExecutor(executor);
+        cluster = new TesterCluster();
+        cluster.setChannel(channel);
+
+        manager = createManager();
+        manager.setCluster(cluster);
+        manager.setReplicationBatchWindow(60000);
+    }
+
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+
+    @Test
+    public void testCoalesce() throws Exception {
+        DeltaSession a = createSession(manager, "A");
+        DeltaSession b = createSession(manager, "B");
+
+        a.setAttribute("a1", "1");
+        Assert.assertNull(manager.requestCompleted("A"));
+        a.setAttribute("a2", "2");
+        a.removeAttribute("a1");
+        Assert.assertNull(manager.requestCompleted("A"));
+        b.setAttribute("b1", "1");
+        Assert.assertNull(manager.requestCompleted("B"));
+        Assert.assertTrue(a.isPrimarySession());
+        Assert.assertEquals(0, cluster.messages.size());
+
+        manager.sendPendingDeltas();
+
+        Assert.assertEquals(1, cluster.messages.size());
+        SessionMessage msg = (SessionMessage) cluster.messages.get(0);
+        Assert.assertEquals(SessionMessage.EVT_SESSION_DELTA_BATCH, msg.getEventType());
+        Assert.assertEquals(1, manager.getCounterSend_EVT_SESSION_DELTA_BATCH());
+        Assert.assertEquals(2, manager.getCounterSend_EVT_SESSION_DELTA());
+        Assert.assertEquals(2, manager.getMaxDeltaBatchSize());
+        Assert.assertEquals(2.0, manager.getAverageDeltaBatchSize(), 0.001);
+        Assert.assertFalse(a.isDirty());
+
+        // Nothing left to send
+        manager.sendPendingDeltas();
+        Assert.assertEquals(1, cluster.messages.size());
+
+        DeltaManager receiver = createManager();
+        DeltaSession ra = createSession(receiver, "A");
+        DeltaSession rb = createSession(receiver, "B");
+        ra.setAttribute("a1", "0");
+        receiver.handleSESSION_DELTA_BATCH(msg, null);
+
+        Assert.assertNull(ra.getAttribute("a1"));
+        Assert.assertEquals("2", ra.getAttribute("a2"));
+        Assert.assertEquals("1", rb.getAttribute("b1"));
+        Assert.assertEquals(1, receiver.getCounterReceive_EVT_SESSION_DELTA_BATCH());
+        Assert.assertEquals(2, receiver.getCounterReceive_EVT_SESSION_DELTA());
+    }
+
+
+    @Test
+    public void testBatchSize() throws Exception {
+        manager.setReplicationBatchSize(2);
+        createSession(manager, "A").setAttribute("a", "1");
+        createSession(manager, "B").setAttribute("b", "1");
+
+        manager.requestCompleted("A");
+        Assert.assertEquals(0, cluster.messages.size());
+        manager.requestCompleted("B");
+        Assert.assertEquals(1, cluster.messages.size());
+    }
+
+
+    @Test
+    public void testBatchWindow() throws Exception {
+        manager.setReplicationBatchWindow(10);
+        createSession(manager, "A").setAttribute("a", "1");
+
+        Assert.assertNull(manager.requestCompleted("A"));
+
+        int count = 0;
+        while (cluster.messages.isEmpty() && count < 500) {
+            Thread.sleep(10);
+            count++;
+        }
+        Assert.assertEquals(1, cluster.messages.size());
+    }
+
+
+    @Test
+    public void testExpire() throws Exception {
+        DeltaSession a = createSession(manager, "A");
+        a.setAttribute("a", "1");
+        Assert.assertNull(manager.requestCompleted("A"));
+
+        // Expiration sends the pending changes immediately
+        ClusterMessage msg = manager.requestCompleted("A", true);
+        Assert.assertEquals(SessionMessage.EVT_SESSION_DELTA,
+                ((SessionMessage) msg).getEventType());
+
+        manager.sendPendingDeltas();
+        Assert.assertEquals(0, cluster.messages.size());
+    }
+
+
+    private static DeltaManager createManager() {
+        TesterContext context = new TesterContext();
+        context.setServletContext(new TesterServletContext());
+        DeltaManager manager = new DeltaManager();
+        manager.setContext(context);
+        return manager;
+    }
+
+
+    private static DeltaSession createSession(DeltaManager manager, String id) {
+        DeltaSession session = new DeltaSession(manager);
+        session.setValid(true);
+        session.setCreationTime(System.currentTimeMillis());
+        session.setMaxInactiveInterval(1800);
+        session.setId(id, false);
+        session.resetDeltaRequest();
+        return session;
+    }
+
+
+    private static class TesterCluster extends SimpleTcpCluster {
+
+        private final List<ClusterMessage> messages = new CopyOnWriteArrayList<>();
+
+        @Override
+        public void send(ClusterMessage msg) {
+            messages.add(msg);
+        }
+    }
+}
@@ -0,0 +1,126 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.catalina.ha.session;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import org.junit.runners.Parameterized.Parameter;
+
+import org.apache.catalina.session.CompactSessionSerializer;
+import org.apache.catalina.session.JavaSessionSerializer;
+import org.apache.catalina.session.SessionSerializer;
+import org.apache.tomcat.unittest.TesterContext;
+import org.apache.tomcat.unittest.TesterServletContext;
+
+@RunWith(Parameterized.class)
+public class TestDeltaSessionSerializer {
+
+    @Parameterized.Parameters(name = "{index}: serializer[{0}]")
+    public static Collection<Object[]> parameters() {
+        List<Object[]> parameterSets = new ArrayList<>();
+        parameterSets.add(new Object[] { "Java", new JavaSessionSerializer() });
+        parameterSets.add(new Object[] { "Compact", new CompactSessionSerializer() });
+        return parameterSets;
+    }
+
+    @Parameter(0)
+    public String name;
+
+    @Parameter(1)
+    public SessionSerializer serializer;
+
+    private DeltaManager manager;
+
+
+    @Before
+    public void setUp() {
+        TesterContext context = new TesterContext();
+        context.setServletContext(new TesterServletContext());
+        manager = new DeltaManager();
+        manager.setContext(context);
+        manager.setSessionSerializer(serializer);
+    }
+
+
+    @Test
+    public void testFullState() throws Exception {
+        DeltaSession session = createSession();
+        List<String> list = new ArrayList<>();
+        list.add("value");
+        session.setAttribute("list", list);
+        session.setAttribute("count", Integer.valueOf(42));
+
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        try (ObjectOutputStream oos = new ObjectOutputStream(bos)) {
+            session.writeObjectData(oos);
+        }
+        DeltaSession result = new DeltaSession(manager);
+        try (ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(bos.toByteArray()))) {
+            result.readObjectData(ois);
+        }
+
+        Assert.assertEquals(session.getIdInternal(), result.getIdInternal());
+        Assert.assertEquals(session.getVersion(), result.getVersion());
+        Assert.assertEquals(list, result.getAttribute("list"));
+        Assert.assertEquals(Integer.valueOf(42), result.getAttribute("count"));
+    }
+
+
+    @Test
+    public void testDelta() throws Exception {
+        DeltaSession session = createSession();
+        DeltaSession result = createSession();
+        session.resetDeltaRequest();
+
+        session.setAttribute("a", "value");
+        session.setAttribute("b", Long.valueOf(-1));
+        session.setMaxInactiveInterval(60);
+        byte[] diff = session.getDiff();
+        result.applyDiff(diff, 0, diff.length);
+
+        Assert.assertEquals("value", result.getAttribute("a"));
+        Assert.assertEquals(Long.valueOf(-1), result.getAttribute("b"));
+        Assert.assertEquals(60, result.getMaxInactiveInterval());
+
+        session.removeAttribute("a");
+        diff = session.getDiff();
+        result.applyDiff(diff, 0, diff.length);
+
+        Assert.assertNull(result.getAttribute("a"));
+    }
+
+
+    private DeltaSession createSession() {
+        DeltaSession session = new DeltaSession(manager);
+        session.setValid(true);
+        session.setCreationTime(System.currentTimeMillis());
+        session.setMaxInactiveInterval(1800);
+        session.setId("0123456789ABCDEF0123456789ABCDEF", false);
+        return session;
+    }
+}
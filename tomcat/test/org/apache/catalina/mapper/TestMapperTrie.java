@@ -0,0 +1,170 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.catalina.mapper;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import org.apache.catalina.Context;
+import org.apache.catalina.Host;
+import org.apache.catalina.Wrapper;
+import org.apache.catalina.core.StandardContext;
+import org.apache.catalina.core.StandardHost;
+import org.apache.catalina.core.StandardWrapper;
+import org.apache.tomcat.util.buf.MessageBytes;
+
+/**
+ * Runs the {@link TestMapper} tests with every lookup using a
+ * {@link PathTrie} and checks that the trie and the binary searches map a
+ * large deployment in the same way.
+ */
+public class TestMapperTrie extends TestMapper {
+
+    private static final String[] SEGMENTS = new String[] {
+            "", "a", "ab", "a-b", "b", "foo", "foo.jsp", "bar", "bar.do", "x" };
+
+    @Before
+    @Override
+    public void setUp() throws Exception {
+        super.setUp();
+        mapper.trieThreshold = 0;
+    }
+
+
+    @Test
+    public void testEquivalence() throws Exception {
+        Random random = new Random(42);
+        Mapper mapper = createLargeMapper(random, 200, 40);
+
+        MappingData expected = new MappingData();
+        MappingData actual = new MappingData();
+
+        for (int i = 0; i < 20000; i++) {
+            String path = randomPath(random, 6);
+
+            mapper.trieThreshold = Integer.MAX_VALUE;
+            map(mapper, "localhost", path, expected);
+            mapper.trieThreshold = 0;
+            map(mapper, "localhost", path, actual);
+
+            Assert.assertSame(path, expected.context, actual.context);
+            Assert.assertSame(path, expected.wrapper, actual.wrapper);
+            Assert.assertEquals(path, expected.matchType, actual.matchType);
+            Assert.assertEquals(path, expected.wrapperPath.toString(),
+                    actual.wrapperPath.toString());
+            Assert.assertEquals(path, expected.pathInfo.toString(),
+                    actual.pathInfo.toString());
+        }
+    }
+
+
+    @Test
+    public void testRebuildOnChange() throws Exception {
+        MappingData mappingData = new MappingData();
+
+        map(mapper, "iowejoiejfoiew", "/foo/bar/new/x", mappingData);
+        Assert.assertEquals("wrapper1", mappingData.wrapper.getName());
+
+        mapper.addWrapper("iowejoiejfoiew", "/foo/bar", "0", "/new/*",
+                createWrapper("wrapper-new"), false, false);
+        map(mapper, "iowejoiejfoiew", "/foo/bar/new/x", mappingData);
+        Assert.assertEquals("wrapper-new", mappingData.wrapper.getName());
+
+        mapper.removeWrapper("iowejoiejfoiew", "/foo/bar", "0", "/new/*");
+        map(mapper, "iowejoiejfoiew", "/foo/bar/new/x", mappingData);
+        Assert.assertEquals("wrapper1", mappingData.wrapper.getName());
+    }
+
+
+    static Mapper createLargeMapper(Random random, int contextCount, int wrapperCount) {
+        Mapper mapper = new Mapper();
+        Host host = new StandardHost();
+        host.setName("localhost");
+        mapper.addHost("localhost", new String[0], host);
+        mapper.setDefaultHostName("localhost");
+
+        List<String> contextPaths = new ArrayList<>();
+        contextPaths.add("");
+        while (contextPaths.size() < contextCount) {
+            String path = randomPath(random, 3);
+            if (path.length() > 1 && !path.endsWith("/") && !contextPaths.contains(path)) {
+                contextPaths.add(path);
+            }
+        }
+
+        for (String contextPath : contextPaths) {
+            List<WrapperMappingInfo> wrappers = new ArrayList<>();
+            wrappers.add(new WrapperMappingInfo("/", createWrapper(contextPath + "-default"),
+                    false, false));
+            wrappers.add(new WrapperMappingInfo("", createWrapper(contextPath + "-root"),
+                    false, false));
+            wrappers.add(new WrapperMappingInfo("*.jsp", createWrapper(contextPath + "-jsp"),
+                    false, false));
+            for (int i = 0; i < wrapperCount; i++) {
+                String path = randomPath(random, 3);
+                if (path.endsWith("/")) {
+                    path = path + "*";
+                } else if (random.nextBoolean()) {
+                    path = path + "/*";
+                }
+                wrappers.add(new WrapperMappingInfo(path, createWrapper(contextPath + path),
+                        false, false));
+            }
+            Context context = new StandardContext();
+            context.setName(contextPath);
+            mapper.addContextVersion("localhost", host, contextPath, "0", context,
+                    new String[0], null, wrappers);
+        }
+        return mapper;
+    }
+
+
+    static String randomPath(Random random, int maxSegments) {
+        StringBuilder path = new StringBuilder();
+        int segments = 1 + random.nextInt(maxSegments);
+        for (int i = 0; i < segments; i++) {
+            path.append('/');
+            path.append(SEGMENTS[random.nextInt(SEGMENTS.length)]);
+        }
+        return path.toString();
+    }
+
+
+    private static Wrapper createWrapper(String name) {
+        Wrapper wrapper = new StandardWrapper();
+        wrapper.setName(name);
+        return wrapper;
+    }
+
+
+    private static void map(Mapper mapper, String hostName, String path,
+            MappingData mappingData) throws Exception {
+        mappingData.recycle();
+        MessageBytes host = MessageBytes.newInstance();
+        host.setString(hostName);
+        MessageBytes uri = MessageBytes.newInstance();
+        uri.setString(path);
+        uri.toChars();
+        uri.getCharChunk().setLimit(-1);
+        mapper.map(host, uri, null, mappingData);
+    }
+}
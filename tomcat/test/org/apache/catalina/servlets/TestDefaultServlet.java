@@ -16,18 +16,26 @@
  */
 package org.apache.catalina.servlets;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.OutputStreamWriter;
 import java.io.Writer;
+import java.nio.charset.StandardCharsets;
 import java.text.SimpleDateFormat;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import java.util.Random;
 import java.util.TimeZone;
+import java.util.zip.GZIPInputStream;
 
 import jakarta.servlet.http.HttpServletResponse;
 
@@ -579,6 +587,100 @@ public class TestDefaultServlet extends TomcatBaseTest {
         tomcat.stop();
     }
 
+    /*
+     * Verify that resources are compressed on demand and the compressed
+     * version is served, including via sendfile, once it is available.
+     */
+    @Test
+    public void testCompressOnDemand() throws Exception {
+        Tomcat tomcat = getTomcatInstance();
+
+        File appDir = new File(getTemporaryDirectory(), "compressOnDemand");
+        Assert.assertTrue(appDir.mkdirs());
+        addDeleteOnTearDown(appDir);
+
+        // Text that compresses well but not so well that the compressed
+        // version is smaller than the sendfile threshold
+        StringBuilder sb = new StringBuilder();
+        Random random = new Random(0);
+        while (sb.length() < 64 * 1024) {
+            sb.append(Integer.toHexString(random.nextInt())).append(' ');
+        }
+        byte[] original = sb.toString().getBytes(StandardCharsets.ISO_8859_1);
+        try (FileOutputStream fos = new FileOutputStream(new File(appDir, "data.txt"))) {
+            fos.write(original);
+        }
+
+        Context ctxt = tomcat.addContext("", appDir.getAbsolutePath());
+        Wrapper defaultServlet = Tomcat.addServlet(ctxt, "default",
+                "org.apache.catalina.servlets.DefaultServlet");
+        defaultServlet.addInitParameter("compressOnDemand", "gzip");
+        defaultServlet.addInitParameter("sendfileSize", "1");
+        ctxt.addServletMappingDecoded("/", "default");
+
+        ctxt.addMimeMapping("txt", "text/plain");
+
+        tomcat.start();
+
+        String path = "http://localhost:" + getPort() + "/data.txt";
+        Map<String,List<String>> reqHeaders = new HashMap<>();
+        reqHeaders.put("Accept-Encoding", Collections.singletonList("gzip"));
+        Map<String,List<String>> resHeaders = new HashMap<>();
+        ByteChunk out = new ByteChunk();
+
+        // The original is served until the compressed version is available
+        int rc = getUrl(path, out, reqHeaders, resHeaders);
+        Assert.assertEquals(HttpServletResponse.SC_OK, rc);
+        Assert.assertEquals("accept-encoding", resHeaders.get("vary").get(0));
+        String originalETag = resHeaders.get("ETag").get(0);
+
+        int count = 0;
+        do {
+            Thread.sleep(100);
+            out.recycle();
+            resHeaders.clear();
+            rc = getUrl(path, out, reqHeaders, resHeaders);
+            Assert.assertEquals(HttpServletResponse.SC_OK, rc);
+            count++;
+        } while (resHeaders.get("Content-Encoding") == null && count < 50);
+
+        Assert.assertEquals("gzip", resHeaders.get("Content-Encoding").get(0));
+        Assert.assertEquals("accept-encoding", resHeaders.get("vary").get(0));
+        String compressedETag = resHeaders.get("ETag").get(0);
+        Assert.assertNotEquals(originalETag, compressedETag);
+        Assert.assertTrue(out.getLength() < original.length);
+        Assert.assertArrayEquals(original, gunzip(out));
+
+        // Conditional requests use the ETag of the compressed version
+        reqHeaders.put("If-None-Match", Collections.singletonList(compressedETag));
+        out.recycle();
+        rc = getUrl(path, out, reqHeaders, null);
+        Assert.assertEquals(HttpServletResponse.SC_NOT_MODIFIED, rc);
+
+        // Clients that don't support compression receive the original
+        out.recycle();
+        resHeaders.clear();
+        rc = getUrl(path, out, null, resHeaders);
+        Assert.assertEquals(HttpServletResponse.SC_OK, rc);
+        Assert.assertNull(resHeaders.get("Content-Encoding"));
+        Assert.assertEquals(originalETag, resHeaders.get("ETag").get(0));
+        Assert.assertArrayEquals(original,
+                Arrays.copyOfRange(out.getBuffer(), out.getStart(), out.getEnd()));
+    }
+
+    private static byte[] gunzip(ByteChunk compressed) throws IOException {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        try (InputStream is = new GZIPInputStream(new ByteArrayInputStream(
+                compressed.getBuffer(), compressed.getStart(), compressed.getLength()))) {
+            byte[] buf = new byte[8192];
+            int n;
+            while ((n = is.read(buf)) > 0) {
+                baos.write(buf, 0, n);
+            }
+        }
+        return baos.toByteArray();
+    }
+
     public static int getUrl(String path, ByteChunk out,
             Map<String, List<String>> resHead) throws IOException {
         out.recycle();
@@ -0,0 +1,244 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.catalina.session;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import org.apache.catalina.Manager;
+import org.apache.catalina.Session;
+import org.apache.tomcat.unittest.TesterContext;
+import org.apache.tomcat.unittest.TesterServletContext;
+import org.apache.tomcat.util.http.fileupload.FileUtils;
+
+public class TestMappedFileStore {
+
+    private Manager manager;
+    private File dir;
+    private MappedFileStore store;
+
+
+    @Before
+    public void setUp() throws Exception {
+        File base = new File(System.getProperty("tomcat.test.temp", "output/tmp"));
+        if (!base.mkdirs() && !base.isDirectory()) {
+            Assert.fail("Unable to create temporary directory.");
+        }
+        dir = Files.createTempDirectory(base.getAbsoluteFile().toPath(), "test").toFile();
+
+        TesterContext testerContext = new TesterContext();
+        testerContext.setServletContext(new TesterServletContext());
+        manager = new StandardManager();
+        manager.setContext(testerContext);
+
+        store = createStore();
+    }
+
+
+    @After
+    public void tearDown() throws Exception {
+        store.stop();
+        FileUtils.deleteDirectory(dir);
+    }
+
+
+    @Test
+    public void testSaveAndLoad() throws Exception {
+        store.save(createSession("1"));
+
+        Assert.assertEquals(1, store.getSize());
+        Assert.assertArrayEquals(new String[] { "1" }, store.keys());
+        Session session = store.load("1");
+        Assert.assertEquals("1", session.getIdInternal());
+        Assert.assertEquals(60, session.getMaxInactiveInterval());
+        Assert.assertNull(store.load("2"));
+    }
+
+
+    @Test
+    public void testReplace() throws Exception {
+        StandardSession session = createSession("1");
+        store.save(session);
+        session.setMaxInactiveInterval(120);
+        store.save(session);
+
+        Assert.assertEquals(1, store.getSize());
+        Assert.assertEquals(120, store.load("1").getMaxInactiveInterval());
+    }
+
+
+    @Test
+    public void testRemove() throws Exception {
+        store.save(createSession("1"));
+        store.save(createSession("2"));
+        store.remove("1");
+
+        Assert.assertArrayEquals(new String[] { "2" }, store.keys());
+        Assert.assertNull(store.load("1"));
+    }
+
+
+    @Test
+    public void testClear() throws Exception {
+        store.save(createSession("1"));
+        store.clear();
+
+        Assert.assertEquals(0, store.getSize());
+        Assert.assertEquals(0, getSegmentFiles().length);
+
+        store.save(createSession("2"));
+        Assert.assertArrayEquals(new String[] { "2" }, store.keys());
+        Assert.assertEquals("2", store.load("2").getIdInternal());
+    }
+
+
+    @Test
+    public void testRestart() throws Exception {
+        StandardSession session = createSession("1");
+        store.save(session);
+        store.save(createSession("2"));
+        store.save(createSession("3"));
+        session.setMaxInactiveInterval(120);
+        store.save(session);
+        store.remove("2");
+        store.stop();
+
+        store = createStore();
+
+        String[] keys = store.keys();
+        Arrays.sort(keys);
+        Assert.assertArrayEquals(new String[] { "1", "3" }, keys);
+        Assert.assertEquals(120, store.load("1").getMaxInactiveInterval());
+        Assert.assertEquals(60, store.load("3").getMaxInactiveInterval());
+    }
+
+
+    @Test
+    public void testRestartAfterCorruption() throws Exception {
+        store.save(createSession("first"));
+        store.save(createSession("second"));
+        store.stop();
+
+        // Corrupt the last record
+        File[] segments = getSegmentFiles();
+        Assert.assertEquals(1, segments.length);
+        byte[] content = Files.readAllBytes(segments[0].toPath());
+        int offset = indexOf(content, "second".getBytes(StandardCharsets.UTF_8));
+        try (RandomAccessFile raf = new RandomAccessFile(segments[0], "rw")) {
+            raf.seek(offset + 10);
+            raf.write(~content[offset + 10]);
+        }
+
+        store = createStore();
+        Assert.assertArrayEquals(new String[] { "first" }, store.keys());
+
+        // New records must be readable after a restart
+        store.save(createSession("third"));
+        store.stop();
+        store = createStore();
+
+        String[] keys = store.keys();
+        Arrays.sort(keys);
+        Assert.assertArrayEquals(new String[] { "first", "third" }, keys);
+    }
+
+
+    @Test
+    public void testCompaction() throws Exception {
+        store.setSegmentSize(4096);
+
+        for (int i = 0; i < 200; i++) {
+            store.save(createSession(Integer.toString(i)));
+        }
+        int segmentCount = getSegmentFiles().length;
+        Assert.assertTrue(segmentCount > 10);
+        for (int i = 0; i < 200; i++) {
+            if (i % 10 != 0) {
+                store.remove(Integer.toString(i));
+            }
+        }
+
+        store.processExpires();
+
+        Assert.assertTrue(getSegmentFiles().length < segmentCount / 2);
+        Assert.assertEquals(20, store.getSize());
+        for (int i = 0; i < 200; i += 10) {
+            Assert.assertEquals(Integer.toString(i), store.load(Integer.toString(i)).getIdInternal());
+        }
+
+        // The compacted log must be recoverable
+        store.stop();
+        store = createStore();
+        Assert.assertEquals(20, store.getSize());
+    }
+
+
+    @Test
+    public void testExpiredKeys() throws Exception {
+        StandardSession session = createSession("1");
+        session.thisAccessedTime = System.currentTimeMillis() - 120 * 1000;
+        store.save(session);
+        store.save(createSession("2"));
+
+        Assert.assertArrayEquals(new String[] { "1" }, store.expiredKeys());
+    }
+
+
+    private MappedFileStore createStore() throws Exception {
+        MappedFileStore store = new MappedFileStore();
+        store.setDirectory(dir.getAbsolutePath());
+        store.setManager(manager);
+        store.start();
+        return store;
+    }
+
+
+    private StandardSession createSession(String id) {
+        StandardSession session = (StandardSession) manager.createEmptySession();
+        session.setValid(true);
+        session.setCreationTime(System.currentTimeMillis());
+        session.setMaxInactiveInterval(60);
+        session.setId(id, false);
+        return session;
+    }
+
+
+    private File[] getSegmentFiles() {
+        File[] files = dir.listFiles();
+        Assert.assertNotNull(files);
+        return files;
+    }
+
+
+    private static int indexOf(byte[] content, byte[] target) {
+        for (int i = 0; i <= content.length - target.length; i++) {
+            if (Arrays.equals(Arrays.copyOfRange(content, i, i + target.length), target)) {
+                return i;
+            }
+        }
+        Assert.fail();
+        return -1;
+    }
+}
@@ -0,0 +1,158 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.catalina.session;
+
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import org.apache.catalina.Session;
+import org.apache.catalina.core.StandardContext;
+
+public class TestSessionExpirationIndex {
+
+    private StandardManager manager;
+
+
+    @Before
+    public void setUp() {
+        manager = new StandardManager();
+        manager.setContext(new StandardContext());
+        manager.setExpirationAccuracy(1);
+    }
+
+
+    @Test
+    public void testNotDue() {
+        createSession("1", 3600);
+
+        List<Session> due = poll(10);
+
+        Assert.assertEquals(0, due.size());
+        Assert.assertEquals(1, manager.getExpirationIndex().getIndexedCount());
+    }
+
+
+    @Test
+    public void testDue() {
+        Session session = createSession("1", 60);
+
+        List<Session> due = poll(62);
+
+        Assert.assertEquals(1, due.size());
+        Assert.assertSame(session, due.get(0));
+        // Still indexed as it is up to the caller to expire the session
+        Assert.assertEquals(1, manager.getExpirationIndex().getIndexedCount());
+    }
+
+
+    @Test
+    public void testRemove() {
+        Session session = createSession("1", 60);
+
+        manager.remove(session);
+
+        Assert.assertEquals(0, manager.getExpirationIndex().getIndexedCount());
+        Assert.assertEquals(0, poll(62).size());
+    }
+
+
+    @Test
+    public void testChangeId() {
+        Session session = createSession("1", 60);
+
+        session.setId("2", false);
+
+        Assert.assertEquals(1, manager.getExpirationIndex().getIndexedCount());
+        Assert.assertEquals(1, poll(62).size());
+    }
+
+
+    @Test
+    public void testMaxInactiveIntervalReduced() {
+        Session session = createSession("1", 3600);
+
+        session.setMaxInactiveInterval(60);
+
+        Assert.assertEquals(1, manager.getExpirationIndex().getIndexedCount());
+        Assert.assertEquals(1, poll(62).size());
+    }
+
+
+    @Test
+    public void testNeverExpires() {
+        Session session = createSession("1", -1);
+
+        Assert.assertEquals(0, poll(3600).size());
+
+        session.setMaxInactiveInterval(60);
+
+        Assert.assertEquals(1, poll(62).size());
+    }
+
+
+    @Test
+    public void testEnableWithExistingSessions() {
+        manager.setExpirationAccuracy(0);
+        createSession("1", 60);
+        createSession("2", 3600);
+
+        manager.setExpirationAccuracy(1);
+
+        Assert.assertEquals(2, manager.getExpirationIndex().getIndexedCount());
+        Assert.assertEquals(1, poll(62).size());
+    }
+
+
+    @Test
+    public void testProcessExpires() {
+        StandardSession session = createSession("1", 60);
+        // Accessed long enough ago that the session has expired
+        session.thisAccessedTime = System.currentTimeMillis() - 120 * 1000;
+        session.lastAccessedTime = session.thisAccessedTime;
+        // Re-index the session now its expiration time has moved earlier
+        session.setMaxInactiveInterval(60);
+
+        // The session is only checked once its bucket is due
+        long timeNow = System.currentTimeMillis();
+        while (timeNow / 1000 == System.currentTimeMillis() / 1000) {
+            Thread.yield();
+        }
+        manager.processExpires();
+
+        Assert.assertFalse(session.isValid());
+        Assert.assertEquals(0, manager.getActiveSessions());
+        Assert.assertEquals(0, manager.getExpirationIndex().getIndexedCount());
+    }
+
+
+    private StandardSession createSession(String id, int maxInactiveInterval) {
+        StandardSession session = new StandardSession(manager);
+        session.setValid(true);
+        session.setCreationTime(System.currentTimeMillis());
+        session.setMaxInactiveInterval(maxInactiveInterval);
+        session.setId(id, false);
+        return session;
+    }
+
+
+    private List<Session> poll(int secondsFromNow) {
+        return manager.getExpirationIndex().poll(System.currentTimeMillis() + secondsFromNow * 1000L);
+    }
+}
@@ -0,0 +1,339 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.catalina.session;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InvalidClassException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import org.junit.runners.Parameterized.Parameter;
+
+import org.apache.catalina.util.CustomObjectInputStream;
+import org.apache.juli.logging.LogFactory;
+import org.apache.tomcat.unittest.TesterContext;
+import org.apache.tomcat.unittest.TesterServletContext;
+
+@RunWith(Parameterized.class)
+public class TestSessionSerializer {
+
+    @Parameterized.Parameters(name = "{index}: serializer[{0}]")
+    public static Collection<Object[]> parameters() {
+        List<Object[]> parameterSets = new ArrayList<>();
+        parameterSets.add(new Object[] { "Java", new JavaSessionSerializer() });
+        parameterSets.add(new Object[] { "Compact", new CompactSessionSerializer() });
+        return parameterSets;
+    }
+
+    @Parameter(0)
+    public String name;
+
+    @Parameter(1)
+    public SessionSerializer serializer;
+
+    private static final String FILTER = "java\\.lang\\.(?:Boolean|Integer|Long|Number|String)";
+
+    private StandardManager manager;
+
+
+    @Before
+    public void setUp() {
+        TesterContext context = new TesterContext();
+        context.setServletContext(new TesterServletContext());
+        manager = new StandardManager();
+        manager.setContext(context);
+        manager.setSessionSerializer(serializer);
+    }
+
+
+    @Test
+    public void testSessionFields() throws Exception {
+        StandardSession session = createSession();
+        session.setMaxInactiveInterval(-1);
+        session.setNew(false);
+
+        StandardSession result = roundTrip(session);
+
+        Assert.assertEquals(session.getIdInternal(), result.getIdInternal());
+        Assert.assertEquals(session.getCreationTimeInternal(), result.getCreationTimeInternal());
+        Assert.assertEquals(session.getLastAccessedTimeInternal(), result.getLastAccessedTimeInternal());
+        Assert.assertEquals(session.getThisAccessedTimeInternal(), result.getThisAccessedTimeInternal());
+        Assert.assertEquals(-1, result.getMaxInactiveInterval());
+        Assert.assertFalse(result.isNew());
+        Assert.assertTrue(result.isValid());
+    }
+
+
+    @Test
+    public void testAttributeTypes() throws Exception {
+        Map<String,Object> attributes = new HashMap<>();
+        attributes.put("string", "value");
+        attributes.put("emptyString", "");
+        attributes.put("unicode", "é中😀\ud800\u0000x");
+        attributes.put("longString", new String(new char[1000]).replace('\u0000', 'a'));
+        attributes.put("integer", Integer.valueOf(Integer.MIN_VALUE));
+        attributes.put("long", Long.valueOf(-1));
+        attributes.put("maxLong", Long.valueOf(Long.MAX_VALUE));
+        attributes.put("true", Boolean.TRUE);
+        attributes.put("false", Boolean.FALSE);
+        attributes.put("short", Short.valueOf((short) -300));
+        attributes.put("byte", Byte.valueOf((byte) -1));
+        attributes.put("character", Character.valueOf('￿'));
+        attributes.put("float", Float.valueOf(1.5f));
+        attributes.put("double", Double.valueOf(Double.NaN));
+        attributes.put("date", new Date(123456789L));
+        List<Object> list = new ArrayList<>();
+        list.add("value");
+        list.add(null);
+        list.add(Integer.valueOf(1));
+        Map<Object,Object> map = new HashMap<>();
+        map.put("key", "value");
+        map.put(Integer.valueOf(1), new HashSet<>(Arrays.asList("a", "b")));
+        list.add(map);
+        list.add(new LinkedHashSet<>(Arrays.asList("z", "y", "x")));
+        list.add(new Bean("bean"));
+        attributes.put("list", list);
+        attributes.put("bean", new Bean("value"));
+        attributes.put("linkedList", new java.util.LinkedList<>(Arrays.asList("value")));
+
+        StandardSession session = createSession();
+        for (Map.Entry<String,Object> entry : attributes.entrySet()) {
+            session.setAttribute(entry.getKey(), entry.getValue());
+        }
+        session.setAttribute("bytes", new byte[] { 1, 2, 3 });
+        session.setAttribute("strings", new String[] { "a", null, "a" });
+
+        StandardSession result = roundTrip(session);
+
+        for (Map.Entry<String,Object> entry : attributes.entrySet()) {
+            Object value = result.getAttribute(entry.getKey());
+            Assert.assertEquals(entry.getKey(), entry.getValue(), value);
+            Assert.assertEquals(entry.getKey(), entry.getValue().getClass(), value.getClass());
+        }
+        Assert.assertEquals(LinkedHashSet.class, ((List<?>) result.getAttribute("list")).get(4).getClass());
+        Assert.assertArrayEquals(new byte[] { 1, 2, 3 }, (byte[]) result.getAttribute("bytes"));
+        Assert.assertArrayEquals(new String[] { "a", null, "a" }, (String[]) result.getAttribute("strings"));
+    }
+
+
+    @Test
+    public void testSharedReferences() throws Exception {
+        List<Object> list = new ArrayList<>();
+        list.add(list);
+        Date date = new Date();
+        list.add(date);
+        list.add(date);
+
+        StandardSession session = createSession();
+        session.setAttribute("a", list);
+        session.setAttribute("b", list);
+
+        StandardSession result = roundTrip(session);
+
+        List<?> a = (List<?>) result.getAttribute("a");
+        Assert.assertSame(a, result.getAttribute("b"));
+        Assert.assertSame(a, a.get(0));
+        Assert.assertSame(a.get(1), a.get(2));
+    }
+
+
+    @Test
+    public void testNotSerializableAttribute() throws Exception {
+        List<Object> list = new ArrayList<>();
+        list.add("value");
+        list.add(new Object());
+
+        StandardSession session = createSession();
+        session.setAttribute("a", list);
+        session.setAttribute("b", "value");
+
+        StandardSession result = roundTrip(session);
+
+        Assert.assertNull(result.getAttribute("a"));
+        Assert.assertEquals("value", result.getAttribute("b"));
+    }
+
+
+    @Test(expected = IOException.class)
+    public void testWrongSerializer() throws Exception {
+        StandardSession session = createSession();
+        session.setAttribute("a", "value");
+        byte[] data = serialize(session);
+
+        if (serializer instanceof CompactSessionSerializer) {
+            manager.setSessionSerializer(new JavaSessionSerializer());
+        } else {
+            manager.setSessionSerializer(new CompactSessionSerializer());
+        }
+        deserialize(data);
+    }
+
+
+    @Test
+    public void testClassNameFilterAllowed() throws Exception {
+        StandardSession session = createSession();
+        session.setAttribute("a", "value");
+        session.setAttribute("b", Integer.valueOf(1));
+        session.setAttribute("c", Boolean.TRUE);
+
+        StandardSession result = deserialize(serialize(session), Pattern.compile(FILTER));
+
+        Assert.assertEquals("value", result.getAttribute("a"));
+        Assert.assertEquals(Integer.valueOf(1), result.getAttribute("b"));
+        Assert.assertEquals(Boolean.TRUE, result.getAttribute("c"));
+    }
+
+
+    @Test
+    public void testClassNameFilterBlocked() throws Exception {
+        doTestClassNameFilterBlocked(new HashMap<>());
+        doTestClassNameFilterBlocked(new ArrayList<>());
+        doTestClassNameFilterBlocked(new LinkedHashSet<>());
+        doTestClassNameFilterBlocked(new Date());
+        doTestClassNameFilterBlocked(new byte[1]);
+        doTestClassNameFilterBlocked(new String[1]);
+        doTestClassNameFilterBlocked(Double.valueOf(1));
+        doTestClassNameFilterBlocked(new Bean("value"));
+    }
+
+
+    private void doTestClassNameFilterBlocked(Object value) throws Exception {
+        StandardSession session = createSession();
+        session.setAttribute("a", value);
+        byte[] data = serialize(session);
+        try {
+            deserialize(data, Pattern.compile(FILTER));
+            Assert.fail(value.getClass().getName());
+        } catch (InvalidClassException expected) {
+            // Expected
+        }
+    }
+
+
+    @Test
+    public void testCorruptedLength() throws Exception {
+        Assume.assumeTrue(serializer instanceof CompactSessionSerializer);
+        // byte[], String[] and String each with a length of Integer.MAX_VALUE
+        // followed by much less data
+        doTestCorruptedLength(12, 0xFF, 0xFF, 0xFF, 0xFF, 0x07, 1, 2, 3);
+        doTestCorruptedLength(13, 0xFF, 0xFF, 0xFF, 0xFF, 0x07, 0, 0, 0);
+        doTestCorruptedLength(1, 1, 0xFF, 0xFF, 0xFF, 0xFF, 0x07, 'a', 'b');
+    }
+
+
+    private void doTestCorruptedLength(int... bytes) throws Exception {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        try (ObjectOutputStream oos = new ObjectOutputStream(bos)) {
+            // Format version
+            oos.writeByte(1);
+            for (int b : bytes) {
+                oos.writeByte(b);
+            }
+        }
+        try (ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(bos.toByteArray()))) {
+            serializer.getInput(ois).readObject();
+            Assert.fail();
+        } catch (EOFException expected) {
+            // Expected
+        }
+    }
+
+
+    private StandardSession createSession() {
+        StandardSession session = new StandardSession(manager);
+        session.setValid(true);
+        session.setCreationTime(System.currentTimeMillis());
+        session.setMaxInactiveInterval(1800);
+        session.setId("0123456789ABCDEF0123456789ABCDEF", false);
+        return session;
+    }
+
+
+    private StandardSession roundTrip(StandardSession session) throws Exception {
+        return deserialize(serialize(session));
+    }
+
+
+    private byte[] serialize(StandardSession session) throws IOException {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        try (ObjectOutputStream oos = new ObjectOutputStream(bos)) {
+            session.writeObjectData(oos);
+        }
+        return bos.toByteArray();
+    }
+
+
+    private StandardSession deserialize(byte[] data) throws Exception {
+        StandardSession result = new StandardSession(manager);
+        try (ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(data))) {
+            result.readObjectData(ois);
+        }
+        return result;
+    }
+
+
+    private StandardSession deserialize(byte[] data, Pattern filter) throws Exception {
+        StandardSession result = new StandardSession(manager);
+        try (ObjectInputStream ois = new CustomObjectInputStream(new ByteArrayInputStream(data),
+                getClass().getClassLoader(), LogFactory.getLog(TestSessionSerializer.class), filter, false)) {
+            result.readObjectData(ois);
+        }
+        return result;
+    }
+
+
+    public static class Bean implements Serializable {
+
+        private static final long serialVersionUID = 1L;
+
+        private final String value;
+
+        public Bean(String value) {
+            this.value = value;
+        }
+
+        @Override
+        public int hashCode() {
+            return value.hashCode();
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            return obj instanceof Bean && value.equals(((Bean) obj).value);
+        }
+    }
+}
@@ -18,12 +18,16 @@ package org.apache.catalina.startup;
 
 import java.beans.PropertyChangeListener;
 import java.io.File;
+import java.io.FileOutputStream;
 import java.net.URISyntaxException;
 import java.net.URL;
+import java.nio.file.Files;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
 
 import jakarta.servlet.DispatcherType;
 import jakarta.servlet.Servlet;
@@ -38,6 +42,7 @@ import org.apache.catalina.Context;
 import org.apache.catalina.Loader;
 import org.apache.catalina.core.StandardContext;
 import org.apache.catalina.startup.ContextConfig.JavaClassCacheEntry;
+import org.apache.tomcat.util.bcel.classfile.JavaClass;
 import org.apache.tomcat.util.descriptor.web.FilterDef;
 import org.apache.tomcat.util.descriptor.web.FilterMap;
 import org.apache.tomcat.util.descriptor.web.ServletDef;
@@ -316,6 +321,99 @@ public class TestContextConfigAnnotation {
         Assert.assertEquals(4, config.initializerClassMap.get(sciObject).size());
     }
 
+    @Test
+    public void testAnnotationScanCache() throws Exception {
+        File jar = File.createTempFile("test", ".jar");
+        jar.deleteOnExit();
+        File cacheFile = File.createTempFile("test", ".scan");
+        cacheFile.deleteOnExit();
+        Assert.assertTrue(cacheFile.delete());
+
+        try (JarOutputStream jos = new JarOutputStream(new FileOutputStream(jar))) {
+            for (String className : new String[] { "ParamServlet", "ParamFilter",
+                    "TesterServlet", "TestListener" }) {
+                String entryName = "org/apache/catalina/startup/" + className + ".class";
+                jos.putNextEntry(new JarEntry(entryName));
+                jos.write(Files.readAllBytes(paramClassResource(
+                        "org/apache/catalina/startup/" + className).toPath()));
+                jos.closeEntry();
+            }
+        }
+        URL jarUrl = new URL("jar:" + jar.toURI().toString() + "!/");
+
+        // The first scan parses every class and populates the cache
+        CountingContextConfig config = createHandlesTypesConfig();
+        config.annotationScanCache = new AnnotationScanCache(cacheFile);
+        WebXml webxml = new WebXml();
+        config.processAnnotationsJar(jarUrl, webxml, false, new HashMap<>());
+        config.annotationScanCache.save();
+        Assert.assertEquals(4, config.parsed);
+        Assert.assertTrue(cacheFile.isFile());
+
+        // The second scan uses the cache and gives the same results
+        CountingContextConfig cachedConfig = createHandlesTypesConfig();
+        cachedConfig.annotationScanCache = new AnnotationScanCache(cacheFile);
+        WebXml cachedWebxml = new WebXml();
+        cachedConfig.processAnnotationsJar(jarUrl, cachedWebxml, false, new HashMap<>());
+        Assert.assertEquals(0, cachedConfig.parsed);
+
+        Assert.assertEquals(webxml.getServlets().keySet(), cachedWebxml.getServlets().keySet());
+        Assert.assertEquals(webxml.getServletMappings(), cachedWebxml.getServletMappings());
+        Assert.assertEquals(webxml.getFilters().keySet(), cachedWebxml.getFilters().keySet());
+        Assert.assertEquals(webxml.getListeners(), cachedWebxml.getListeners());
+        Assert.assertNotNull(cachedWebxml.getServlets().get("param"));
+        Assert.assertEquals(2, getHandledClasses(config, Servlet.class).size());
+        Assert.assertEquals(4, getHandledClasses(config, Object.class).size());
+        Assert.assertEquals(getHandledClasses(config, Servlet.class),
+                getHandledClasses(cachedConfig, Servlet.class));
+        Assert.assertEquals(getHandledClasses(config, Object.class),
+                getHandledClasses(cachedConfig, Object.class));
+
+        // A modified JAR is scanned again
+        Assert.assertTrue(jar.setLastModified(jar.lastModified() - 10000));
+        CountingContextConfig modifiedConfig = createHandlesTypesConfig();
+        modifiedConfig.annotationScanCache = new AnnotationScanCache(cacheFile);
+        modifiedConfig.processAnnotationsJar(jarUrl, new WebXml(), false, new HashMap<>());
+        Assert.assertEquals(4, modifiedConfig.parsed);
+    }
+
+    private CountingContextConfig createHandlesTypesConfig() {
+        CountingContextConfig config = new CountingContextConfig();
+        config.handlesTypesAnnotations = true;
+        config.handlesTypesNonAnnotations = true;
+
+        StandardContext context = new StandardContext();
+        context.setLoader(new TesterLoader());
+        config.context = context;
+
+        SCI sciServlet = new SCI();
+        config.initializerClassMap.put(sciServlet, new HashSet<>());
+        config.typeInitializerMap.put(Servlet.class, new HashSet<>());
+        config.typeInitializerMap.get(Servlet.class).add(sciServlet);
+
+        SCI sciObject = new SCI();
+        config.initializerClassMap.put(sciObject, new HashSet<>());
+        config.typeInitializerMap.put(Object.class, new HashSet<>());
+        config.typeInitializerMap.get(Object.class).add(sciObject);
+        return config;
+    }
+
+    private static Set<Class<?>> getHandledClasses(ContextConfig config, Class<?> type) {
+        return config.initializerClassMap.get(config.typeInitializerMap.get(type).iterator().next());
+    }
+
+    private static final class CountingContextConfig extends ContextConfig {
+
+        private int parsed = 0;
+
+        @Override
+        protected void checkHandlesTypes(JavaClass javaClass,
+                Map<String,JavaClassCacheEntry> javaClassCache) {
+            parsed++;
+            super.checkHandlesTypes(javaClass, javaClassCache);
+        }
+    }
+
     private static final class SCI implements ServletContainerInitializer {
         @Override
         public void onStartup(Set<Class<?>> c, ServletContext ctx)
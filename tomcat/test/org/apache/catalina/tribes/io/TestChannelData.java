@@ -16,9 +16,13 @@
  */
 package org.apache.catalina.tribes.io;
 
+import java.nio.ByteBuffer;
+
 import org.junit.Assert;
 import org.junit.Test;
 
+import org.apache.catalina.tribes.membership.MemberImpl;
+
 public class TestChannelData {
 
     @Test
@@ -30,4 +34,29 @@ public class TestChannelData {
         Assert.assertTrue(original.getClass() == clone.getClass());
         Assert.assertTrue(original.equals(clone));
     }
+
+    @Test
+    public void testDataPackageBuffers() throws Exception {
+        ChannelData data = new ChannelData(true);
+        data.setAddress(new MemberImpl("localhost", 4000, 0));
+        data.setTimestamp(System.currentTimeMillis());
+        data.setOptions(3);
+        byte[] payload = new byte[1000];
+        for (int i = 0; i < payload.length; i++) {
+            payload[i] = (byte) i;
+        }
+        data.setMessage(new XByteBuffer(payload, false));
+
+        byte[] expected = XByteBuffer.createDataPackage(data);
+        ByteBuffer[] buffers = XByteBuffer.createDataPackageBuffers(data);
+        ByteBuffer actual = ByteBuffer.allocate(expected.length);
+        for (ByteBuffer buffer : buffers) {
+            actual.put(buffer);
+        }
+
+        Assert.assertFalse(actual.hasRemaining());
+        Assert.assertArrayEquals(expected, actual.array());
+        // The message data is not copied
+        Assert.assertSame(data.getMessage().getBytesDirect(), buffers[1].array());
+    }
 }
@@ -0,0 +1,134 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.catalina.tribes.test.channel;
+
+import java.io.Serializable;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import org.apache.catalina.tribes.ByteMessage;
+import org.apache.catalina.tribes.Channel;
+import org.apache.catalina.tribes.ChannelListener;
+import org.apache.catalina.tribes.ManagedChannel;
+import org.apache.catalina.tribes.Member;
+import org.apache.catalina.tribes.TesterUtil;
+import org.apache.catalina.tribes.group.GroupChannel;
+import org.apache.catalina.tribes.group.interceptors.ThroughputInterceptor;
+
+/*
+ * Reports the throughput, as measured by the ThroughputInterceptor, of
+ * synchronous sends from one node to three others on the loopback interface.
+ *
+ * Results on a 1 core VM, 10s per size, mean of 4 runs. Individual runs varied
+ * by up to 30%.
+ *
+ * Message size | Before gathering writes | After gathering writes
+ * -------------+-------------------------+-----------------------
+ *         1 kB |              38 MB/s    |              37 MB/s
+ *        64 kB |             805 MB/s    |             872 MB/s
+ *      1024 kB |             579 MB/s    |             662 MB/s
+ */
+public class TesterThroughput {
+
+    private static final int RECEIVER_COUNT = 3;
+    private static final long DURATION = 10000;
+
+    private GroupChannel sender;
+    private ThroughputInterceptor throughput;
+    private GroupChannel[] receivers;
+    private final AtomicLong received = new AtomicLong();
+
+
+    @Before
+    public void setUp() throws Exception {
+        sender = new GroupChannel();
+        throughput = new ThroughputInterceptor();
+        throughput.setInterval(Integer.MAX_VALUE);
+        sender.addInterceptor(throughput);
+        receivers = new GroupChannel[RECEIVER_COUNT];
+        ManagedChannel[] channels = new ManagedChannel[RECEIVER_COUNT + 1];
+        channels[0] = sender;
+        for (int i = 0; i < RECEIVER_COUNT; i++) {
+            receivers[i] = new GroupChannel();
+            receivers[i].addChannelListener(new Listener());
+            channels[i + 1] = receivers[i];
+        }
+        TesterUtil.addRandomDomain(channels);
+        for (ManagedChannel channel : channels) {
+            channel.start(Channel.SND_RX_SEQ | Channel.SND_TX_SEQ);
+        }
+    }
+
+
+    @After
+    public void tearDown() throws Exception {
+        sender.stop(Channel.DEFAULT);
+        for (GroupChannel receiver : receivers) {
+            receiver.stop(Channel.DEFAULT);
+        }
+    }
+
+
+    @Test
+    public void testThroughput() throws Exception {
+        Member[] destination = new Member[RECEIVER_COUNT];
+        for (int i = 0; i < RECEIVER_COUNT; i++) {
+            destination[i] = receivers[i].getLocalMember(false);
+        }
+        for (int size : new int[] { 1024, 64 * 1024, 1024 * 1024 }) {
+            ByteMessage msg = new ByteMessage(new byte[size]);
+            // Warm up
+            doTest(destination, msg, DURATION / 5);
+            double mbTx = throughput.getMbTx();
+            double timeTx = throughput.getTimeTx();
+            long count = doTest(destination, msg, DURATION);
+            mbTx = throughput.getMbTx() - mbTx;
+            timeTx = throughput.getTimeTx() - timeTx;
+            System.out.println("Message size [" + (size / 1024) + "kB] messages [" + count +
+                    "] throughput [" + String.format("%.2f", Double.valueOf(mbTx / timeTx)) +
+                    "MB/s] received [" + received.get() + "]");
+        }
+    }
+
+
+    private long doTest(Member[] destination, Serializable msg, long duration) throws Exception {
+        long count = 0;
+        long end = System.currentTimeMillis() + duration;
+        while (System.currentTimeMillis() < end) {
+            sender.send(destination, msg, Channel.SEND_OPTIONS_USE_ACK);
+            count++;
+        }
+        return count;
+    }
+
+
+    private class Listener implements ChannelListener {
+
+        @Override
+        public void messageReceived(Serializable msg, Member sender) {
+            received.incrementAndGet();
+        }
+
+        @Override
+        public boolean accept(Serializable msg, Member sender) {
+            return msg instanceof ByteMessage;
+        }
+    }
+}
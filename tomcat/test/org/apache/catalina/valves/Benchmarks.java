@@ -17,11 +17,20 @@
 
 package org.apache.catalina.valves;
 
+import java.io.CharArrayWriter;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.text.SimpleDateFormat;
 import java.util.Date;
 
 import org.junit.Test;
 
+import org.apache.catalina.connector.Connector;
+import org.apache.catalina.connector.Request;
+import org.apache.catalina.connector.Response;
+import org.apache.tomcat.util.buf.MessageBytes;
+import org.apache.tomcat.util.http.MimeHeaders;
+
 /**
  * Some simple micro-benchmarks to help determine best approach for thread
  * safety in valves, particularly the {@link AccessLogValve}. Implemented as
@@ -458,6 +467,88 @@ public class Benchmarks {
         }
     }
 
+    /*
+     * Renders the common and combined patterns. Rendering 2,000,000 messages
+     * on a single thread with JDK 17 took (lower is better):
+     *
+     *                 CharArrayWriter,     LogMessageWriter,
+     *                 String conversions   direct rendering
+     * common          820ms                260ms
+     * combined        5500ms               560ms
+     */
+    @Test
+    public void testAccessLogPatterns() throws Exception {
+        BenchmarkTest benchmark = new BenchmarkTest();
+        Runnable[] tests = new Runnable[] {
+                new PatternBenchmarkTest(Constants.AccessLog.COMMON_ALIAS),
+                new PatternBenchmarkTest(Constants.AccessLog.COMBINED_ALIAS) };
+        benchmark.doTest(1, tests);
+    }
+
+    private static class PatternBenchmarkTest implements Runnable {
+
+        private final String pattern;
+        private final AbstractAccessLogValve.AccessLogElement[] logElements;
+        private final Request request;
+        private final Response response;
+        private final CharArrayWriter buf =
+                new AbstractAccessLogValve.LogMessageWriter(256);
+        private final Date date = new Date();
+
+        PatternBenchmarkTest(String pattern) {
+            this.pattern = pattern;
+            AccessLogValve valve = new AccessLogValve();
+            valve.setPattern(pattern);
+            logElements = valve.logElements;
+
+            request = new Request(new Connector());
+            org.apache.coyote.Request coyoteRequest = new org.apache.coyote.Request();
+            coyoteRequest.method().setString("GET");
+            coyoteRequest.requestURI().setString("/examples/index.html");
+            coyoteRequest.protocol().setString("HTTP/1.1");
+            coyoteRequest.remoteAddr().setString("192.168.1.1");
+            MimeHeaders headers = coyoteRequest.getMimeHeaders();
+            setBytes(headers.addValue("Referer"), "http://localhost:8080/examples/");
+            setBytes(headers.addValue("User-Agent"),
+                    "Mozilla/5.0 (X11; Linux x86_64; rv:78.0) Gecko/20100101 Firefox/78.0");
+            request.setCoyoteRequest(coyoteRequest);
+
+            response = new Response();
+            org.apache.coyote.Response coyoteResponse = new org.apache.coyote.Response();
+            coyoteResponse.setStatus(200);
+            coyoteResponse.setOutputBuffer(new org.apache.coyote.OutputBuffer() {
+                @Override
+                public int doWrite(ByteBuffer chunk) {
+                    return chunk.remaining();
+                }
+                @Override
+                public long getBytesWritten() {
+                    return 1234;
+                }
+            });
+            response.setCoyoteResponse(coyoteResponse);
+        }
+
+        private static void setBytes(MessageBytes mb, String value) {
+            byte[] bytes = value.getBytes(StandardCharsets.ISO_8859_1);
+            mb.setBytes(bytes, 0, bytes.length);
+        }
+
+        @Override
+        public String toString() {
+            return pattern;
+        }
+
+        @Override
+        public void run() {
+            date.setTime(System.currentTimeMillis());
+            for (AbstractAccessLogValve.AccessLogElement logElement : logElements) {
+                logElement.addElement(buf, date, request, response, 1000000);
+            }
+            buf.reset();
+        }
+    }
+
     private static class BenchmarkTest {
         public void doTest(int threadCount, Runnable[] tests) throws Exception {
             for (int iterations = 1000000; iterations < 10000001; iterations += 1000000) {
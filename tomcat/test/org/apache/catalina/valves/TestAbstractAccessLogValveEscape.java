@@ -17,6 +17,7 @@
 package org.apache.catalina.valves;
 
 import java.io.CharArrayWriter;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
@@ -28,6 +29,8 @@ import org.junit.runners.Parameterized;
 import org.junit.runners.Parameterized.Parameter;
 import org.junit.runners.Parameterized.Parameters;
 
+import org.apache.tomcat.util.buf.MessageBytes;
+
 
 @RunWith(Parameterized.class)
 public class TestAbstractAccessLogValveEscape {
@@ -63,4 +66,30 @@ public class TestAbstractAccessLogValveEscape {
         AbstractAccessLogValve.escapeAndAppend(input, actual);
         Assert.assertEquals(expected, actual.toString());
     }
+
+
+    @Test
+    public void testEscapeBytes() {
+        MessageBytes mb = MessageBytes.newInstance();
+        if (input != null) {
+            byte[] bytes = input.getBytes(StandardCharsets.ISO_8859_1);
+            mb.setBytes(bytes, 0, bytes.length);
+        }
+        CharArrayWriter actual = new CharArrayWriter();
+        AbstractAccessLogValve.escapeAndAppend(mb, actual);
+        Assert.assertEquals(expected, actual.toString());
+    }
+
+
+    @Test
+    public void testEscapeChars() {
+        MessageBytes mb = MessageBytes.newInstance();
+        if (input != null) {
+            char[] chars = input.toCharArray();
+            mb.setChars(chars, 0, chars.length);
+        }
+        CharArrayWriter actual = new CharArrayWriter();
+        AbstractAccessLogValve.escapeAndAppend(mb, actual);
+        Assert.assertEquals(expected, actual.toString());
+    }
 }
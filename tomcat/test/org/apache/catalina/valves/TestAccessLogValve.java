@@ -16,6 +16,8 @@
  */
 package org.apache.catalina.valves;
 
+import java.io.CharArrayWriter;
+import java.nio.charset.StandardCharsets;
 import java.text.SimpleDateFormat;
 import java.util.Date;
 import java.util.Locale;
@@ -24,6 +26,11 @@ import java.util.TimeZone;
 import org.junit.Assert;
 import org.junit.Test;
 
+import org.apache.catalina.connector.Request;
+import org.apache.catalina.connector.Response;
+import org.apache.tomcat.util.buf.MessageBytes;
+import org.apache.tomcat.util.http.MimeHeaders;
+
 public class TestAccessLogValve {
 
     // Note that there is a similar test:
@@ -88,6 +95,60 @@ public class TestAccessLogValve {
         Assert.assertArrayEquals(expected, dfc.cLFCache.cache);
     }
 
+    @Test
+    public void testElementRendering() throws Exception {
+        Request request = new Request(null);
+        request.setCoyoteRequest(new org.apache.coyote.Request());
+        MimeHeaders requestHeaders = request.getCoyoteRequest().getMimeHeaders();
+        setBytes(requestHeaders.addValue("X-Multi"), "a\"b");
+        setBytes(requestHeaders.addValue("x-multi"), "c");
+        requestHeaders.addValue("X-Empty").setString("");
+
+        Response response = new Response();
+        response.setCoyoteResponse(new org.apache.coyote.Response());
+        MimeHeaders responseHeaders = response.getCoyoteResponse().getMimeHeaders();
+        responseHeaders.addValue("X-Dup").setString("1");
+        responseHeaders.addValue("X-Other").setString("x");
+        responseHeaders.addValue("X-Dup").setString("2");
+        responseHeaders.addValue("X-Dup").setString("1");
+
+        // 2020-01-02 03:04:05.006 in the default time zone
+        SimpleDateFormat sdf = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss.SSS", Locale.US);
+        sdf.setTimeZone(TimeZone.getDefault());
+        Date date = sdf.parse("2020-01-02 03:04:05.006");
+
+        AccessLogValve valve = new AccessLogValve();
+        valve.setPattern("%{X-Multi}i|%{X-Empty}i|%{X-Missing}i|%{X-Dup}o|%{X-Missing}o|" +
+                "%{yyyy-MM-dd HH:mm:ss.SSS}t|%{ss.S}t|%{msec_frac}t|%D|%T");
+
+        CharArrayWriter buf = new CharArrayWriter();
+        for (AbstractAccessLogValve.AccessLogElement element : valve.logElements) {
+            element.addElement(buf, date, request, response, 0);
+        }
+
+        Assert.assertEquals("a\\\"b,c|-|-|1,2|-|2020-01-02 03:04:05.006|05.6|006|0|0",
+                buf.toString());
+    }
+
+
+    @Test
+    public void testAppendLong() {
+        long[] values = new long[] { 0, 7, 10, 99, 100, 12345, -1, -100,
+                Long.MAX_VALUE, Long.MIN_VALUE };
+        for (long value : values) {
+            CharArrayWriter buf = new CharArrayWriter();
+            AbstractAccessLogValve.appendLong(value, buf);
+            Assert.assertEquals(Long.toString(value), buf.toString());
+        }
+    }
+
+
+    private static void setBytes(MessageBytes mb, String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.ISO_8859_1);
+        mb.setBytes(bytes, 0, bytes.length);
+    }
+
+
     private String generateExpected(SimpleDateFormat sdf, long secs) {
         return sdf.format(new Date(secs * 1000));
     }
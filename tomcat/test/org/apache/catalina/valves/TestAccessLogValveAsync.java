@@ -0,0 +1,87 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.catalina.valves;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+
+import jakarta.servlet.http.HttpServletResponse;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import org.apache.catalina.Context;
+import org.apache.catalina.startup.Tomcat;
+import org.apache.catalina.startup.TomcatBaseTest;
+import org.apache.tomcat.util.buf.ByteChunk;
+
+public class TestAccessLogValveAsync extends TomcatBaseTest {
+
+    private static final int REQUEST_COUNT = 50;
+
+    @Test
+    public void testAsyncWriter() throws Exception {
+        Tomcat tomcat = getTomcatInstance();
+
+        Context ctx = tomcat.addContext("", null);
+        Tomcat.addServlet(ctx, "hello", new HelloWorldServlet());
+        ctx.addServletMappingDecoded("/", "hello");
+
+        File logDir = new File(getTemporaryDirectory(), "async-access-log");
+        addDeleteOnTearDown(logDir);
+
+        AccessLogValve valve = new AccessLogValve();
+        valve.setDirectory(logDir.getAbsolutePath());
+        valve.setPrefix("async");
+        valve.setSuffix(".log");
+        valve.setRotatable(false);
+        valve.setPattern("%r %s");
+        valve.setAsync(true);
+        valve.setAsyncQueueSize(4);
+        tomcat.getHost().getPipeline().addValve(valve);
+
+        tomcat.start();
+
+        for (int i = 0; i < REQUEST_COUNT; i++) {
+            ByteChunk bc = new ByteChunk();
+            int rc = getUrl("http://localhost:" + getPort() + "/?i=" + i, bc, null);
+            Assert.assertEquals(HttpServletResponse.SC_OK, rc);
+        }
+
+        tomcat.stop();
+
+        // The default policy blocks rather than drops so every request is
+        // logged and nothing is left queued when the valve stops
+        Assert.assertEquals(0, valve.getDroppedRecordCount());
+        Assert.assertEquals(0, valve.getQueueDepth());
+
+        List<String> lines = Files.readAllLines(
+                new File(logDir, "async.log").toPath(), StandardCharsets.ISO_8859_1);
+        Assert.assertEquals(REQUEST_COUNT, lines.size());
+        for (int i = 0; i < REQUEST_COUNT; i++) {
+            Assert.assertEquals("GET /?i=" + i + " HTTP/1.1 200", lines.get(i));
+        }
+    }
+
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidOverflowPolicy() {
+        new AccessLogValve().setAsyncOverflowPolicy("invalid");
+    }
+}
@@ -0,0 +1,177 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.catalina.webresources;
+
+import java.io.File;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import org.apache.catalina.WebResource;
+import org.apache.catalina.WebResourceSet;
+
+public class TestCache {
+
+    private Cache cache;
+
+
+    @Before
+    public void setUp() {
+        TesterWebResourceRoot root = new TesterWebResourceRoot();
+        WebResourceSet webResourceSet = new DirResourceSet(root, "/",
+                new File("test/webresources/dir1").getAbsolutePath(), "/");
+        root.setMainResources(webResourceSet);
+        cache = new Cache(root);
+        // Each entry uses a little over 500 bytes
+        cache.setMaxSize(10);
+        cache.setTtl(0);
+    }
+
+
+    @Test
+    public void testLeastRecentlyUsedEvicted() {
+        for (int i = 0; i < 15; i++) {
+            cache.getResource("/missing-" + i, false);
+        }
+        for (int i = 0; i < 5; i++) {
+            cache.getResource("/missing-" + i, false);
+        }
+        Assert.assertEquals(5, cache.getHitCount());
+        Assert.assertEquals(0, cache.getEvictionCount());
+
+        for (int i = 15; i < 25; i++) {
+            cache.getResource("/missing-" + i, false);
+        }
+        Assert.assertTrue(cache.getEvictionCount() > 0);
+        Assert.assertTrue(cache.getSize() <= cache.getMaxSize());
+
+        // The most recently used entries must still be cached
+        for (int i = 0; i < 5; i++) {
+            cache.getResource("/missing-" + i, false);
+        }
+        Assert.assertEquals(10, cache.getHitCount());
+        // The least recently used entry must have been evicted
+        cache.getResource("/missing-5", false);
+        Assert.assertEquals(10, cache.getHitCount());
+    }
+
+
+    @Test
+    public void testTtlPreventsEviction() {
+        cache.setTtl(60000);
+        for (int i = 0; i < 25; i++) {
+            cache.getResource("/missing-" + i, false);
+        }
+        Assert.assertEquals(0, cache.getEvictionCount());
+        Assert.assertTrue(cache.getSize() <= cache.getMaxSize());
+        // Entries added before the cache was full are retained
+        cache.getResource("/missing-0", false);
+        Assert.assertEquals(1, cache.getHitCount());
+    }
+
+
+    @Test
+    public void testBackgroundProcess() {
+        for (int i = 0; i < 19; i++) {
+            cache.getResource("/missing-" + i, false);
+        }
+        long size = cache.getSize();
+        cache.backgroundProcess();
+        Assert.assertTrue(cache.getEvictionCount() > 0);
+        Assert.assertTrue(cache.getSize() < size);
+        // The most recently used entry is retained
+        cache.getResource("/missing-18", false);
+        Assert.assertEquals(1, cache.getHitCount());
+    }
+
+
+    /*
+     * A resource removed while it is being validated must not replace the
+     * entry of the resource that was cached in its place.
+     */
+    @Test
+    public void testStaleAddAfterRemove() throws Exception {
+        final CountDownLatch validating = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final AtomicBoolean first = new AtomicBoolean(true);
+        TesterWebResourceRoot root = new TesterWebResourceRoot();
+        WebResourceSet webResourceSet = new DirResourceSet(root, "/",
+                new File("test/webresources/dir1").getAbsolutePath(), "/") {
+            @Override
+            public WebResource getResource(String path) {
+                if (first.compareAndSet(true, false)) {
+                    validating.countDown();
+                    try {
+                        release.await();
+                    } catch (InterruptedException e) {
+                        // Ignore
+                    }
+                }
+                return super.getResource(path);
+            }
+        };
+        root.setMainResources(webResourceSet);
+        final Cache cache = new Cache(root);
+        cache.setMaxSize(1024);
+        cache.setTtl(0);
+
+        Thread stale = new Thread() {
+            @Override
+            public void run() {
+                cache.getResource("/missing", false);
+            }
+        };
+        stale.start();
+        Assert.assertTrue(validating.await(10, TimeUnit.SECONDS));
+        cache.removeCacheEntry("/missing");
+        cache.getResource("/missing", false);
+        release.countDown();
+        stale.join();
+
+        // The current resource must still be tracked so it can be evicted
+        cache.setMaxSize(0);
+        cache.backgroundProcess();
+        long hitCount = cache.getHitCount();
+        cache.getResource("/missing", false);
+        Assert.assertEquals(hitCount, cache.getHitCount());
+    }
+
+
+    @Test
+    public void testHitRatio() {
+        Assert.assertEquals(0, cache.getHitRatio(), 0.001);
+        cache.getResource("/f1.txt", false);
+        cache.getResource("/f1.txt", false);
+        cache.getResource("/f1.txt", false);
+        cache.getResource("/f2.txt", false);
+        Assert.assertEquals(0.5, cache.getHitRatio(), 0.001);
+    }
+
+
+    @Test
+    public void testClear() {
+        cache.getResource("/f1.txt", false);
+        cache.clear();
+        Assert.assertEquals(0, cache.getSize());
+        cache.getResource("/f1.txt", false);
+        Assert.assertEquals(0, cache.getHitCount());
+    }
+}
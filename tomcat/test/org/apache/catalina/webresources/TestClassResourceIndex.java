@@ -0,0 +1,123 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.catalina.webresources;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import org.apache.catalina.WebResourceSet;
+
+public class TestClassResourceIndex {
+
+    private final List<WebResourceSet> resourceSets = new ArrayList<>();
+    private WebResourceSet dir1;
+    private WebResourceSet dir2;
+    private WebResourceSet jar;
+    private WebResourceSet internal;
+
+
+    @Before
+    public void setUp() throws Exception {
+        TesterWebResourceRoot root = new TesterWebResourceRoot();
+
+        // Provides d1/d1-f1.txt, d2/d2-f1.txt, f1.txt and f2.txt
+        jar = new JarResourceSet(root, "/WEB-INF/classes",
+                new File("test/webresources/dir1.jar").getAbsolutePath(), "/");
+        // Provides dir1/d1/d1-f1.txt etc.
+        internal = new JarResourceSet(root, "/WEB-INF/classes",
+                new File("test/webresources/dir1-internal.jar").getAbsolutePath(), "/");
+        // Not an archive so can't be indexed
+        dir2 = new DirResourceSet(root, "/WEB-INF/classes",
+                new File("test/webresources/dir2").getAbsolutePath(), "/");
+        // Not mounted at /WEB-INF/classes so can't be indexed
+        dir1 = new JarResourceSet(root, "/WEB-INF/classes/dir1",
+                new File("test/webresources/dir1.jar").getAbsolutePath(), "/");
+
+        resourceSets.addAll(Arrays.asList(jar, internal, dir2, dir1));
+        for (WebResourceSet resourceSet : resourceSets) {
+            resourceSet.start();
+        }
+    }
+
+
+    @After
+    public void tearDown() throws Exception {
+        for (WebResourceSet resourceSet : resourceSets) {
+            resourceSet.destroy();
+        }
+    }
+
+
+    @Test
+    public void testLookupSerial() throws Exception {
+        doTestLookup(new ClassResourceIndex(resourceSets, null));
+    }
+
+
+    @Test
+    public void testLookupParallel() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            doTestLookup(new ClassResourceIndex(resourceSets, executor));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+
+    private void doTestLookup(ClassResourceIndex index) {
+        // Not class loader resources
+        Assert.assertEquals(resourceSets, index.getResourceSets("/index.html"));
+        Assert.assertEquals(resourceSets, index.getResourceSets("/WEB-INF/classes/"));
+        Assert.assertEquals(resourceSets, index.getResourceSets("/WEB-INF/classesX/f1.txt"));
+
+        // Top-level entries
+        Assert.assertEquals(resourceSets, index.getResourceSets("/WEB-INF/classes/f1.txt"));
+        Assert.assertEquals(resourceSets, index.getResourceSets("/WEB-INF/classes/d1"));
+        Assert.assertEquals(resourceSets, index.getResourceSets("/WEB-INF/classes/d2/"));
+
+        Assert.assertEquals(Arrays.asList(jar, dir2, dir1),
+                index.getResourceSets("/WEB-INF/classes/d1/d1-f1.txt"));
+        Assert.assertEquals(Arrays.asList(jar, dir2, dir1),
+                index.getResourceSets("/WEB-INF/classes/d2/d2-f1.txt"));
+        Assert.assertEquals(Arrays.asList(internal, dir2, dir1),
+                index.getResourceSets("/WEB-INF/classes/dir1/f1.txt"));
+        Assert.assertEquals(Arrays.asList(internal, dir2, dir1),
+                index.getResourceSets("/WEB-INF/classes/dir1/d1/d1-f1.txt"));
+
+        // Only the resource sets that can't be indexed need to be checked
+        Assert.assertEquals(Arrays.asList(dir2, dir1),
+                index.getResourceSets("/WEB-INF/classes/org/apache/Foo.class"));
+    }
+
+
+    @Test
+    public void testEmpty() throws Exception {
+        ClassResourceIndex index = new ClassResourceIndex(Collections.emptyList(), null);
+        Assert.assertTrue(index.getResourceSets("/WEB-INF/classes/org/apache/Foo.class").isEmpty());
+    }
+}
@@ -0,0 +1,83 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  See the NOTICE file distributed with
+ *  this work for additional information regarding copyright ownership.
+ *  The ASF licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.coyote;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import org.junit.runners.Parameterized.Parameter;
+
+@RunWith(Parameterized.class)
+public class TestCompressionConfigEncodings {
+
+    @Parameterized.Parameters(name = "{index}: encodings[{0}], accept-encoding[{1}], expected[{2}]")
+    public static Collection<Object[]> parameters() {
+        List<Object[]> parameterSets = new ArrayList<>();
+
+        parameterSets.add(new Object[] { "gzip",           "gzip, br",                 "gzip" });
+        parameterSets.add(new Object[] { "gzip",           "br",                       null });
+        parameterSets.add(new Object[] { "br,zstd,gzip",   "gzip, br",                 "br" });
+        parameterSets.add(new Object[] { "br,zstd,gzip",   "gzip, zstd",               "zstd" });
+        parameterSets.add(new Object[] { "gzip,br",        "gzip, br",                 "gzip" });
+        parameterSets.add(new Object[] { "br,gzip",        "gzip;q=1, br;q=0.5",       "gzip" });
+        parameterSets.add(new Object[] { "br,gzip",        "GZIP;q=0.5, BR;q=0.8",     "br" });
+        parameterSets.add(new Object[] { "br,gzip",        "br;q=0, gzip",             "gzip" });
+        parameterSets.add(new Object[] { "br,gzip",        "br;q=0, gzip;q=0",         null });
+        parameterSets.add(new Object[] { "br,gzip",        "*",                        "br" });
+        parameterSets.add(new Object[] { "br,gzip",        "*;q=0.5, gzip",            "gzip" });
+        parameterSets.add(new Object[] { "br,gzip",        "*, br;q=0",                "gzip" });
+        parameterSets.add(new Object[] { "br,gzip",        "*;q=0",                    null });
+        parameterSets.add(new Object[] { "zstd:10, gzip:9", "zstd",                    "zstd" });
+
+        return parameterSets;
+    }
+
+    @Parameter(0)
+    public String encodings;
+    @Parameter(1)
+    public String acceptEncoding;
+    @Parameter(2)
+    public String expected;
+
+    @Test
+    public void testEncodingSelection() throws Exception {
+
+        CompressionConfig compressionConfig = new CompressionConfig();
+        // Skip length and MIME type checks
+        compressionConfig.setCompression("force");
+        compressionConfig.setCompressionEncodings(encodings);
+
+        Request request = new Request();
+        Response response = new Response();
+
+        request.getMimeHeaders().addValue("accept-encoding").setString(acceptEncoding);
+
+        CompressionEncoding selected = compressionConfig.getCompressionEncoding(request, response);
+        if (expected == null) {
+            Assert.assertNull(selected);
+            Assert.assertNull(response.getMimeHeaders().getHeader("Content-Encoding"));
+        } else {
+            Assert.assertEquals(expected, selected.getName());
+            Assert.assertEquals(expected, response.getMimeHeaders().getHeader("Content-Encoding"));
+        }
+    }
+}
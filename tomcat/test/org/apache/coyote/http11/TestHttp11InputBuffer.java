@@ -19,6 +19,7 @@ package org.apache.coyote.http11;
 
 import java.io.IOException;
 import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
 import java.util.Enumeration;
 
 import jakarta.servlet.ServletException;
@@ -35,6 +36,9 @@ import org.apache.catalina.startup.SimpleHttpClient;
 import org.apache.catalina.startup.TesterServlet;
 import org.apache.catalina.startup.Tomcat;
 import org.apache.catalina.startup.TomcatBaseTest;
+import org.apache.coyote.Request;
+import org.apache.tomcat.util.http.MimeHeaders;
+import org.apache.tomcat.util.http.parser.HttpParser;
 
 public class TestHttp11InputBuffer extends TomcatBaseTest {
 
@@ -766,4 +770,87 @@ public class TestHttp11InputBuffer extends TomcatBaseTest {
             return true;
         }
     }
+
+
+    /*
+     * The request line and headers must be parsed the same way regardless of
+     * how the data is split across reads. This exercises the boundaries of the
+     * fast paths used to parse the request target, header names and header
+     * values.
+     */
+    @Test
+    public void testParseSplit() throws Exception {
+        String requestText =
+                "GET /foo/bar/a-much-longer-path-segment?a=b&c=d%20e HTTP/1.1" + CRLF +
+                "Host: localhost:8080" + CRLF +
+                "X-TRAILING: value with trailing spaces   " + CRLF +
+                "X-Tabs:\tvalue\twith\ttabs\t " + CRLF +
+                "x-fold: first line" + CRLF +
+                "  continued line" + CRLF +
+                "X-Obs-Text: caf\u00e9 cr\u00e8me" + CRLF +
+                "X-Empty:" + CRLF +
+                "X-Spaces:       " + CRLF +
+                "X-Long: 0123456789abcdefghijklmnopqrstuvwxyzABCDEFGHIJKLMNOPQRSTUVWXYZ" + CRLF +
+                CRLF;
+        byte[] data = requestText.getBytes(StandardCharsets.ISO_8859_1);
+
+        Request expected = parse(data);
+        Assert.assertEquals("/foo/bar/a-much-longer-path-segment", expected.requestURI().toString());
+        Assert.assertEquals("a=b&c=d%20e", expected.queryString().toString());
+        MimeHeaders headers = expected.getMimeHeaders();
+        Assert.assertEquals("value with trailing spaces", headers.getHeader("x-trailing"));
+        Assert.assertEquals("value\twith\ttabs", headers.getHeader("x-tabs"));
+        Assert.assertEquals("first line continued line", headers.getHeader("x-fold"));
+        Assert.assertEquals("caf\u00e9 cr\u00e8me", headers.getHeader("x-obs-text"));
+        Assert.assertEquals("", headers.getHeader("x-empty"));
+        Assert.assertEquals("", headers.getHeader("x-spaces"));
+        Assert.assertEquals("x-long", headers.getName(7).toString());
+
+        for (int split = 1; split < data.length; split++) {
+            byte[] first = new byte[split];
+            byte[] second = new byte[data.length - split];
+            System.arraycopy(data, 0, first, 0, split);
+            System.arraycopy(data, split, second, 0, second.length);
+            assertSameRequest(expected, parse(first, second));
+        }
+
+        byte[][] bytes = new byte[data.length][];
+        for (int i = 0; i < data.length; i++) {
+            bytes[i] = new byte[] { data[i] };
+        }
+        assertSameRequest(expected, parse(bytes));
+    }
+
+
+    private static Request parse(byte[]... chunks) throws IOException {
+        Request request = new Request();
+        Http11InputBuffer inputBuffer =
+                new Http11InputBuffer(request, 8192, true, new HttpParser(null, null));
+        TesterSocketWrapper socketWrapper = new TesterSocketWrapper(8192);
+        socketWrapper.setData(chunks);
+        inputBuffer.init(socketWrapper);
+        int reads = 0;
+        while (!inputBuffer.parseRequestLine(false, 0, 0)) {
+            Assert.assertTrue(reads++ < chunks.length);
+        }
+        while (!inputBuffer.parseHeaders()) {
+            Assert.assertTrue(reads++ < chunks.length);
+        }
+        return request;
+    }
+
+
+    private static void assertSameRequest(Request expected, Request actual) {
+        Assert.assertEquals(expected.method().toString(), actual.method().toString());
+        Assert.assertEquals(expected.requestURI().toString(), actual.requestURI().toString());
+        Assert.assertEquals(expected.queryString().toString(), actual.queryString().toString());
+        Assert.assertEquals(expected.protocol().toString(), actual.protocol().toString());
+        MimeHeaders expectedHeaders = expected.getMimeHeaders();
+        MimeHeaders actualHeaders = actual.getMimeHeaders();
+        Assert.assertEquals(expectedHeaders.size(), actualHeaders.size());
+        for (int i = 0; i < expectedHeaders.size(); i++) {
+            Assert.assertEquals(expectedHeaders.getName(i).toString(), actualHeaders.getName(i).toString());
+            Assert.assertEquals(expectedHeaders.getValue(i).toString(), actualHeaders.getValue(i).toString());
+        }
+    }
 }
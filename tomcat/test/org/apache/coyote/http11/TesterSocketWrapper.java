@@ -0,0 +1,186 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  See the NOTICE file distributed with
+ *  this work for additional information regarding copyright ownership.
+ *  The ASF licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.coyote.http11;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.CompletionHandler;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.tomcat.util.net.ApplicationBufferHandler;
+import org.apache.tomcat.util.net.NioChannel;
+import org.apache.tomcat.util.net.NioEndpoint;
+import org.apache.tomcat.util.net.SSLSupport;
+import org.apache.tomcat.util.net.SendfileDataBase;
+import org.apache.tomcat.util.net.SendfileState;
+import org.apache.tomcat.util.net.SocketBufferHandler;
+import org.apache.tomcat.util.net.SocketWrapperBase;
+
+/**
+ * A socket wrapper that returns pre-defined data from non-blocking reads
+ * without any network I/O. Each chunk is returned by a separate read so tests
+ * can control how the data is split across reads. Once all the chunks have
+ * been returned, reads return zero bytes.
+ */
+public class TesterSocketWrapper extends SocketWrapperBase<NioChannel> {
+
+    private byte[][] chunks;
+    private int chunkIndex;
+    private int chunkOffset;
+
+
+    public TesterSocketWrapper(int readBufferSize) {
+        super(null, new NioEndpoint());
+        socketBufferHandler = new SocketBufferHandler(readBufferSize, 0, false);
+    }
+
+
+    public void setData(byte[]... chunks) {
+        this.chunks = chunks;
+        chunkIndex = 0;
+        chunkOffset = 0;
+    }
+
+
+    @Override
+    public int read(boolean block, ByteBuffer to) throws IOException {
+        while (chunkIndex < chunks.length && chunkOffset == chunks[chunkIndex].length) {
+            chunkIndex++;
+            chunkOffset = 0;
+        }
+        if (chunkIndex == chunks.length) {
+            return 0;
+        }
+        byte[] chunk = chunks[chunkIndex];
+        int len = Math.min(to.remaining(), chunk.length - chunkOffset);
+        to.put(chunk, chunkOffset, len);
+        chunkOffset += len;
+        return len;
+    }
+
+
+    @Override
+    public int read(boolean block, byte[] b, int off, int len) throws IOException {
+        return read(block, ByteBuffer.wrap(b, off, len));
+    }
+
+
+    @Override
+    public boolean isReadyForRead() throws IOException {
+        return chunkIndex < chunks.length;
+    }
+
+
+    @Override
+    public void setAppReadBufHandler(ApplicationBufferHandler handler) {
+        // NO-OP
+    }
+
+
+    @Override
+    protected void populateRemoteHost() {
+        // NO-OP
+    }
+
+
+    @Override
+    protected void populateRemoteAddr() {
+        // NO-OP
+    }
+
+
+    @Override
+    protected void populateRemotePort() {
+        // NO-OP
+    }
+
+
+    @Override
+    protected void populateLocalName() {
+        // NO-OP
+    }
+
+
+    @Override
+    protected void populateLocalAddr() {
+        // NO-OP
+    }
+
+
+    @Override
+    protected void populateLocalPort() {
+        // NO-OP
+    }
+
+
+    @Override
+    protected void doClose() {
+        // NO-OP
+    }
+
+
+    @Override
+    protected void doWrite(boolean block, ByteBuffer from) throws IOException {
+        throw new UnsupportedOperationException();
+    }
+
+
+    @Override
+    public void registerReadInterest() {
+        // NO-OP
+    }
+
+
+    @Override
+    public void registerWriteInterest() {
+        // NO-OP
+    }
+
+
+    @Override
+    public SendfileDataBase createSendfileData(String filename, long pos, long length) {
+        throw new UnsupportedOperationException();
+    }
+
+
+    @Override
+    public SendfileState processSendfile(SendfileDataBase sendfileData) {
+        throw new UnsupportedOperationException();
+    }
+
+
+    @Override
+    public void doClientAuth(SSLSupport sslSupport) throws IOException {
+        throw new UnsupportedOperationException();
+    }
+
+
+    @Override
+    public SSLSupport getSslSupport(String clientCertProvider) {
+        return null;
+    }
+
+
+    @Override
+    protected <A> OperationState<A> newOperationState(boolean read, ByteBuffer[] buffers,
+            int offset, int length, BlockingMode block, long timeout, TimeUnit unit,
+            A attachment, CompletionCheck check, CompletionHandler<Long, ? super A> handler,
+            Semaphore semaphore, VectoredIOCompletionHandler<A> completion) {
+        throw new UnsupportedOperationException();
+    }
+}
@@ -0,0 +1,230 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  See the NOTICE file distributed with
+ *  this work for additional information regarding copyright ownership.
+ *  The ASF licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.coyote.http11.filters;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.zip.GZIPInputStream;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import org.apache.coyote.BrotliCompressionEncoding;
+import org.apache.coyote.CompressionEncoding;
+import org.apache.coyote.GzipCompressionEncoding;
+import org.apache.coyote.Response;
+import org.apache.coyote.ZstdCompressionEncoding;
+import org.apache.tomcat.util.compress.TesterBrotliDecoder;
+import org.apache.tomcat.util.compress.TesterZstdDecoder;
+
+public class TestCompressionOutputFilter {
+
+    private static final byte[] DATA;
+
+    static {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 2000; i++) {
+            sb.append("<tr><td>Row ");
+            sb.append(i);
+            sb.append("</td><td>Hello there tomcat developers</td></tr>\n");
+        }
+        DATA = sb.toString().getBytes(StandardCharsets.US_ASCII);
+    }
+
+
+    @Test
+    public void testGzip() throws Exception {
+        GzipCompressionEncoding encoding = new GzipCompressionEncoding();
+        encoding.setLevel(9);
+        byte[] compressed = compress(encoding, DATA, false);
+        Assert.assertArrayEquals(DATA, gunzip(compressed));
+    }
+
+
+    @Test
+    public void testReadOnlyDirectBuffer() throws Exception {
+        ByteBuffer direct = ByteBuffer.allocateDirect(DATA.length);
+        direct.put(DATA);
+        direct.flip();
+        byte[] compressed = compress(new GzipCompressionEncoding(), direct.asReadOnlyBuffer(), false);
+        Assert.assertArrayEquals(DATA, gunzip(compressed));
+    }
+
+
+    @Test
+    public void testBrotli() throws Exception {
+        byte[] compressed = compress(new BrotliCompressionEncoding(), DATA, false);
+        Assert.assertTrue(compressed.length < DATA.length / 10);
+        Assert.assertArrayEquals(DATA, TesterBrotliDecoder.decode(compressed));
+    }
+
+
+    @Test
+    public void testZstd() throws Exception {
+        byte[] compressed = compress(new ZstdCompressionEncoding(), DATA, false);
+        Assert.assertTrue(compressed.length < DATA.length / 10);
+        // Frame magic number
+        Assert.assertEquals((byte) 0x28, compressed[0]);
+        Assert.assertEquals((byte) 0xB5, compressed[1]);
+        Assert.assertEquals((byte) 0x2F, compressed[2]);
+        Assert.assertEquals((byte) 0xFD, compressed[3]);
+        Assert.assertArrayEquals(DATA, TesterZstdDecoder.decode(compressed));
+    }
+
+
+    @Test
+    public void testBrotliSizes() throws Exception {
+        for (byte[] data : testData()) {
+            byte[] compressed = compress(new BrotliCompressionEncoding(), data, false);
+            Assert.assertArrayEquals(data, TesterBrotliDecoder.decode(compressed));
+        }
+    }
+
+
+    @Test
+    public void testZstdSizes() throws Exception {
+        for (byte[] data : testData()) {
+            byte[] compressed = compress(new ZstdCompressionEncoding(), data, false);
+            Assert.assertArrayEquals(data, TesterZstdDecoder.decode(compressed));
+        }
+    }
+
+
+    @Test
+    public void testEmptyBrotli() throws Exception {
+        byte[] compressed = compress(new BrotliCompressionEncoding(), new byte[0], false);
+        Assert.assertEquals(0, TesterBrotliDecoder.decode(compressed).length);
+    }
+
+
+    @Test
+    public void testEmptyZstd() throws Exception {
+        byte[] compressed = compress(new ZstdCompressionEncoding(), new byte[0], false);
+        Assert.assertEquals(0, TesterZstdDecoder.decode(compressed).length);
+    }
+
+
+    @Test
+    public void testFlushBrotli() throws Exception {
+        byte[] d = "Hello there tomcat developers".getBytes(StandardCharsets.US_ASCII);
+        byte[] flushed = compress(new BrotliCompressionEncoding(), d, true);
+        // All the data should have been written by the flush. The stream is
+        // incomplete so decode it with an empty last meta-block appended.
+        byte[] complete = Arrays.copyOf(flushed, flushed.length + 1);
+        complete[flushed.length] = 0x03;
+        Assert.assertArrayEquals(d, TesterBrotliDecoder.decode(complete));
+    }
+
+
+    @Test
+    public void testFlushZstd() throws Exception {
+        byte[] d = "Hello there tomcat developers".getBytes(StandardCharsets.US_ASCII);
+        byte[] flushed = compress(new ZstdCompressionEncoding(), d, true);
+        // All the data should have been written by the flush. The frame is
+        // incomplete so decode it with an empty last raw block appended.
+        byte[] complete = Arrays.copyOf(flushed, flushed.length + 3);
+        complete[flushed.length] = 0x01;
+        Assert.assertArrayEquals(d, TesterZstdDecoder.decode(complete));
+    }
+
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidLevel() {
+        new BrotliCompressionEncoding().setLevel(12);
+    }
+
+
+    /*
+     * Bodies from empty to several times the block size of the encoders.
+     */
+    private static List<byte[]> testData() {
+        List<byte[]> result = new ArrayList<>();
+        result.add(new byte[0]);
+        result.add(new byte[] { 'a' });
+        result.add(Arrays.copyOf(DATA, 100));
+        result.add(Arrays.copyOf(DATA, 70000));
+
+        // Text with a limited vocabulary so there are matches at all
+        // distances and random bytes that will not compress
+        String[] words = { "tomcat ", "servlet ", "connector ", "the ", "request ",
+                "response ", "<td>", "</td>", "\n", "compression ", "a ", "of " };
+        Random random = new Random(42);
+        StringBuilder sb = new StringBuilder();
+        while (sb.length() < 600 * 1024) {
+            sb.append(words[random.nextInt(words.length)]);
+            if (random.nextInt(50) == 0) {
+                sb.append(random.nextInt());
+            }
+        }
+        byte[] text = sb.toString().getBytes(StandardCharsets.US_ASCII);
+        byte[] noise = new byte[200 * 1024];
+        random.nextBytes(noise);
+        byte[] mixed = Arrays.copyOf(text, text.length + noise.length + DATA.length);
+        System.arraycopy(noise, 0, mixed, text.length, noise.length);
+        System.arraycopy(DATA, 0, mixed, text.length + noise.length, DATA.length);
+        result.add(mixed);
+        return result;
+    }
+
+
+    private static byte[] compress(CompressionEncoding encoding, byte[] data, boolean flushOnly)
+            throws IOException {
+        return compress(encoding, ByteBuffer.wrap(data), flushOnly);
+    }
+
+
+    private static byte[] compress(CompressionEncoding encoding, ByteBuffer data, boolean flushOnly)
+            throws IOException {
+        Response res = new Response();
+        TesterOutputBuffer tob = new TesterOutputBuffer(res, 8 * 1024);
+        res.setOutputBuffer(tob);
+
+        CompressionOutputFilter filter = new CompressionOutputFilter();
+        filter.setEncoding(encoding);
+        tob.addFilter(filter);
+        tob.addActiveFilter(filter);
+
+        tob.doWrite(data);
+        if (flushOnly) {
+            tob.flush();
+        } else {
+            tob.end();
+        }
+        return tob.toByteArray();
+    }
+
+
+    private static byte[] gunzip(byte[] compressed) throws IOException {
+        ByteArrayOutputStream result = new ByteArrayOutputStream();
+        try (InputStream is = new GZIPInputStream(new ByteArrayInputStream(compressed))) {
+            byte[] buf = new byte[8192];
+            int read;
+            while ((read = is.read(buf)) > 0) {
+                result.write(buf, 0, read);
+            }
+        }
+        return result.toByteArray();
+    }
+}
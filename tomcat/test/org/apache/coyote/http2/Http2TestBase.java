@@ -182,6 +182,22 @@ public abstract class Http2TestBase extends TomcatBaseTest {
     }
 
 
+    protected void sendGetRequest(int streamId, String url, String priority) throws IOException {
+        byte[] frameHeader = new byte[9];
+        ByteBuffer headersPayload = ByteBuffer.allocate(128);
+
+        List<Header> headers = new ArrayList<>(5);
+        headers.add(new Header(":method", "GET"));
+        headers.add(new Header(":scheme", "http"));
+        headers.add(new Header(":path", url));
+        headers.add(new Header(":authority", "localhost:" + getPort()));
+        headers.add(new Header("priority", priority));
+
+        buildGetRequest(frameHeader, headersPayload, null, headers, streamId);
+        writeFrame(frameHeader, headersPayload);
+    }
+
+
     protected void buildEmptyGetRequest(byte[] frameHeader, ByteBuffer headersPayload,
             byte[] padding, int streamId) {
         buildGetRequest(frameHeader, headersPayload, padding, streamId, "/empty");
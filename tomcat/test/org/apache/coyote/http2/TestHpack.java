@@ -70,6 +70,36 @@ public class TestHpack {
         Assert.assertEquals("value2", headers2.getHeader("header2"));
     }
 
+    @Test
+    public void testLiteralCache() throws Exception {
+        // No dynamic table so every header is written as a literal
+        HpackEncoder encoder = new HpackEncoder();
+        encoder.setMaxTableSize(0);
+        HpackDecoder decoder = new HpackDecoder();
+        MimeHeaders headers2 = new MimeHeaders();
+        ByteBuffer output = ByteBuffer.allocate(512);
+
+        for (int i = 0; i < 200; i++) {
+            MimeHeaders headers = new MimeHeaders();
+            headers.setValue(":status").setString("200");
+            headers.setValue("content-type").setString("text/html;charset=UTF-8");
+            headers.setValue("x-custom-header").setString("value-" + (i % 80));
+            headers.setValue("date").setString(i < 100 ?
+                    "Sun, 06 Nov 1994 08:49:37 GMT" : "Sun, 06 Nov 1994 08:49:38 GMT");
+            output.clear();
+            Assert.assertEquals(HpackEncoder.State.COMPLETE, encoder.encode(headers, output));
+            output.flip();
+            headers2.recycle();
+            // Resets the header count for each block
+            decoder.setHeaderEmitter(new HeadersListener(headers2));
+            decoder.decode(output);
+            Assert.assertEquals("200", headers2.getHeader(":status"));
+            Assert.assertEquals("text/html;charset=UTF-8", headers2.getHeader("content-type"));
+            Assert.assertEquals("value-" + (i % 80), headers2.getHeader("x-custom-header"));
+            Assert.assertEquals(headers.getHeader("date"), headers2.getHeader("date"));
+        }
+    }
+
     private static class HeadersListener implements HpackDecoder.HeaderEmitter {
         private final MimeHeaders headers;
         public HeadersListener(MimeHeaders headers) {
@@ -0,0 +1,74 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  See the NOTICE file distributed with
+ *  this work for additional information regarding copyright ownership.
+ *  The ASF licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.coyote.http2;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests for the allocation of the connection flow control window using
+ * <a href="https://www.rfc-editor.org/rfc/rfc9218">RFC 9218</a> extensible
+ * priorities.
+ */
+public class TestRfc9218 extends Http2TestBase {
+
+    @Test
+    public void testUrgency() throws Exception {
+        http2Connect();
+
+        http2Protocol.setUseExtensiblePriorities(true);
+        // This test uses small window updates that will trigger the excessive
+        // overhead protection so disable it.
+        http2Protocol.setOverheadWindowUpdateThreshold(0);
+        http2Protocol.setOverheadDataThreshold(0);
+
+        // Default connection window size is 64k - 1. Initial request will have
+        // used 8k leaving 56k - 1. Increase it to 56k.
+        sendWindowUpdate(0, 1);
+
+        // Use up all of the connection window
+        for (int i = 3; i < 17; i += 2) {
+            sendSimpleGetRequest(i);
+            readSimpleGetResponse();
+        }
+        output.clearTrace();
+
+        // The large, less urgent request is sent first
+        sendGetRequest(17, "/large", "u=5");
+        sendGetRequest(19, "/simple", "u=1");
+
+        // Headers for both streams
+        parser.readFrame(true);
+        parser.readFrame(true);
+        output.clearTrace();
+
+        // Allow time for both streams to block waiting for an allocation from
+        // the connection window
+        Thread.sleep(500);
+
+        // Enough for the body of the simple request
+        sendWindowUpdate(0, 8192);
+
+        // The more urgent stream must complete before the less urgent stream
+        // receives any of the connection window
+        while (!output.getTrace().contains("19-EndOfStream")) {
+            parser.readFrame(true);
+        }
+        String trace = output.getTrace();
+        Assert.assertFalse(trace, trace.contains("17-Body"));
+    }
+}
@@ -0,0 +1,140 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  See the NOTICE file distributed with
+ *  this work for additional information regarding copyright ownership.
+ *  The ASF licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.coyote.http2;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+
+/**
+ * Measures how long small, urgent responses take to complete when they compete
+ * for the connection flow control window with concurrent bulk transfers on the
+ * same connection. The client releases the connection window in small
+ * increments so the result reflects how the server shares the window rather
+ * than the speed of the network.
+ */
+public class TesterHttp2PriorityPerformance extends Http2TestBase {
+
+    private static final int BULK_STREAMS = 3;
+    private static final int SMALL_STREAMS = 20;
+    private static final int WINDOW_INCREMENT = 4096;
+
+
+    @Test
+    public void testPriorityTree() throws Exception {
+        doTest(false);
+    }
+
+
+    @Test
+    public void testExtensiblePriorities() throws Exception {
+        doTest(true);
+    }
+
+
+    private void doTest(boolean useExtensiblePriorities) throws Exception {
+        http2Connect();
+
+        http2Protocol.setUseExtensiblePriorities(useExtensiblePriorities);
+        http2Protocol.setOverheadWindowUpdateThreshold(0);
+        http2Protocol.setOverheadDataThreshold(0);
+
+        // Use up all of the connection window (see TestRfc9218)
+        sendWindowUpdate(0, 1);
+        for (int i = 3; i < 17; i += 2) {
+            sendSimpleGetRequest(i);
+            readSimpleGetResponse();
+        }
+        output.clearTrace();
+
+        // Start the bulk transfers. Only the connection window limits them.
+        int streamId = 17;
+        for (int i = 0; i < BULK_STREAMS; i++) {
+            sendGetRequest(streamId, "/large", "u=4, i");
+            sendWindowUpdate(streamId, 1024 * 1024);
+            streamId += 2;
+        }
+
+        long[] durations = new long[SMALL_STREAMS];
+        long[] bulkBytes = new long[SMALL_STREAMS];
+        long granted = 0;
+        long received = 0;
+        for (int i = 0; i < SMALL_STREAMS; i++) {
+            long start = System.nanoTime();
+            sendGetRequest(streamId, "/simple", "u=1");
+            // Allow time for the stream to block waiting for an allocation
+            // from the connection window
+            Thread.sleep(20);
+
+            String endOfStream = streamId + "-EndOfStream";
+            String bodyPrefix = streamId + "-Body-";
+            // Only count bulk bytes received before the last part of the small
+            // response
+            long pendingBulkBytes = 0;
+            boolean done = false;
+            while (!done) {
+                if (received >= granted) {
+                    sendWindowUpdate(0, WINDOW_INCREMENT);
+                    granted += WINDOW_INCREMENT;
+                }
+                parser.readFrame(true);
+                for (String line : output.getTrace().split("\n")) {
+                    int bodyIndex = line.indexOf("-Body-");
+                    if (bodyIndex > -1) {
+                        int size = Integer.parseInt(line.substring(bodyIndex + 6));
+                        received += size;
+                        if (line.startsWith(bodyPrefix)) {
+                            bulkBytes[i] += pendingBulkBytes;
+                            pendingBulkBytes = 0;
+                        } else {
+                            pendingBulkBytes += size;
+                        }
+                    } else if (line.equals(endOfStream)) {
+                        done = true;
+                    }
+                }
+                output.clearTrace();
+            }
+            durations[i] = System.nanoTime() - start;
+            streamId += 2;
+
+            // Read anything still in flight so it is not counted against the
+            // next small stream
+            while (received < granted) {
+                parser.readFrame(true);
+                for (String line : output.getTrace().split("\n")) {
+                    int bodyIndex = line.indexOf("-Body-");
+                    if (bodyIndex > -1) {
+                        received += Integer.parseInt(line.substring(bodyIndex + 6));
+                    }
+                }
+                output.clearTrace();
+            }
+        }
+
+        Arrays.sort(durations);
+        long totalBulkBytes = 0;
+        for (long bytes : bulkBytes) {
+            totalBulkBytes += bytes;
+        }
+        System.out.println((useExtensiblePriorities ? "Extensible priorities" : "Priority tree") +
+                ": small stream completion p50 " + durations[SMALL_STREAMS / 2] / 1000 +
+                "us, p90 " + durations[SMALL_STREAMS * 9 / 10] / 1000 +
+                "us, max " + durations[SMALL_STREAMS - 1] / 1000 +
+                "us, bulk bytes received before completion " + totalBulkBytes / SMALL_STREAMS);
+    }
+}
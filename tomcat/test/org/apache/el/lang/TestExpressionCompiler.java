@@ -0,0 +1,355 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.el.lang;
+
+import java.beans.FeatureDescriptor;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+import jakarta.el.BeanELResolver;
+import jakarta.el.CompositeELResolver;
+import jakarta.el.ELContext;
+import jakarta.el.ELException;
+import jakarta.el.ELResolver;
+import jakarta.el.ExpressionFactory;
+import jakarta.el.PropertyNotFoundException;
+import jakarta.el.ValueExpression;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import org.apache.el.ExpressionFactoryImpl;
+import org.apache.el.TesterBeanA;
+import org.apache.el.TesterBeanAA;
+import org.apache.el.TesterBeanAAA;
+import org.apache.el.TesterBeanB;
+import org.apache.el.TesterBeanBB;
+import org.apache.el.TesterBeanBBB;
+import org.apache.jasper.el.ELContextImpl;
+import org.apache.jasper.el.JasperELResolver;
+
+public class TestExpressionCompiler {
+
+    private final ExpressionFactory factory = new ExpressionFactoryImpl();
+    private final ExpressionCompiler compiler = new ExpressionCompiler(2);
+    private ELContext context;
+
+    @Before
+    public void setUp() {
+        context = new ELContextImpl(
+                new JasperELResolver(new ArrayList<>(), factory.getStreamELResolver()));
+    }
+
+
+    @Test
+    public void testSameResults() {
+        TesterBeanB beanB = new TesterBeanB();
+        beanB.setName("Jasper");
+        TesterBeanA beanA = new TesterBeanA();
+        beanA.setName("Tomcat");
+        beanA.setBean(beanB);
+        beanA.setValLong(5);
+        beanA.setValList(Arrays.asList("x", "y"));
+        Map<String,Object> map = new HashMap<>();
+        map.put("key", "value");
+        map.put("nested", beanA);
+        setVariable("a", beanA);
+        setVariable("map", map);
+
+        String[] expressions = new String[] {
+                "${a.name}",
+                "${a.bean.name}",
+                "${a['name']}",
+                "${map.key}",
+                "${map.missing}",
+                "${map.nested.bean.name}",
+                "${a.valList[1]}",
+                "${a.valLong + 1}",
+                "${a.valLong * 2 > 9 ? 'big' : 'small'}",
+                "${not empty a.valList and a.valList[0] == 'x'}",
+                "${a.valLong le 4 or a.name ne null}",
+                "${a.name += '-' += map.key}",
+                "${a.bean.sayHello()}",
+                "Hello ${a.name} and ${a.bean.name}!",
+        };
+
+        for (String expression : expressions) {
+            Object expected = factory.createValueExpression(
+                    context, expression, Object.class).getValue(context);
+            for (int i = 0; i < 4; i++) {
+                Assert.assertEquals(expression, expected, getValue(expression));
+            }
+            Assert.assertTrue(expression, compiler.getExpression(expression).isCompiled());
+        }
+    }
+
+
+    @Test
+    public void testDeoptimize() {
+        // More classes than an inline cache holds
+        List<TesterBeanB> beans = new ArrayList<>();
+        beans.add(new TesterBeanB());
+        beans.add(new TesterBeanBB());
+        beans.add(new TesterBeanBBB());
+        TesterBeanA beanA = new TesterBeanA();
+        TesterBeanA beanAA = new TesterBeanAA();
+        TesterBeanA beanAAA = new TesterBeanAAA();
+
+        for (int i = 0; i < 3; i++) {
+            for (TesterBeanB bean : beans) {
+                bean.setName(bean.getClass().getSimpleName() + i);
+                setVariable("x", bean);
+                Assert.assertEquals(bean.getName(), getValue("${x.name}"));
+            }
+            for (TesterBeanA bean : new TesterBeanA[] { beanA, beanAA, beanAAA }) {
+                bean.setName(bean.getClass().getSimpleName() + i);
+                setVariable("x", bean);
+                Assert.assertEquals(bean.getName(), getValue("${x.name}"));
+            }
+            Map<String,String> map = new HashMap<>();
+            map.put("name", "map" + i);
+            setVariable("x", map);
+            Assert.assertEquals("map" + i, getValue("${x.name}"));
+        }
+        Assert.assertTrue(compiler.getExpression("${x.name}").isCompiled());
+
+        // Classes without the property are still rejected
+        setVariable("x", Integer.valueOf(1));
+        try {
+            getValue("${x.name}");
+            Assert.fail();
+        } catch (PropertyNotFoundException e) {
+            // Expected
+        }
+    }
+
+
+    @Test
+    public void testPropertyNotFound() {
+        setVariable("a", new TesterBeanA());
+        for (int i = 0; i < 4; i++) {
+            try {
+                getValue("${a.missing}");
+                Assert.fail();
+            } catch (PropertyNotFoundException e) {
+                // Expected
+            }
+        }
+        Assert.assertTrue(compiler.getExpression("${a.missing}").isCompiled());
+    }
+
+
+    @Test
+    public void testGetterException() {
+        setVariable("bean", new FailingBean());
+        for (int i = 0; i < 4; i++) {
+            try {
+                getValue("${bean.value}");
+                Assert.fail();
+            } catch (ELException e) {
+                Assert.assertTrue(e.getCause() instanceof IllegalStateException);
+            }
+        }
+    }
+
+
+    @Test
+    public void testFactoryProperties() {
+        Properties properties = new Properties();
+        properties.setProperty(ExpressionFactoryImpl.COMPILE, "true");
+        properties.setProperty(ExpressionFactoryImpl.COMPILE_THRESHOLD, "5");
+        ExpressionFactory compilingFactory = new ExpressionFactoryImpl(properties);
+
+        // Counts the calls that reach the resolver for non-null bases
+        CountingELResolver counter = new CountingELResolver();
+        CompositeELResolver resolver = new StandardCompositeELResolver();
+        resolver.add(counter);
+        resolver.add(new BeanELResolver());
+        ELContext context = new ELContextImpl(resolver);
+        TesterBeanB bean = new TesterBeanB();
+        bean.setName("Tomcat");
+        context.getVariableMapper().setVariable("bean",
+                compilingFactory.createValueExpression(bean, TesterBeanB.class));
+
+        for (int i = 0; i < 10; i++) {
+            ValueExpression ve = compilingFactory.createValueExpression(
+                    context, "${bean.name}", String.class);
+            Assert.assertEquals("Tomcat", ve.getValue(context));
+        }
+        // Only the interpreted evaluations used the resolver
+        Assert.assertEquals(5, counter.count);
+    }
+
+
+    @Test
+    public void testInvalidCompileThreshold() {
+        doTestInvalidCompileThreshold("invalid");
+        doTestInvalidCompileThreshold("0");
+        doTestInvalidCompileThreshold("-1");
+    }
+
+
+    private void doTestInvalidCompileThreshold(String threshold) {
+        Properties properties = new Properties();
+        properties.setProperty(ExpressionFactoryImpl.COMPILE, "true");
+        properties.setProperty(ExpressionFactoryImpl.COMPILE_THRESHOLD, threshold);
+        ExpressionFactory compilingFactory = new ExpressionFactoryImpl(properties);
+
+        CountingELResolver counter = new CountingELResolver();
+        CompositeELResolver resolver = new StandardCompositeELResolver();
+        resolver.add(counter);
+        resolver.add(new BeanELResolver());
+        ELContext context = new ELContextImpl(resolver);
+        TesterBeanB bean = new TesterBeanB();
+        bean.setName("Tomcat");
+        context.getVariableMapper().setVariable("bean",
+                compilingFactory.createValueExpression(bean, TesterBeanB.class));
+
+        for (int i = 0; i < 110; i++) {
+            ValueExpression ve = compilingFactory.createValueExpression(
+                    context, "${bean.name}", String.class);
+            Assert.assertEquals("Tomcat", ve.getValue(context));
+        }
+        // The default threshold is used
+        Assert.assertEquals(threshold, 100, counter.count);
+    }
+
+
+    @Test
+    public void testCustomResolver() {
+        TesterBeanB bean = new TesterBeanB();
+        bean.setName("Tomcat");
+        Map<String,String> map = new HashMap<>();
+        map.put("key", "value");
+        setVariable("bean", bean);
+        setVariable("map", map);
+
+        // Compile the expressions with the standard resolvers
+        for (int i = 0; i < 4; i++) {
+            Assert.assertEquals("Tomcat", getValue("${bean.name}"));
+            Assert.assertEquals("value", getValue("${map.key}"));
+        }
+        Assert.assertTrue(compiler.getExpression("${bean.name}").isCompiled());
+        Assert.assertTrue(compiler.getExpression("${map.key}").isCompiled());
+
+        // An application resolver that handles beans and maps is used first
+        List<ELResolver> appResolvers = new ArrayList<>();
+        appResolvers.add(new CustomELResolver());
+        JasperELResolver resolver =
+                new JasperELResolver(appResolvers, factory.getStreamELResolver());
+        Assert.assertFalse(resolver.isStandardPropertyResolution());
+        context = new ELContextImpl(resolver);
+        setVariable("bean", bean);
+        setVariable("map", map);
+
+        for (int i = 0; i < 4; i++) {
+            Assert.assertEquals("custom-name", getValue("${bean.name}"));
+            Assert.assertEquals("custom-key", getValue("${map.key}"));
+        }
+    }
+
+
+    private void setVariable(String name, Object value) {
+        context.getVariableMapper().setVariable(name,
+                factory.createValueExpression(value, Object.class));
+    }
+
+
+    private Object getValue(String expression) {
+        ExpressionBuilder builder = new ExpressionBuilder(expression, context);
+        return builder.createValueExpression(Object.class, compiler).getValue(context);
+    }
+
+
+    public static class FailingBean {
+        public String getValue() {
+            throw new IllegalStateException();
+        }
+    }
+
+
+    /*
+     * Reports standard resolution. That is only correct for the tests that use
+     * it as the CountingELResolver never resolves a property.
+     */
+    private static class StandardCompositeELResolver extends CompositeELResolver
+            implements StandardPropertyResolution {
+
+        @Override
+        public boolean isStandardPropertyResolution() {
+            return true;
+        }
+    }
+
+
+    private static class CustomELResolver extends CountingELResolver {
+
+        @Override
+        public Object getValue(ELContext context, Object base, Object property) {
+            if (base instanceof Map<?,?> || base instanceof TesterBeanB) {
+                context.setPropertyResolved(base, property);
+                return "custom-" + property;
+            }
+            return null;
+        }
+    }
+
+
+    private static class CountingELResolver extends ELResolver {
+
+        private int count;
+
+        @Override
+        public Object getValue(ELContext context, Object base, Object property) {
+            if (base != null) {
+                count++;
+            }
+            return null;
+        }
+
+        @Override
+        public Class<?> getType(ELContext context, Object base, Object property) {
+            return null;
+        }
+
+        @Override
+        public void setValue(ELContext context, Object base, Object property, Object value) {
+            // NO-OP
+        }
+
+        @Override
+        public boolean isReadOnly(ELContext context, Object base, Object property) {
+            return false;
+        }
+
+        @Override
+        public Iterator<FeatureDescriptor> getFeatureDescriptors(ELContext context, Object base) {
+            return null;
+        }
+
+        @Override
+        public Class<?> getCommonPropertyType(ELContext context, Object base) {
+            return null;
+        }
+    }
+}
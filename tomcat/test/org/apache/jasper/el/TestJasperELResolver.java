@@ -65,6 +65,8 @@ public class TestJasperELResolver {
                 ((ELResolver[])getField("resolvers", resolver)).length);
         Assert.assertEquals(Integer.valueOf(9 + adjustedForGraalCount),
                 Integer.valueOf(((AtomicInteger) getField("resolversSize", resolver)).get()));
+        Assert.assertEquals(Boolean.valueOf(count == 0 && !JspRuntimeLibrary.GRAAL),
+                Boolean.valueOf(resolver.isStandardPropertyResolution()));
     }
 
     private static final Object getField(String name, Object target)
@@ -0,0 +1,115 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jasper.runtime;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import jakarta.servlet.ServletConfig;
+import jakarta.servlet.http.HttpServletResponse;
+import jakarta.servlet.jsp.tagext.Tag;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import org.apache.catalina.Context;
+import org.apache.catalina.Wrapper;
+import org.apache.catalina.startup.Tomcat;
+import org.apache.catalina.startup.TomcatBaseTest;
+import org.apache.tomcat.unittest.tags.Bug53545;
+import org.apache.tomcat.util.buf.ByteChunk;
+
+public class TestConcurrentTagHandlerPool extends TomcatBaseTest {
+
+    @Test
+    public void testReuse() throws Exception {
+        TagHandlerPool pool = createPool();
+
+        Tag first = pool.get(Bug53545.class);
+        pool.reuse(first);
+        Assert.assertSame(first, pool.get(Bug53545.class));
+
+        // More handlers than the thread's slot and the default maximum size
+        // of the shared stack can hold
+        Set<Tag> handlers = new HashSet<>();
+        for (int i = 0; i < 10; i++) {
+            handlers.add(pool.get(Bug53545.class));
+        }
+        Assert.assertEquals(10, handlers.size());
+        for (Tag handler : handlers) {
+            pool.reuse(handler);
+        }
+
+        // Only the pooled handlers are returned before new ones are created
+        int reused = 0;
+        for (int i = 0; i < 10; i++) {
+            if (handlers.contains(pool.get(Bug53545.class))) {
+                reused++;
+            }
+        }
+        Assert.assertEquals(6, reused);
+
+        pool.release();
+    }
+
+
+    @Test
+    public void testNoPooling() throws Exception {
+        Tomcat tomcat = getTomcatInstanceTestWebapp(false, false);
+        Context ctx = (Context) tomcat.getHost().findChildren()[0];
+        ctx.addParameter(TagHandlerPool.OPTION_MAXSIZE, "0");
+        tomcat.start();
+
+        TagHandlerPool pool = new ConcurrentTagHandlerPool();
+        pool.init(((Wrapper) ctx.findChild("jsp")).getServlet().getServletConfig());
+
+        Tag first = pool.get(Bug53545.class);
+        pool.reuse(first);
+        Assert.assertNotSame(first, pool.get(Bug53545.class));
+
+        pool.release();
+    }
+
+
+    @Test
+    public void testJsp() throws Exception {
+        Tomcat tomcat = getTomcatInstanceTestWebapp(false, false);
+        Context ctx = (Context) tomcat.getHost().findChildren()[0];
+        ctx.addParameter(TagHandlerPool.OPTION_TAGPOOL,
+                ConcurrentTagHandlerPool.class.getName());
+        tomcat.start();
+
+        ByteChunk res = new ByteChunk();
+        int rc = getUrl("http://localhost:" + getPort() +
+                "/test/bug5nnnn/bug53545.jsp", res, null);
+        Assert.assertEquals(HttpServletResponse.SC_OK, rc);
+        Assert.assertTrue(res.toString().contains("OK"));
+
+        ServletConfig config = ((Wrapper) ctx.findChild("jsp")).getServlet().getServletConfig();
+        Assert.assertTrue(TagHandlerPool.getTagHandlerPool(config) instanceof
+                ConcurrentTagHandlerPool);
+    }
+
+
+    private TagHandlerPool createPool() throws Exception {
+        Tomcat tomcat = getTomcatInstanceTestWebapp(false, true);
+        Wrapper w = (Wrapper) tomcat.getHost().findChildren()[0].findChild("jsp");
+        TagHandlerPool pool = new ConcurrentTagHandlerPool();
+        pool.init(w.getServlet().getServletConfig());
+        return pool;
+    }
+}
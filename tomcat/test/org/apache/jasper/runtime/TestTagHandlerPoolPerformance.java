@@ -51,6 +51,33 @@ public class TestTagHandlerPoolPerformance extends TomcatBaseTest {
     }
 
 
+    /*
+     * Reports the tags per second for each pool implementation with 1 to 64
+     * threads. Each run performs 32,000,000 get/reuse pairs in total.
+     */
+    @Test
+    public void testTagsPerSecond() throws Exception {
+        Tomcat tomcat = getTomcatInstanceTestWebapp(false, true);
+
+        Wrapper w = (Wrapper) tomcat.getHost().findChildren()[0].findChild("jsp");
+        TagHandlerPool[] pools = new TagHandlerPool[] {
+                new TagHandlerPool(), new ConcurrentTagHandlerPool() };
+
+        for (TagHandlerPool tagHandlerPool : pools) {
+            tagHandlerPool.init(w.getServlet().getServletConfig());
+            for (int i = 1; i <= 64; i *= 2) {
+                int iterations = 32000000 / i;
+                TesterThreadedPerformance test = new TesterThreadedPerformance(
+                        i, iterations, new TestInstanceSupplier(tagHandlerPool));
+                long duration = test.doTest();
+                System.out.println(tagHandlerPool.getClass().getSimpleName() + ": " + i +
+                        " threads, " + (i * (long) iterations * 1000000000L / duration) +
+                        " tags/s");
+            }
+        }
+    }
+
+
     private static class TestInstanceSupplier implements Supplier<IntConsumer> {
 
         private final TagHandlerPool tagHandlerPool;
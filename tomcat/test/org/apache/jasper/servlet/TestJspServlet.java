@@ -18,7 +18,10 @@ package org.apache.jasper.servlet;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 
+import jakarta.servlet.ServletContext;
 import jakarta.servlet.ServletException;
 import jakarta.servlet.http.HttpServlet;
 import jakarta.servlet.http.HttpServletRequest;
@@ -28,6 +31,10 @@ import org.junit.Assert;
 import org.junit.Test;
 
 import org.apache.catalina.Context;
+import org.apache.catalina.Lifecycle;
+import org.apache.catalina.LifecycleEvent;
+import org.apache.catalina.Wrapper;
+import org.apache.catalina.startup.ContextConfig;
 import org.apache.catalina.startup.Tomcat;
 import org.apache.catalina.startup.TomcatBaseTest;
 import org.apache.tomcat.util.buf.ByteChunk;
@@ -95,6 +102,133 @@ public class TestJspServlet  extends TomcatBaseTest {
     }
 
 
+    @Test
+    public void testPrecompileOnStartup() throws Exception {
+        Tomcat tomcat = getTomcatInstance();
+
+        File appDir = new File(getTemporaryDirectory(), "precompile");
+        addDeleteOnTearDown(appDir);
+        File pageA = new File(appDir, "a.jsp");
+        File pageB = new File(appDir, "sub/b.jsp");
+        Assert.assertTrue(pageB.getParentFile().mkdirs());
+        writePage(pageA, "A1", 1000000000000L);
+        writePage(pageB, "B1", 1000000000000L);
+
+        Context context = addPrecompileWebapp(tomcat, appDir);
+        tomcat.start();
+
+        // Both pages are compiled without being requested
+        File workDir = (File) context.getServletContext().getAttribute(ServletContext.TEMPDIR);
+        File jspDir = new File(workDir, "org/apache/jsp");
+        File classA = new File(jspDir, "a_jsp.class");
+        File classB = new File(jspDir, "sub/b_jsp.class");
+        waitForClass(classA, pageA);
+        waitForClass(classB, pageB);
+        Assert.assertTrue(new File(jspDir, "a_jsp.hash").isFile());
+        Assert.assertTrue(new File(jspDir, "sub/b_jsp.hash").isFile());
+        assertPage("/test/a.jsp", "A1");
+
+        // A page with a new timestamp but the same content is not recompiled,
+        // a page with new content is
+        File javaA = new File(jspDir, "a_jsp.java");
+        File javaB = new File(jspDir, "sub/b_jsp.java");
+        Assert.assertTrue(javaA.setLastModified(1000000000000L));
+        Assert.assertTrue(javaB.setLastModified(1000000000000L));
+        writePage(pageA, "A1", 1100000000000L);
+        writePage(pageB, "B2", 1100000000000L);
+        context.reload();
+
+        waitForClass(classA, pageA);
+        waitForClass(classB, pageB);
+        Assert.assertEquals(1000000000000L, javaA.lastModified());
+        Assert.assertNotEquals(1000000000000L, javaB.lastModified());
+        assertPage("/test/a.jsp", "A1");
+        assertPage("/test/sub/b.jsp", "B2");
+    }
+
+
+    @Test
+    public void testPrecompileOnStartupRedeploy() throws Exception {
+        Tomcat tomcat = getTomcatInstance();
+
+        File appDir = new File(getTemporaryDirectory(), "precompile-redeploy");
+        addDeleteOnTearDown(appDir);
+        File page = new File(appDir, "a.jsp");
+        Assert.assertTrue(appDir.mkdirs());
+        writePage(page, "A1", 1000000000000L);
+
+        Context context = addPrecompileWebapp(tomcat, appDir);
+        tomcat.start();
+
+        File workDir = (File) context.getServletContext().getAttribute(ServletContext.TEMPDIR);
+        File jspDir = new File(workDir, "org/apache/jsp");
+        File classFile = new File(jspDir, "a_jsp.class");
+        File hashFile = new File(jspDir, "a_jsp.hash");
+        waitForClass(classFile, page);
+        Assert.assertTrue(hashFile.isFile());
+
+        // Undeploying deletes the work directory along with the class and the
+        // hash
+        tomcat.getHost().removeChild(context);
+        Assert.assertFalse(classFile.exists());
+        Assert.assertFalse(hashFile.exists());
+
+        // The redeployed page is compiled again, whether or not it changed
+        writePage(page, "A2", 1100000000000L);
+        context = addPrecompileWebapp(tomcat, appDir);
+        Assert.assertEquals(workDir, context.getServletContext().getAttribute(ServletContext.TEMPDIR));
+        waitForClass(classFile, page);
+        Assert.assertTrue(hashFile.isFile());
+        assertPage("/test/a.jsp", "A2");
+    }
+
+
+    /*
+     * The listener is passed to addWebapp() as the context is started as soon
+     * as it is added once Tomcat has started.
+     */
+    private static Context addPrecompileWebapp(Tomcat tomcat, File appDir) {
+        return tomcat.addWebapp(null, "/test", appDir.getAbsolutePath(), new ContextConfig() {
+            @Override
+            public void lifecycleEvent(LifecycleEvent event) {
+                super.lifecycleEvent(event);
+                // The JSP servlet is only added once the context has been
+                // configured
+                if (Lifecycle.CONFIGURE_START_EVENT.equals(event.getType())) {
+                    Wrapper jsp = (Wrapper) ((Context) event.getLifecycle()).findChild("jsp");
+                    jsp.addInitParameter("precompileOnStartup", "true");
+                    jsp.addInitParameter("precompileThreads", "2");
+                }
+            }
+        });
+    }
+
+
+    private static void writePage(File page, String content, long lastModified)
+            throws IOException {
+        Files.write(page.toPath(), content.getBytes(StandardCharsets.ISO_8859_1));
+        Assert.assertTrue(page.setLastModified(lastModified));
+    }
+
+
+    private static void waitForClass(File classFile, File page) throws InterruptedException {
+        int count = 0;
+        while (classFile.lastModified() != page.lastModified() && count < 300) {
+            Thread.sleep(100);
+            count++;
+        }
+        Assert.assertEquals(page.lastModified(), classFile.lastModified());
+    }
+
+
+    private void assertPage(String path, String expected) throws IOException {
+        ByteChunk res = new ByteChunk();
+        int rc = getUrl("http://localhost:" + getPort() + path, res, null);
+        Assert.assertEquals(HttpServletResponse.SC_OK, rc);
+        Assert.assertEquals(expected, res.toString().trim());
+    }
+
+
     private static class Bug56568aServlet extends HttpServlet {
 
         private static final long serialVersionUID = 1L;
@@ -0,0 +1,183 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.tomcat.util.buf;
+
+import java.nio.charset.StandardCharsets;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestStringCache {
+
+    private final StringCache cache = new StringCache();
+    private boolean byteEnabled;
+    private boolean charEnabled;
+    private int cacheSize;
+    private int trainThreshold;
+
+    @Before
+    public void setUp() {
+        byteEnabled = cache.getByteEnabled();
+        charEnabled = cache.getCharEnabled();
+        cacheSize = cache.getCacheSize();
+        trainThreshold = cache.getTrainThreshold();
+        cache.setByteEnabled(true);
+        cache.setCharEnabled(true);
+        cache.reset();
+    }
+
+
+    @After
+    public void tearDown() {
+        cache.setByteEnabled(byteEnabled);
+        cache.setCharEnabled(charEnabled);
+        cache.setTrainThreshold(trainThreshold);
+        cache.setCacheSize(cacheSize);
+        cache.reset();
+    }
+
+
+    @Test
+    public void testByteChunk() {
+        String first = toString("Content-Type");
+        String second = toString("Content-Type");
+        Assert.assertEquals("Content-Type", first);
+        Assert.assertSame(first, second);
+        Assert.assertEquals(2, cache.getAccessCount());
+        Assert.assertEquals(1, cache.getHitCount());
+        Assert.assertEquals(0.5, cache.getHitRatio(), 0.0001);
+        Assert.assertEquals(1, cache.getEntryCount());
+    }
+
+
+    @Test
+    public void testByteChunkCharset() {
+        byte[] bytes = "café".getBytes(StandardCharsets.UTF_8);
+        ByteChunk bc = new ByteChunk();
+        bc.setBytes(bytes, 0, bytes.length);
+        bc.setCharset(StandardCharsets.UTF_8);
+        Assert.assertEquals("café", bc.toString());
+        Assert.assertEquals("café", bc.toString());
+
+        // Same bytes, different charset must not be served from the cache
+        bc.setCharset(StandardCharsets.ISO_8859_1);
+        Assert.assertEquals(new String(bytes, StandardCharsets.ISO_8859_1), bc.toString());
+    }
+
+
+    @Test
+    public void testCharChunk() {
+        CharChunk cc = new CharChunk();
+        cc.setChars("xxAccept-Encodingxx".toCharArray(), 2, 15);
+        String first = cc.toString();
+        cc.setChars("Accept-Encoding".toCharArray(), 0, 15);
+        String second = cc.toString();
+        Assert.assertEquals("Accept-Encoding", first);
+        Assert.assertSame(first, second);
+        Assert.assertEquals(1, cache.getHitCount());
+    }
+
+
+    @Test
+    public void testDisabled() {
+        cache.setByteEnabled(false);
+        String first = toString("Content-Type");
+        String second = toString("Content-Type");
+        Assert.assertEquals(first, second);
+        Assert.assertNotSame(first, second);
+        Assert.assertEquals(0, cache.getAccessCount());
+    }
+
+
+    @Test
+    public void testAdapts() {
+        // A small cache forces every value to compete for the same slots
+        cache.setCacheSize(8);
+        cache.setTrainThreshold(200);
+
+        for (int i = 0; i < 20; i++) {
+            for (int j = 0; j < 8; j++) {
+                toString("old-" + j);
+            }
+        }
+        Assert.assertEquals(8, cache.getEntryCount());
+        for (int j = 0; j < 8; j++) {
+            Assert.assertSame(toString("old-" + j), toString("old-" + j));
+        }
+
+        // Values that are seen once must not displace popular values
+        for (int i = 0; i < 50; i++) {
+            toString("once-" + i);
+        }
+        for (int j = 0; j < 8; j++) {
+            Assert.assertSame(toString("old-" + j), toString("old-" + j));
+        }
+        Assert.assertEquals(0, cache.getEvictionCount());
+
+        // A value that becomes popular replaces one of them, once the
+        // recorded frequencies have aged
+        for (int i = 0; i < 400; i++) {
+            toString("new");
+        }
+        Assert.assertSame(toString("new"), toString("new"));
+        Assert.assertEquals(1, cache.getEvictionCount());
+        Assert.assertEquals(8, cache.getEntryCount());
+    }
+
+
+    @Test
+    public void testConcurrent() throws Exception {
+        final int threadCount = 4;
+        final String[] values = new String[500];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = "value-" + i;
+        }
+
+        final boolean[] failed = new boolean[threadCount];
+        Thread[] threads = new Thread[threadCount];
+        for (int i = 0; i < threadCount; i++) {
+            final int id = i;
+            threads[i] = new Thread(() -> {
+                for (int j = 0; j < 100000; j++) {
+                    // Skew the distribution so some values are popular
+                    String value = values[(j % 3 == 0 ? j + id : j % 10) % values.length];
+                    if (!value.equals(toString(value))) {
+                        failed[id] = true;
+                    }
+                }
+            });
+            threads[i].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        for (boolean f : failed) {
+            Assert.assertFalse(f);
+        }
+        Assert.assertTrue(cache.getHitCount() > 0);
+    }
+
+
+    private static String toString(String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.ISO_8859_1);
+        ByteChunk bc = new ByteChunk();
+        bc.setBytes(bytes, 0, bytes.length);
+        return bc.toString();
+    }
+}
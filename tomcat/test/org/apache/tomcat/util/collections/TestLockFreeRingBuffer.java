@@ -0,0 +1,187 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.tomcat.util.collections;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TestLockFreeRingBuffer {
+
+    @Test
+    public void testPollEmpty() {
+        LockFreeRingBuffer<Object> queue = new LockFreeRingBuffer<>(4);
+        Assert.assertNull(queue.poll());
+        Assert.assertEquals(0, queue.size());
+    }
+
+
+    @Test
+    public void testCapacity() {
+        Assert.assertEquals(2, new LockFreeRingBuffer<>(1).capacity());
+        Assert.assertEquals(8, new LockFreeRingBuffer<>(5).capacity());
+        Assert.assertEquals(8, new LockFreeRingBuffer<>(8).capacity());
+    }
+
+
+    @Test
+    public void testOfferPollFull() {
+        LockFreeRingBuffer<Integer> queue = new LockFreeRingBuffer<>(4);
+
+        // Several laps of the ring
+        for (int lap = 0; lap < 3; lap++) {
+            for (int i = 0; i < 4; i++) {
+                Assert.assertTrue(queue.offer(Integer.valueOf(i)));
+            }
+            Assert.assertFalse(queue.offer(Integer.valueOf(4)));
+            Assert.assertEquals(4, queue.size());
+
+            Assert.assertEquals(Integer.valueOf(0), queue.poll());
+            Assert.assertTrue(queue.offer(Integer.valueOf(4)));
+
+            for (int i = 1; i < 5; i++) {
+                Assert.assertEquals(Integer.valueOf(i), queue.poll());
+            }
+            Assert.assertNull(queue.poll());
+        }
+    }
+
+
+    @Test
+    public void testClose() {
+        LockFreeRingBuffer<Integer> queue = new LockFreeRingBuffer<>(4);
+        Assert.assertTrue(queue.offer(Integer.valueOf(1)));
+        Assert.assertFalse(queue.isClosed());
+
+        queue.close();
+
+        Assert.assertTrue(queue.isClosed());
+        Assert.assertFalse(queue.offer(Integer.valueOf(2)));
+        Assert.assertEquals(1, queue.size());
+        Assert.assertEquals(Integer.valueOf(1), queue.poll());
+        Assert.assertNull(queue.poll());
+        Assert.assertEquals(0, queue.size());
+    }
+
+
+    @Test
+    public void testRemove() {
+        LockFreeRingBuffer<Integer> queue = new LockFreeRingBuffer<>(4);
+        Integer one = Integer.valueOf(1);
+        Integer two = Integer.valueOf(2);
+        queue.offer(one);
+        queue.offer(two);
+
+        Assert.assertTrue(queue.remove(one));
+        Assert.assertFalse(queue.remove(one));
+        Assert.assertSame(two, queue.peek());
+        Assert.assertSame(two, queue.poll());
+        Assert.assertNull(queue.poll());
+    }
+
+
+    /*
+     * Every element added before the queue is closed must be seen by a
+     * consumer that drains the queue once it is closed.
+     */
+    @Test
+    public void testCloseWithConcurrentProducers() throws Exception {
+        final int threadCount = 4;
+        final LockFreeRingBuffer<Integer> queue = new LockFreeRingBuffer<>(1024);
+        final AtomicInteger added = new AtomicInteger();
+
+        Thread[] threads = new Thread[threadCount];
+        for (int i = 0; i < threadCount; i++) {
+            threads[i] = new Thread(() -> {
+                int count = 0;
+                while (!queue.isClosed()) {
+                    if (queue.offer(Integer.valueOf(count))) {
+                        count++;
+                    } else {
+                        Thread.yield();
+                    }
+                }
+                added.addAndGet(count);
+            });
+            threads[i].start();
+        }
+
+        int received = 0;
+        for (int i = 0; i < 10000; i++) {
+            if (queue.poll() != null) {
+                received++;
+            }
+        }
+        queue.close();
+        while (queue.size() > 0) {
+            if (queue.poll() != null) {
+                received++;
+            } else {
+                Thread.yield();
+            }
+        }
+
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        Assert.assertEquals(added.get(), received);
+        Assert.assertNull(queue.poll());
+    }
+
+
+    @Test
+    public void testMultipleProducers() throws Exception {
+        final int threadCount = 4;
+        final int count = 100000;
+        final LockFreeRingBuffer<Integer> queue = new LockFreeRingBuffer<>(64);
+
+        Thread[] threads = new Thread[threadCount];
+        for (int i = 0; i < threadCount; i++) {
+            final int base = i * count;
+            threads[i] = new Thread(() -> {
+                for (int j = 0; j < count; j++) {
+                    Integer value = Integer.valueOf(base + j);
+                    while (!queue.offer(value)) {
+                        Thread.yield();
+                    }
+                }
+            });
+            threads[i].start();
+        }
+
+        // Values from each producer must be seen in order
+        int[] next = new int[threadCount];
+        int received = 0;
+        while (received < threadCount * count) {
+            Integer value = queue.poll();
+            if (value == null) {
+                Thread.yield();
+                continue;
+            }
+            int producer = value.intValue() / count;
+            Assert.assertEquals(next[producer], value.intValue() % count);
+            next[producer]++;
+            received++;
+        }
+
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        Assert.assertNull(queue.poll());
+    }
+}
@@ -0,0 +1,139 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  See the NOTICE file distributed with
+ *  this work for additional information regarding copyright ownership.
+ *  The ASF licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.tomcat.util.compress;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import org.junit.runners.Parameterized.Parameter;
+
+@RunWith(Parameterized.class)
+public class TestCompressionLevels {
+
+    private static final byte[] DATA;
+
+    static {
+        // Markup with a limited vocabulary, so there are matches at a range of
+        // distances, larger than the block size of both encoders
+        String[] words = { "tomcat", "servlet", "connector", "the", "request",
+                "response", "compression", "a", "of", "session", "filter", "valve" };
+        Random random = new Random(42);
+        StringBuilder sb = new StringBuilder();
+        while (sb.length() < 400 * 1024) {
+            sb.append("<tr><td class=\"");
+            sb.append(words[random.nextInt(words.length)]);
+            sb.append("\">");
+            for (int i = random.nextInt(12); i > 0; i--) {
+                sb.append(words[random.nextInt(words.length)]);
+                sb.append(' ');
+            }
+            sb.append(random.nextInt(100000));
+            sb.append("</td></tr>\n");
+        }
+        DATA = sb.toString().getBytes(StandardCharsets.US_ASCII);
+    }
+
+
+    @Parameterized.Parameters(name = "{index}: encoding[{0}], level[{1}]")
+    public static Collection<Object[]> parameters() {
+        List<Object[]> parameterSets = new ArrayList<>();
+        for (int level = BrotliOutputStream.MIN_LEVEL; level <= BrotliOutputStream.MAX_LEVEL; level++) {
+            parameterSets.add(new Object[] { "br", Integer.valueOf(level) });
+        }
+        for (int level = ZstdOutputStream.MIN_LEVEL; level <= ZstdOutputStream.MAX_LEVEL; level++) {
+            parameterSets.add(new Object[] { "zstd", Integer.valueOf(level) });
+        }
+        return parameterSets;
+    }
+
+
+    @Parameter(0)
+    public String encoding;
+
+    @Parameter(1)
+    public int level;
+
+
+    @Test
+    public void testRoundTrip() throws Exception {
+        Assert.assertArrayEquals(DATA, decode(compress(level, DATA, 8192)));
+    }
+
+
+    @Test
+    public void testSmallWrites() throws Exception {
+        byte[] data = new byte[5000];
+        System.arraycopy(DATA, 0, data, 0, data.length);
+        Assert.assertArrayEquals(data, decode(compress(level, data, 1)));
+    }
+
+
+    @Test
+    public void testRandom() throws Exception {
+        byte[] data = new byte[300 * 1024];
+        new Random(level).nextBytes(data);
+        byte[] compressed = compress(level, data, 8192);
+        Assert.assertArrayEquals(data, decode(compressed));
+        // Incompressible data should be stored with minimal overhead
+        Assert.assertTrue(compressed.length < data.length + data.length / 100);
+    }
+
+
+    @Test
+    public void testBetterThanMinimumLevel() throws Exception {
+        int minLevel = "br".equals(encoding) ? BrotliOutputStream.MIN_LEVEL : ZstdOutputStream.MIN_LEVEL;
+        if (level == minLevel) {
+            return;
+        }
+        Assert.assertTrue(compress(level, DATA, 8192).length < compress(minLevel, DATA, 8192).length);
+    }
+
+
+    private byte[] compress(int level, byte[] data, int writeSize) throws IOException {
+        ByteArrayOutputStream result = new ByteArrayOutputStream();
+        OutputStream os;
+        if ("br".equals(encoding)) {
+            os = new BrotliOutputStream(result, level);
+        } else {
+            os = new ZstdOutputStream(result, level);
+        }
+        for (int off = 0; off < data.length; off += writeSize) {
+            os.write(data, off, Math.min(writeSize, data.length - off));
+        }
+        os.close();
+        return result.toByteArray();
+    }
+
+
+    private byte[] decode(byte[] compressed) throws IOException {
+        if ("br".equals(encoding)) {
+            return TesterBrotliDecoder.decode(compressed);
+        } else {
+            return TesterZstdDecoder.decode(compressed);
+        }
+    }
+}
@@ -0,0 +1,528 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  See the NOTICE file distributed with
+ *  this work for additional information regarding copyright ownership.
+ *  The ASF licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.tomcat.util.compress;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Simple brotli (RFC 7932) decoder written directly from the specification so
+ * that the output of {@link BrotliOutputStream} can be verified. Block
+ * switching, the static dictionary and the signed context mode are not
+ * supported since the encoder does not use them. Speed is not a
+ * consideration.
+ */
+public class TesterBrotliDecoder {
+
+    private static final int[] INSERT_BASE = { 0, 1, 2, 3, 4, 5, 6, 8, 10, 14, 18, 26,
+            34, 50, 66, 98, 130, 194, 322, 578, 1090, 2114, 6210, 22594 };
+    private static final int[] INSERT_EXTRA = { 0, 0, 0, 0, 0, 0, 1, 1, 2, 2, 3, 3,
+            4, 4, 5, 5, 6, 7, 8, 9, 10, 12, 14, 24 };
+    private static final int[] COPY_BASE = { 2, 3, 4, 5, 6, 7, 8, 9, 10, 12, 14, 18,
+            22, 30, 38, 54, 70, 102, 134, 198, 326, 582, 1094, 2118 };
+    private static final int[] COPY_EXTRA = { 0, 0, 0, 0, 0, 0, 0, 0, 1, 1, 2, 2,
+            3, 3, 4, 4, 5, 5, 6, 7, 8, 9, 10, 24 };
+
+    // Insert and copy length code offsets for each 64 symbol cell
+    private static final int[] CELL_INSERT = { 0, 0, 0, 0, 8, 8, 0, 16, 8, 16, 16 };
+    private static final int[] CELL_COPY = { 0, 8, 0, 8, 0, 8, 16, 0, 16, 8, 16 };
+
+    private static final int[] CODE_LENGTH_ORDER = {
+            1, 2, 3, 4, 0, 5, 17, 6, 16, 7, 8, 9, 10, 11, 12, 13, 14, 15 };
+
+    private static final int[] DISTANCE_INDEX = { 0, 1, 2, 3, 0, 0, 0, 0, 0, 0, 1, 1, 1, 1, 1, 1 };
+    private static final int[] DISTANCE_OFFSET = { 0, 0, 0, 0, -1, 1, -2, 2, -3, 3, -1, 1, -2, 2, -3, 3 };
+
+    private static final int[] UTF8_LUT0 = {
+            0,  0,  0,  0,  0,  0,  0,  0,  0,  4,  4,  0,  0,  4,  0,  0,
+            0,  0,  0,  0,  0,  0,  0,  0,  0,  0,  0,  0,  0,  0,  0,  0,
+            8, 12, 16, 12, 12, 20, 12, 16, 24, 28, 12, 12, 32, 12, 36, 12,
+           44, 44, 44, 44, 44, 44, 44, 44, 44, 44, 32, 32, 24, 40, 28, 12,
+           12, 48, 52, 52, 52, 48, 52, 52, 52, 48, 52, 52, 52, 52, 52, 48,
+           52, 52, 52, 52, 52, 48, 52, 52, 52, 52, 52, 24, 12, 28, 12, 12,
+           12, 56, 60, 60, 60, 56, 60, 60, 60, 56, 60, 60, 60, 60, 60, 56,
+           60, 60, 60, 60, 60, 56, 60, 60, 60, 60, 60, 24, 12, 28, 12,  0,
+            0,  1,  0,  1,  0,  1,  0,  1,  0,  1,  0,  1,  0,  1,  0,  1,
+            0,  1,  0,  1,  0,  1,  0,  1,  0,  1,  0,  1,  0,  1,  0,  1,
+            0,  1,  0,  1,  0,  1,  0,  1,  0,  1,  0,  1,  0,  1,  0,  1,
+            0,  1,  0,  1,  0,  1,  0,  1,  0,  1,  0,  1,  0,  1,  0,  1,
+            2,  3,  2,  3,  2,  3,  2,  3,  2,  3,  2,  3,  2,  3,  2,  3,
+            2,  3,  2,  3,  2,  3,  2,  3,  2,  3,  2,  3,  2,  3,  2,  3,
+            2,  3,  2,  3,  2,  3,  2,  3,  2,  3,  2,  3,  2,  3,  2,  3,
+            2,  3,  2,  3,  2,  3,  2,  3,  2,  3,  2,  3,  2,  3,  2,  3 };
+    private static final int[] UTF8_LUT1 = {
+            0,  0,  0,  0,  0,  0,  0,  0,  0,  0,  0,  0,  0,  0,  0,  0,
+            0,  0,  0,  0,  0,  0,  0,  0,  0,  0,  0,  0,  0,  0,  0,  0,
+            0,  1,  1,  1,  1,  1,  1,  1,  1,  1,  1,  1,  1,  1,  1,  1,
+            2,  2,  2,  2,  2,  2,  2,  2,  2,  2,  1,  1,  1,  1,  1,  1,
+            1,  2,  2,  2,  2,  2,  2,  2,  2,  2,  2,  2,  2,  2,  2,  2,
+            2,  2,  2,  2,  2,  2,  2,  2,  2,  2,  2,  1,  1,  1,  1,  1,
+            1,  3,  3,  3,  3,  3,  3,  3,  3,  3,  3,  3,  3,  3,  3,  3,
+            3,  3,  3,  3,  3,  3,  3,  3,  3,  3,  3,  1,  1,  1,  1,  0,
+            0,  0,  0,  0,  0,  0,  0,  0,  0,  0,  0,  0,  0,  0,  0,  0,
+            0,  0,  0,  0,  0,  0,  0,  0,  0,  0,  0,  0,  0,  0,  0,  0,
+            0,  0,  0,  0,  0,  0,  0,  0,  0,  0,  0,  0,  0,  0,  0,  0,
+            0,  0,  0,  0,  0,  0,  0,  0,  0,  0,  0,  0,  0,  0,  0,  0,
+            0,  0,  0,  0,  0,  0,  0,  0,  0,  0,  0,  0,  0,  0,  0,  0,
+            0,  0,  0,  0,  0,  0,  0,  0,  0,  0,  0,  0,  0,  0,  0,  0,
+            2,  2,  2,  2,  2,  2,  2,  2,  2,  2,  2,  2,  2,  2,  2,  2,
+            2,  2,  2,  2,  2,  2,  2,  2,  2,  2,  2,  2,  2,  2,  2,  2 };
+
+    private final byte[] src;
+    private long bitPos;
+    private byte[] output = new byte[1024];
+    private int outputLength;
+    private final int[] distances = { 16, 15, 11, 4 };
+    private int distanceIndex;
+
+
+    private TesterBrotliDecoder(byte[] src) {
+        this.src = src;
+    }
+
+
+    /**
+     * Decode a brotli stream.
+     *
+     * @param src The compressed data
+     *
+     * @return the uncompressed data
+     *
+     * @throws IOException if the data is not valid or uses an unsupported
+     *                     feature
+     */
+    public static byte[] decode(byte[] src) throws IOException {
+        TesterBrotliDecoder decoder = new TesterBrotliDecoder(src);
+        decoder.decodeStream();
+        return Arrays.copyOf(decoder.output, decoder.outputLength);
+    }
+
+
+    private void decodeStream() throws IOException {
+        int windowBits;
+        if (readBits(1) == 0) {
+            windowBits = 16;
+        } else {
+            int n = readBits(3);
+            if (n != 0) {
+                windowBits = 17 + n;
+            } else {
+                n = readBits(3);
+                if (n == 1) {
+                    throw new IOException("Large window not supported");
+                }
+                windowBits = n == 0 ? 17 : 8 + n;
+            }
+        }
+        int maxBackwardDistance = (1 << windowBits) - 16;
+
+        boolean last = false;
+        while (!last) {
+            last = readBits(1) == 1;
+            if (last && readBits(1) == 1) {
+                break;
+            }
+            int nibbles = readBits(2);
+            if (nibbles == 3) {
+                if (readBits(1) != 0) {
+                    throw new IOException("Reserved bit set");
+                }
+                int skipBytes = readBits(2);
+                int skipLength = skipBytes == 0 ? 0 : readBits(8 * skipBytes) + 1;
+                alignToByte();
+                bitPos += 8L * skipLength;
+                continue;
+            }
+            int length = readBits(4 * (nibbles + 4)) + 1;
+            if (!last && readBits(1) == 1) {
+                alignToByte();
+                for (int i = 0; i < length; i++) {
+                    append((byte) readBits(8));
+                }
+                continue;
+            }
+            decodeMetaBlock(length, maxBackwardDistance);
+        }
+    }
+
+
+    private void decodeMetaBlock(int length, int maxBackwardDistance) throws IOException {
+        for (int i = 0; i < 3; i++) {
+            if (readVarLenUint8() != 0) {
+                throw new IOException("Block switching not supported");
+            }
+        }
+        int postfixBits = readBits(2);
+        int direct = readBits(4) << postfixBits;
+        int contextMode = readBits(2);
+        if (contextMode == 3) {
+            throw new IOException("Signed context mode not supported");
+        }
+        int literalTrees = readVarLenUint8() + 1;
+        int[] literalContextMap = literalTrees > 1 ? readContextMap(64, literalTrees) : new int[64];
+        int distanceTrees = readVarLenUint8() + 1;
+        int[] distanceContextMap = distanceTrees > 1 ? readContextMap(4, distanceTrees) : new int[4];
+
+        PrefixCode[] literalCodes = new PrefixCode[literalTrees];
+        for (int i = 0; i < literalTrees; i++) {
+            literalCodes[i] = readPrefixCode(256);
+        }
+        PrefixCode commandCode = readPrefixCode(704);
+        int distanceAlphabet = 16 + direct + (48 << postfixBits);
+        PrefixCode[] distanceCodes = new PrefixCode[distanceTrees];
+        for (int i = 0; i < distanceTrees; i++) {
+            distanceCodes[i] = readPrefixCode(distanceAlphabet);
+        }
+
+        int end = outputLength + length;
+        while (outputLength < end) {
+            int command = readSymbol(commandCode);
+            int cell = command >> 6;
+            int insertCode = CELL_INSERT[cell] + ((command >> 3) & 7);
+            int copyCode = CELL_COPY[cell] + (command & 7);
+            int insert = INSERT_BASE[insertCode] + readBits(INSERT_EXTRA[insertCode]);
+            int copy = COPY_BASE[copyCode] + readBits(COPY_EXTRA[copyCode]);
+            for (int i = 0; i < insert; i++) {
+                int p1 = outputLength > 0 ? output[outputLength - 1] & 0xFF : 0;
+                int p2 = outputLength > 1 ? output[outputLength - 2] & 0xFF : 0;
+                int context;
+                if (contextMode == 0) {
+                    context = p1 & 0x3F;
+                } else if (contextMode == 1) {
+                    context = p1 >> 2;
+                } else {
+                    context = UTF8_LUT0[p1] | UTF8_LUT1[p2];
+                }
+                append((byte) readSymbol(literalCodes[literalContextMap[context]]));
+            }
+            if (outputLength >= end) {
+                break;
+            }
+
+            int distanceCode;
+            if (cell < 2) {
+                distanceCode = 0;
+            } else {
+                int context = copy > 4 ? 3 : copy - 2;
+                distanceCode = readSymbol(distanceCodes[distanceContextMap[context]]);
+            }
+            int distance;
+            if (distanceCode < 16) {
+                distance = distances[(distanceIndex - 1 - DISTANCE_INDEX[distanceCode]) & 3] +
+                        DISTANCE_OFFSET[distanceCode];
+                if (distance <= 0) {
+                    throw new IOException("Invalid distance");
+                }
+            } else if (distanceCode < 16 + direct) {
+                distance = distanceCode - 15;
+            } else {
+                int code = distanceCode - direct - 16;
+                int extraBits = 1 + (code >> (postfixBits + 1));
+                int high = code >> postfixBits;
+                int low = code & ((1 << postfixBits) - 1);
+                int offset = ((2 + (high & 1)) << extraBits) - 4;
+                distance = ((offset + readBits(extraBits)) << postfixBits) + low + direct + 1;
+            }
+            if (distance > Math.min(maxBackwardDistance, outputLength)) {
+                throw new IOException("Static dictionary not supported");
+            }
+            if (distanceCode != 0) {
+                distances[distanceIndex & 3] = distance;
+                distanceIndex++;
+            }
+            if (outputLength + copy > end) {
+                throw new IOException("Copy beyond the end of the meta-block");
+            }
+            for (int i = 0; i < copy; i++) {
+                append(output[outputLength - distance]);
+            }
+        }
+        if (outputLength != end) {
+            throw new IOException("Meta-block length mismatch");
+        }
+    }
+
+
+    private int[] readContextMap(int size, int trees) throws IOException {
+        int runLengthMax = readBits(1) == 1 ? readBits(4) + 1 : 0;
+        PrefixCode code = readPrefixCode(trees + runLengthMax);
+        int[] map = new int[size];
+        int i = 0;
+        while (i < size) {
+            int symbol = readSymbol(code);
+            if (symbol == 0) {
+                map[i++] = 0;
+            } else if (symbol <= runLengthMax) {
+                int run = (1 << symbol) + readBits(symbol);
+                if (i + run > size) {
+                    throw new IOException("Context map run too long");
+                }
+                i += run;
+            } else {
+                map[i++] = symbol - runLengthMax;
+            }
+        }
+        if (readBits(1) == 1) {
+            int[] mtf = new int[256];
+            for (int j = 0; j < mtf.length; j++) {
+                mtf[j] = j;
+            }
+            for (int j = 0; j < size; j++) {
+                int index = map[j];
+                int value = mtf[index];
+                System.arraycopy(mtf, 0, mtf, 1, index);
+                mtf[0] = value;
+                map[j] = value;
+            }
+        }
+        for (int value : map) {
+            if (value >= trees) {
+                throw new IOException("Invalid context map");
+            }
+        }
+        return map;
+    }
+
+
+    private PrefixCode readPrefixCode(int alphabetSize) throws IOException {
+        int[] lengths = new int[alphabetSize];
+        int alphabetBits = 32 - Integer.numberOfLeadingZeros(alphabetSize - 1);
+        int skip = readBits(2);
+        if (skip == 1) {
+            int count = readBits(2) + 1;
+            int[] symbols = new int[count];
+            for (int i = 0; i < count; i++) {
+                symbols[i] = readBits(alphabetBits);
+                if (symbols[i] >= alphabetSize) {
+                    throw new IOException("Invalid symbol");
+                }
+            }
+            switch (count) {
+                case 1:
+                    lengths[symbols[0]] = -1;
+                    break;
+                case 2:
+                    lengths[symbols[0]] = 1;
+                    lengths[symbols[1]] = 1;
+                    break;
+                case 3:
+                    lengths[symbols[0]] = 1;
+                    lengths[symbols[1]] = 2;
+                    lengths[symbols[2]] = 2;
+                    break;
+                default:
+                    if (readBits(1) == 0) {
+                        for (int symbol : symbols) {
+                            lengths[symbol] = 2;
+                        }
+                    } else {
+                        lengths[symbols[0]] = 1;
+                        lengths[symbols[1]] = 2;
+                        lengths[symbols[2]] = 3;
+                        lengths[symbols[3]] = 3;
+                    }
+            }
+            return new PrefixCode(lengths);
+        }
+
+        int[] codeLengthLengths = new int[18];
+        int space = 32;
+        int used = 0;
+        for (int i = skip; i < CODE_LENGTH_ORDER.length && space > 0; i++) {
+            int peek = peekBits(4);
+            int length;
+            if ((peek & 3) == 0) {
+                length = 0;
+                bitPos += 2;
+            } else if ((peek & 3) == 1) {
+                length = 4;
+                bitPos += 2;
+            } else if ((peek & 3) == 2) {
+                length = 3;
+                bitPos += 2;
+            } else if ((peek & 7) == 3) {
+                length = 2;
+                bitPos += 3;
+            } else if (peek == 7) {
+                length = 1;
+                bitPos += 4;
+            } else {
+                length = 5;
+                bitPos += 4;
+            }
+            codeLengthLengths[CODE_LENGTH_ORDER[i]] = length;
+            if (length != 0) {
+                space -= 32 >> length;
+                used++;
+            }
+        }
+        if (used != 1 && space != 0) {
+            throw new IOException("Invalid code length code");
+        }
+        if (used == 1) {
+            for (int i = 0; i < 18; i++) {
+                if (codeLengthLengths[i] != 0) {
+                    codeLengthLengths[i] = -1;
+                }
+            }
+        }
+        PrefixCode codeLengthCode = new PrefixCode(codeLengthLengths);
+
+        int symbol = 0;
+        int previousLength = 8;
+        int repeat = 0;
+        int repeatLength = 0;
+        space = 32768;
+        while (symbol < alphabetSize && space > 0) {
+            int codeLength = readSymbol(codeLengthCode);
+            if (codeLength < 16) {
+                repeat = 0;
+                lengths[symbol++] = codeLength;
+                if (codeLength != 0) {
+                    previousLength = codeLength;
+                    space -= 32768 >> codeLength;
+                }
+            } else {
+                int extraBits = codeLength == 16 ? 2 : 3;
+                int newLength = codeLength == 16 ? previousLength : 0;
+                if (repeatLength != newLength) {
+                    repeat = 0;
+                    repeatLength = newLength;
+                }
+                int oldRepeat = repeat;
+                if (repeat > 0) {
+                    repeat = (repeat - 2) << extraBits;
+                }
+                repeat += readBits(extraBits) + 3;
+                int delta = repeat - oldRepeat;
+                if (symbol + delta > alphabetSize) {
+                    throw new IOException("Code length repeat too long");
+                }
+                for (int i = 0; i < delta; i++) {
+                    lengths[symbol++] = repeatLength;
+                }
+                if (repeatLength != 0) {
+                    space -= delta * (32768 >> repeatLength);
+                }
+            }
+        }
+        if (space != 0) {
+            throw new IOException("Incomplete prefix code");
+        }
+        return new PrefixCode(lengths);
+    }
+
+
+    private int readSymbol(PrefixCode code) throws IOException {
+        if (code.single >= 0) {
+            return code.single;
+        }
+        int value = 0;
+        int first = 0;
+        int index = 0;
+        for (int length = 1; length <= 15; length++) {
+            value |= readBits(1);
+            int count = code.counts[length];
+            if (value - first < count) {
+                return code.symbols[index + value - first];
+            }
+            index += count;
+            first = (first + count) << 1;
+            value <<= 1;
+        }
+        throw new IOException("Invalid prefix code");
+    }
+
+
+    private int readVarLenUint8() throws IOException {
+        if (readBits(1) == 0) {
+            return 0;
+        }
+        int n = readBits(3);
+        return n == 0 ? 1 : (1 << n) + readBits(n);
+    }
+
+
+    private void append(byte b) {
+        if (outputLength == output.length) {
+            output = Arrays.copyOf(output, output.length * 2);
+        }
+        output[outputLength++] = b;
+    }
+
+
+    private void alignToByte() {
+        bitPos = (bitPos + 7) & ~7L;
+    }
+
+
+    private int peekBits(int count) {
+        int result = 0;
+        for (int i = 0; i < count; i++) {
+            long p = bitPos + i;
+            int index = (int) (p >> 3);
+            int bit = index < src.length ? (src[index] >> (p & 7)) & 1 : 0;
+            result |= bit << i;
+        }
+        return result;
+    }
+
+
+    private int readBits(int count) throws IOException {
+        if (bitPos + count > 8L * src.length) {
+            throw new IOException("Unexpected end of data");
+        }
+        int result = peekBits(count);
+        bitPos += count;
+        return result;
+    }
+
+
+    /*
+     * Canonical prefix code. A code length of -1 marks the only symbol of a
+     * code that uses zero bits.
+     */
+    private static class PrefixCode {
+
+        private final int single;
+        private final int[] counts = new int[16];
+        private final int[] symbols;
+
+        PrefixCode(int[] lengths) {
+            int singleSymbol = -1;
+            int total = 0;
+            for (int s = 0; s < lengths.length; s++) {
+                if (lengths[s] == -1) {
+                    singleSymbol = s;
+                } else if (lengths[s] > 0) {
+                    counts[lengths[s]]++;
+                    total++;
+                }
+            }
+            single = singleSymbol;
+            symbols = new int[total];
+            int index = 0;
+            for (int length = 1; length <= 15; length++) {
+                for (int s = 0; s < lengths.length; s++) {
+                    if (lengths[s] == length) {
+                        symbols[index++] = s;
+                    }
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,633 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  See the NOTICE file distributed with
+ *  this work for additional information regarding copyright ownership.
+ *  The ASF licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.tomcat.util.compress;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+/**
+ * Simple zstd (RFC 8878) decoder written directly from the specification so
+ * that the output of {@link ZstdOutputStream} can be verified. Dictionaries
+ * are not supported. Speed is not a consideration.
+ */
+public class TesterZstdDecoder {
+
+    private static final int MAGIC = 0xFD2FB528;
+
+    private static final int[] LITERAL_LENGTH_BASE = { 0, 1, 2, 3, 4, 5, 6, 7, 8, 9, 10,
+            11, 12, 13, 14, 15, 16, 18, 20, 22, 24, 28, 32, 40, 48, 64, 128, 256, 512,
+            1024, 2048, 4096, 8192, 16384, 32768, 65536 };
+    private static final int[] LITERAL_LENGTH_BITS = { 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0,
+            0, 0, 0, 0, 0, 1, 1, 1, 1, 2, 2, 3, 3, 4, 6, 7, 8, 9, 10, 11, 12, 13, 14, 15, 16 };
+    private static final int[] MATCH_LENGTH_BASE = new int[53];
+    private static final int[] MATCH_LENGTH_BITS = new int[53];
+
+    private static final int[] LITERAL_LENGTH_DEFAULT = { 4, 3, 2, 2, 2, 2, 2, 2, 2, 2, 2,
+            2, 2, 1, 1, 1, 2, 2, 2, 2, 2, 2, 2, 2, 2, 3, 2, 1, 1, 1, 1, 1, -1, -1, -1, -1 };
+    private static final int[] MATCH_LENGTH_DEFAULT = { 1, 4, 3, 2, 2, 2, 2, 2, 2, 1, 1,
+            1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1,
+            1, 1, 1, 1, 1, 1, 1, 1, -1, -1, -1, -1, -1, -1, -1 };
+    private static final int[] OFFSET_DEFAULT = { 1, 1, 1, 1, 1, 1, 2, 2, 2, 1, 1, 1, 1,
+            1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, -1, -1, -1, -1, -1 };
+
+    static {
+        for (int i = 0; i < 32; i++) {
+            MATCH_LENGTH_BASE[i] = i + 3;
+        }
+        int[] base = { 35, 37, 39, 41, 43, 47, 51, 59, 67, 83, 99, 131, 259, 515, 1027,
+                2051, 4099, 8195, 16387, 32771, 65539 };
+        int[] bits = { 1, 1, 1, 1, 2, 2, 3, 3, 4, 4, 5, 7, 8, 9, 10, 11, 12, 13, 14, 15, 16 };
+        System.arraycopy(base, 0, MATCH_LENGTH_BASE, 32, base.length);
+        System.arraycopy(bits, 0, MATCH_LENGTH_BITS, 32, bits.length);
+    }
+
+    private final byte[] src;
+    private int srcPos;
+    private final ByteArrayOutputStream out = new ByteArrayOutputStream();
+    private byte[] output = new byte[0];
+    private int outputLength;
+
+    private final int[] repeatOffsets = { 1, 4, 8 };
+    private int[][] huffmanTable;
+    private int[][] literalLengthTable;
+    private int[][] offsetTable;
+    private int[][] matchLengthTable;
+
+
+    private TesterZstdDecoder(byte[] src) {
+        this.src = src;
+    }
+
+
+    /**
+     * Decode one or more concatenated zstd frames.
+     *
+     * @param src The compressed data
+     *
+     * @return the uncompressed data
+     *
+     * @throws IOException if the data is not valid
+     */
+    public static byte[] decode(byte[] src) throws IOException {
+        TesterZstdDecoder decoder = new TesterZstdDecoder(src);
+        while (decoder.srcPos < src.length) {
+            decoder.decodeFrame();
+        }
+        return decoder.out.toByteArray();
+    }
+
+
+    private void decodeFrame() throws IOException {
+        if (readLittleEndian(4) != MAGIC) {
+            throw new IOException("Bad magic number");
+        }
+        int descriptor = readByte();
+        int contentSizeFlag = descriptor >> 6;
+        boolean singleSegment = (descriptor & 0x20) != 0;
+        boolean checksum = (descriptor & 0x04) != 0;
+        if ((descriptor & 0x08) != 0) {
+            throw new IOException("Reserved bit set");
+        }
+        if (!singleSegment) {
+            readByte();
+        }
+        int dictionaryIdSize = new int[] { 0, 1, 2, 4 }[descriptor & 3];
+        if (dictionaryIdSize > 0 && readLittleEndian(dictionaryIdSize) != 0) {
+            throw new IOException("Dictionaries are not supported");
+        }
+        int contentSizeBytes = new int[] { singleSegment ? 1 : 0, 2, 4, 8 }[contentSizeFlag];
+        srcPos += contentSizeBytes;
+
+        output = new byte[1024];
+        outputLength = 0;
+        repeatOffsets[0] = 1;
+        repeatOffsets[1] = 4;
+        repeatOffsets[2] = 8;
+        huffmanTable = null;
+        literalLengthTable = null;
+        offsetTable = null;
+        matchLengthTable = null;
+
+        boolean last = false;
+        while (!last) {
+            int header = readLittleEndian(3);
+            last = (header & 1) != 0;
+            int type = (header >> 1) & 3;
+            int size = header >>> 3;
+            switch (type) {
+                case 0:
+                    for (int i = 0; i < size; i++) {
+                        append((byte) readByte());
+                    }
+                    break;
+                case 1: {
+                    byte b = (byte) readByte();
+                    for (int i = 0; i < size; i++) {
+                        append(b);
+                    }
+                    break;
+                }
+                case 2: {
+                    int end = srcPos + size;
+                    decodeCompressedBlock(end);
+                    srcPos = end;
+                    break;
+                }
+                default:
+                    throw new IOException("Reserved block type");
+            }
+        }
+        if (checksum) {
+            srcPos += 4;
+        }
+        out.write(output, 0, outputLength);
+    }
+
+
+    private void decodeCompressedBlock(int end) throws IOException {
+        byte[] literals = decodeLiterals();
+
+        int sequenceCount = readByte();
+        if (sequenceCount >= 128) {
+            if (sequenceCount == 255) {
+                sequenceCount = readLittleEndian(2) + 0x7F00;
+            } else {
+                sequenceCount = ((sequenceCount - 128) << 8) + readByte();
+            }
+        }
+        int literalPos = 0;
+        if (sequenceCount > 0) {
+            int modes = readByte();
+            if ((modes & 3) != 0) {
+                throw new IOException("Reserved bits set");
+            }
+            literalLengthTable = readTable(modes >> 6, literalLengthTable, LITERAL_LENGTH_DEFAULT, 6, 35, 9);
+            offsetTable = readTable((modes >> 4) & 3, offsetTable, OFFSET_DEFAULT, 5, 31, 8);
+            matchLengthTable = readTable((modes >> 2) & 3, matchLengthTable, MATCH_LENGTH_DEFAULT, 6, 52, 9);
+
+            BackwardBitReader br = new BackwardBitReader(src, srcPos, end);
+            int literalLengthState = br.readBits(literalLengthTable[3][0]);
+            int offsetState = br.readBits(offsetTable[3][0]);
+            int matchLengthState = br.readBits(matchLengthTable[3][0]);
+            for (int i = 0; i < sequenceCount; i++) {
+                int offsetCode = offsetTable[0][offsetState];
+                int matchLengthCode = matchLengthTable[0][matchLengthState];
+                int literalLengthCode = literalLengthTable[0][literalLengthState];
+                if (offsetCode > 31 || matchLengthCode > 52 || literalLengthCode > 35) {
+                    throw new IOException("Invalid code");
+                }
+                int offsetValue = (1 << offsetCode) + br.readBits(offsetCode);
+                int matchLength = MATCH_LENGTH_BASE[matchLengthCode] +
+                        br.readBits(MATCH_LENGTH_BITS[matchLengthCode]);
+                int literalLength = LITERAL_LENGTH_BASE[literalLengthCode] +
+                        br.readBits(LITERAL_LENGTH_BITS[literalLengthCode]);
+                if (i < sequenceCount - 1) {
+                    literalLengthState = nextState(literalLengthTable, literalLengthState, br);
+                    matchLengthState = nextState(matchLengthTable, matchLengthState, br);
+                    offsetState = nextState(offsetTable, offsetState, br);
+                }
+
+                int offset;
+                if (offsetValue > 3) {
+                    offset = offsetValue - 3;
+                    repeatOffsets[2] = repeatOffsets[1];
+                    repeatOffsets[1] = repeatOffsets[0];
+                    repeatOffsets[0] = offset;
+                } else {
+                    int index = offsetValue - 1 + (literalLength == 0 ? 1 : 0);
+                    if (index == 0) {
+                        offset = repeatOffsets[0];
+                    } else {
+                        offset = index == 3 ? repeatOffsets[0] - 1 : repeatOffsets[index];
+                        if (index != 1) {
+                            repeatOffsets[2] = repeatOffsets[1];
+                        }
+                        repeatOffsets[1] = repeatOffsets[0];
+                        repeatOffsets[0] = offset;
+                    }
+                }
+
+                if (literalPos + literalLength > literals.length) {
+                    throw new IOException("Too many literals");
+                }
+                for (int j = 0; j < literalLength; j++) {
+                    append(literals[literalPos++]);
+                }
+                if (offset <= 0 || offset > outputLength) {
+                    throw new IOException("Invalid offset [" + offset + "]");
+                }
+                for (int j = 0; j < matchLength; j++) {
+                    append(output[outputLength - offset]);
+                }
+            }
+            if (!br.isComplete()) {
+                throw new IOException("Sequence bit stream not fully consumed");
+            }
+        }
+        while (literalPos < literals.length) {
+            append(literals[literalPos++]);
+        }
+    }
+
+
+    private byte[] decodeLiterals() throws IOException {
+        int b0 = readByte();
+        int type = b0 & 3;
+        int sizeFormat = (b0 >> 2) & 3;
+        if (type < 2) {
+            int size;
+            if ((sizeFormat & 1) == 0) {
+                size = b0 >> 3;
+            } else if (sizeFormat == 1) {
+                size = (b0 >> 4) + (readByte() << 4);
+            } else {
+                size = (b0 >> 4) + (readLittleEndian(2) << 4);
+            }
+            byte[] literals = new byte[size];
+            if (type == 0) {
+                System.arraycopy(src, srcPos, literals, 0, size);
+                srcPos += size;
+            } else {
+                byte b = (byte) readByte();
+                for (int i = 0; i < size; i++) {
+                    literals[i] = b;
+                }
+            }
+            return literals;
+        }
+
+        int headerBytes = sizeFormat < 2 ? 2 : sizeFormat + 1;
+        int sizeBits = sizeFormat < 2 ? 10 : sizeFormat == 2 ? 14 : 18;
+        long header = (b0 >> 4) | ((readLittleEndian(headerBytes) & 0xFFFFFFFFL) << 4);
+        int regenerated = (int) (header & ((1 << sizeBits) - 1));
+        int compressed = (int) (header >> sizeBits);
+        int end = srcPos + compressed;
+        if (type == 2) {
+            huffmanTable = readHuffmanTable();
+        } else if (huffmanTable == null) {
+            throw new IOException("No previous Huffman table");
+        }
+        byte[] literals = new byte[regenerated];
+        if (sizeFormat == 0) {
+            decodeHuffmanStream(literals, 0, regenerated, srcPos, end);
+        } else {
+            int[] sizes = new int[4];
+            sizes[0] = readLittleEndian(2);
+            sizes[1] = readLittleEndian(2);
+            sizes[2] = readLittleEndian(2);
+            sizes[3] = end - srcPos - sizes[0] - sizes[1] - sizes[2];
+            int segment = (regenerated + 3) / 4;
+            int start = srcPos;
+            for (int i = 0; i < 4; i++) {
+                int from = segment * i;
+                int to = i == 3 ? regenerated : segment * (i + 1);
+                decodeHuffmanStream(literals, from, to, start, start + sizes[i]);
+                start += sizes[i];
+            }
+        }
+        srcPos = end;
+        return literals;
+    }
+
+
+    /*
+     * Returns a table of {symbol, bit count} indexed by the next maxBits bits.
+     */
+    private int[][] readHuffmanTable() throws IOException {
+        int header = readByte();
+        int[] weights = new int[256];
+        int count;
+        if (header < 128) {
+            int end = srcPos + header;
+            int[][] table = readFseTable(6, 255);
+            BackwardBitReader br = new BackwardBitReader(src, srcPos, end);
+            int state1 = br.readBits(table[3][0]);
+            int state2 = br.readBits(table[3][0]);
+            count = 0;
+            while (true) {
+                weights[count++] = table[0][state1];
+                state1 = nextState(table, state1, br);
+                if (br.isOverflow()) {
+                    weights[count++] = table[0][state2];
+                    break;
+                }
+                weights[count++] = table[0][state2];
+                state2 = nextState(table, state2, br);
+                if (br.isOverflow()) {
+                    weights[count++] = table[0][state1];
+                    break;
+                }
+            }
+            srcPos = end;
+        } else {
+            count = header - 127;
+            for (int i = 0; i < count; i += 2) {
+                int b = readByte();
+                weights[i] = b >> 4;
+                weights[i + 1] = b & 15;
+            }
+        }
+        int sum = 0;
+        for (int i = 0; i < count; i++) {
+            if (weights[i] > 0) {
+                sum += 1 << (weights[i] - 1);
+            }
+        }
+        if (sum == 0) {
+            throw new IOException("Invalid Huffman weights");
+        }
+        int maxBits = 32 - Integer.numberOfLeadingZeros(sum);
+        int leftOver = (1 << maxBits) - sum;
+        if (Integer.bitCount(leftOver) != 1) {
+            throw new IOException("Invalid Huffman weights");
+        }
+        weights[count++] = 32 - Integer.numberOfLeadingZeros(leftOver);
+        if (maxBits > 11) {
+            throw new IOException("Huffman code too long");
+        }
+
+        int[][] table = new int[2][1 << maxBits];
+        int next = 0;
+        for (int w = 1; w <= maxBits; w++) {
+            for (int s = 0; s < count; s++) {
+                if (weights[s] == w) {
+                    int bits = maxBits + 1 - w;
+                    for (int i = 0; i < 1 << (w - 1); i++) {
+                        table[0][next] = s;
+                        table[1][next] = bits;
+                        next++;
+                    }
+                }
+            }
+        }
+        return table;
+    }
+
+
+    private void decodeHuffmanStream(byte[] literals, int from, int to, int start, int end)
+            throws IOException {
+        int maxBits = Integer.numberOfTrailingZeros(huffmanTable[0].length);
+        BackwardBitReader br = new BackwardBitReader(src, start, end);
+        for (int i = from; i < to; i++) {
+            int index = br.peekBits(maxBits);
+            literals[i] = (byte) huffmanTable[0][index];
+            br.skipBits(huffmanTable[1][index]);
+        }
+        if (!br.isComplete()) {
+            throw new IOException("Huffman bit stream not fully consumed");
+        }
+    }
+
+
+    private int[][] readTable(int mode, int[][] previous, int[] defaultCounts, int defaultLog,
+            int maxSymbol, int maxLog) throws IOException {
+        switch (mode) {
+            case 0:
+                return buildFseTable(defaultCounts, defaultLog);
+            case 1:
+                return buildFseTable(null, 0, readByte());
+            case 2:
+                return readFseTable(maxLog, maxSymbol);
+            default:
+                if (previous == null) {
+                    throw new IOException("No previous table");
+                }
+                return previous;
+        }
+    }
+
+
+    private int[][] readFseTable(int maxLog, int maxSymbol) throws IOException {
+        ForwardBitReader br = new ForwardBitReader(src, srcPos);
+        int tableLog = br.readBits(4) + 5;
+        if (tableLog > maxLog) {
+            throw new IOException("Accuracy log too large");
+        }
+        int remaining = (1 << tableLog) + 1;
+        int threshold = 1 << tableLog;
+        int nbBits = tableLog + 1;
+        int[] counts = new int[maxSymbol + 1];
+        int symbol = 0;
+        boolean previousZero = false;
+        while (remaining > 1) {
+            if (previousZero) {
+                int repeat;
+                while ((repeat = br.readBits(2)) == 3) {
+                    symbol += 3;
+                }
+                symbol += repeat;
+            }
+            if (symbol > maxSymbol) {
+                throw new IOException("Too many symbols");
+            }
+            int max = (2 * threshold - 1) - remaining;
+            int count;
+            int low = br.peekBits(nbBits - 1);
+            if (low < max) {
+                count = low;
+                br.readBits(nbBits - 1);
+            } else {
+                count = br.readBits(nbBits);
+                if (count >= threshold) {
+                    count -= max;
+                }
+            }
+            count--;
+            remaining -= count < 0 ? -count : count;
+            counts[symbol++] = count;
+            previousZero = count == 0;
+            while (remaining < threshold) {
+                nbBits--;
+                threshold >>= 1;
+            }
+        }
+        if (remaining != 1) {
+            throw new IOException("Invalid table description");
+        }
+        srcPos = br.getBytePosition();
+        int[] trimmed = new int[symbol];
+        System.arraycopy(counts, 0, trimmed, 0, symbol);
+        return buildFseTable(trimmed, tableLog);
+    }
+
+
+    private static int[][] buildFseTable(int[] counts, int tableLog) {
+        return buildFseTable(counts, tableLog, -1);
+    }
+
+
+    /*
+     * Returns {symbol[], bit count[], baseline[], {tableLog}} indexed by state.
+     */
+    private static int[][] buildFseTable(int[] counts, int tableLog, int rleSymbol) {
+        int size = 1 << tableLog;
+        int[][] table = new int[4][];
+        table[0] = new int[size];
+        table[1] = new int[size];
+        table[2] = new int[size];
+        table[3] = new int[] { tableLog };
+        if (rleSymbol >= 0) {
+            table[0][0] = rleSymbol;
+            return table;
+        }
+        int mask = size - 1;
+        int step = (size >> 1) + (size >> 3) + 3;
+        int high = size - 1;
+        int[] next = new int[counts.length];
+        for (int s = 0; s < counts.length; s++) {
+            if (counts[s] == -1) {
+                table[0][high--] = s;
+                next[s] = 1;
+            } else {
+                next[s] = counts[s];
+            }
+        }
+        int position = 0;
+        for (int s = 0; s < counts.length; s++) {
+            for (int i = 0; i < counts[s]; i++) {
+                table[0][position] = s;
+                do {
+                    position = (position + step) & mask;
+                } while (position > high);
+            }
+        }
+        for (int state = 0; state < size; state++) {
+            int s = table[0][state];
+            int n = next[s]++;
+            int bits = tableLog - (31 - Integer.numberOfLeadingZeros(n));
+            table[1][state] = bits;
+            table[2][state] = (n << bits) - size;
+        }
+        return table;
+    }
+
+
+    private static int nextState(int[][] table, int state, BackwardBitReader br) {
+        return table[2][state] + br.readBits(table[1][state]);
+    }
+
+
+    private void append(byte b) {
+        if (outputLength == output.length) {
+            byte[] larger = new byte[output.length * 2];
+            System.arraycopy(output, 0, larger, 0, outputLength);
+            output = larger;
+        }
+        output[outputLength++] = b;
+    }
+
+
+    private int readByte() throws IOException {
+        if (srcPos >= src.length) {
+            throw new IOException("Unexpected end of data");
+        }
+        return src[srcPos++] & 0xFF;
+    }
+
+
+    private int readLittleEndian(int bytes) throws IOException {
+        int result = 0;
+        for (int i = 0; i < bytes; i++) {
+            result |= readByte() << (8 * i);
+        }
+        return result;
+    }
+
+
+    private static class ForwardBitReader {
+
+        private final byte[] src;
+        private final int start;
+        private long bitPos;
+
+        ForwardBitReader(byte[] src, int start) {
+            this.src = src;
+            this.start = start;
+        }
+
+        int peekBits(int count) {
+            int result = 0;
+            for (int i = 0; i < count; i++) {
+                long p = bitPos + i;
+                int index = start + (int) (p >> 3);
+                int bit = index < src.length ? (src[index] >> (p & 7)) & 1 : 0;
+                result |= bit << i;
+            }
+            return result;
+        }
+
+        int readBits(int count) {
+            int result = peekBits(count);
+            bitPos += count;
+            return result;
+        }
+
+        int getBytePosition() {
+            return start + (int) ((bitPos + 7) >> 3);
+        }
+    }
+
+
+    /*
+     * Reads a bit stream written forwards from its end. The last byte contains
+     * a marker bit above the final bits written.
+     */
+    private static class BackwardBitReader {
+
+        private final byte[] src;
+        private final int start;
+        private long bitPos;
+
+        BackwardBitReader(byte[] src, int start, int end) throws IOException {
+            this.src = src;
+            this.start = start;
+            int last = end > start ? src[end - 1] & 0xFF : 0;
+            if (last == 0) {
+                throw new IOException("Missing end of stream marker");
+            }
+            bitPos = (long) (end - 1 - start) * 8 + 31 - Integer.numberOfLeadingZeros(last);
+        }
+
+        int peekBits(int count) {
+            int result = 0;
+            for (int i = 0; i < count; i++) {
+                long p = bitPos - count + i;
+                int bit = p < 0 ? 0 : (src[start + (int) (p >> 3)] >> (p & 7)) & 1;
+                result |= bit << i;
+            }
+            return result;
+        }
+
+        void skipBits(int count) {
+            bitPos -= count;
+        }
+
+        int readBits(int count) {
+            int result = peekBits(count);
+            skipBits(count);
+            return result;
+        }
+
+        boolean isComplete() {
+            return bitPos == 0;
+        }
+
+        boolean isOverflow() {
+            return bitPos < 0;
+        }
+    }
+}
@@ -0,0 +1,78 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  See the NOTICE file distributed with
+ *  this work for additional information regarding copyright ownership.
+ *  The ASF licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.tomcat.util.http;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TestHeaderCountHistogram {
+
+    @Test
+    public void testDefault() {
+        HeaderCountHistogram histogram = new HeaderCountHistogram();
+        Assert.assertEquals(MimeHeaders.DEFAULT_HEADER_SIZE, histogram.getSuggestedSize());
+
+        // Small requests never reduce the size below the default
+        for (int i = 0; i < 1000; i++) {
+            histogram.record(2);
+        }
+        Assert.assertEquals(MimeHeaders.DEFAULT_HEADER_SIZE, histogram.getSuggestedSize());
+    }
+
+
+    @Test
+    public void testPercentile() {
+        HeaderCountHistogram histogram = new HeaderCountHistogram();
+        // 1 in 50 requests has many more headers than the rest
+        for (int i = 0; i < 5000; i++) {
+            histogram.record(i % 50 == 0 ? 60 : 20);
+        }
+        Assert.assertEquals(20, histogram.getSuggestedSize());
+
+        // 1 in 10 requests has many more headers than the rest
+        for (int i = 0; i < 50000; i++) {
+            histogram.record(i % 10 == 0 ? 60 : 20);
+        }
+        Assert.assertEquals(60, histogram.getSuggestedSize());
+    }
+
+
+    @Test
+    public void testDecay() {
+        HeaderCountHistogram histogram = new HeaderCountHistogram();
+        for (int i = 0; i < 20000; i++) {
+            histogram.record(40);
+        }
+        Assert.assertEquals(40, histogram.getSuggestedSize());
+
+        // Traffic changes. Older samples must age out.
+        for (int i = 0; i < 100000; i++) {
+            histogram.record(25);
+        }
+        Assert.assertEquals(25, histogram.getSuggestedSize());
+    }
+
+
+    @Test
+    public void testLimit() {
+        HeaderCountHistogram histogram = new HeaderCountHistogram();
+        for (int i = 0; i < 1000; i++) {
+            histogram.record(10000);
+        }
+        Assert.assertEquals(127, histogram.getSuggestedSize());
+    }
+}
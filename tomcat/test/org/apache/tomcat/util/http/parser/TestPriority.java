@@ -0,0 +1,81 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  See the NOTICE file distributed with
+ *  this work for additional information regarding copyright ownership.
+ *  The ASF licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.tomcat.util.http.parser;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TestPriority {
+
+    @Test
+    public void testEmpty() {
+        doTest("", Priority.DEFAULT_URGENCY, Priority.DEFAULT_INCREMENTAL);
+    }
+
+
+    @Test
+    public void testUrgency() {
+        doTest("u=0", 0, false);
+        doTest("u=7", 7, false);
+        doTest(" u=5 ", 5, false);
+    }
+
+
+    @Test
+    public void testIncremental() {
+        doTest("i", Priority.DEFAULT_URGENCY, true);
+        doTest("i=?1", Priority.DEFAULT_URGENCY, true);
+        doTest("i=?0", Priority.DEFAULT_URGENCY, false);
+    }
+
+
+    @Test
+    public void testBoth() {
+        doTest("u=1, i", 1, true);
+        doTest("i,u=6", 6, true);
+    }
+
+
+    @Test
+    public void testLastValueWins() {
+        doTest("u=1, u=4", 4, false);
+        doTest("i, i=?0", Priority.DEFAULT_URGENCY, false);
+    }
+
+
+    @Test
+    public void testInvalidIgnored() {
+        doTest("u=8", Priority.DEFAULT_URGENCY, false);
+        doTest("u=-1", Priority.DEFAULT_URGENCY, false);
+        doTest("u=12", Priority.DEFAULT_URGENCY, false);
+        doTest("u=a, i=1", Priority.DEFAULT_URGENCY, false);
+    }
+
+
+    @Test
+    public void testUnknownIgnored() {
+        doTest("foo=bar, u=2", 2, false);
+        doTest("u=2;foo=bar, i;x", 2, true);
+    }
+
+
+    private void doTest(String input, int expectedUrgency, boolean expectedIncremental) {
+        Priority p = Priority.parsePriority(input);
+        Assert.assertEquals(expectedUrgency, p.getUrgency());
+        Assert.assertEquals(Boolean.valueOf(expectedIncremental), Boolean.valueOf(p.getIncremental()));
+    }
+}
@@ -0,0 +1,135 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.tomcat.util.net;
+
+import java.nio.ByteBuffer;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TestDirectBufferPool {
+
+    @Test
+    public void testReuse() {
+        DirectBufferPool pool = new DirectBufferPool(-1);
+        ByteBuffer b1 = pool.allocate(1024);
+        Assert.assertTrue(b1.isDirect());
+        Assert.assertEquals(1024, b1.capacity());
+        Assert.assertEquals(1024, pool.getBytesInUse());
+
+        b1.put((byte) 1);
+        pool.release(b1);
+        Assert.assertEquals(0, pool.getBytesInUse());
+        Assert.assertEquals(1024, pool.getPooledBytes());
+
+        ByteBuffer b2 = pool.allocate(1024);
+        Assert.assertSame(b1, b2);
+        Assert.assertEquals(0, b2.position());
+        Assert.assertEquals(1024, b2.limit());
+        Assert.assertEquals(0, pool.getPooledBytes());
+        Assert.assertEquals(1, pool.getHitCount());
+        Assert.assertEquals(1, pool.getMissCount());
+        Assert.assertEquals(0.5, pool.getHitRate(), 0.001);
+    }
+
+
+    @Test
+    public void testSizeClasses() {
+        DirectBufferPool pool = new DirectBufferPool(-1);
+        ByteBuffer b1 = pool.allocate(1024);
+        pool.release(b1);
+        ByteBuffer b2 = pool.allocate(2048);
+        Assert.assertNotSame(b1, b2);
+        Assert.assertEquals(2048, b2.capacity());
+        Assert.assertEquals(0, pool.getHitCount());
+    }
+
+
+    @Test
+    public void testHighWaterMark() {
+        DirectBufferPool pool = new DirectBufferPool(-1);
+        ByteBuffer b1 = pool.allocate(1024);
+        ByteBuffer b2 = pool.allocate(1024);
+        pool.release(b1);
+        pool.release(b2);
+        ByteBuffer b3 = pool.allocate(1024);
+        Assert.assertEquals(1024, pool.getBytesInUse());
+        Assert.assertEquals(2048, pool.getHighWaterMark());
+        pool.release(b3);
+    }
+
+
+    @Test
+    public void testMaxPooledBytes() {
+        DirectBufferPool pool = new DirectBufferPool(1024);
+        ByteBuffer b1 = pool.allocate(1024);
+        ByteBuffer b2 = pool.allocate(1024);
+        pool.release(b1);
+        pool.release(b2);
+        Assert.assertEquals(1024, pool.getPooledBytes());
+    }
+
+
+    @Test
+    public void testCrossThreadRelease() throws Exception {
+        DirectBufferPool pool = new DirectBufferPool(-1);
+        ByteBuffer b1 = pool.allocate(1024);
+        Thread t = new Thread(() -> pool.release(b1));
+        t.start();
+        t.join();
+        Assert.assertEquals(1024, pool.getPooledBytes());
+        Assert.assertSame(b1, pool.allocate(1024));
+        Assert.assertEquals(0, pool.getPooledBytes());
+    }
+
+
+    @Test
+    public void testClose() {
+        DirectBufferPool pool = new DirectBufferPool(-1);
+        ByteBuffer b1 = pool.allocate(1024);
+        ByteBuffer b2 = pool.allocate(1024);
+        pool.release(b1);
+        pool.close();
+        Assert.assertEquals(0, pool.getPooledBytes());
+        pool.release(b2);
+        Assert.assertEquals(0, pool.getPooledBytes());
+        Assert.assertEquals(0, pool.getBytesInUse());
+    }
+
+
+    @Test
+    public void testSocketBufferHandler() {
+        DirectBufferPool pool = new DirectBufferPool(-1);
+        SocketBufferHandler sbh = new SocketBufferHandler(1024, 1024, true, pool);
+        Assert.assertEquals(2048, pool.getBytesInUse());
+
+        sbh.getWriteBuffer().put((byte) 'A');
+        sbh.expand(4096);
+        Assert.assertEquals(8192, pool.getBytesInUse());
+        Assert.assertEquals(2048, pool.getPooledBytes());
+        Assert.assertEquals(1, sbh.getWriteBuffer().position());
+
+        sbh.free();
+        Assert.assertEquals(0, pool.getBytesInUse());
+        Assert.assertEquals(10240, pool.getPooledBytes());
+        Assert.assertEquals(0, sbh.getReadBuffer().capacity());
+
+        // Calling free a second time should have no effect
+        sbh.free();
+        Assert.assertEquals(10240, pool.getPooledBytes());
+    }
+}
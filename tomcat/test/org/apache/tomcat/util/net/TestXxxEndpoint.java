@@ -17,11 +17,20 @@
 package org.apache.tomcat.util.net;
 
 import java.io.File;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
 import java.net.InetAddress;
 import java.net.ServerSocket;
+import java.net.Socket;
 import java.net.SocketAddress;
 import java.nio.ByteBuffer;
 import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Set;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
 
 import org.junit.Assert;
 import org.junit.Assume;
@@ -234,4 +243,54 @@ public class TestXxxEndpoint extends TomcatBaseTest {
 
         Assert.assertTrue((new String(response.array(), 0, response.position()).startsWith("HTTP/1.1 200")));
     }
+
+    @Test
+    public void testMultiplePollers() throws Exception {
+        Tomcat tomcat = getTomcatInstance();
+        Connector c = tomcat.getConnector();
+        Assume.assumeTrue("NIO connector has to be used for this test",
+                c.getProtocolHandlerClassName().contains("NioProtocol"));
+
+        Assert.assertTrue(c.setProperty("pollerThreadCount", "4"));
+        tomcat.start();
+
+        Socket[] sockets = new Socket[8];
+        try {
+            for (int i = 0; i < sockets.length; i++) {
+                sockets[i] = new Socket("localhost", getPort());
+                OutputStream os = sockets[i].getOutputStream();
+                os.write("OPTIONS * HTTP/1.1\r\nHost: localhost\r\n\r\n".getBytes(StandardCharsets.ISO_8859_1));
+                os.flush();
+                InputStream is = sockets[i].getInputStream();
+                byte[] response = new byte[12];
+                int read = 0;
+                while (read < response.length) {
+                    int n = is.read(response, read, response.length - read);
+                    Assert.assertTrue(n > 0);
+                    read += n;
+                }
+                Assert.assertEquals("HTTP/1.1 200", new String(response, StandardCharsets.ISO_8859_1));
+            }
+
+            MBeanServer mbeanServer = ManagementFactory.getPlatformMBeanServer();
+            Set<ObjectName> onames = mbeanServer.queryNames(new ObjectName("*:type=ThreadPool,*"), null);
+            Assert.assertEquals(1, onames.size());
+            ObjectName oname = onames.iterator().next();
+            int[] registrations = (int[]) mbeanServer.getAttribute(oname, "pollerRegistrationCounts");
+            long[] selectedKeys = (long[]) mbeanServer.getAttribute(oname, "pollerSelectedKeyCounts");
+            Assert.assertEquals(4, registrations.length);
+            Assert.assertEquals(4, selectedKeys.length);
+            // Round robin selection
+            for (int i = 0; i < registrations.length; i++) {
+                Assert.assertEquals(2, registrations[i]);
+                Assert.assertTrue(selectedKeys[i] > 0);
+            }
+        } finally {
+            for (Socket socket : sockets) {
+                if (socket != null) {
+                    socket.close();
+                }
+            }
+        }
+    }
 }
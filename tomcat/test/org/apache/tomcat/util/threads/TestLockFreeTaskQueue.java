@@ -0,0 +1,300 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.tomcat.util.threads;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TestLockFreeTaskQueue {
+
+    @Test
+    public void testFifo() {
+        LockFreeTaskQueue queue = new LockFreeTaskQueue();
+        List<Runnable> tasks = createTasks(100);
+        for (Runnable task : tasks) {
+            Assert.assertTrue(queue.offer(task));
+        }
+        Assert.assertEquals(100, queue.size());
+        Assert.assertSame(tasks.get(0), queue.peek());
+        for (Runnable task : tasks) {
+            Assert.assertSame(task, queue.poll());
+        }
+        Assert.assertNull(queue.poll());
+        Assert.assertTrue(queue.isEmpty());
+    }
+
+
+    @Test
+    public void testOverflow() {
+        // Larger than the maximum ring size
+        int count = 50000;
+        LockFreeTaskQueue queue = new LockFreeTaskQueue();
+        List<Runnable> tasks = createTasks(count);
+        for (Runnable task : tasks) {
+            Assert.assertTrue(queue.offer(task));
+        }
+        Assert.assertEquals(count, queue.size());
+        for (Runnable task : tasks) {
+            Assert.assertSame(task, queue.poll());
+        }
+        Assert.assertTrue(queue.isEmpty());
+    }
+
+
+    @Test
+    public void testCapacity() {
+        LockFreeTaskQueue queue = new LockFreeTaskQueue(3);
+        List<Runnable> tasks = createTasks(4);
+        Assert.assertTrue(queue.offer(tasks.get(0)));
+        Assert.assertTrue(queue.offer(tasks.get(1)));
+        Assert.assertEquals(1, queue.remainingCapacity());
+        Assert.assertTrue(queue.offer(tasks.get(2)));
+        Assert.assertEquals(0, queue.remainingCapacity());
+        Assert.assertFalse(queue.offer(tasks.get(3)));
+        Assert.assertSame(tasks.get(0), queue.poll());
+        Assert.assertTrue(queue.offer(tasks.get(3)));
+    }
+
+
+    @Test
+    public void testRemove() {
+        LockFreeTaskQueue queue = new LockFreeTaskQueue();
+        List<Runnable> tasks = createTasks(5);
+        for (Runnable task : tasks) {
+            queue.offer(task);
+        }
+        Assert.assertTrue(queue.remove(tasks.get(2)));
+        Assert.assertFalse(queue.remove(tasks.get(2)));
+
+        Iterator<Runnable> iter = queue.iterator();
+        Assert.assertSame(tasks.get(0), iter.next());
+        iter.remove();
+
+        List<Runnable> drained = new ArrayList<>();
+        Assert.assertEquals(3, queue.drainTo(drained));
+        Assert.assertSame(tasks.get(1), drained.get(0));
+        Assert.assertSame(tasks.get(3), drained.get(1));
+        Assert.assertSame(tasks.get(4), drained.get(2));
+        Assert.assertTrue(queue.isEmpty());
+    }
+
+
+    @Test
+    public void testBlocking() throws Exception {
+        final LockFreeTaskQueue queue = new LockFreeTaskQueue();
+        Assert.assertNull(queue.poll(50, TimeUnit.MILLISECONDS));
+
+        final Runnable task = createTasks(1).get(0);
+        Thread producer = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    Thread.sleep(200);
+                } catch (InterruptedException e) {
+                    // Ignore
+                }
+                queue.offer(task);
+            }
+        };
+        producer.start();
+        Assert.assertSame(task, queue.take());
+        producer.join();
+
+        Thread.currentThread().interrupt();
+        try {
+            queue.take();
+            Assert.fail();
+        } catch (InterruptedException expected) {
+            // Expected
+        }
+    }
+
+
+    /*
+     * A single producer handing tasks, one at a time, to a single consumer
+     * that parks in take(). A lost wake-up leaves the consumer parked with a
+     * task in the queue.
+     */
+    @Test
+    public void testNoLostWakeup() throws Exception {
+        final int iterations = 20000;
+        final LockFreeTaskQueue queue = new LockFreeTaskQueue();
+        final AtomicLong executed = new AtomicLong();
+        final Runnable task = new Runnable() {
+            @Override
+            public void run() {
+                executed.incrementAndGet();
+            }
+        };
+
+        Thread consumer = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    while (true) {
+                        queue.take().run();
+                    }
+                } catch (InterruptedException e) {
+                    // Ignore
+                }
+            }
+        };
+        consumer.start();
+        try {
+            for (int i = 0; i < iterations; i++) {
+                // Vary the delay so the offer races with the consumer at each
+                // stage of spinning, registering as a waiter and parking
+                if (i % 4 != 0) {
+                    LockSupport.parkNanos(i % 4 * 20000L);
+                }
+                queue.offer(task);
+                long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+                while (executed.get() <= i) {
+                    if (System.nanoTime() - deadline > 0) {
+                        Assert.fail("Task [" + i + "] was not taken");
+                    }
+                    Thread.yield();
+                }
+            }
+        } finally {
+            consumer.interrupt();
+            consumer.join(10000);
+        }
+        Assert.assertFalse(consumer.isAlive());
+    }
+
+
+    @Test
+    public void testMultipleProducersAndConsumers() throws Exception {
+        final int threadCount = 4;
+        final int tasksPerThread = 100000;
+        final LockFreeTaskQueue queue = new LockFreeTaskQueue();
+        final AtomicLong executed = new AtomicLong();
+        final Runnable task = new Runnable() {
+            @Override
+            public void run() {
+                executed.incrementAndGet();
+            }
+        };
+        final Runnable stop = createTasks(1).get(0);
+
+        Thread[] consumers = new Thread[threadCount];
+        for (int i = 0; i < threadCount; i++) {
+            consumers[i] = new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        Runnable r;
+                        while ((r = queue.take()) != stop) {
+                            r.run();
+                        }
+                    } catch (InterruptedException e) {
+                        // Ignore
+                    }
+                }
+            };
+            consumers[i].start();
+        }
+        Thread[] producers = new Thread[threadCount];
+        for (int i = 0; i < threadCount; i++) {
+            producers[i] = new Thread() {
+                @Override
+                public void run() {
+                    for (int j = 0; j < tasksPerThread; j++) {
+                        queue.offer(task);
+                    }
+                }
+            };
+            producers[i].start();
+        }
+        for (Thread producer : producers) {
+            producer.join();
+        }
+        for (int i = 0; i < threadCount; i++) {
+            queue.offer(stop);
+        }
+        for (Thread consumer : consumers) {
+            consumer.join(60000);
+            Assert.assertFalse(consumer.isAlive());
+        }
+        Assert.assertEquals(threadCount * tasksPerThread, executed.get());
+    }
+
+
+    /*
+     * Threads should be created, up to maxThreads, before tasks are queued.
+     */
+    @Test
+    public void testExecutorCreatesThreadsBeforeQueueing() throws Exception {
+        LockFreeTaskQueue queue = new LockFreeTaskQueue();
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(1, 4, 60, TimeUnit.SECONDS, queue,
+                new TaskThreadFactory("test-", true, Thread.NORM_PRIORITY));
+        queue.setParent(executor);
+        try {
+            final CountDownLatch release = new CountDownLatch(1);
+            final CountDownLatch done = new CountDownLatch(6);
+            Runnable task = new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        release.await();
+                    } catch (InterruptedException e) {
+                        // Ignore
+                    }
+                    done.countDown();
+                }
+            };
+            for (int i = 0; i < 4; i++) {
+                executor.execute(task);
+            }
+            Assert.assertEquals(4, executor.getPoolSize());
+            Assert.assertEquals(0, queue.size());
+
+            executor.execute(task);
+            executor.execute(task);
+            Assert.assertEquals(4, executor.getPoolSize());
+            Assert.assertEquals(2, queue.size());
+
+            release.countDown();
+            Assert.assertTrue(done.await(60, TimeUnit.SECONDS));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+
+    private static List<Runnable> createTasks(int count) {
+        List<Runnable> result = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            result.add(new Runnable() {
+                @Override
+                public void run() {
+                    // NO-OP
+                }
+            });
+        }
+        return result;
+    }
+}
@@ -0,0 +1,101 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.tomcat.util.threads;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+/*
+ * Compares the task dispatch throughput of ThreadPoolExecutor with TaskQueue
+ * and with LockFreeTaskQueue. The submitting threads play the role of the
+ * pollers and the tasks are trivial so the result is dominated by the cost of
+ * the queue.
+ */
+public class TesterTaskQueuePerformance {
+
+    private static final int SUBMIT_THREADS = 2;
+    private static final int POOL_THREADS = 8;
+    private static final int TASKS_PER_THREAD = 2000000;
+    private static final int ITERATIONS = 5;
+
+
+    @Test
+    public void testTaskQueue() throws Exception {
+        for (int i = 0; i < ITERATIONS; i++) {
+            TaskQueue queue = new TaskQueue();
+            ThreadPoolExecutor executor = createExecutor(queue);
+            queue.setParent(executor);
+            doTest("TaskQueue", executor);
+        }
+    }
+
+
+    @Test
+    public void testLockFreeTaskQueue() throws Exception {
+        for (int i = 0; i < ITERATIONS; i++) {
+            LockFreeTaskQueue queue = new LockFreeTaskQueue();
+            ThreadPoolExecutor executor = createExecutor(queue);
+            queue.setParent(executor);
+            doTest("LockFreeTaskQueue", executor);
+        }
+    }
+
+
+    private static ThreadPoolExecutor createExecutor(RetryableQueue<Runnable> queue) {
+        return new ThreadPoolExecutor(POOL_THREADS, POOL_THREADS, 60, TimeUnit.SECONDS, queue,
+                new TaskThreadFactory("perf-", true, Thread.NORM_PRIORITY));
+    }
+
+
+    private static void doTest(String name, final ThreadPoolExecutor executor) throws Exception {
+        final CountDownLatch done = new CountDownLatch(SUBMIT_THREADS * TASKS_PER_THREAD);
+        final Runnable task = new Runnable() {
+            @Override
+            public void run() {
+                done.countDown();
+            }
+        };
+        Thread[] submitters = new Thread[SUBMIT_THREADS];
+        for (int i = 0; i < SUBMIT_THREADS; i++) {
+            submitters[i] = new Thread() {
+                @Override
+                public void run() {
+                    for (int j = 0; j < TASKS_PER_THREAD; j++) {
+                        executor.execute(task);
+                    }
+                }
+            };
+        }
+
+        long start = System.nanoTime();
+        for (Thread submitter : submitters) {
+            submitter.start();
+        }
+        for (Thread submitter : submitters) {
+            submitter.join();
+        }
+        done.await();
+        long duration = System.nanoTime() - start;
+
+        executor.shutdownNow();
+
+        System.out.println(name + ": " + (SUBMIT_THREADS * TASKS_PER_THREAD) + " tasks in " +
+                TimeUnit.NANOSECONDS.toMillis(duration) + "ms");
+    }
+}